@@ -0,0 +1,134 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.benchmark;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MultiLayerNetwork#fit(DataSet)} and {@link MultiLayerNetwork#output(INDArray)} for one network per
+ * common layer type, so regressions in a single layer implementation (or its helper) show up in isolation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiLayerNetworkBenchmark {
+
+    @Param({"dense", "conv2d", "lstm"})
+    public String layerType;
+
+    @Param({"32"})
+    public int minibatch;
+
+    private MultiLayerNetwork net;
+    private DataSet ds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        NeuralNetConfiguration.ListBuilder b = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.FLOAT)
+                .seed(12345)
+                .updater(new Adam(1e-3))
+                .weightInit(WeightInit.XAVIER)
+                .list();
+
+        int nOut = 10;
+        INDArray features;
+        INDArray labels;
+        switch (layerType) {
+            case "dense":
+                b.layer(new DenseLayer.Builder().nOut(512).activation(Activation.RELU).build())
+                        .layer(new DenseLayer.Builder().nOut(512).activation(Activation.RELU).build())
+                        .layer(new OutputLayer.Builder().nOut(nOut).activation(Activation.SOFTMAX)
+                                .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .setInputType(InputType.feedForward(784));
+                features = Nd4j.rand(DataType.FLOAT, minibatch, 784);
+                labels = oneHot(minibatch, nOut);
+                break;
+            case "conv2d":
+                b.layer(new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(32).activation(Activation.RELU).build())
+                        .layer(new SubsamplingLayer.Builder().kernelSize(2, 2).stride(2, 2).build())
+                        .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(64).activation(Activation.RELU).build())
+                        .layer(new OutputLayer.Builder().nOut(nOut).activation(Activation.SOFTMAX)
+                                .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .setInputType(InputType.convolutional(28, 28, 1));
+                features = Nd4j.rand(DataType.FLOAT, minibatch, 1, 28, 28);
+                labels = oneHot(minibatch, nOut);
+                break;
+            case "lstm":
+                int tsLength = 50;
+                b.layer(new LSTM.Builder().nOut(128).activation(Activation.TANH).build())
+                        .layer(new RnnOutputLayer.Builder().nOut(nOut).activation(Activation.SOFTMAX)
+                                .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .setInputType(InputType.recurrent(32, tsLength));
+                features = Nd4j.rand(DataType.FLOAT, minibatch, 32, tsLength);
+                labels = Nd4j.create(DataType.FLOAT, minibatch, nOut, tsLength);
+                for (int i = 0; i < minibatch; i++) {
+                    for (int t = 0; t < tsLength; t++) {
+                        labels.putScalar(i, (i + t) % nOut, t, 1.0);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown layer type: " + layerType);
+        }
+
+        MultiLayerConfiguration conf = b.build();
+        net = new MultiLayerNetwork(conf);
+        net.init();
+        ds = new DataSet(features, labels);
+    }
+
+    private static INDArray oneHot(int minibatch, int nOut) {
+        INDArray labels = Nd4j.create(DataType.FLOAT, minibatch, nOut);
+        for (int i = 0; i < minibatch; i++) {
+            labels.putScalar(i, i % nOut, 1.0);
+        }
+        return labels;
+    }
+
+    @Benchmark
+    public void fit() {
+        net.fit(ds);
+    }
+
+    @Benchmark
+    public INDArray output() {
+        return net.output(ds.getFeatures());
+    }
+}
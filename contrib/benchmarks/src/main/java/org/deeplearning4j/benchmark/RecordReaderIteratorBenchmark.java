@@ -0,0 +1,99 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.benchmark;
+
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.deeplearning4j.datasets.datavec.RecordReaderDataSetIterator;
+import org.nd4j.linalg.dataset.DataSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full pass of {@link RecordReaderDataSetIterator} over a CSV file: parsing, Writable conversion and
+ * minibatch assembly. The file is generated once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordReaderIteratorBenchmark {
+
+    @Param({"10000"})
+    public int numRows;
+
+    @Param({"32"})
+    public int numColumns;
+
+    @Param({"32", "256"})
+    public int batchSize;
+
+    private static final int NUM_CLASSES = 10;
+
+    private File csvFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        csvFile = File.createTempFile("rr_benchmark", ".csv");
+        csvFile.deleteOnExit();
+        Random r = new Random(12345);
+        try (BufferedWriter w = Files.newBufferedWriter(csvFile.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < numRows; i++) {
+                StringBuilder sb = new StringBuilder();
+                for (int j = 0; j < numColumns; j++) {
+                    sb.append(r.nextFloat()).append(',');
+                }
+                sb.append(r.nextInt(NUM_CLASSES));
+                w.write(sb.toString());
+                w.newLine();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        csvFile.delete();
+    }
+
+    @Benchmark
+    public long iterateEpoch() throws Exception {
+        RecordReader rr = new CSVRecordReader();
+        rr.initialize(new FileSplit(csvFile));
+        RecordReaderDataSetIterator iter = new RecordReaderDataSetIterator(rr, batchSize, numColumns, NUM_CLASSES);
+        long count = 0;
+        while (iter.hasNext()) {
+            DataSet ds = iter.next();
+            count += ds.numExamples();
+        }
+        rr.close();
+        return count;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.benchmark;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-op dispatch overhead of {@code NativeOpExecutioner} for custom ops on small arrays, with and without
+ * {@code OpExecutioner.enableSmallArrayFastPath(boolean)}, where available. The fast path only applies to custom ops,
+ * so legacy ops are measured separately by {@link OpDispatchBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomOpDispatchBenchmark {
+
+    @Param({"1", "16", "256", "4096"})
+    public int length;
+
+    @Param({"false", "true"})
+    public boolean fastPath;
+
+    private INDArray x;
+    private INDArray y;
+    private INDArray z;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        x = Nd4j.rand(DataType.FLOAT, length);
+        y = Nd4j.rand(DataType.FLOAT, length);
+        z = Nd4j.create(DataType.FLOAT, length);
+        OptionalFeatures.enableSmallArrayFastPath(fastPath);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        OptionalFeatures.enableSmallArrayFastPath(false);
+    }
+
+    @Benchmark
+    public INDArray[] customPairwise() {
+        return Nd4j.getExecutioner().exec(new AddOp(x, y, z));
+    }
+
+    @Benchmark
+    public INDArray[] customByName() {
+        return Nd4j.getExecutioner().exec(DynamicCustomOp.builder("add")
+                .addInputs(x, y)
+                .addOutputs(z)
+                .build());
+    }
+
+    @Benchmark
+    public INDArray[] customAllocatingOutput() {
+        return Nd4j.getExecutioner().exec(new AddOp(x, y));
+    }
+
+    @Benchmark
+    public INDArray ndarrayAddi() {
+        return z.assign(x).addi(y);
+    }
+}
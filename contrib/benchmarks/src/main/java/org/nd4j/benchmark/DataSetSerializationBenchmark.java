@@ -0,0 +1,74 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.benchmark;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DataSet#save(java.io.OutputStream)} and {@link DataSet#load(java.io.InputStream)} round trips,
+ * using in-memory streams so that disk speed is not part of the measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataSetSerializationBenchmark {
+
+    @Param({"32", "1024"})
+    public int minibatch;
+
+    @Param({"784"})
+    public int nIn;
+
+    private DataSet ds;
+    private byte[] serialized;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ds = new DataSet(Nd4j.rand(DataType.FLOAT, minibatch, nIn), Nd4j.rand(DataType.FLOAT, minibatch, 10));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ds.save(baos);
+        serialized = baos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] save() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(serialized.length);
+        ds.save(baos);
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public DataSet load() {
+        DataSet loaded = new DataSet();
+        loaded.load(new ByteArrayInputStream(serialized));
+        return loaded;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.benchmark;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Array creation, view, dup and assign costs for {@code BaseNDArray}. These are dominated by Java-side
+ * shape info handling and native allocation rather than by the math, so small sizes matter most here.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NDArrayBenchmark {
+
+    @Param({"4", "64", "1024"})
+    public int size;
+
+    @Param({"FLOAT", "DOUBLE"})
+    public DataType dataType;
+
+    private INDArray arr;
+    private INDArray other;
+    private INDArray target;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        arr = Nd4j.rand(dataType, size, size);
+        other = Nd4j.rand(dataType, size, size);
+        target = Nd4j.create(dataType, size, size);
+    }
+
+    @Benchmark
+    public INDArray create() {
+        return Nd4j.create(dataType, size, size);
+    }
+
+    @Benchmark
+    public INDArray createUninitialized() {
+        return Nd4j.createUninitialized(dataType, size, size);
+    }
+
+    @Benchmark
+    public INDArray getRow() {
+        return arr.getRow(size / 2);
+    }
+
+    @Benchmark
+    public INDArray getInterval() {
+        return arr.get(NDArrayIndex.interval(0, size / 2), NDArrayIndex.all());
+    }
+
+    @Benchmark
+    public INDArray transposeView() {
+        return arr.transpose();
+    }
+
+    @Benchmark
+    public INDArray reshapeView() {
+        return arr.reshape(size * size);
+    }
+
+    @Benchmark
+    public INDArray dup() {
+        return arr.dup();
+    }
+
+    @Benchmark
+    public INDArray dupFortran() {
+        return arr.dup('f');
+    }
+
+    @Benchmark
+    public INDArray assign() {
+        return target.assign(other);
+    }
+
+    @Benchmark
+    public INDArray assignScalar() {
+        return target.assign(1.0);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.benchmark;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.reduce.same.Sum;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarAdd;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Tanh;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-op dispatch overhead of {@code NativeOpExecutioner} for small arrays: for these sizes the time is
+ * dominated by op validation, shape info and JNI calls rather than by the computation itself.
+ * Each op writes into a preallocated output so that allocation is not part of the measurement.
+ * This class covers legacy (transform, scalar, reduce) ops, which always use the regular execution path; see
+ * {@link CustomOpDispatchBenchmark} for custom ops, with and without the small array fast path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpDispatchBenchmark {
+
+    @Param({"1", "16", "256", "4096"})
+    public int length;
+
+    private INDArray x;
+    private INDArray z;
+    private INDArray scalarOut;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        x = Nd4j.rand(DataType.FLOAT, length);
+        z = Nd4j.create(DataType.FLOAT, length);
+        scalarOut = Nd4j.scalar(DataType.FLOAT, 0.0f);
+    }
+
+    @Benchmark
+    public INDArray legacyTransform() {
+        return Nd4j.getExecutioner().exec(new Tanh(x, z));
+    }
+
+    @Benchmark
+    public INDArray legacyScalar() {
+        return Nd4j.getExecutioner().exec(new ScalarAdd(x, null, z, 1.0));
+    }
+
+    @Benchmark
+    public INDArray legacyReduce() {
+        return Nd4j.getExecutioner().exec(new Sum(x, scalarOut));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.benchmark;
+
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Access to settings that only exist in recent versions. These are called through reflection, so that the
+ * benchmarks still compile against any version given by {@code dl4j.version}. Benchmarks using a setting that the
+ * version under test doesn't have fail in setup, rather than silently measuring the default behaviour.
+ */
+public class OptionalFeatures {
+
+    private OptionalFeatures() {
+    }
+
+    /**
+     * {@code OpExecutioner.enableSmallArrayFastPath(boolean)}. Disabling it is a no-op on versions without it.
+     */
+    public static void enableSmallArrayFastPath(boolean enable) {
+        Object executioner = Nd4j.getExecutioner();
+        Method method = find(executioner.getClass(), "enableSmallArrayFastPath", boolean.class);
+        if (method == null) {
+            if (enable)
+                throw new UnsupportedOperationException("Small array fast path is not available in this version");
+            return;
+        }
+        invoke(method, executioner, enable);
+    }
+
+    /**
+     * {@code SameDiff.setSessionArrayPool(new SizeClassArrayPool())}
+     */
+    public static void enableSessionArrayPool(SameDiff sd) {
+        Method method;
+        Object pool;
+        try {
+            Class<?> poolClass = Class.forName("org.nd4j.autodiff.samediff.internal.memory.SizeClassArrayPool");
+            method = SameDiff.class.getMethod("setSessionArrayPool", poolClass);
+            pool = poolClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Session array pool is not available in this version", e);
+        }
+        invoke(method, sd, pool);
+    }
+
+    /**
+     * {@code SameDiff.setStaticMemoryPlanning(true)}
+     */
+    public static void enableStaticMemoryPlanning(SameDiff sd) {
+        Method method = find(SameDiff.class, "setStaticMemoryPlanning", boolean.class);
+        if (method == null)
+            throw new UnsupportedOperationException("Static memory planning is not available in this version");
+        invoke(method, sd, true);
+    }
+
+    private static Method find(Class<?> c, String name, Class<?>... parameterTypes) {
+        try {
+            return c.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static void invoke(Method method, Object target, Object... args) {
+        try {
+            method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
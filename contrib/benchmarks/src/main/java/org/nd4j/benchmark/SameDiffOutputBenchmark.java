@@ -0,0 +1,92 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.benchmark;
+
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SameDiff#output(Map, String...)} latency for a small MLP, with each of the inference session
+ * memory management modes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SameDiffOutputBenchmark {
+
+    @Param({"1", "32"})
+    public int minibatch;
+
+    @Param({"default", "sizeClassPool", "staticPlan"})
+    public String memoryMode;
+
+    private SameDiff sd;
+    private Map<String, INDArray> placeholders;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int nIn = 128;
+        int nHidden = 256;
+        int nOut = 10;
+
+        sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, nIn);
+        SDVariable w0 = sd.var("w0", Nd4j.rand(DataType.FLOAT, nIn, nHidden).subi(0.5));
+        SDVariable b0 = sd.var("b0", Nd4j.zeros(DataType.FLOAT, nHidden));
+        SDVariable w1 = sd.var("w1", Nd4j.rand(DataType.FLOAT, nHidden, nHidden).subi(0.5));
+        SDVariable b1 = sd.var("b1", Nd4j.zeros(DataType.FLOAT, nHidden));
+        SDVariable w2 = sd.var("w2", Nd4j.rand(DataType.FLOAT, nHidden, nOut).subi(0.5));
+        SDVariable b2 = sd.var("b2", Nd4j.zeros(DataType.FLOAT, nOut));
+
+        SDVariable h0 = sd.nn.relu(in.mmul(w0).add(b0), 0);
+        SDVariable h1 = sd.nn.tanh(h0.mmul(w1).add(b1));
+        sd.nn.softmax("out", h1.mmul(w2).add(b2), 1);
+
+        switch (memoryMode) {
+            case "sizeClassPool":
+                OptionalFeatures.enableSessionArrayPool(sd);
+                break;
+            case "staticPlan":
+                OptionalFeatures.enableStaticMemoryPlanning(sd);
+                break;
+            default:
+                break;
+        }
+
+        placeholders = Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, minibatch, nIn));
+    }
+
+    @Benchmark
+    public Map<String, INDArray> output() {
+        return sd.output(placeholders, "out");
+    }
+}
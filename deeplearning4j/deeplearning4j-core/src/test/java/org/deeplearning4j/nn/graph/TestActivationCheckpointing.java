@@ -0,0 +1,139 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.graph;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.memory.MemoryUseMode;
+import org.deeplearning4j.nn.conf.memory.NetworkMemoryReport;
+import org.deeplearning4j.nn.conf.CacheMode;
+import org.deeplearning4j.nn.graph.util.ActivationCheckpointPlan;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class TestActivationCheckpointing extends BaseDL4JTest {
+
+    private static ComputationGraphConfiguration residualConf(int numBlocks, int checkpointEvery) {
+        ComputationGraphConfiguration.GraphBuilder b = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.DOUBLE)
+                .updater(new Sgd(0.1))
+                .weightInit(WeightInit.XAVIER)
+                .graphBuilder()
+                .addInputs("in")
+                .setInputTypes(InputType.feedForward(8))
+                .addLayer("first", new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build(), "in");
+        String last = "first";
+        for (int i = 0; i < numBlocks; i++) {
+            b.addLayer("dense_" + i + "_a", new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build(), last)
+                    .addLayer("dense_" + i + "_b", new DenseLayer.Builder().nOut(8).activation(Activation.IDENTITY).build(), "dense_" + i + "_a")
+                    .addVertex("add_" + i, new ElementWiseVertex(ElementWiseVertex.Op.Add), last, "dense_" + i + "_b");
+            last = "add_" + i;
+        }
+        return b.addLayer("out", new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), last)
+                .setOutputs("out")
+                .activationCheckpointing(checkpointEvery)
+                .build();
+    }
+
+    @Test
+    @DisplayName("Checkpointed gradients match full activation storage")
+    public void testGradientsMatch() {
+        for (int every : new int[]{-1, 1, 2, 3, 5}) {
+            ComputationGraph net = new ComputationGraph(residualConf(6, 0));
+            net.init();
+            ComputationGraph netCheckpoint = new ComputationGraph(residualConf(6, every));
+            netCheckpoint.init(net.params().dup(), false);
+
+            INDArray f = Nd4j.rand(DataType.DOUBLE, 5, 8);
+            INDArray l = Nd4j.eye(3).getRows(0, 1, 2, 0, 1).castTo(DataType.DOUBLE);
+
+            for (ComputationGraph cg : new ComputationGraph[]{net, netCheckpoint}) {
+                cg.setInputs(f);
+                cg.setLabels(l);
+                cg.computeGradientAndScore();
+            }
+
+            assertEquals(net.score(), netCheckpoint.score(), 1e-10, "every=" + every);
+            assertEquals(net.gradient().gradient(), netCheckpoint.gradient().gradient(), "every=" + every);
+
+            for (int i = 0; i < 3; i++) {
+                net.fit(new INDArray[]{f}, new INDArray[]{l});
+                netCheckpoint.fit(new INDArray[]{f}, new INDArray[]{l});
+            }
+            assertEquals(net.params(), netCheckpoint.params(), "every=" + every);
+        }
+    }
+
+    @Test
+    @DisplayName("Checkpoint plan and memory report")
+    public void testPlanAndMemoryReport() {
+        ComputationGraphConfiguration conf = residualConf(9, 3);
+        List<String> order = new ArrayList<>();
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+        for (int idx : net.topologicalSortOrder()) {
+            order.add(net.getVertices()[idx].getVertexName());
+        }
+        ActivationCheckpointPlan plan = ActivationCheckpointPlan.create(conf, order);
+        assertFalse(plan.getRecomputed().isEmpty());
+        assertFalse(plan.isRecomputed("in"));
+        assertFalse(plan.isRecomputed("add_8"));     //Input to output layer
+        assertFalse(plan.isRecomputed("out"));
+        for (String s : plan.getCheckpoints()) {
+            assertFalse(plan.isRecomputed(s));
+        }
+
+        NetworkMemoryReport withCheckpoints = conf.getMemoryReport(InputType.feedForward(8));
+        NetworkMemoryReport noCheckpoints = residualConf(9, 0).getMemoryReport(InputType.feedForward(8));
+        long memCheckpoint = withCheckpoints.getTotalMemoryBytes(32, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+        long memNoCheckpoint = noCheckpoints.getTotalMemoryBytes(32, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+        assertTrue(memCheckpoint < memNoCheckpoint, memCheckpoint + " vs. " + memNoCheckpoint);
+        assertEquals(noCheckpoints.getTotalMemoryBytes(32, MemoryUseMode.INFERENCE, CacheMode.NONE, DataType.FLOAT),
+                withCheckpoints.getTotalMemoryBytes(32, MemoryUseMode.INFERENCE, CacheMode.NONE, DataType.FLOAT));
+        assertTrue(withCheckpoints.getRecomputedActivationBytes(32, DataType.FLOAT) > 0);
+        assertEquals(0, noCheckpoints.getRecomputedActivationBytes(32, DataType.FLOAT));
+        assertTrue(withCheckpoints.toString().contains("Activation Checkpointing"));
+    }
+}
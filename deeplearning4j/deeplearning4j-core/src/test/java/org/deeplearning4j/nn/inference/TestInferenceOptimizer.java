@@ -0,0 +1,130 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.inference;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.DropoutLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class TestInferenceOptimizer extends BaseDL4JTest {
+
+    @Test
+    @DisplayName("Test inference optimizer - MultiLayerNetwork")
+    public void testOptimizeMLN() {
+        Nd4j.getRandom().setSeed(12345);
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .dropOut(0.5)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(6).activation(Activation.IDENTITY).build())
+                .layer(new BatchNormalization.Builder().nOut(6).build())
+                .layer(new ActivationLayer.Builder().activation(Activation.TANH).build())
+                .layer(new DropoutLayer.Builder(0.5).build())
+                .layer(new OutputLayer.Builder().nIn(6).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        randomizeBatchNorm(net.getLayer(1));
+
+        MultiLayerNetwork optimized = InferenceOptimizer.optimize(net);
+        assertEquals(2, optimized.getnLayers());
+        assertNull(optimized.getLayer(0).conf().getLayer().getIDropout());
+
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 5, 4);
+        assertTrue(net.output(in).equalsWithEps(optimized.output(in), 1e-8));
+    }
+
+    @Test
+    @DisplayName("Test inference optimizer - ComputationGraph")
+    public void testOptimizeGraph() {
+        Nd4j.getRandom().setSeed(12345);
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("conv", new ConvolutionLayer.Builder().kernelSize(2, 2).nOut(4)
+                        .activation(Activation.IDENTITY).hasBias(false).build(), "in")
+                .addLayer("bn", new BatchNormalization.Builder().build(), "conv")
+                .addLayer("act", new ActivationLayer.Builder().activation(Activation.RELU).build(), "bn")
+                .addLayer("out", new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "act")
+                .setOutputs("out")
+                .setInputTypes(InputType.convolutional(5, 5, 2))
+                .build();
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+        randomizeBatchNorm(net.getLayer("bn"));
+
+        ComputationGraph optimized = InferenceOptimizer.optimize(net);
+        assertEquals(3, optimized.getVertices().length);    //Input, conv, out
+        assertEquals(Activation.RELU.getActivationFunction(),
+                ((ConvolutionLayer) optimized.getLayer("conv").conf().getLayer()).getActivationFn());
+
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 3, 2, 5, 5);
+        INDArray exp = net.outputSingle(in);
+        INDArray out = optimized.outputSingle(in);
+        assertTrue(exp.equalsWithEps(out, 1e-8));
+        assertEquals(net.getConfiguration().getNetworkOutputs(), optimized.getConfiguration().getNetworkOutputs());
+    }
+
+    private static void randomizeBatchNorm(Layer bn) {
+        for (Map.Entry<String, INDArray> e : bn.paramTable().entrySet()) {
+            INDArray r = Nd4j.rand(e.getValue().dataType(), e.getValue().shape());
+            //Variance must stay positive, otherwise sqrt(var + eps) is NaN
+            if (BatchNormalizationParamInitializer.GLOBAL_VAR.equals(e.getKey())) {
+                e.getValue().assign(r.addi(0.5));
+            } else {
+                e.getValue().assign(r.subi(0.5));
+            }
+        }
+    }
+}
@@ -46,8 +46,11 @@ import org.nd4j.linalg.activations.impl.ActivationIdentity;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.IUpdater;
 import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -547,6 +550,76 @@ class EmbeddingLayerTest extends BaseDL4JTest {
         }
     }
 
+    @Test
+    @DisplayName("Test Embedding Sparse Gradients")
+    void testEmbeddingSparseGradients() {
+        int nClassesIn = 100;
+        int nClassesUsed = 20;
+        int inputLength = 3;
+        int batchSize = 6;
+        int nOut = 4;
+        for (boolean sequence : new boolean[] { false, true }) {
+            Random r = new Random(12345);
+            List<INDArray> features = new ArrayList<>();
+            List<INDArray> labels = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                INDArray f = sequence ? Nd4j.create(DataType.DOUBLE, batchSize, inputLength) : Nd4j.create(DataType.DOUBLE, batchSize, 1);
+                INDArray l = sequence ? Nd4j.create(DataType.DOUBLE, batchSize, nOut, inputLength) : Nd4j.create(DataType.DOUBLE, batchSize, nOut);
+                for (int j = 0; j < batchSize; j++) {
+                    if (sequence) {
+                        for (int k = 0; k < inputLength; k++) {
+                            f.putScalar(j, k, r.nextInt(nClassesUsed));
+                            l.putScalar(j, r.nextInt(nOut), k, 1.0);
+                        }
+                    } else {
+                        f.putScalar(j, 0, r.nextInt(nClassesUsed));
+                        l.putScalar(j, r.nextInt(nOut), 1.0);
+                    }
+                }
+                features.add(f);
+                labels.add(l);
+            }
+
+            for (IUpdater u : new IUpdater[] { new Sgd(0.1), new Adam(0.01) }) {
+                MultiLayerNetwork dense = getSparseGradientTestNet(sequence, false, u, nClassesIn, inputLength, nOut);
+                MultiLayerNetwork sparse = getSparseGradientTestNet(sequence, true, u, nClassesIn, inputLength, nOut);
+                assertEquals(dense.params(), sparse.params());
+                INDArray initialWeights = sparse.getParam("0_W").dup();
+
+                for (int i = 0; i < features.size(); i++) {
+                    dense.fit(features.get(i), labels.get(i));
+                    sparse.fit(features.get(i), labels.get(i));
+                    if (u instanceof Sgd || i == 0) {
+                        //With SGD, or with zero Adam state (first iteration), the lazy update is exact
+                        assertTrue(dense.params().equalsWithEps(sparse.params(), 1e-8), "Sequence: " + sequence + ", updater: " + u + ", iter " + i);
+                    }
+                }
+
+                //Rows that never appear in the input are never updated
+                INDArray weights = sparse.getParam("0_W");
+                for (int row = nClassesUsed; row < nClassesIn; row++) {
+                    assertEquals(initialWeights.getRow(row), weights.getRow(row));
+                }
+            }
+        }
+    }
+
+    private static MultiLayerNetwork getSparseGradientTestNet(boolean sequence, boolean sparse, IUpdater updater,
+                                                              int nIn, int inputLength, int nOut) {
+        NeuralNetConfiguration.ListBuilder b = new NeuralNetConfiguration.Builder().dataType(DataType.DOUBLE)
+                .seed(12345).updater(updater.clone()).activation(Activation.TANH).list();
+        if (sequence) {
+            b.layer(new EmbeddingSequenceLayer.Builder().inputLength(inputLength).hasBias(true).sparseGradients(sparse).nIn(nIn).nOut(8).build())
+                    .layer(new RnnOutputLayer.Builder().nIn(8).nOut(nOut).activation(Activation.SOFTMAX).build());
+        } else {
+            b.layer(new EmbeddingLayer.Builder().hasBias(true).sparseGradients(sparse).nIn(nIn).nOut(8).build())
+                    .layer(new OutputLayer.Builder().nIn(8).nOut(nOut).activation(Activation.SOFTMAX).build());
+        }
+        MultiLayerNetwork net = new MultiLayerNetwork(b.build());
+        net.init();
+        return net;
+    }
+
     public static double relErr(double d1, double d2) {
         if (d1 == 0.0 && d2 == 0.0)
             return 0.0;
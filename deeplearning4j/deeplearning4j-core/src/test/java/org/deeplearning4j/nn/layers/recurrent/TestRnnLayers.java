@@ -22,6 +22,7 @@ package org.deeplearning4j.nn.layers.recurrent;
 
 import org.deeplearning4j.BaseDL4JTest;
 import org.deeplearning4j.TestUtils;
+import org.deeplearning4j.nn.conf.BackpropType;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.RNNFormat;
@@ -32,6 +33,7 @@ import org.deeplearning4j.nn.conf.layers.Layer;
 import org.deeplearning4j.nn.conf.layers.RnnLossLayer;
 import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
 import org.deeplearning4j.nn.conf.layers.recurrent.SimpleRnn;
+import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
@@ -48,9 +50,12 @@ import org.nd4j.linalg.BaseNd4jTestWithBackends;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.config.NoOp;
+import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.nd4j.common.primitives.Pair;
 
@@ -62,6 +67,7 @@ import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 @NativeTag
 @Tag(TagNames.DL4J_OLD_API)
@@ -270,4 +276,99 @@ public class TestRnnLayers extends BaseDL4JTest {
 
 
     }
+
+    @ParameterizedTest
+    @MethodSource("org.deeplearning4j.nn.layers.recurrent.TestRnnLayers#params")
+    public void testLstmFusedOpMatchesBuiltIn(RNNFormat rnnDataFormat, Nd4jBackend backend) {
+        int nIn = 4;
+        int layerSize = 6;
+        int nOut = 3;
+        int mb = 5;
+        int tsLength = 7;
+
+        for (boolean graves : new boolean[]{false, true}) {
+            for (boolean masking : new boolean[]{false, true}) {
+                String msg = "graves=" + graves + ", masking=" + masking + ", format=" + rnnDataFormat;
+                MultiLayerNetwork[] nets = new MultiLayerNetwork[2];
+                for (int i = 0; i < 2; i++) {
+                    nets[i] = lstmNetwork(graves, i == 0, rnnDataFormat, nIn, layerSize, nOut, false);
+                }
+                //A platform helper takes precedence over the fused op - in which case nothing would be compared here
+                assertNull(nets[0].getLayer(0).getHelper(), msg);
+                nets[1].params().assign(nets[0].params());
+
+                INDArray in = rnnDataFormat == RNNFormat.NCW ? Nd4j.rand(DataType.DOUBLE, mb, nIn, tsLength) :
+                        Nd4j.rand(DataType.DOUBLE, mb, tsLength, nIn);
+                INDArray labels = TestUtils.randomOneHotTimeSeries(rnnDataFormat, mb, nOut, tsLength, new Random(12345));
+                INDArray mask = null;
+                if (masking) {
+                    //Variable length sequences: lengths 7, 6, 5, 4, 3
+                    mask = Nd4j.zeros(DataType.DOUBLE, mb, tsLength);
+                    for (int j = 0; j < mb; j++) {
+                        mask.get(NDArrayIndex.point(j), NDArrayIndex.interval(0, tsLength - j)).assign(1.0);
+                    }
+                }
+
+                INDArray outFused = nets[0].output(in, false, mask, null);
+                INDArray outBuiltIn = nets[1].output(in, false, mask, null);
+                assertTrue(outBuiltIn.equalsWithEps(outFused, 1e-8), msg);
+
+                Pair<Gradient, INDArray> pFused = nets[0].calculateGradients(in, labels, mask, mask);
+                Pair<Gradient, INDArray> pBuiltIn = nets[1].calculateGradients(in, labels, mask, mask);
+                assertEquals(nets[1].score(), nets[0].score(), 1e-8, msg);
+                for (String key : pBuiltIn.getFirst().gradientForVariable().keySet()) {
+                    INDArray gBuiltIn = pBuiltIn.getFirst().getGradientFor(key);
+                    INDArray gFused = pFused.getFirst().getGradientFor(key);
+                    assertTrue(gBuiltIn.equalsWithEps(gFused, 1e-8), msg + " - " + key);
+                }
+                assertTrue(pBuiltIn.getSecond().equalsWithEps(pFused.getSecond(), 1e-8), msg);
+
+                //Stored state (rnnTimeStep)
+                if (!masking) {
+                    nets[0].rnnClearPreviousState();
+                    nets[1].rnnClearPreviousState();
+                    for (int j = 0; j < 2; j++) {
+                        assertTrue(nets[1].rnnTimeStep(in).equalsWithEps(nets[0].rnnTimeStep(in), 1e-8), msg);
+                    }
+                }
+
+                //Truncated BPTT: segments after the first start from the stored state of the previous segment
+                MultiLayerNetwork[] tbpttNets = new MultiLayerNetwork[2];
+                for (int i = 0; i < 2; i++) {
+                    tbpttNets[i] = lstmNetwork(graves, i == 0, rnnDataFormat, nIn, layerSize, nOut, true);
+                }
+                tbpttNets[1].params().assign(tbpttNets[0].params());
+                DataSet ds = new DataSet(in, labels, mask, mask);
+                for (int j = 0; j < 2; j++) {
+                    tbpttNets[0].fit(ds);
+                    tbpttNets[1].fit(ds);
+                    assertEquals(tbpttNets[1].score(), tbpttNets[0].score(), 1e-8, msg + " - TBPTT");
+                    assertTrue(tbpttNets[1].params().equalsWithEps(tbpttNets[0].params(), 1e-8), msg + " - TBPTT");
+                }
+            }
+        }
+    }
+
+    private static MultiLayerNetwork lstmNetwork(boolean graves, boolean fused, RNNFormat rnnDataFormat, int nIn,
+                                                 int layerSize, int nOut, boolean tbptt) {
+        Layer l = graves ?
+                new GravesLSTM.Builder().nIn(nIn).nOut(layerSize).dataFormat(rnnDataFormat).useFusedOp(fused)
+                        .helperAllowFallback(!fused).build() :
+                new LSTM.Builder().nIn(nIn).nOut(layerSize).dataFormat(rnnDataFormat).useFusedOp(fused)
+                        .helperAllowFallback(!fused).build();
+        NeuralNetConfiguration.ListBuilder builder = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(tbptt ? new Sgd(0.1) : new NoOp())
+                .list()
+                .layer(l)
+                .layer(new RnnOutputLayer.Builder().nIn(layerSize).nOut(nOut).activation(Activation.SOFTMAX)
+                        .dataFormat(rnnDataFormat).lossFunction(LossFunctions.LossFunction.MCXENT).build());
+        if (tbptt) {
+            builder.backpropType(BackpropType.TruncatedBPTT).tBPTTLength(3);
+        }
+        MultiLayerNetwork net = new MultiLayerNetwork(builder.build());
+        net.init();
+        return net;
+    }
 }
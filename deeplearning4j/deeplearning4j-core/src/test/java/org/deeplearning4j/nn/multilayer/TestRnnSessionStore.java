@@ -0,0 +1,166 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.multilayer;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.conf.layers.recurrent.SimpleRnn;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Rnn Session Store Test")
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+class TestRnnSessionStore extends BaseDL4JTest {
+
+    private static MultiLayerNetwork getNet() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .list()
+                .layer(new LSTM.Builder().nIn(3).nOut(5).activation(Activation.TANH).build())
+                .layer(new SimpleRnn.Builder().nIn(5).nOut(4).activation(Activation.TANH).build())
+                .layer(new RnnOutputLayer.Builder().nIn(4).nOut(2).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    @Test
+    @DisplayName("Test Batched Sessions Match Rnn Time Step")
+    void testBatchedSessions() {
+        MultiLayerNetwork net = getNet();
+        MultiLayerNetwork[] perSession = new MultiLayerNetwork[3];
+        for (int i = 0; i < perSession.length; i++) {
+            perSession[i] = net.clone();
+        }
+
+        RnnSessionStore<String> store = new RnnSessionStore<>(net, 10);
+        String[] ids = {"a", "b", "c"};
+
+        Nd4j.getRandom().setSeed(12345);
+        for (int t = 0; t < 5; t++) {
+            //Step a varying subset of the sessions each time, in varying order
+            int[] active = (t % 2 == 0) ? new int[]{0, 1, 2} : new int[]{2, 0};
+            INDArray in = Nd4j.rand(DataType.DOUBLE, active.length, 3);
+
+            String[] activeIds = new String[active.length];
+            for (int i = 0; i < active.length; i++) {
+                activeIds[i] = ids[active[i]];
+            }
+            INDArray out = store.step(Arrays.asList(activeIds), in);
+            assertArrayEquals(new long[]{active.length, 2}, out.shape());
+
+            for (int i = 0; i < active.length; i++) {
+                INDArray exp = perSession[active[i]].rnnTimeStep(in.getRow(i, true));
+                assertEquals(exp, out.getRow(i, true), "t=" + t + ", session=" + activeIds[i]);
+            }
+        }
+        assertEquals(3, store.numSessions());
+
+        //Multiple time steps at once
+        INDArray in3d = Nd4j.rand(DataType.DOUBLE, 1, 3, 4);
+        INDArray out = store.step("b", in3d);
+        assertEquals(perSession[1].rnnTimeStep(in3d), out);
+    }
+
+    @Test
+    @DisplayName("Test Session Eviction And State Transfer")
+    void testEvictionAndState() {
+        MultiLayerNetwork net = getNet();
+        RnnSessionStore<Integer> store = new RnnSessionStore<>(net, 2);
+
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 1, 3);
+        INDArray first = store.step(0, in);
+        store.step(0, in);
+        Map<Integer, Map<String, INDArray>> state0 = store.getState(0);
+        assertEquals(2, state0.size());
+        assertNotNull(state0.get(0).get("prevMem"));
+
+        store.step(1, in);
+        assertEquals(0, store.getEvictionCount());
+
+        //Session 0 is the least recently used: adding session 2 should evict it
+        store.step(2, in);
+        assertEquals(1, store.getEvictionCount());
+        assertFalse(store.contains(0));
+        assertTrue(store.contains(1));
+        assertTrue(store.contains(2));
+
+        //Evicted session restarts from the initial state
+        assertEquals(first, store.step(0, in));
+        assertFalse(store.contains(1));
+
+        //Restore state into a different store, and check the next step is the same as continuing the original session
+        RnnSessionStore<Integer> other = new RnnSessionStore<>(net, 2);
+        other.setState(0, state0);
+        MultiLayerNetwork ref = net.clone();
+        ref.rnnTimeStep(in);
+        ref.rnnTimeStep(in);
+        assertEquals(ref.rnnTimeStep(in), other.step(0, in));
+
+        assertTrue(store.remove(0));
+        assertFalse(store.remove(0));
+        store.clear();
+        assertEquals(0, store.numSessions());
+    }
+
+    @Test
+    @DisplayName("Test Get State Counts As Access For Expiry")
+    void testGetStateExpiry() throws Exception {
+        MultiLayerNetwork net = getNet();
+        RnnSessionStore<Integer> store = new RnnSessionStore<>(net, 10, 2000, TimeUnit.MILLISECONDS);
+
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 1, 3);
+        store.step(0, in);
+        store.step(1, in);
+        Thread.sleep(1200);
+        assertNotNull(store.getState(0));
+        Thread.sleep(1200);
+
+        //Session 1 was last used ~2400ms ago, session 0 ~1200ms ago (via getState)
+        store.step(2, in);
+        assertTrue(store.contains(0));
+        assertFalse(store.contains(1));
+        assertTrue(store.contains(2));
+        assertEquals(1, store.getEvictionCount());
+    }
+}
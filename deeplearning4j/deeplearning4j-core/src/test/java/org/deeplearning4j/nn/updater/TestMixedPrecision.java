@@ -0,0 +1,215 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.updater;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.EmbeddingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class TestMixedPrecision extends BaseDL4JTest {
+
+    @Test
+    @DisplayName("Loss scaler skips update and backs off on overflow")
+    public void testLossScaler() {
+        LossScaler scaler = new LossScaler(1024, 2.0, 0.5, 2);
+
+        INDArray g = Nd4j.createFromArray(1024f, 2048f);
+        assertTrue(scaler.unscale(g));
+        assertEquals(Nd4j.createFromArray(1f, 2f), g);
+        assertEquals(1024, scaler.getScale(), 0.0);
+
+        assertTrue(scaler.unscale(Nd4j.createFromArray(1f, 2f)));
+        assertEquals(2048, scaler.getScale(), 0.0);
+
+        assertFalse(scaler.unscale(Nd4j.createFromArray(1f, Float.POSITIVE_INFINITY)));
+        assertEquals(1024, scaler.getScale(), 0.0);
+        assertEquals(1, scaler.getSkippedSteps());
+    }
+
+    @Test
+    @DisplayName("Mixed precision training keeps FP32 master parameters")
+    public void testMixedPrecisionFit() {
+        for (DataType lowPrecision : new DataType[]{DataType.BFLOAT16, DataType.HALF}) {
+            Nd4j.getRandom().setSeed(12345);
+            MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                    .seed(12345)
+                    .dataType(DataType.FLOAT)
+                    .mixedPrecision(lowPrecision)
+                    .updater(new Adam(1e-2))
+                    .list()
+                    .layer(new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.SWISH).build())
+                    .layer(new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                            .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                    .build();
+
+            MultiLayerConfiguration fromJson = MultiLayerConfiguration.fromJson(conf.toJson());
+            assertEquals(lowPrecision, fromJson.getMixedPrecisionDataType());
+
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init();
+            assertNotNull(net.getLossScaler());
+
+            DataSet ds = new DataSet(Nd4j.rand(DataType.FLOAT, 16, 4),
+                    Nd4j.eye(3).getRows(0, 1, 2, 0, 1, 2, 0, 1, 2, 0, 1, 2, 0, 1, 2, 0).castTo(DataType.FLOAT));
+            INDArray before = net.params().dup();
+            net.fit(ds);
+            net.computeGradientAndScore();
+            double scoreBefore = net.score();
+            for (int i = 0; i < 20; i++) {
+                net.fit(ds);
+            }
+            net.computeGradientAndScore();
+
+            assertEquals(DataType.FLOAT, net.params().dataType());
+            assertEquals(DataType.FLOAT, net.getFlattenedGradients().dataType());
+            assertNotEquals(before, net.params());
+            assertTrue(net.score() < scoreBefore, lowPrecision + ": " + net.score() + " vs. " + scoreBefore);
+            assertEquals(DataType.FLOAT, net.output(ds.getFeatures()).dataType());
+        }
+    }
+
+    @Test
+    @DisplayName("Mixed precision training for ComputationGraph")
+    public void testMixedPrecisionFitGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .mixedPrecision(DataType.BFLOAT16)
+                .updater(new Adam(1e-2))
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("dense", new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.SWISH).build(), "in")
+                .addLayer("out", new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "dense")
+                .setOutputs("out")
+                .build();
+
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+        assertNotNull(net.getLossScaler());
+
+        DataSet ds = new DataSet(Nd4j.rand(DataType.FLOAT, 16, 4),
+                Nd4j.eye(3).getRows(0, 1, 2, 0, 1, 2, 0, 1, 2, 0, 1, 2, 0, 1, 2, 0).castTo(DataType.FLOAT));
+        INDArray before = net.params().dup();
+        for (int i = 0; i < 5; i++) {
+            net.fit(ds);
+        }
+        assertEquals(DataType.FLOAT, net.params().dataType());
+        assertNotEquals(before, net.params());
+        assertTrue(Double.isFinite(net.score()));
+    }
+
+    @Test
+    @DisplayName("Mixed precision training updates BatchNormalization running statistics")
+    public void testMixedPrecisionBatchNorm() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .mixedPrecision(DataType.BFLOAT16)
+                .updater(new Adam(1e-2))
+                .list()
+                .layer(new BatchNormalization.Builder().nIn(4).nOut(4).decay(0.9).useLogStd(false).build())
+                .layer(new OutputLayer.Builder().nIn(4).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        //Uniform [5, 15): mean 10, variance ~8.3. Running stats start at mean 0, variance 1
+        Nd4j.getRandom().setSeed(12345);
+        DataSet ds = new DataSet(Nd4j.rand(DataType.FLOAT, 64, 4).muli(10).addi(5),
+                Nd4j.eye(3).getRows(new int[64]).castTo(DataType.FLOAT));
+        for (int i = 0; i < 20; i++) {
+            net.fit(ds);
+        }
+
+        //Running stats are not scaled by the loss scaler: after 20 steps with decay 0.9 they're close to batch stats
+        INDArray mean = net.getLayer(0).getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN);
+        INDArray var = net.getLayer(0).getParam(BatchNormalizationParamInitializer.GLOBAL_VAR);
+        assertTrue(mean.minNumber().doubleValue() > 7.0, "Running mean: " + mean);
+        assertTrue(var.minNumber().doubleValue() > 4.0, "Running variance: " + var);
+        assertEquals(0, net.getLossScaler().getSkippedSteps());
+    }
+
+    @Test
+    @DisplayName("Mixed precision training keeps embedding indices and sparse labels exact")
+    public void testMixedPrecisionIndices() {
+        //BFLOAT16 only represents integers exactly up to 256: 257 -> 256, 301 -> 300, 999 -> 1000
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .mixedPrecision(DataType.BFLOAT16)
+                .updater(new Sgd(0.1))
+                .list()
+                .layer(new EmbeddingLayer.Builder().nIn(1001).nOut(4).activation(Activation.IDENTITY).build())
+                .layer(new OutputLayer.Builder().nIn(4).nOut(400).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.SPARSE_MCXENT).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        INDArray f = Nd4j.createFromArray(new float[][]{{257}, {999}});
+        INDArray l = Nd4j.createFromArray(new float[][]{{301}, {301}});
+        INDArray embBefore = net.getLayer(0).getParam(DefaultParamInitializer.WEIGHT_KEY).dup();
+        INDArray biasBefore = net.getLayer(1).getParam(DefaultParamInitializer.BIAS_KEY).dup();
+        net.fit(f, l);
+        INDArray emb = net.getLayer(0).getParam(DefaultParamInitializer.WEIGHT_KEY);
+        INDArray bias = net.getLayer(1).getParam(DefaultParamInitializer.BIAS_KEY);
+
+        //Only the rows of the actual indices are updated
+        for (int row : new int[]{256, 257, 999, 1000}) {
+            boolean used = row == 257 || row == 999;
+            assertEquals(used, !embBefore.getRow(row).equals(emb.getRow(row)), "Embedding row " + row);
+        }
+
+        //Bias gradient is negative only for the label class
+        assertTrue(bias.getDouble(0, 301) > biasBefore.getDouble(0, 301));
+        assertTrue(bias.getDouble(0, 300) < biasBefore.getDouble(0, 300));
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.optimize.solver;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.EmbeddingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("Gradient Accumulation Test")
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+class TestGradientAccumulation extends BaseDL4JTest {
+
+    private static MultiLayerConfiguration getConf(int accumulationSteps) {
+        return new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Sgd(0.1))
+                .l2(1e-3)
+                .gradientAccumulationSteps(accumulationSteps)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+    }
+
+    private static DataSet[] split(DataSet ds, int numSplits) {
+        long mb = ds.numExamples() / numSplits;
+        DataSet[] out = new DataSet[numSplits];
+        for (int i = 0; i < numSplits; i++) {
+            INDArray f = ds.getFeatures().get(NDArrayIndex.interval(i * mb, (i + 1) * mb), NDArrayIndex.all());
+            INDArray l = ds.getLabels().get(NDArrayIndex.interval(i * mb, (i + 1) * mb), NDArrayIndex.all());
+            out[i] = new DataSet(f, l);
+        }
+        return out;
+    }
+
+    private static DataSet getData(int minibatch) {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray f = Nd4j.rand(DataType.DOUBLE, minibatch, 4);
+        INDArray l = Nd4j.zeros(DataType.DOUBLE, minibatch, 3);
+        for (int i = 0; i < minibatch; i++) {
+            l.putScalar(i, i % 3, 1.0);
+        }
+        return new DataSet(f, l);
+    }
+
+    @Test
+    @DisplayName("Test Gradient Accumulation Config")
+    void testConfig() {
+        MultiLayerConfiguration conf = getConf(4);
+        assertEquals(4, conf.getGradientAccumulationSteps());
+        assertEquals(conf, MultiLayerConfiguration.fromJson(conf.toJson()));
+        assertEquals(4, conf.clone().getGradientAccumulationSteps());
+        assertEquals(1, getConf(1).getGradientAccumulationSteps());
+
+        ComputationGraphConfiguration cgConf = new NeuralNetConfiguration.Builder()
+                .gradientAccumulationSteps(3)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("out", new OutputLayer.Builder().nIn(4).nOut(3).activation(Activation.SOFTMAX).build(), "in")
+                .setOutputs("out")
+                .build();
+        assertEquals(3, cgConf.getGradientAccumulationSteps());
+        assertEquals(3, ComputationGraphConfiguration.fromJson(cgConf.toJson()).getGradientAccumulationSteps());
+        assertEquals(3, cgConf.clone().getGradientAccumulationSteps());
+    }
+
+    @Test
+    @DisplayName("Test Gradient Accumulation Multi Layer Network")
+    void testAccumulationMLN() {
+        for (int n : new int[]{2, 4}) {
+            DataSet ds = getData(8);
+            DataSet[] micro = split(ds, n);
+
+            MultiLayerNetwork full = new MultiLayerNetwork(getConf(1));
+            full.init();
+            MultiLayerNetwork acc = new MultiLayerNetwork(getConf(n));
+            acc.init();
+            assertEquals(full.params(), acc.params());
+
+            for (int step = 0; step < 3; step++) {
+                full.fit(ds);
+                for (int i = 0; i < n; i++) {
+                    acc.fit(micro[i]);
+                    int expIter = (i == n - 1 ? step + 1 : step);
+                    assertEquals(expIter, acc.getIterationCount(), "n=" + n + ", step=" + step + ", i=" + i);
+                }
+                assertEquals(full.params(), acc.params(), "n=" + n + ", step=" + step);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test Gradient Accumulation Computation Graph")
+    void testAccumulationGraph() {
+        int n = 2;
+        DataSet ds = getData(8);
+        DataSet[] micro = split(ds, n);
+
+        ComputationGraph full = new MultiLayerNetwork(getConf(1)).toComputationGraph();
+        full.init();
+        ComputationGraph acc = new MultiLayerNetwork(getConf(n)).toComputationGraph();
+        acc.init();
+        acc.setParams(full.params());
+        assertEquals(n, acc.getConfiguration().getGradientAccumulationSteps());
+
+        for (int step = 0; step < 3; step++) {
+            full.fit(ds);
+            for (DataSet d : micro) {
+                acc.fit(d);
+            }
+            assertEquals(full.params(), acc.params(), "step=" + step);
+        }
+    }
+
+    @Test
+    @DisplayName("Test Gradient Accumulation Sparse Embedding Gradients")
+    void testAccumulationSparseEmbedding() {
+        int n = 2;
+        int vocab = 12;
+
+        MultiLayerNetwork full = new MultiLayerNetwork(getEmbeddingConf(1));
+        full.init();
+        MultiLayerNetwork acc = new MultiLayerNetwork(getEmbeddingConf(n));
+        acc.init();
+        assertEquals(full.params(), acc.params());
+
+        for (int step = 0; step < 4; step++) {
+            //Each micro-batch uses a different set of rows, which also changes from step to step
+            DataSet[] micro = new DataSet[n];
+            for (int i = 0; i < n; i++) {
+                INDArray f = Nd4j.create(DataType.DOUBLE, 3, 1);
+                INDArray l = Nd4j.zeros(DataType.DOUBLE, 3, 3);
+                for (int j = 0; j < 3; j++) {
+                    f.putScalar(j, 0, (step * 5 + i * 3 + j) % vocab);
+                    l.putScalar(j, (i + j) % 3, 1.0);
+                }
+                micro[i] = new DataSet(f, l);
+            }
+
+            full.fit(DataSet.merge(Arrays.asList(micro)));
+            for (DataSet d : micro) {
+                acc.fit(d);
+            }
+            assertEquals(full.params(), acc.params(), "step=" + step);
+            assertEquals(full.getUpdater().getStateViewArray(), acc.getUpdater().getStateViewArray(), "step=" + step);
+        }
+    }
+
+    private static MultiLayerConfiguration getEmbeddingConf(int accumulationSteps) {
+        return new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Adam(0.05))
+                .gradientAccumulationSteps(accumulationSteps)
+                .list()
+                .layer(new EmbeddingLayer.Builder().nIn(12).nOut(4).sparseGradients(true).build())
+                .layer(new OutputLayer.Builder().nIn(4).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+    }
+}
@@ -313,4 +313,52 @@ public class TestCheckpointListener extends BaseDL4JTest {
         assertNotNull(fList);
         assertEquals(2, fList.length);
     }
+
+    @Test
+    public void testCheckpointListenerAsync(@TempDir Path tempDir) throws Exception {
+        File fSync = new File(tempDir.toFile(), "sync");
+        File fAsync = new File(tempDir.toFile(), "async");
+        assertTrue(fSync.mkdirs());
+        assertTrue(fAsync.mkdirs());
+
+        Pair<MultiLayerNetwork, DataSetIterator> p = getNetAndData();
+        MultiLayerNetwork netSync = p.getFirst();
+        MultiLayerNetwork netAsync = netSync.clone();
+        DataSetIterator iter = p.getSecond();
+
+        CheckpointListener lSync = new CheckpointListener.Builder(fSync)
+                .keepLast(3)
+                .saveEveryNIterations(5)
+                .build();
+        CheckpointListener lAsync = new CheckpointListener.Builder(fAsync)
+                .keepLast(3)
+                .saveEveryNIterations(5)
+                .asyncSaving(true)
+                .build();
+        netSync.setListeners(lSync);
+        netAsync.setListeners(lAsync);
+
+        for(int i=0; i<20; i++ ){   //40 iterations total
+            netSync.fit(iter);
+            netAsync.fit(iter);
+        }
+        lAsync.waitForPendingSave();
+
+        List<Checkpoint> cpSync = lSync.availableCheckpoints();
+        List<Checkpoint> cpAsync = lAsync.availableCheckpoints();
+        assertEquals(3, cpAsync.size());
+        assertEquals(cpSync.size(), cpAsync.size());
+        //Checkpoints are written to a temporary file and renamed once complete
+        assertEquals(0, fAsync.listFiles((dir, name) -> name.endsWith(".tmp")).length);
+        for( int i=0; i<cpSync.size(); i++ ){
+            assertEquals(cpSync.get(i).getCheckpointNum(), cpAsync.get(i).getCheckpointNum());
+            assertEquals(cpSync.get(i).getIteration(), cpAsync.get(i).getIteration());
+
+            MultiLayerNetwork nSync = lSync.loadCheckpointMLN(cpSync.get(i));
+            MultiLayerNetwork nAsync = lAsync.loadCheckpointMLN(cpAsync.get(i));
+            assertEquals(nSync.getIterationCount(), nAsync.getIterationCount());
+            assertEquals(nSync.params(), nAsync.params());
+            assertEquals(nSync.getUpdater().getStateViewArray(), nAsync.getUpdater().getStateViewArray());
+        }
+    }
 }
@@ -0,0 +1,164 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.deeplearning4j.optimizer.listener;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.listeners.LayerProfilingListener;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.autodiff.listeners.profiler.ProfilingListener;
+import org.nd4j.autodiff.listeners.profiler.data.TraceEvent;
+import org.nd4j.autodiff.listeners.profiler.data.TraceEvents;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class TestLayerProfilingListener extends BaseDL4JTest {
+
+    @Test
+    @DisplayName("Test layer profiling listener - MultiLayerNetwork")
+    public void testLayerProfilingMLN(@TempDir Path tempDir) throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.FLOAT)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().name("d1").nIn(5).nOut(6).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(6).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        LayerProfilingListener l = LayerProfilingListener.builder().warmup(1).build();
+        net.setListeners(l);
+
+        int mb = 8;
+        INDArray f = Nd4j.rand(DataType.FLOAT, mb, 4);
+        INDArray lbl = Nd4j.rand(DataType.FLOAT, mb, 3);
+        DataSet ds = new DataSet(f, lbl);
+        for (int i = 0; i < 4; i++) {
+            net.fit(ds);
+        }
+
+        List<LayerProfilingListener.LayerStats> stats = l.getLayerStats();
+        assertEquals(3, stats.size());
+        assertEquals("0", stats.get(0).getName());
+        assertEquals("d1", stats.get(1).getName());
+        assertEquals("DenseLayer", stats.get(1).getType());
+        for (LayerProfilingListener.LayerStats s : stats) {
+            //First iteration is warmup
+            assertEquals(3, s.getForwardCount(), s.getName());
+            assertEquals(3, s.getBackwardCount(), s.getName());
+            assertTrue(s.getForwardNanos() > 0);
+            assertTrue(s.getBackwardNanos() > 0);
+        }
+
+        LayerProfilingListener.LayerStats d1 = l.getLayerStats("d1");
+        assertEquals(3L * 2 * mb * 5 * 6, d1.getForwardFlops());
+        assertEquals(2 * d1.getForwardFlops(), d1.getBackwardFlops());
+        assertEquals(3L * (mb * 6 + mb * 5) * 4, d1.getOutputBytes());
+
+        String summary = l.summary();
+        assertTrue(summary.contains("d1"), summary);
+        assertTrue(summary.contains("OutputLayer"), summary);
+
+        File trace = new File(tempDir.toFile(), "trace.json");
+        l.exportChromeTrace(trace);
+        TraceEvents events = ProfilingListener.jsonMapper().readValue(trace, TraceEvents.class);
+        assertEquals(3 * 3 * 2, events.getTraceEvents().size());
+        for (TraceEvent e : events.getTraceEvents()) {
+            assertNotNull(e.getName());
+            assertNotNull(e.getDur());
+            assertEquals(1, e.getCategories().size());
+        }
+
+        //Inference is also profiled
+        l.reset();
+        net.output(f);
+        stats = l.getLayerStats();
+        assertEquals(3, stats.size());
+        for (LayerProfilingListener.LayerStats s : stats) {
+            assertEquals(1, s.getForwardCount());
+            assertEquals(0, s.getBackwardCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Test layer profiling listener - ComputationGraph")
+    public void testLayerProfilingCG() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.FLOAT)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("a", new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build(), "in")
+                .addLayer("b", new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build(), "in")
+                .addVertex("add", new ElementWiseVertex(ElementWiseVertex.Op.Add), "a", "b")
+                .addLayer("out", new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "add")
+                .setOutputs("out")
+                .build();
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        LayerProfilingListener l = LayerProfilingListener.builder().recordTrace(false).build();
+        net.setListeners(l);
+
+        DataSet ds = new DataSet(Nd4j.rand(DataType.FLOAT, 8, 4), Nd4j.rand(DataType.FLOAT, 8, 3));
+        for (int i = 0; i < 2; i++) {
+            net.fit(ds);
+        }
+
+        List<LayerProfilingListener.LayerStats> stats = l.getLayerStats();
+        assertEquals(4, stats.size());
+        for (String s : new String[]{"a", "b", "add", "out"}) {
+            LayerProfilingListener.LayerStats ls = l.getLayerStats(s);
+            assertNotNull(ls, s);
+            assertEquals(2, ls.getForwardCount(), s);
+            assertEquals(2, ls.getBackwardCount(), s);
+        }
+        assertEquals("ElementWiseVertex", l.getLayerStats("add").getType());
+        //Param-free vertex: backward FLOPs estimate equals forward
+        assertEquals(l.getLayerStats("add").getForwardFlops(), l.getLayerStats("add").getBackwardFlops());
+        assertEquals(2 * 2L * 8 * 5 * 3, l.getLayerStats("out").getForwardFlops());
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.util;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Mapped Model Serializer Test")
+@NativeTag
+@Tag(TagNames.FILE_IO)
+class MappedModelSerializerTest extends BaseDL4JTest {
+
+    @TempDir
+    public Path tempDir;
+
+    @Test
+    @DisplayName("Test Write Restore MLN")
+    void testWriteRestoreMLN() throws Exception {
+        for (DataType dt : new DataType[]{DataType.DOUBLE, DataType.FLOAT, DataType.HALF}) {
+            //Default Adam epsilon (1e-8) underflows to 0 in HALF precision, giving NaN parameters
+            MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).dataType(dt)
+                    .updater(new Adam(0.01, 0.9, 0.999, 1e-4)).activation(Activation.TANH).weightInit(WeightInit.XAVIER).list()
+                    .layer(new DenseLayer.Builder().nIn(5).nOut(20).build())
+                    .layer(new OutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MSE).nIn(20).nOut(6).build())
+                    .build();
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init();
+            net.fit(Nd4j.rand(dt, 3, 5), Nd4j.rand(dt, 3, 6));
+
+            File f = tempDir.resolve("mln_" + dt + ".bin").toFile();
+            MappedModelSerializer.writeModel(net, f, true);
+            assertTrue(MappedModelSerializer.isMappedModelFile(f));
+
+            MultiLayerNetwork restored = MappedModelSerializer.restoreMultiLayerNetwork(f, true);
+            assertEquals(net.getLayerWiseConfigurations(), restored.getLayerWiseConfigurations());
+            assertEquals(net.params(), restored.params());
+            assertEquals(net.getUpdater().getStateViewArray(), restored.getUpdater().getStateViewArray());
+
+            INDArray in = Nd4j.rand(dt, 3, 5);
+            assertEquals(net.output(in), restored.output(in));
+
+            //Also restorable via ModelSerializer
+            MultiLayerNetwork restored2 = ModelSerializer.restoreMultiLayerNetwork(f, false);
+            assertEquals(net.params(), restored2.params());
+
+            //Modifying the mapped parameters must not modify the file
+            byte[] before = Files.readAllBytes(f.toPath());
+            restored.fit(Nd4j.rand(dt, 3, 5), Nd4j.rand(dt, 3, 6));
+            assertNotEquals(net.params(), restored.params());
+            assertArrayEquals(before, Files.readAllBytes(f.toPath()));
+        }
+    }
+
+    @Test
+    @DisplayName("Test Write Restore CG")
+    void testWriteRestoreCG() throws Exception {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                .updater(new Adam(0.01)).graphBuilder().addInputs("in")
+                .addLayer("dense", new DenseLayer.Builder().nIn(4).nOut(2).build(), "in")
+                .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(2).nOut(3).activation(Activation.SOFTMAX).build(), "dense")
+                .setOutputs("out").build();
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init();
+
+        File f = tempDir.resolve("cg.bin").toFile();
+        MappedModelSerializer.writeModel(cg, f, false);
+
+        ComputationGraph restored = MappedModelSerializer.restoreComputationGraph(f, true);
+        assertEquals(cg.getConfiguration().toJson(), restored.getConfiguration().toJson());
+        assertEquals(cg.params(), restored.params());
+
+        ComputationGraph restored2 = ModelSerializer.restoreComputationGraph(f, true);
+        assertEquals(cg.params(), restored2.params());
+
+        assertThrows(IllegalStateException.class, () -> MappedModelSerializer.restoreMultiLayerNetwork(f, true));
+
+        assertFalse(MappedModelSerializer.isReadOnly(restored.params()));
+        assertFalse(restored.isReadOnly());
+
+        ComputationGraph readOnly = MappedModelSerializer.restoreComputationGraph(f, false, true);
+        assertTrue(readOnly.isReadOnly());
+        assertThrows(IllegalStateException.class, () -> readOnly.fit(new INDArray[]{Nd4j.rand(DataType.FLOAT, 3, 4)},
+                new INDArray[]{Nd4j.rand(DataType.FLOAT, 3, 3)}));
+        assertEquals(cg.params(), readOnly.params());
+    }
+
+    @Test
+    @DisplayName("Test Restore Read Only")
+    void testRestoreReadOnly() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                .updater(new Adam(0.01)).activation(Activation.TANH).weightInit(WeightInit.XAVIER).list()
+                .layer(new DenseLayer.Builder().nIn(5).nOut(20).build())
+                .layer(new OutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MSE).nIn(20).nOut(6).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        MultiLayerNetwork net2 = new MultiLayerNetwork(conf.clone());
+        net2.init(net.params().rsub(1.0), true);
+
+        File f = tempDir.resolve("mln_ro.bin").toFile();
+        File f2 = tempDir.resolve("mln_ro2.bin").toFile();
+        MappedModelSerializer.writeModel(net, f, false);
+        MappedModelSerializer.writeModel(net2, f2, false);
+
+        MultiLayerNetwork restored = MappedModelSerializer.restoreMultiLayerNetwork(f, false, true);
+        assertTrue(MappedModelSerializer.isReadOnly(restored.params()));
+        assertTrue(restored.isReadOnly());
+        assertEquals(net.params(), restored.params());
+        INDArray in = Nd4j.rand(DataType.FLOAT, 3, 5);
+        assertEquals(net.output(in), restored.output(in));
+
+        //Parameters are mapped, not copied: changes to the file are visible in the restored network
+        byte[] content2 = Files.readAllBytes(f2.toPath());
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            assertEquals(content2.length, raf.length());
+            raf.write(content2);
+        }
+        assertEquals(net2.params(), restored.params());
+
+        //Read-only parameters can't be trained, but a clone can
+        assertThrows(IllegalStateException.class, () -> restored.fit(Nd4j.rand(DataType.FLOAT, 3, 5), Nd4j.rand(DataType.FLOAT, 3, 6)));
+        assertThrows(IllegalStateException.class, () -> restored.setParams(net.params()));
+        assertEquals(net2.params(), restored.params());
+        MultiLayerNetwork copy = restored.clone();
+        assertFalse(MappedModelSerializer.isReadOnly(copy.params()));
+        assertFalse(copy.isReadOnly());
+        copy.fit(Nd4j.rand(DataType.FLOAT, 3, 5), Nd4j.rand(DataType.FLOAT, 3, 6));
+        assertNotEquals(net2.params(), copy.params());
+        assertEquals(net2.params(), restored.params());
+    }
+}
@@ -20,56 +20,191 @@
 
 package org.deeplearning4j.models.embeddings.learning.impl.elements;
 
-import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Arrays;
 
-@Slf4j
+/**
+ * Buffer of pending SkipGram/CBOW rounds, collected from any number of sequences. Rounds are packed into
+ * contiguous primitive arrays, so once {@link #isFull()} returns true the whole buffer is executed as a single
+ * batched SkipGramRound or CbowRound op.
+ *
+ * Instances are not thread-safe: each training thread is expected to hold its own buffer.
+ */
 public class BatchSequences<T extends SequenceElement> {
 
-    private int batches;
-
-    List<BatchItem<T>> buffer = new ArrayList<>();
-
-    public BatchSequences(int batches) {
-        this.batches = batches;
+    private final int batchSize;
+    private int size;
+
+    private Object[] words;
+    private Object[] lastWords;
+    private long[] randomValues;
+    private double[] alphas;
+    private int[] numLabels;
+
+    // CBOW only: window of round i is stored at windowOffsets[i] .. windowOffsets[i + 1]
+    private int[] windowOffsets;
+    private int[] windowWords;
+    private boolean[] wordStatuses;
+
+    public BatchSequences(int batchSize) {
+        this.batchSize = batchSize;
+
+        int capacity = Math.max(1, batchSize);
+        this.words = new Object[capacity];
+        this.lastWords = new Object[capacity];
+        this.randomValues = new long[capacity];
+        this.alphas = new double[capacity];
+        this.numLabels = new int[capacity];
+        this.windowOffsets = new int[capacity + 1];
+        this.windowWords = new int[0];
+        this.wordStatuses = new boolean[0];
     }
 
+    /**
+     * Adds SkipGram round
+     */
     public void put(T word, T lastWord, long randomValue, double alpha) {
-        BatchItem<T> newItem = new BatchItem<>(word, lastWord, randomValue, alpha);
-        buffer.add(newItem);
+        int i = append(word, randomValue, alpha, 0);
+        lastWords[i] = lastWord;
+        windowOffsets[size] = windowOffsets[i];
     }
 
+    /**
+     * Adds CBOW round
+     */
     public void put(T word, int[] windowWords, boolean[] wordStatuses, long randomValue, double alpha) {
-        BatchItem<T> newItem = new BatchItem<>(word, windowWords, wordStatuses, randomValue, alpha);
-        buffer.add(newItem);
+        put(word, windowWords, wordStatuses, randomValue, alpha, 0);
     }
 
+    /**
+     * Adds CBOW round, with last numLabels window elements being sequence labels
+     */
     public void put(T word, int[] windowWords, boolean[] wordStatuses, long randomValue, double alpha, int numLabels) {
-        BatchItem<T> newItem = new BatchItem<>(word, windowWords, wordStatuses, randomValue, alpha, numLabels);
-        buffer.add(newItem);
+        int i = append(word, randomValue, alpha, numLabels);
+
+        int offset = windowOffsets[i];
+        int end = offset + windowWords.length;
+        if (end > this.windowWords.length) {
+            int capacity = Math.max(end, this.windowWords.length * 2);
+            this.windowWords = Arrays.copyOf(this.windowWords, capacity);
+            this.wordStatuses = Arrays.copyOf(this.wordStatuses, capacity);
+        }
+        System.arraycopy(windowWords, 0, this.windowWords, offset, windowWords.length);
+        System.arraycopy(wordStatuses, 0, this.wordStatuses, offset, windowWords.length);
+        windowOffsets[size] = end;
     }
 
-    public List<BatchItem<T>> get(int chunkNo) {
-        List<BatchItem<T>> retVal = new ArrayList<>();
+    private int append(T word, long randomValue, double alpha, int numLabels) {
+        if (size == words.length) {
+            int capacity = words.length * 2;
+            words = Arrays.copyOf(words, capacity);
+            lastWords = Arrays.copyOf(lastWords, capacity);
+            randomValues = Arrays.copyOf(randomValues, capacity);
+            alphas = Arrays.copyOf(alphas, capacity);
+            this.numLabels = Arrays.copyOf(this.numLabels, capacity);
+            windowOffsets = Arrays.copyOf(windowOffsets, capacity + 1);
+        }
+
+        int i = size++;
+        words[i] = word;
+        randomValues[i] = randomValue;
+        alphas[i] = alpha;
+        this.numLabels[i] = numLabels;
+        return i;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getWord(int i) {
+        return (T) words[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getLastWord(int i) {
+        return (T) lastWords[i];
+    }
+
+    public long getRandomValue(int i) {
+        return randomValues[i];
+    }
+
+    public double getAlpha(int i) {
+        return alphas[i];
+    }
+
+    public int getNumLabels(int i) {
+        return numLabels[i];
+    }
 
-        for (int i = 0 + chunkNo * batches; (i < batches + chunkNo * batches) && (i < buffer.size()); ++i) {
-            BatchItem<T> value = buffer.get(i);
-            retVal.add(value);
+    public int getWindowLength(int i) {
+        return windowOffsets[i + 1] - windowOffsets[i];
+    }
+
+    public int getWindowWord(int i, int position) {
+        return windowWords[windowOffsets[i] + position];
+    }
+
+    public boolean getWordStatus(int i, int position) {
+        return wordStatuses[windowOffsets[i] + position];
+    }
+
+    /**
+     * @return length of the longest CBOW window buffered, at least 1
+     */
+    public int getMaxWindowLength() {
+        int max = 1;
+        for (int i = 0; i < size; i++)
+            max = Math.max(max, getWindowLength(i));
+        return max;
+    }
+
+    /**
+     * Packs CBOW windows of all buffered rounds into row-major [size, columns] arrays, as CbowRound expects them.
+     * Rows shorter than columns are padded with -1, word statuses are stored as 1/0.
+     *
+     * @param windowWords  target array for window words, at least size * columns long
+     * @param wordStatuses target array for word statuses, at least size * columns long
+     * @param columns      row length, should be >= {@link #getMaxWindowLength()}
+     */
+    public void packWindows(int[] windowWords, int[] wordStatuses, int columns) {
+        for (int i = 0; i < size; i++) {
+            int length = getWindowLength(i);
+            int offset = i * columns;
+            for (int c = 0; c < columns; c++) {
+                if (c < length) {
+                    windowWords[offset + c] = this.windowWords[windowOffsets[i] + c];
+                    wordStatuses[offset + c] = this.wordStatuses[windowOffsets[i] + c] ? 1 : 0;
+                } else {
+                    windowWords[offset + c] = -1;
+                    wordStatuses[offset + c] = -1;
+                }
+            }
         }
-        return retVal;
     }
 
-    public int size() {
-        return buffer.size();
+    public int getBatchSize() {
+        return batchSize;
     }
 
-    public void clear() {
-        buffer.clear();
+    /**
+     * @return true if buffered rounds should be executed
+     */
+    public boolean isFull() {
+        return size >= batchSize;
+    }
+
+    public int size() {
+        return size;
     }
 
+    public boolean isEmpty() {
+        return size == 0;
+    }
 
+    public void clear() {
+        // releasing element references, so they aren't held between batches
+        Arrays.fill(words, 0, size, null);
+        Arrays.fill(lastWords, 0, size, null);
+        size = 0;
+    }
 }
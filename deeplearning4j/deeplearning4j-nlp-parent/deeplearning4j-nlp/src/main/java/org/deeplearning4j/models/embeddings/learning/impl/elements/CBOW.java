@@ -36,7 +36,6 @@ import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.api.ops.aggregates.Aggregate;
 import org.nd4j.linalg.api.ops.impl.nlp.CbowRound;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.util.DeviceLocalNDArray;
@@ -75,12 +74,6 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
     @Setter
     protected DeviceLocalNDArray syn0, syn1, syn1Neg, expTable, table;
 
-    protected ThreadLocal<List<Aggregate>> batches = new ThreadLocal<>();
-
-    public List<Aggregate> getBatch() {
-        return batches.get();
-    }
-
     @Override
     public String getCodeName() {
         return "CBOW";
@@ -130,9 +123,18 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
 
     @Override
     public void finish() {
-        if (batches != null && batches.get() != null && !batches.get().isEmpty()) {
-            Nd4j.getExecutioner().exec(batches.get());
-            batches.get().clear();
+        // no-op, batched rounds are kept in BatchSequences owned by the caller, see finish(BatchSequences)
+    }
+
+    /**
+     * Executes rounds left in given batch, if any
+     *
+     * @param batchSequences
+     */
+    public void finish(BatchSequences<T> batchSequences) {
+        if (batchSequences != null && !batchSequences.isEmpty()) {
+            iterateSample(batchSequences);
+            batchSequences.clear();
         }
     }
 
@@ -213,9 +215,6 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
             }
         }
 
-        if (batches.get() == null)
-            batches.set(new ArrayList<Aggregate>());
-
         /*AggregateCBOW(syn0.get(), syn1.get(), syn1Neg.get(), expTable.get(), table.get(),
                 currentWord.getIndex(), windowWords, idxSyn1, codes, (int) negative, currentWord.getIndex(),
                 lookupTable.layerSize(), alpha, nextRandom.get(), vocabCache.numWords(), numLabels, trainWords,
@@ -262,157 +261,91 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
 
         nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
         Nd4j.getExecutioner().exec(cbow);
-
-        /*if (!isInference) {
-            batches.get().add(cbow);
-            if (batches.get().size() > 4096) {
-                Nd4j.getExecutioner().exec(batches.get());
-                batches.get().clear();
-            }
-        } else
-            Nd4j.getExecutioner().exec(cbow);*/
-
     }
 
-    public void iterateSample(List<BatchItem<T>> items) {
-
+    /**
+     * Executes all rounds buffered in given batch as single CbowRound op.
+     * Batch isn't cleared here, that's up to the caller.
+     *
+     * @param batchSequences
+     */
+    public void iterateSample(@NonNull BatchSequences<T> batchSequences) {
         boolean useHS = configuration.isUseHierarchicSoftmax();
-        boolean useNegative = configuration.getNegative() > 0;
+        boolean useNegative = negative > 0;
 
-        int[] idxSyn1 = null;
-        byte[] codes = null;
+        int size = batchSequences.size();
+        if (size == 0)
+            return;
 
-        int maxCols = 1;
-        for (int i = 0; i < items.size(); ++i) {
-            int curr = items.get(i).getWord().getCodeLength();
-            if (curr > maxCols)
-                maxCols = curr;
+        if (useNegative && syn1Neg == null) {
+            ((InMemoryLookupTable<T>) lookupTable).initNegative();
+            syn1Neg = new DeviceLocalNDArray(((InMemoryLookupTable<T>) lookupTable).getSyn1Neg());
         }
 
-        byte[][] inputCodes = new byte[items.size()][maxCols];
-        int[][] inputIndices = new int[items.size()][maxCols];
-        int[] numLabels = new int[items.size()];
+        int maxCols = 1;
+        for (int i = 0; i < size; i++)
+            maxCols = Math.max(maxCols, batchSequences.getWord(i).getCodeLength());
+        int maxWindow = batchSequences.getMaxWindowLength();
+
+        // all per-round rows are packed into flat arrays, padded with -1
+        int[] currentWordIndexes = new int[size];
+        int[] windowWords = new int[size * maxWindow];
+        int[] wordsStatuses = new int[size * maxWindow];
+        int[] indices = useHS ? new int[size * maxCols] : null;
+        byte[] codes = useHS ? new byte[size * maxCols] : null;
+        int[] numLabels = new int[size];
+        long[] randoms = new long[size];
+        double[] alphas = new double[size];
         boolean hasNumLabels = false;
 
-        int maxWinWordsCols = -1;
-        for (int i = 0; i < items.size(); ++i) {
-            int curr = items.get(i).getWindowWords().length;
-            if (curr > maxWinWordsCols)
-                maxWinWordsCols = curr;
-        }
-        int[][] inputWindowWords = new int[items.size()][maxWinWordsCols];
-        int[][] inputWordsStatuses = new int[items.size()][maxWinWordsCols];
-
-        long[] randoms = new long[items.size()];
-        double[] alphas = new double[items.size()];
-        int[]  currentWordIndexes = new int[items.size()];
-
-        for (int cnt = 0; cnt < items.size(); ++cnt) {
-
-            T currentWord = items.get(cnt).getWord();
+        batchSequences.packWindows(windowWords, wordsStatuses, maxWindow);
+        for (int cnt = 0; cnt < size; cnt++) {
+            T currentWord = batchSequences.getWord(cnt);
             currentWordIndexes[cnt] = currentWord.getIndex();
 
-            int[] windowWords = items.get(cnt).getWindowWords().clone();
-            boolean[] windowStatuses = items.get(cnt).getWordStatuses().clone();
-
-            for (int i = 0; i < maxWinWordsCols; ++i) {
-                if (i < windowWords.length) {
-                    inputWindowWords[cnt][i] = windowWords[i];
-                    inputWordsStatuses[cnt][i] = windowStatuses[i] ? 1 : 0;
-                }
-                else {
-                    inputWindowWords[cnt][i] = -1;
-                    inputWordsStatuses[cnt][i] = -1;
-                }
-            }
-
-            long randomValue = items.get(cnt).getRandomValue();
-            double alpha = items.get(cnt).getAlpha();
-            alphas[cnt] = alpha;
-
-            randoms[cnt] = randomValue;
-            numLabels[cnt] = items.get(cnt).getNumLabel();
+            alphas[cnt] = batchSequences.getAlpha(cnt);
+            randoms[cnt] = batchSequences.getRandomValue(cnt);
+            numLabels[cnt] = batchSequences.getNumLabels(cnt);
             if (numLabels[cnt] > 0)
                 hasNumLabels = true;
 
             if (useHS) {
-                idxSyn1 = new int[currentWord.getCodeLength()];
-                codes = new byte[currentWord.getCodeLength()];
-                for (int p = 0; p < currentWord.getCodeLength(); p++) {
-                    if (currentWord.getPoints().get(p) < 0)
-                        continue;
-
-                    codes[p] = currentWord.getCodes().get(p);
-                    idxSyn1[p] = currentWord.getPoints().get(p);
-                }
-                for (int i = 0; i < maxCols; ++i) {
-                    if (i < currentWord.getCodeLength())
-                        inputCodes[cnt][i] = codes[i];
-                    else
-                        inputCodes[cnt][i] = -1;
-                }
-                for (int i = 0; i < maxCols; ++i) {
-                    if (i < currentWord.getCodeLength())
-                        inputIndices[cnt][i]  = idxSyn1[i];
-                    else
-                        inputIndices[cnt][i] = -1;
-                }
-            } else {
-                idxSyn1 = new int[0];
-                codes = new byte[0];
-
-                inputIndices = new int[0][0];
-                inputCodes = new byte[0][0];
-            }
-
-
-            if (negative > 0) {
-                if (syn1Neg == null) {
-                    ((InMemoryLookupTable<T>) lookupTable).initNegative();
-                    syn1Neg = new DeviceLocalNDArray(((InMemoryLookupTable<T>) lookupTable).getSyn1Neg());
+                int offset = cnt * maxCols;
+                for (int p = 0; p < maxCols; p++) {
+                    if (p < currentWord.getCodeLength()) {
+                        if (currentWord.getPoints().get(p) < 0)
+                            continue;
+
+                        codes[offset + p] = currentWord.getCodes().get(p);
+                        indices[offset + p] = currentWord.getPoints().get(p);
+                    } else {
+                        codes[offset + p] = -1;
+                        indices[offset + p] = -1;
+                    }
                 }
             }
-
-            if (batches.get() == null)
-                batches.set(new ArrayList<Aggregate>());
-
-            //nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
         }
 
         INDArray currentWordIndexesArray = Nd4j.createFromArray(currentWordIndexes);
-        INDArray alphasArray = Nd4j.createFromArray(alphas);
-        INDArray windowWordsArray = Nd4j.createFromArray(inputWindowWords);
-        INDArray wordsStatusesArray = Nd4j.createFromArray(inputWordsStatuses);
-        INDArray codesArray = Nd4j.createFromArray(inputCodes);
-        INDArray indicesArray = Nd4j.createFromArray(inputIndices);
-        INDArray numLabelsArray = Nd4j.createFromArray(numLabels);
-
-        CbowRound cbow = new CbowRound(currentWordIndexesArray, windowWordsArray, wordsStatusesArray,
+
+        CbowRound cbow = new CbowRound(currentWordIndexesArray,
+                Nd4j.createFromArray(windowWords).reshape(size, maxWindow),
+                Nd4j.createFromArray(wordsStatuses).reshape(size, maxWindow),
                 currentWordIndexesArray,
                 syn0.get(),
-                useHS? syn1.get() : Nd4j.empty(syn0.get().dataType()),
-                (negative > 0) ? syn1Neg.get() : Nd4j.empty(syn0.get().dataType()),
+                useHS ? syn1.get() : Nd4j.empty(syn0.get().dataType()),
+                useNegative ? syn1Neg.get() : Nd4j.empty(syn0.get().dataType()),
                 expTable.get(),
-                (negative > 0) ? table.get() : Nd4j.empty(syn0.get().dataType()),
-                useHS ? indicesArray : Nd4j.empty(DataType.INT),
-                useHS ? codesArray : Nd4j.empty(DataType.BYTE),
-                (int) negative, alphasArray, Nd4j.createFromArray(randoms),
-                /*inferenceVector != null ? inferenceVector :*/ Nd4j.empty(syn0.get().dataType()),
-                hasNumLabels ? numLabelsArray : Nd4j.empty(DataType.INT),
+                useNegative ? table.get() : Nd4j.empty(syn0.get().dataType()),
+                useHS ? Nd4j.createFromArray(indices).reshape(size, maxCols) : Nd4j.empty(DataType.INT),
+                useHS ? Nd4j.createFromArray(codes).reshape(size, maxCols) : Nd4j.empty(DataType.BYTE),
+                (int) negative, Nd4j.createFromArray(alphas), Nd4j.createFromArray(randoms),
+                Nd4j.empty(syn0.get().dataType()),
+                hasNumLabels ? Nd4j.createFromArray(numLabels) : Nd4j.empty(DataType.INT),
                 configuration.isTrainElementsVectors(),
                 workers);
 
         Nd4j.getExecutioner().exec(cbow);
-
-        /*if (!isInference) {
-            batches.get().add(cbow);
-            if (batches.get().size() > 4096) {
-                Nd4j.getExecutioner().exec(batches.get());
-                batches.get().clear();
-            }
-        } else
-            Nd4j.getExecutioner().exec(cbow);*/
-
     }
 
     public void cbow(int i, List<T> sentence, int b, AtomicLong nextRandom, double alpha, int currentWindow,
@@ -445,15 +378,14 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
         }
 
         // we don't allow inference from main loop here
-        if (batchSize <= 1)
+        if (batchSize <= 1 || batchSequences == null)
             iterateSample(currentWord, windowWords, statuses, nextRandom, alpha, false, 0, true, null);
         else {
             batchSequences.put(currentWord, windowWords, statuses, nextRandom.get(), alpha);
-        }
-
-        if (batches != null && batches.get() != null && batches.get().size() >= configuration.getBatchSize()) {
-            Nd4j.getExecutioner().exec(batches.get());
-            batches.get().clear();
+            if (batchSequences.isFull()) {
+                iterateSample(batchSequences);
+                batchSequences.clear();
+            }
         }
     }
 
@@ -36,13 +36,11 @@ import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.api.ops.aggregates.Aggregate;
 import org.nd4j.linalg.api.ops.impl.nlp.SkipGramRound;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.util.DeviceLocalNDArray;
 
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -74,10 +72,6 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
     @Setter
     protected DeviceLocalNDArray syn0, syn1, syn1Neg, table, expTable;
 
-    protected ThreadLocal<List<Aggregate>> batches = new ThreadLocal<>();
-
-    //private BatchSequences<T> batchSequences;
-
     /**
      * Dummy construction is required for reflection
      */
@@ -85,10 +79,6 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
 
     }
 
-    public List<Aggregate> getBatch() {
-        return batches.get();
-    }
-
     /**
      * Returns implementation code name
      *
@@ -197,20 +187,6 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
             score = skipGram(i, tempSequence.getElements(), (int) nextRandom.get() % currentWindow, nextRandom,
                     learningRate, currentWindow, batchSequences);
         }
-        /*int batchSize = configuration.getBatchSize();
-        if (batchSize > 1 && batchSequences != null && batchSequences.size() >= batchSize) {
-            int rest = batchSequences.size() % batchSize;
-            int chunks = ((batchSequences.size() >= batchSize) ? batchSequences.size() / batchSize : 0) + ((rest > 0)? 1 : 0);
-            for (int j = 0; j < chunks; ++j) {
-                score = iterateSample(batchSequences.get(j));
-            }
-            batchSequences.clear();
-        }*/
-
-        if (batches != null && batches.get() != null && batches.get().size() >= configuration.getBatchSize()) {
-            Nd4j.getExecutioner().exec(batches.get());
-            batches.get().clear();
-        }
 
         return score;
     }
@@ -234,35 +210,29 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
         if (variableWindows != null && variableWindows.length != 0) {
             currentWindow = variableWindows[RandomUtils.nextInt(0, variableWindows.length)];
         }
-        //batchSequences = new BatchSequences<>(configuration.getBatchSize());
         for (int i = 0; i < tempSequence.getElements().size(); i++) {
             nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
             score = skipGram(i, tempSequence.getElements(), (int) nextRandom.get() % currentWindow, nextRandom,
                             learningRate, currentWindow);
         }
-        /*int batchSize = configuration.getBatchSize();
-        if (batchSize > 1 && batchSequences != null) {
-            int rest = batchSequences.size() % batchSize;
-            int chunks = ((batchSequences.size() >= batchSize) ? batchSequences.size() / batchSize : 0) + ((rest > 0)? 1 : 0);
-            for (int j = 0; j < chunks; ++j) {
-                score = iterateSample(batchSequences.get(j));
-            }
-            batchSequences.clear();
-        }*/
-
-        if (batches != null && batches.get() != null && batches.get().size() >= configuration.getBatchSize()) {
-            Nd4j.getExecutioner().exec(batches.get());
-            batches.get().clear();
-        }
 
         return score;
     }
 
     @Override
     public void finish() {
-        if (batches != null && batches.get() != null && !batches.get().isEmpty()) {
-            Nd4j.getExecutioner().exec(batches.get());
-            batches.get().clear();
+        // no-op, batched rounds are kept in BatchSequences owned by the caller, see finish(BatchSequences)
+    }
+
+    /**
+     * Executes rounds left in given batch, if any
+     *
+     * @param batchSequences
+     */
+    public void finish(BatchSequences<T> batchSequences) {
+        if (batchSequences != null && !batchSequences.isEmpty()) {
+            iterateSample(batchSequences);
+            batchSequences.clear();
         }
     }
 
@@ -282,7 +252,6 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
             return 0.0;
 
         double score = 0.0;
-        int batchSize = configuration.getBatchSize();
 
         int end = currentWindow * 2 + 1 - b;
         for (int a = b; a < end; a++) {
@@ -314,11 +283,14 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
                 if (c >= 0 && c < sentence.size()) {
                     T lastWord = sentence.get(c);
                     nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
-                    if (batchSize <= 1) {
+                    if (batchSize <= 1 || batchSequences == null) {
                         score = iterateSample(word, lastWord, nextRandom, alpha, false, null);
-                    }
-                    else {
+                    } else {
                         batchSequences.put(word, lastWord, nextRandom.get(), alpha);
+                        if (batchSequences.isFull()) {
+                            score = iterateSample(batchSequences);
+                            batchSequences.clear();
+                        }
                     }
                 }
             }
@@ -327,12 +299,16 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
         return score;
     }
 
-    public double iterateSample(T w1, T lastWord, AtomicLong nextRandom, double alpha, boolean isInference,
-                    INDArray inferenceVector) {
-        if (w1 == null || lastWord == null || (lastWord.getIndex() < 0 && !isInference)
+    private boolean isTrainable(T w1, T lastWord, boolean isInference) {
+        return !(w1 == null || lastWord == null || (lastWord.getIndex() < 0 && !isInference)
                         || w1.getIndex() == lastWord.getIndex() || w1.getLabel().equals("STOP")
                         || lastWord.getLabel().equals("STOP") || w1.getLabel().equals("UNK")
-                        || lastWord.getLabel().equals("UNK")) {
+                        || lastWord.getLabel().equals("UNK"));
+    }
+
+    public double iterateSample(T w1, T lastWord, AtomicLong nextRandom, double alpha, boolean isInference,
+                    INDArray inferenceVector) {
+        if (!isTrainable(w1, lastWord, isInference)) {
             return 0.0;
         }
 
@@ -368,25 +344,8 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
             }
         }
 
-        if (batches.get() == null) {
-            batches.set(new ArrayList<Aggregate>());
-        }
-
         //log.info("VocabWords: {}; lastWordIndex: {}; syn1neg: {}", vocabCache.numWords(), lastWord.getIndex(), syn1Neg.get().rows());
 
-        /*AggregateSkipGram sg = new AggregateSkipGram(syn0.get(), syn1.get(), syn1Neg.get(), expTable.get(), table.get(),
-                        lastWord.getIndex(), idxSyn1, codes, (int) negative, target, vectorLength, alpha,
-                        nextRandom.get(), vocabCache.numWords(), inferenceVector);
-        if (!isInference) {
-            batches.get().add(sg);
-            if (batches.get().size() > 4096) {
-                Nd4j.getExecutioner().exec(batches.get());
-                batches.get().clear();
-            }
-        } else {
-            Nd4j.getExecutioner().exec(sg);
-        }*/
-
         nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
 
         SkipGramRound sg = null;
@@ -425,108 +384,102 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
         return score;
     }
 
-    public double iterateSample(List<BatchItem<T>> items) {
-
+    /**
+     * Executes all rounds buffered in given batch as single SkipGramRound op.
+     * Batch isn't cleared here, that's up to the caller.
+     *
+     * @param batchSequences
+     * @return
+     */
+    public double iterateSample(@NonNull BatchSequences<T> batchSequences) {
         boolean useHS = configuration.isUseHierarchicSoftmax();
-        boolean useNegative = configuration.getNegative() > 0;
+        boolean useNegative = negative > 0;
 
         double score = 0.0;
-        boolean isInference = false;
+        int size = batchSequences.size();
+        if (size == 0)
+            return score;
 
-        int[] targets = new int[items.size()];
-        int[] starters = new int[items.size()];
-        double[] alphas = new double[items.size()];
-        long[] randomValues = new long[items.size()];
+        //negative sampling
+        if (useNegative && syn1Neg == null) {
+            ((InMemoryLookupTable<T>) lookupTable).initNegative();
+            syn1Neg = new DeviceLocalNDArray(((InMemoryLookupTable<T>) lookupTable).getSyn1Neg());
+        }
 
         int maxCols = 1;
-        for (int i = 0; i < items.size(); ++i) {
-            int curr = items.get(i).getWord().getCodeLength();
-            if (curr > maxCols)
-                maxCols = curr;
-        }
-        byte[][] codes = new byte[items.size()][maxCols];
-        int[][] indices = new int[items.size()][maxCols];
-
-        for (int cnt = 0; cnt < items.size(); ++cnt) {
-            T w1 = items.get(cnt).getWord();
-            T lastWord = items.get(cnt).getLastWord();
-            randomValues[cnt] = items.get(cnt).getRandomValue();
-            double alpha = items.get(cnt).getAlpha();
-
-            if (w1 == null || lastWord == null || (lastWord.getIndex() < 0 && !isInference)
-                    || w1.getIndex() == lastWord.getIndex() || w1.getLabel().equals("STOP")
-                    || lastWord.getLabel().equals("STOP") || w1.getLabel().equals("UNK")
-                    || lastWord.getLabel().equals("UNK")) {
-                continue;
+        if (useHS) {
+            for (int i = 0; i < size; i++) {
+                T w1 = batchSequences.getWord(i);
+                if (w1 != null && w1.getCodeLength() > maxCols)
+                    maxCols = w1.getCodeLength();
             }
+        }
+
+        int[] targets = new int[size];
+        int[] starters = new int[size];
+        double[] alphas = new double[size];
+        long[] randomValues = new long[size];
 
-            int target = lastWord.getIndex();
-            int ngStarter = w1.getIndex();
+        // codes and syn1 indices are packed row by row, padded with -1 up to the longest code in batch
+        int[] indices = useHS ? new int[size * maxCols] : null;
+        byte[] codes = useHS ? new byte[size * maxCols] : null;
+
+        int cnt = 0;
+        for (int i = 0; i < size; i++) {
+            T w1 = batchSequences.getWord(i);
+            T lastWord = batchSequences.getLastWord(i);
+            if (!isTrainable(w1, lastWord, false))
+                continue;
 
-            targets[cnt] = target;
-            starters[cnt] = ngStarter;
-            alphas[cnt] = alpha;
+            targets[cnt] = lastWord.getIndex();
+            starters[cnt] = w1.getIndex();
+            alphas[cnt] = batchSequences.getAlpha(i);
+            randomValues[cnt] = batchSequences.getRandomValue(i);
 
-            int[] idxSyn1 = null;
-            byte[] interimCodes = null;
             if (useHS) {
-                idxSyn1 = new int[w1.getCodeLength()];
-                interimCodes = new byte[w1.getCodeLength()];
-                for (int i = 0; i < w1.getCodeLength(); i++) {
-                    int code = w1.getCodes().get(i);
-                    int point = w1.getPoints().get(i);
-                    if (point >= vocabCache.numWords() || point < 0)
-                        continue;
-
-                    interimCodes[i] = (byte) code;
-                    idxSyn1[i] = point;
-                }
-                for (int i = 0; i < maxCols; ++i) {
-                    if (i < w1.getCodeLength())
-                        codes[cnt][i] = interimCodes[i];
-                    else
-                        codes[cnt][i] = -1;
-                }
-                for (int i = 0; i < maxCols; ++i) {
-                    if (i < w1.getCodeLength())
-                        indices[cnt][i]  = idxSyn1[i];
-                    else
-                        indices[cnt][i] = -1;
+                int offset = cnt * maxCols;
+                for (int c = 0; c < maxCols; c++) {
+                    if (c < w1.getCodeLength()) {
+                        int point = w1.getPoints().get(c);
+                        if (point >= vocabCache.numWords() || point < 0)
+                            continue;
+
+                        codes[offset + c] = w1.getCodes().get(c);
+                        indices[offset + c] = point;
+                    } else {
+                        codes[offset + c] = -1;
+                        indices[offset + c] = -1;
+                    }
                 }
-
-            } else {
-                idxSyn1 = new int[0];
-                interimCodes = new byte[0];
-                codes = new byte[0][0];
-                indices = new int[0][0];
             }
+            cnt++;
+        }
 
-            //negative sampling
-            if (negative > 0) {
-                if (syn1Neg == null) {
-                    ((InMemoryLookupTable<T>) lookupTable).initNegative();
-                    syn1Neg = new DeviceLocalNDArray(((InMemoryLookupTable<T>) lookupTable).getSyn1Neg());
-                }
+        if (cnt == 0)
+            return score;
+
+        if (cnt < size) {
+            targets = Arrays.copyOf(targets, cnt);
+            starters = Arrays.copyOf(starters, cnt);
+            alphas = Arrays.copyOf(alphas, cnt);
+            randomValues = Arrays.copyOf(randomValues, cnt);
+            if (useHS) {
+                indices = Arrays.copyOf(indices, cnt * maxCols);
+                codes = Arrays.copyOf(codes, cnt * maxCols);
             }
         }
-        INDArray targetArray = Nd4j.createFromArray(targets);
-        INDArray ngStarterArray = Nd4j.createFromArray(starters);
-        INDArray alphasArray = Nd4j.createFromArray(alphas);
-        INDArray randomValuesArray = Nd4j.createFromArray(randomValues);
-        INDArray indicesArray = Nd4j.createFromArray(indices);
-        INDArray codesArray = Nd4j.createFromArray(codes);
-
-        val sg = new SkipGramRound(targetArray,
-                (negative > 0) ? ngStarterArray : Nd4j.empty(DataType.INT),
+
+        val sg = new SkipGramRound(Nd4j.createFromArray(targets),
+                useNegative ? Nd4j.createFromArray(starters) : Nd4j.empty(DataType.INT),
                 syn0.get(),
                 useHS ? syn1.get() : Nd4j.empty(syn0.get().dataType()),
-                (negative > 0) ? syn1Neg.get() : Nd4j.empty(syn0.get().dataType()), expTable.get(),
-                (negative > 0) ? table.get() : Nd4j.empty(syn0.get().dataType()),
+                useNegative ? syn1Neg.get() : Nd4j.empty(syn0.get().dataType()), expTable.get(),
+                useNegative ? table.get() : Nd4j.empty(syn0.get().dataType()),
                 (int) negative,
-                useHS ? indicesArray : Nd4j.empty(DataType.INT),
-                useHS ? codesArray : Nd4j.empty(DataType.BYTE),
-                alphasArray, randomValuesArray,
-                /*inferenceVector != null ? inferenceVector :*/ Nd4j.empty(syn0.get().dataType()),
+                useHS ? Nd4j.createFromArray(indices).reshape(cnt, maxCols) : Nd4j.empty(DataType.INT),
+                useHS ? Nd4j.createFromArray(codes).reshape(cnt, maxCols) : Nd4j.empty(DataType.BYTE),
+                Nd4j.createFromArray(alphas), Nd4j.createFromArray(randomValues),
+                Nd4j.empty(syn0.get().dataType()),
                 configuration.isPreciseMode(),
                 workers);
 
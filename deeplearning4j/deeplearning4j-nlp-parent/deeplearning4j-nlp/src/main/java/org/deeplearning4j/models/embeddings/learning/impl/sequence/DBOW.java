@@ -139,16 +139,15 @@ public class DBOW<T extends SequenceElement> implements SequenceLearningAlgorith
 
                 if (batchSize == 1 || batchSequences == null || isInference)
                     skipGram.iterateSample(word, lastWord, nextRandom, alpha, isInference, inferenceVector);
-                else
+                else {
                     batchSequences.put(word, lastWord, nextRandom.get(), alpha);
+                    if (batchSequences.isFull()) {
+                        skipGram.iterateSample(batchSequences);
+                        batchSequences.clear();
+                    }
+                }
             }
         }
-
-        if (skipGram != null && skipGram.getBatch() != null && skipGram.getBatch() != null
-                        && skipGram.getBatch().size() >= configuration.getBatchSize()) {
-            Nd4j.getExecutioner().exec(skipGram.getBatch());
-            skipGram.getBatch().clear();
-        }
     }
 
     /**
@@ -191,9 +190,6 @@ public class DBOW<T extends SequenceElement> implements SequenceLearningAlgorith
 
     @Override
     public void finish() {
-        if (skipGram != null && skipGram.getBatch() != null && !skipGram.getBatch().isEmpty()) {
-            Nd4j.getExecutioner().exec(skipGram.getBatch());
-            skipGram.getBatch().clear();
-        }
+        // no-op, batched rounds are kept in BatchSequences owned by the caller
     }
 }
@@ -154,18 +154,17 @@ public class DM<T extends SequenceElement> implements SequenceLearningAlgorithm<
         }
 
         int batchSize = configuration.getBatchSize();
-        if (batchSize == 1 || isInference) {
+        if (batchSize == 1 || batchSequences == null || isInference) {
             // pass for underlying
             cbow.iterateSample(currentWord, windowWords, statuses, nextRandom, alpha, isInference, labels == null ? 0 : labels.size(),
                     configuration.isTrainElementsVectors(), inferenceVector);
         }
         else {
             batchSequences.put(currentWord, windowWords, statuses, nextRandom.get(), alpha, labels == null ? 0 : labels.size());
-        }
-
-        if (cbow.getBatch() != null && cbow.getBatch().size() >= configuration.getBatchSize()) {
-            Nd4j.getExecutioner().exec(cbow.getBatch());
-            cbow.getBatch().clear();
+            if (batchSequences.isFull()) {
+                cbow.iterateSample(batchSequences);
+                batchSequences.clear();
+            }
         }
     }
 
@@ -217,9 +216,6 @@ public class DM<T extends SequenceElement> implements SequenceLearningAlgorithm<
 
     @Override
     public void finish() {
-        if (cbow != null && cbow.getBatch() != null && !cbow.getBatch().isEmpty()) {
-            Nd4j.getExecutioner().exec(cbow.getBatch());
-            cbow.getBatch().clear();
-        }
+        // no-op, batched rounds are kept in BatchSequences owned by the caller
     }
 }
@@ -84,6 +84,8 @@ public class VectorsConfiguration implements Serializable {
 
     private boolean preciseMode = false;
 
+    private boolean batchedRounds = false;
+
     private static ObjectMapper mapper;
     private static final Object lock = new Object();
 
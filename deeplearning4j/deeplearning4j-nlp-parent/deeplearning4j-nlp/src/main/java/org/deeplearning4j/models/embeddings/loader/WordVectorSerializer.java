@@ -48,6 +48,7 @@ import org.deeplearning4j.models.sequencevectors.SequenceVectors;
 import org.deeplearning4j.models.sequencevectors.interfaces.SequenceElementFactory;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.sequencevectors.serialization.VocabWordFactory;
+import org.deeplearning4j.models.word2vec.MappedWordVectors;
 import org.deeplearning4j.models.word2vec.StaticWord2Vec;
 import org.deeplearning4j.models.word2vec.VocabWord;
 import org.deeplearning4j.models.word2vec.Word2Vec;
@@ -56,6 +57,7 @@ import org.deeplearning4j.models.word2vec.wordstore.VocabularyHolder;
 import org.deeplearning4j.models.word2vec.wordstore.VocabularyWord;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.InMemoryLookupCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.PrimitiveVocabCache;
 import org.deeplearning4j.text.documentiterator.LabelsSource;
 import org.deeplearning4j.text.sentenceiterator.BasicLineIterator;
 import org.deeplearning4j.text.tokenization.tokenizer.TokenPreProcess;
@@ -1915,7 +1917,9 @@ public class WordVectorSerializer {
             throws IOException {
 
         InMemoryLookupTable<VocabWord> lookupTable = (InMemoryLookupTable<VocabWord>) vectors.getLookupTable();
-        AbstractCache<T> vocabCache = (AbstractCache<T>) vectors.getVocab();
+        VocabCache<T> vocabCache = vectors.getVocab();
+        String vocabJson = vocabCache instanceof PrimitiveVocabCache ? ((PrimitiveVocabCache) vocabCache).toJson()
+                        : ((AbstractCache<T>) vocabCache).toJson();
 
         try (ZipOutputStream zipfile = new ZipOutputStream(new BufferedOutputStream(new CloseShieldOutputStream(stream)));
              DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(zipfile))) {
@@ -1929,7 +1933,7 @@ public class WordVectorSerializer {
 
             ZipEntry vocab = new ZipEntry(VOCAB_ENTRY);
             zipfile.putNextEntry(vocab);
-            zipfile.write(vocabCache.toJson().getBytes("UTF-8"));
+            zipfile.write(vocabJson.getBytes("UTF-8"));
 
             INDArray syn0Data = lookupTable.getSyn0();
             ZipEntry syn0 = new ZipEntry(SYN0_ENTRY);
@@ -2784,6 +2788,32 @@ public class WordVectorSerializer {
         return word2Vec;
     }
 
+    /**
+     * This method saves WordVectors in memory-mappable format, suitable for {@link #loadMappedModel(File)}.
+     * Any model with a vocabulary can be converted, i.e. result of {@link #readWord2VecModel(File)} or
+     * {@link #loadStaticModel(File)}. Conversion has to be done only once.
+     *
+     * @param vectors WordVectors to be saved
+     * @param file    Destination file
+     */
+    public static void writeMappedWordVectors(@NonNull WordVectors vectors, @NonNull File file) throws IOException {
+        MappedWordVectors.write(vectors, file);
+    }
+
+    /**
+     * This method maps previously saved with {@link #writeMappedWordVectors(WordVectors, File)} model into memory.
+     * Nothing but the header is read on load: vectors and vocabulary stay in the OS page cache, so load time and
+     * heap footprint don't depend on vocabulary size, and the same file is shared between processes.
+     *
+     * In return you get read-only MappedWordVectors model, which might be used as lookup table only.
+     *
+     * @param file File
+     * @return
+     */
+    public static WordVectors loadMappedModel(@NonNull File file) throws IOException {
+        return MappedWordVectors.load(file);
+    }
+
 
     protected interface Reader extends AutoCloseable {
         boolean hasNext();
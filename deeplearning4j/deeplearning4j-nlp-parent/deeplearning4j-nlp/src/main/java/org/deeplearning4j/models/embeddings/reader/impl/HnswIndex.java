@@ -0,0 +1,451 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+
+/**
+ * Hierarchical Navigable Small World (HNSW) graph index for approximate nearest neighbour search by cosine similarity,
+ * as described in Malkov and Yashunin, "Efficient and robust approximate nearest neighbor search using Hierarchical
+ * Navigable Small World graphs" (2016).<br>
+ * Vectors are added incrementally and are identified by their insertion index (0, 1, 2, ...). Vectors are stored
+ * normalized to unit length. Searches may run concurrently with each other, but not with {@link #add(float[])}.<br>
+ * Recall vs. speed is controlled by {@link #setEfSearch(int)} at query time, and by M and efConstruction at build time.
+ */
+public class HnswIndex {
+    private static final int MAGIC = 0x484E5357;    //"HNSW"
+    private static final int VERSION = 1;
+
+    @Getter
+    private final int dimension;
+    @Getter
+    private final int m;
+    @Getter
+    private final int efConstruction;
+    @Getter
+    private volatile int efSearch;
+    private final int maxM0;
+    private final double levelMult;
+    private final Random random;
+
+    private float[][] vectors = new float[16][];
+    //neighbours[node][level]: element 0 is the number of neighbours, followed by the neighbour ids
+    private int[][][] neighbours = new int[16][][];
+    @Getter
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<VisitedSet> visited = ThreadLocal.withInitial(VisitedSet::new);
+
+    /**
+     * @param dimension      Vector length
+     * @param m              Number of neighbours per node and level (2*m on the lowest level). Typical values: 8 to 48
+     * @param efConstruction Size of the candidate list during build. Higher values give a better graph at the cost of build time
+     * @param efSearch       Size of the candidate list during search. Higher values give higher recall at the cost of latency
+     */
+    public HnswIndex(int dimension, int m, int efConstruction, int efSearch) {
+        this(dimension, m, efConstruction, efSearch, 12345);
+    }
+
+    public HnswIndex(int dimension, int m, int efConstruction, int efSearch, long seed) {
+        Preconditions.checkArgument(dimension > 0, "Dimension must be positive, got %s", dimension);
+        Preconditions.checkArgument(m >= 2, "M must be at least 2, got %s", m);
+        Preconditions.checkArgument(efConstruction > 0 && efSearch > 0, "efConstruction and efSearch must be positive, got %s and %s",
+                efConstruction, efSearch);
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMult = 1.0 / Math.log(m);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Set the size of the candidate list used for searches, trading recall for latency. Values lower than the
+     * number of requested results are increased to the number of requested results.
+     */
+    public void setEfSearch(int efSearch) {
+        Preconditions.checkArgument(efSearch > 0, "efSearch must be positive, got %s", efSearch);
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * Add a vector to the index
+     *
+     * @param vector Vector to add. Not modified.
+     * @return Id of the vector: the number of vectors added before it
+     */
+    public int add(@NonNull float[] vector) {
+        lock.writeLock().lock();
+        try {
+            return insert(normalize(vector), randomLevel());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the (approximate) nearest vectors to the query vector by cosine similarity
+     *
+     * @param query Query vector. Need not be normalized
+     * @param k     Maximum number of results
+     * @return Ids of up to k vectors, in order of decreasing similarity
+     */
+    public int[] search(@NonNull float[] query, int k) {
+        Preconditions.checkArgument(query.length == dimension, "Query vector length %s does not match index dimension %s", query.length, dimension);
+        lock.readLock().lock();
+        try {
+            if (size == 0 || k <= 0)
+                return new int[0];
+            float[] q = normalize(query);
+            int ep = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                ep = greedyClosest(q, ep, l);
+            }
+            PriorityQueue<Candidate> results = searchLayer(q, ep, Math.max(efSearch, k), 0);
+            while (results.size() > k) {
+                results.poll();
+            }
+            int[] out = new int[results.size()];
+            for (int i = out.length - 1; i >= 0; i--) {
+                out[i] = results.poll().id;
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write the graph structure of this index. Vectors are not written, and must be provided again on {@link #read(InputStream, IntFunction)}
+     */
+    public void write(@NonNull OutputStream os) throws IOException {
+        lock.readLock().lock();
+        try {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(dimension);
+            dos.writeInt(m);
+            dos.writeInt(efConstruction);
+            dos.writeInt(efSearch);
+            dos.writeInt(size);
+            dos.writeInt(entryPoint);
+            dos.writeInt(maxLevel);
+            for (int i = 0; i < size; i++) {
+                int[][] node = neighbours[i];
+                dos.writeInt(node.length);
+                for (int[] level : node) {
+                    dos.writeInt(level[0]);
+                    for (int j = 1; j <= level[0]; j++) {
+                        dos.writeInt(level[j]);
+                    }
+                }
+            }
+            dos.flush();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read an index previously written with {@link #write(OutputStream)}
+     *
+     * @param is      Input stream to read from
+     * @param vectors Provides the vector for each id, 0 to size-1
+     */
+    public static HnswIndex read(@NonNull InputStream is, @NonNull IntFunction<float[]> vectors) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(is));
+        if (dis.readInt() != MAGIC)
+            throw new IOException("Invalid HNSW index: unexpected header");
+        int version = dis.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported HNSW index version: " + version);
+        HnswIndex index = new HnswIndex(dis.readInt(), dis.readInt(), dis.readInt(), dis.readInt());
+        int size = dis.readInt();
+        index.entryPoint = dis.readInt();
+        index.maxLevel = dis.readInt();
+        index.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            int levels = dis.readInt();
+            int[][] node = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int count = dis.readInt();
+                node[l] = new int[(l == 0 ? index.maxM0 : index.m) + 1];
+                node[l][0] = count;
+                for (int j = 1; j <= count; j++) {
+                    node[l][j] = dis.readInt();
+                }
+            }
+            float[] v = vectors.apply(i);
+            Preconditions.checkState(v != null && v.length == index.dimension, "Invalid vector for id %s", i);
+            index.neighbours[i] = node;
+            index.vectors[i] = index.normalize(v);
+        }
+        index.size = size;
+        return index;
+    }
+
+    private int insert(float[] v, int level) {
+        int id = size;
+        ensureCapacity(id + 1);
+        vectors[id] = v;
+        int[][] node = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            node[l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        neighbours[id] = node;
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return id;
+        }
+
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            ep = greedyClosest(v, ep, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            PriorityQueue<Candidate> w = searchLayer(v, ep, efConstruction, l);
+            List<Candidate> sorted = new ArrayList<>(w);
+            Collections.sort(sorted);
+            ep = sorted.get(0).id;
+            for (Candidate c : selectNeighbours(sorted, m)) {
+                connect(id, c.id, l);
+                connect(c.id, id, l);
+            }
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = id;
+        }
+        return id;
+    }
+
+    private void connect(int from, int to, int level) {
+        int[] links = neighbours[from][level];
+        int capacity = links.length - 1;
+        if (links[0] < capacity) {
+            links[++links[0]] = to;
+            return;
+        }
+        //Full: keep the best (diverse) subset of the existing links plus the new one
+        List<Candidate> candidates = new ArrayList<>(capacity + 1);
+        float[] v = vectors[from];
+        for (int j = 1; j <= links[0]; j++) {
+            candidates.add(new Candidate(links[j], distance(v, vectors[links[j]])));
+        }
+        candidates.add(new Candidate(to, distance(v, vectors[to])));
+        Collections.sort(candidates);
+        List<Candidate> selected = selectNeighbours(candidates, capacity);
+        links[0] = selected.size();
+        for (int j = 0; j < selected.size(); j++) {
+            links[j + 1] = selected.get(j).id;
+        }
+    }
+
+    /**
+     * Neighbour selection heuristic: a candidate is kept if it is closer to the base node than to any already selected
+     * neighbour. Remaining slots are filled with the closest discarded candidates.
+     *
+     * @param sorted Candidates in order of increasing distance to the base node
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> sorted, int max) {
+        if (sorted.size() <= max)
+            return sorted;
+        List<Candidate> selected = new ArrayList<>(max);
+        List<Candidate> discarded = new ArrayList<>();
+        for (Candidate c : sorted) {
+            if (selected.size() >= max)
+                break;
+            boolean keep = true;
+            for (Candidate s : selected) {
+                if (distance(vectors[c.id], vectors[s.id]) < c.dist) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected.add(c);
+            } else {
+                discarded.add(c);
+            }
+        }
+        for (int i = 0; i < discarded.size() && selected.size() < max; i++) {
+            selected.add(discarded.get(i));
+        }
+        return selected;
+    }
+
+    private int greedyClosest(float[] q, int ep, int level) {
+        float best = distance(q, vectors[ep]);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[][] node = neighbours[ep];
+            if (level >= node.length)
+                break;
+            int[] links = node[level];
+            for (int j = 1; j <= links[0]; j++) {
+                float d = distance(q, vectors[links[j]]);
+                if (d < best) {
+                    best = d;
+                    ep = links[j];
+                    changed = true;
+                }
+            }
+        }
+        return ep;
+    }
+
+    /**
+     * @return Up to ef nearest nodes found on the given level, as a max-heap by distance
+     */
+    private PriorityQueue<Candidate> searchLayer(float[] q, int ep, int ef, int level) {
+        VisitedSet vs = visited.get();
+        vs.reset(size);
+        vs.visit(ep);
+
+        Candidate start = new Candidate(ep, distance(q, vectors[ep]));
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Collections.reverseOrder());
+        candidates.add(start);
+        results.add(start);
+
+        while (!candidates.isEmpty()) {
+            Candidate c = candidates.poll();
+            if (c.dist > results.peek().dist && results.size() >= ef)
+                break;
+            int[] links = neighbours[c.id][level];
+            for (int j = 1; j <= links[0]; j++) {
+                int e = links[j];
+                if (!vs.visit(e))
+                    continue;
+                float d = distance(q, vectors[e]);
+                if (results.size() < ef || d < results.peek().dist) {
+                    Candidate n = new Candidate(e, d);
+                    candidates.add(n);
+                    results.add(n);
+                    if (results.size() > ef)
+                        results.poll();
+                }
+            }
+        }
+        return results;
+    }
+
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelMult);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > vectors.length) {
+            int newLength = Math.max(capacity, vectors.length + (vectors.length >> 1));
+            vectors = Arrays.copyOf(vectors, newLength);
+            neighbours = Arrays.copyOf(neighbours, newLength);
+        }
+    }
+
+    private float[] normalize(float[] v) {
+        Preconditions.checkArgument(v.length == dimension, "Vector length %s does not match index dimension %s", v.length, dimension);
+        double norm = 0.0;
+        for (float f : v) {
+            norm += f * f;
+        }
+        float[] out = new float[v.length];
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < v.length; i++) {
+                out[i] = v[i] * scale;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Cosine distance for unit vectors
+     */
+    private static float distance(float[] a, float[] b) {
+        float dot = 0.0f;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return 1.0f - dot;
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        private final int id;
+        private final float dist;
+
+        private Candidate(int id, float dist) {
+            this.id = id;
+            this.dist = dist;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            int c = Float.compare(dist, o.dist);
+            return c != 0 ? c : Integer.compare(id, o.id);
+        }
+    }
+
+    /**
+     * Visited marks for one search, reused across searches on the same thread
+     */
+    private static class VisitedSet {
+        private int[] marks = new int[0];
+        private int generation;
+
+        private void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length + (marks.length >> 1))];
+                generation = 0;
+            }
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * @return true if the node was not visited before
+         */
+        private boolean visit(int id) {
+            if (marks[id] == generation)
+                return false;
+            marks[id] = generation;
+            return true;
+        }
+    }
+}
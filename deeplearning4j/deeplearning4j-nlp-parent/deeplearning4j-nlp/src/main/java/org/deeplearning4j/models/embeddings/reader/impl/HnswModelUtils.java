@@ -0,0 +1,175 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * ModelUtils implementation that answers {@link #wordsNearest(INDArray, int)} (and hence all wordsNearest variants) using
+ * an approximate nearest neighbour {@link HnswIndex} over the word vectors, instead of a full scan over the vocabulary.
+ * <br>
+ * The index is built on the first query, or explicitly via {@link #buildIndex()}. Building is incremental: words
+ * added to the vocabulary after the index was built are added to the index on the next query.
+ * Recall can be tuned at query time using {@link #setEfSearch(int)}.
+ * The index can be saved next to the model using {@link #saveIndex(File)}, and restored after the model has been
+ * loaded using {@link #loadIndex(File)}, avoiding a rebuild.
+ * <br>
+ * Note that the index keeps a unit-normalized copy of all word vectors. Results are approximate: the nearest words are
+ * returned with high probability (depending on efSearch), but this is not guaranteed.
+ * Usage: {@code wordVectors.setModelUtils(new HnswModelUtils<>())}
+ */
+@Slf4j
+public class HnswModelUtils<T extends SequenceElement> extends BasicModelUtils<T> {
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    @Getter
+    protected final int m;
+    @Getter
+    protected final int efConstruction;
+    @Getter
+    protected volatile int efSearch;
+    protected volatile HnswIndex index;
+
+    public HnswModelUtils() {
+        this(DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+
+    /**
+     * @param m              Number of graph neighbours per word. Higher values: higher recall, more memory
+     * @param efConstruction Candidate list size during index build. Higher values: better index, slower build
+     * @param efSearch       Candidate list size during queries. Higher values: higher recall, slower queries
+     */
+    public HnswModelUtils(int m, int efConstruction, int efSearch) {
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+    }
+
+    @Override
+    public void init(@NonNull WeightLookupTable<T> lookupTable) {
+        super.init(lookupTable);
+
+        // existing index is only valid for the same vectors
+        this.index = null;
+    }
+
+    /**
+     * Set the candidate list size used for queries, trading recall for latency
+     */
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+        HnswIndex idx = index;
+        if (idx != null)
+            idx.setEfSearch(efSearch);
+    }
+
+    /**
+     * Build the index, or add any words that were added to the vocabulary since the last build
+     *
+     * @return The index
+     */
+    public synchronized HnswIndex buildIndex() {
+        Preconditions.checkState(lookupTable != null, "ModelUtils has not been initialized with a lookup table");
+        HnswIndex idx = index;
+        if (idx == null)
+            idx = new HnswIndex(lookupTable.layerSize(), m, efConstruction, efSearch);
+
+        int numWords = vocabCache.numWords();
+        int start = idx.getSize();
+        if (start < numWords) {
+            long time = System.currentTimeMillis();
+            for (int i = start; i < numWords; i++) {
+                idx.add(vectorAt(i));
+            }
+            log.info("Added {} words to HNSW index in {} ms", numWords - start, System.currentTimeMillis() - time);
+        }
+        index = idx;
+        return idx;
+    }
+
+    /**
+     * Save the index graph, for example next to the saved model. Word vectors are not saved with the index.
+     */
+    public void saveIndex(@NonNull File file) throws IOException {
+        HnswIndex idx = buildIndex();
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            idx.write(os);
+        }
+    }
+
+    /**
+     * Load an index saved with {@link #saveIndex(File)} for the same model. Must be called after the lookup table
+     * (model) has been set, i.e. after {@code wordVectors.setModelUtils(...)}
+     */
+    public void loadIndex(@NonNull File file) throws IOException {
+        Preconditions.checkState(lookupTable != null, "ModelUtils has not been initialized with a lookup table");
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+            HnswIndex idx = HnswIndex.read(is, this::vectorAt);
+            Preconditions.checkState(idx.getDimension() == lookupTable.layerSize() && idx.getSize() <= vocabCache.numWords(),
+                    "Index (%s vectors of length %s) does not match model (%s words, vector length %s)",
+                    idx.getSize(), idx.getDimension(), vocabCache.numWords(), lookupTable.layerSize());
+            idx.setEfSearch(efSearch);
+            synchronized (this) {
+                index = idx;
+            }
+        }
+    }
+
+    @Override
+    public Collection<String> wordsNearest(INDArray words, int top) {
+        words = adjustRank(words);
+
+        HnswIndex idx = index;
+        if (idx == null || idx.getSize() < vocabCache.numWords())
+            idx = buildIndex();
+
+        // a few extra results, to account for UNK/STOP
+        int[] ids = idx.search(words.castTo(DataType.FLOAT).toFloatVector(), top + 2);
+        List<String> result = new ArrayList<>(top);
+        for (int i = 0; i < ids.length && result.size() < top; i++) {
+            String word = vocabCache.wordAtIndex(ids[i]);
+            if (word != null && !word.equals("UNK") && !word.equals("STOP"))
+                result.add(word);
+        }
+        return result;
+    }
+
+    protected float[] vectorAt(int i) {
+        String word = vocabCache.wordAtIndex(i);
+        if (word == null)
+            return new float[lookupTable.layerSize()];
+        return lookupTable.vector(word).castTo(DataType.FLOAT).toFloatVector();
+    }
+}
@@ -45,6 +45,7 @@ import org.deeplearning4j.models.word2vec.VocabWord;
 import org.deeplearning4j.models.word2vec.Word2Vec;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.PrimitiveVocabCache;
 import org.deeplearning4j.text.documentiterator.*;
 import org.deeplearning4j.text.documentiterator.interoperability.DocumentIteratorConverter;
 import org.deeplearning4j.text.sentenceiterator.SentenceIterator;
@@ -736,6 +737,8 @@ public class ParagraphVectors extends Word2Vec {
 
         if (this.vocab instanceof AbstractCache) {
             retVal.addProperty(VOCAB_LIST_FIELD, ((AbstractCache<VocabWord>) this.vocab).toJson());
+        } else if (this.vocab instanceof PrimitiveVocabCache) {
+            retVal.addProperty(VOCAB_LIST_FIELD, ((PrimitiveVocabCache) this.vocab).toJson());
         }
 
         return retVal.toString();
@@ -1064,6 +1067,7 @@ public class ParagraphVectors extends Word2Vec {
                             .setSequenceLearningAlgorithm(this.sequenceLearningAlgorithm.getClass().getCanonicalName());
             this.configuration.setModelUtils(this.modelUtils.getClass().getCanonicalName());
             this.configuration.setAllowParallelTokenization(this.allowParallelTokenization);
+            this.configuration.setBatchedRounds(this.batchedRounds);
 
             if (tokenizerFactory != null) {
                 this.configuration.setTokenizerFactory(tokenizerFactory.getClass().getCanonicalName());
@@ -1414,6 +1418,12 @@ public class ParagraphVectors extends Word2Vec {
             return this;
         }
 
+        @Override
+        public Builder useBatchedRounds(boolean reallyUse) {
+            super.useBatchedRounds(reallyUse);
+            return this;
+        }
+
         /**
          * This method defines random seed for random numbers generator
          * @param randomSeed
@@ -95,8 +95,6 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
     protected boolean enableScavenger = false;
     protected int vocabLimit = 0;
 
-    private BatchSequences<T> batchSequences;
-
 
     @Setter
     protected transient Set<VectorsListener<T>> eventListeners;
@@ -384,6 +382,18 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
 
 
     protected void trainSequence(@NonNull Sequence<T> sequence, AtomicLong nextRandom, double alpha) {
+        trainSequence(sequence, nextRandom, alpha, null, null);
+    }
+
+    /**
+     * Trains given sequence. If batches are provided, training rounds are buffered there, and executed once batch
+     * is full, otherwise each round is executed immediately.
+     *
+     * @param elementsBatch batch for ElementsLearningAlgorithm rounds, nullable
+     * @param sequencesBatch batch for SequenceLearningAlgorithm rounds, nullable
+     */
+    protected void trainSequence(@NonNull Sequence<T> sequence, AtomicLong nextRandom, double alpha,
+                    BatchSequences<T> elementsBatch, BatchSequences<T> sequencesBatch) {
 
         if (sequence.getElements().isEmpty())
             return;
@@ -396,7 +406,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             // call for ElementsLearningAlgorithm
             nextRandom.set(nextRandom.get() * 25214903917L + 11);
             if (!elementsLearningAlgorithm.isEarlyTerminationHit()) {
-                    scoreElements.set(elementsLearningAlgorithm.learnSequence(sequence, nextRandom, alpha, batchSequences));
+                    scoreElements.set(elementsLearningAlgorithm.learnSequence(sequence, nextRandom, alpha, elementsBatch));
                 }
             else
                 scoreElements.set(elementsLearningAlgorithm.learnSequence(sequence, nextRandom, alpha));
@@ -406,7 +416,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             // call for SequenceLearningAlgorithm
             nextRandom.set(nextRandom.get() * 25214903917L + 11);
             if (!sequenceLearningAlgorithm.isEarlyTerminationHit())
-                scoreSequences.set(sequenceLearningAlgorithm.learnSequence(sequence, nextRandom, alpha, batchSequences));
+                scoreSequences.set(sequenceLearningAlgorithm.learnSequence(sequence, nextRandom, alpha, sequencesBatch));
         }
     }
 
@@ -462,6 +472,8 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
          */
         protected boolean preciseMode = false;
 
+        protected boolean batchedRounds = false;
+
         // defaults values for learning algorithms are set here
         protected ElementsLearningAlgorithm<T> elementsLearningAlgorithm = new SkipGram<>();
         protected SequenceLearningAlgorithm<T> sequenceLearningAlgorithm = new DBOW<>();
@@ -493,6 +505,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             this.variableWindows = configuration.getVariableWindows();
             this.useHierarchicSoftmax = configuration.isUseHierarchicSoftmax();
             this.preciseMode = configuration.isPreciseMode();
+            this.batchedRounds = configuration.isBatchedRounds();
 
             String modelUtilsClassName = configuration.getModelUtils();
             if (StringUtils.isNotEmpty(modelUtilsClassName)) {
@@ -593,7 +606,8 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         }
 
         /**
-         * This method defines batchSize option, viable only if iterations > 1
+         * This method defines batchSize option: number of training rounds, collected across sequences, executed as
+         * single batched op if {@link #useBatchedRounds(boolean)} is enabled.
          *
          * @param batchSize
          * @return
@@ -918,6 +932,23 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             return this;
         }
 
+        /**
+         * This method enables batched execution of training rounds: rounds collected across sequences are executed
+         * as single batched op, once batchSize rounds are collected. Otherwise each round is executed separately.
+         * Please note: within a batch, rounds are computed against the weights as they were before the batch,
+         * so results differ from per-round training.
+         *
+         * Default value: FALSE
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder<T> useBatchedRounds(boolean reallyUse) {
+            this.batchedRounds = reallyUse;
+            this.configuration.setBatchedRounds(reallyUse);
+            return this;
+        }
+
         /**
          * This method creates new WeightLookupTable<T> and VocabCache<T> if there were none set
          */
@@ -1194,6 +1225,10 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         private final long startTime;
         private final int totalEpochs;
 
+        // training rounds are buffered per thread, and executed as single op once batch is full
+        private final BatchSequences<T> elementsBatch;
+        private final BatchSequences<T> sequencesBatch;
+
         /*
                 Long constructors suck, so this should be reduced to something reasonable later
          */
@@ -1210,6 +1245,32 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             this.startTime = timer.get();
             this.nextRandom = new AtomicLong(this.threadId);
             this.setName("VectorCalculationsThread " + this.threadId);
+
+            int roundsBatchSize = configuration.getBatchSize();
+            boolean batched = configuration.isBatchedRounds() && roundsBatchSize > 1;
+            this.elementsBatch = batched ? new BatchSequences<T>(roundsBatchSize) : null;
+            this.sequencesBatch = batched ? new BatchSequences<T>(roundsBatchSize) : null;
+        }
+
+        /**
+         * Executes training rounds left in batches
+         */
+        private void flushBatches() {
+            if (elementsBatch != null && !elementsBatch.isEmpty()) {
+                if (elementsLearningAlgorithm instanceof SkipGram)
+                    ((SkipGram<T>) elementsLearningAlgorithm).finish(elementsBatch);
+                else if (elementsLearningAlgorithm instanceof CBOW)
+                    ((CBOW<T>) elementsLearningAlgorithm).finish(elementsBatch);
+                elementsBatch.clear();
+            }
+
+            if (sequencesBatch != null && !sequencesBatch.isEmpty()) {
+                if (sequenceLearningAlgorithm instanceof DBOW)
+                    ((SkipGram<T>) sequenceLearningAlgorithm.getElementsLearningAlgorithm()).finish(sequencesBatch);
+                else if (sequenceLearningAlgorithm instanceof DM)
+                    ((CBOW<T>) sequenceLearningAlgorithm.getElementsLearningAlgorithm()).finish(sequencesBatch);
+                sequencesBatch.clear();
+            }
         }
 
         @Override
@@ -1223,6 +1284,13 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             val workspace_id = "sequence_vectors_training_" + java.util.UUID.randomUUID().toString();
 
             Nd4j.getAffinityManager().getDeviceForCurrentThread();
+
+            // batched rounds may be executed at any point, so workers are set before training
+            if (elementsLearningAlgorithm instanceof SkipGram)
+                ((SkipGram)elementsLearningAlgorithm).setWorkers(workers);
+            else if (elementsLearningAlgorithm instanceof CBOW)
+                ((CBOW)elementsLearningAlgorithm).setWorkers(workers);
+
             while (digitizer.hasMoreLines()) {
                 try {
                     // get current sentence as list of VocabularyWords
@@ -1244,7 +1312,6 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                     // getting back number of iterations
                     for (int i = 0; i < numIterations; i++) {
 
-                        batchSequences = new BatchSequences<>(configuration.getBatchSize());
                         // we roll over sequences derived from digitizer, it's NOT window loop
                         for (int x = 0; x < sequences.size(); x++) {
                             try (val ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(conf, workspace_id)) {
@@ -1256,7 +1323,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                                                 / ((double) this.totalWordsCount) / (numIterations
                                                 * totalEpochs))));
 
-                                trainSequence(sequence, nextRandom, alpha);
+                                trainSequence(sequence, nextRandom, alpha, elementsBatch, sequencesBatch);
 
                                 // increment processed word count, please note: this affects learningRate decay
                                 totalLines.incrementAndGet();
@@ -1287,33 +1354,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                             }
                         }
 
-                        if (elementsLearningAlgorithm instanceof SkipGram)
-                            ((SkipGram)elementsLearningAlgorithm).setWorkers(workers);
-                        else if (elementsLearningAlgorithm instanceof CBOW)
-                            ((CBOW)elementsLearningAlgorithm).setWorkers(workers);
-
-                        int batchSize = configuration.getBatchSize();
-                        if (batchSize > 1 && batchSequences != null) {
-                            int rest = batchSequences.size() % batchSize;
-                            int chunks = ((batchSequences.size() >= batchSize) ? batchSequences.size() / batchSize : 0) + ((rest > 0)? 1 : 0);
-                            for (int j = 0; j < chunks; ++j) {
-                                if (trainElementsVectors) {
-                                    if (elementsLearningAlgorithm instanceof SkipGram)
-                                        ((SkipGram) elementsLearningAlgorithm).iterateSample(batchSequences.get(j));
-                                    else if (elementsLearningAlgorithm instanceof CBOW)
-                                        ((CBOW) elementsLearningAlgorithm).iterateSample(batchSequences.get(j));
-                                }
-
-                                if (trainSequenceVectors) {
-                                    if (sequenceLearningAlgorithm instanceof DBOW)
-                                        ((SkipGram<T>) sequenceLearningAlgorithm.getElementsLearningAlgorithm()).iterateSample(batchSequences.get(j));
-                                    else if (sequenceLearningAlgorithm instanceof DM)
-                                        ((CBOW<T>) sequenceLearningAlgorithm.getElementsLearningAlgorithm()).iterateSample(batchSequences.get(j));
-                                }
-                            }
-                            batchSequences.clear();
-                            batchSequences = null;
-                        }
+                        flushBatches();
 
                         if (eventListeners != null && !eventListeners.isEmpty()) {
                             for (VectorsListener listener : eventListeners) {
@@ -1329,6 +1370,8 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                 }
             }
 
+            flushBatches();
+
             if (trainElementsVectors) {
                 elementsLearningAlgorithm.finish();
             }
@@ -0,0 +1,578 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.deeplearning4j.models.word2vec;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.embeddings.reader.ModelUtils;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Read-only {@link WordVectors} implementation backed by a memory-mapped file.<br>
+ * Nothing except the file header is read at load time: vectors, vocabulary and the word-to-index hash table
+ * are all accessed through the OS page cache, so loading is near instantaneous, heap usage doesn't depend on
+ * vocabulary size, and multiple JVMs mapping the same file share a single physical copy of it.<br>
+ * <br>
+ * File layout (all values little-endian):
+ * <pre>
+ * header (64 bytes):   magic, version, vectorLength, numWords, section offsets, hash capacity
+ * matrix:              numWords x vectorLength floats, row-major, row i holds the vector for word i
+ * word offsets:        numWords + 1 longs, byte offsets of each word into the word bytes section
+ * word bytes:          UTF-8 encoded words, concatenated
+ * hash table:          open addressing table of (word index + 1), 0 marks an empty slot
+ * </pre>
+ * Use {@link #write(WordVectors, File)} to convert an existing model once, and {@link #load(File)} afterwards.<br>
+ * PLEASE NOTE: vocab() and lookupTable() aren't available, since there's no in-memory vocabulary or lookup table.
+ * Nearest-neighbour queries are answered with an exact scan over the mapped matrix.
+ */
+@Slf4j
+public class MappedWordVectors implements WordVectors {
+    private static final long serialVersionUID = 1L;
+
+    public static final long MAGIC = 0x4D4D56574A344C44L;   // "DL4JWVMM", little-endian
+    public static final int VERSION = 1;
+    protected static final int HEADER_LENGTH = 64;
+    protected static final int ALIGNMENT = 64;
+
+    private final File file;
+    private String unk = null;
+
+    private transient int vectorLength;
+    private transient int numWords;
+    private transient int rowsPerChunk;
+    private transient FloatBuffer[] matrix;
+    private transient LongBuffer wordOffsets;
+    private transient ByteBuffer wordBytes;
+    private transient IntBuffer hashTable;
+    private transient int hashMask;
+
+    private MappedWordVectors(@NonNull File file) throws IOException {
+        this.file = file;
+        map();
+    }
+
+    /**
+     * This method maps previously written file into memory
+     *
+     * @param file File created with {@link #write(WordVectors, File)}
+     * @return
+     */
+    public static MappedWordVectors load(@NonNull File file) throws IOException {
+        if (!file.exists() || file.isDirectory())
+            throw new FileNotFoundException("File [" + file.getAbsolutePath() + "] was not found");
+
+        return new MappedWordVectors(file);
+    }
+
+    private void map() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() < HEADER_LENGTH)
+                throw new IOException("File [" + file.getAbsolutePath() + "] is too short to be a mapped WordVectors file");
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getLong(0) != MAGIC)
+                throw new IOException("File [" + file.getAbsolutePath() + "] is not a mapped WordVectors file");
+            int version = header.getInt(8);
+            if (version != VERSION)
+                throw new IOException("Unsupported mapped WordVectors version: " + version);
+
+            vectorLength = header.getInt(12);
+            numWords = (int) header.getLong(16);
+            long matrixOffset = header.getLong(24);
+            long offsetsOffset = header.getLong(32);
+            long bytesOffset = header.getLong(40);
+            long hashOffset = header.getLong(48);
+            int hashCapacity = header.getInt(56);
+
+            // every chunk holds whole rows, so a single row never crosses the 2GB limit of a MappedByteBuffer
+            long rowBytes = 4L * vectorLength;
+            rowsPerChunk = (int) Math.max(1, Math.min(numWords, Integer.MAX_VALUE / rowBytes));
+            int numChunks = numWords == 0 ? 0 : (numWords + rowsPerChunk - 1) / rowsPerChunk;
+            matrix = new FloatBuffer[numChunks];
+            for (int c = 0; c < numChunks; c++) {
+                long rows = Math.min(rowsPerChunk, numWords - (long) c * rowsPerChunk);
+                matrix[c] = channel.map(FileChannel.MapMode.READ_ONLY, matrixOffset + (long) c * rowsPerChunk * rowBytes,
+                                rows * rowBytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+
+            wordOffsets = channel.map(FileChannel.MapMode.READ_ONLY, offsetsOffset, 8L * (numWords + 1))
+                            .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            wordBytes = channel.map(FileChannel.MapMode.READ_ONLY, bytesOffset, hashOffset - bytesOffset);
+            hashTable = channel.map(FileChannel.MapMode.READ_ONLY, hashOffset, 4L * hashCapacity)
+                            .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            hashMask = hashCapacity - 1;
+        }
+
+        log.debug("Mapped {} words of length {} from [{}]", numWords, vectorLength, file.getAbsolutePath());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        map();
+    }
+
+    /**
+     * This method writes given WordVectors into the memory-mappable layout expected by {@link #load(File)}.
+     * Vectors are streamed row by row, so only the encoded vocabulary is held on heap while writing.
+     *
+     * @param vectors WordVectors to be written
+     * @param file    Destination file
+     */
+    public static void write(@NonNull WordVectors vectors, @NonNull File file) throws IOException {
+        VocabCache<?> vocab = vectors.vocab();
+        int numWords = vocab.numWords();
+        int vectorLength = vectors.vectorSize();
+
+        byte[][] encoded = new byte[numWords][];
+        long[] offsets = new long[numWords + 1];
+        for (int i = 0; i < numWords; i++) {
+            encoded[i] = vocab.wordAtIndex(i).getBytes(StandardCharsets.UTF_8);
+            offsets[i + 1] = offsets[i] + encoded[i].length;
+        }
+
+        int hashCapacity = Integer.highestOneBit(Math.max(2, numWords * 2 - 1)) << 1;
+        Preconditions.checkState(hashCapacity > 0, "Too many words to build hash table: %s", numWords);
+        int[] table = new int[hashCapacity];
+        for (int i = 0; i < numWords; i++) {
+            int slot = mix(vocab.wordAtIndex(i).hashCode()) & (hashCapacity - 1);
+            while (table[slot] != 0)
+                slot = (slot + 1) & (hashCapacity - 1);
+            table[slot] = i + 1;
+        }
+
+        long matrixOffset = HEADER_LENGTH;
+        long offsetsOffset = align(matrixOffset + 4L * numWords * vectorLength);
+        long bytesOffset = offsetsOffset + 8L * (numWords + 1);
+        long hashOffset = align(bytesOffset + offsets[numWords]);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putLong(MAGIC).putInt(VERSION).putInt(vectorLength).putLong(numWords).putLong(matrixOffset)
+                            .putLong(offsetsOffset).putLong(bytesOffset).putLong(hashOffset).putInt(hashCapacity);
+            while (buffer.position() < HEADER_LENGTH)
+                buffer.put((byte) 0);
+
+            for (int i = 0; i < numWords; i++) {
+                INDArray vector = vectors.getWordVectorMatrix(vocab.wordAtIndex(i));
+                Preconditions.checkState(vector != null && vector.length() == vectorLength,
+                                "Vector for word [%s] is missing or has wrong length", vocab.wordAtIndex(i));
+                for (float f : vector.toFloatVector()) {
+                    ensureCapacity(channel, buffer, 4);
+                    buffer.putFloat(f);
+                }
+            }
+            pad(channel, buffer, offsetsOffset);
+
+            for (long offset : offsets) {
+                ensureCapacity(channel, buffer, 8);
+                buffer.putLong(offset);
+            }
+            for (byte[] word : encoded) {
+                ensureCapacity(channel, buffer, word.length);
+                buffer.put(word);
+            }
+            pad(channel, buffer, hashOffset);
+
+            for (int slot : table) {
+                ensureCapacity(channel, buffer, 4);
+                buffer.putInt(slot);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static void ensureCapacity(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes)
+            flush(channel, buffer);
+    }
+
+    private static void pad(FileChannel channel, ByteBuffer buffer, long target) throws IOException {
+        while (channel.position() + buffer.position() < target) {
+            ensureCapacity(channel, buffer, 1);
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the word stored at the given index
+     *
+     * @param index index of the word, 0..numWords-1
+     * @return
+     */
+    public String wordAtIndex(int index) {
+        int start = (int) wordOffsets.get(index);
+        int end = (int) wordOffsets.get(index + 1);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = wordBytes.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Number of words in this model
+     *
+     * @return
+     */
+    public int numWords() {
+        return numWords;
+    }
+
+    @Override
+    public String getUNK() {
+        return unk;
+    }
+
+    @Override
+    public void setUNK(String newUNK) {
+        this.unk = newUNK;
+    }
+
+    @Override
+    public boolean hasWord(String word) {
+        return word != null && indexOf(word) >= 0;
+    }
+
+    @Override
+    public int indexOf(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int slot = mix(word.hashCode()) & hashMask;
+        int entry;
+        while ((entry = hashTable.get(slot)) != 0) {
+            if (wordEquals(entry - 1, bytes))
+                return entry - 1;
+            slot = (slot + 1) & hashMask;
+        }
+        return -1;
+    }
+
+    private boolean wordEquals(int index, byte[] bytes) {
+        int start = (int) wordOffsets.get(index);
+        int end = (int) wordOffsets.get(index + 1);
+        if (end - start != bytes.length)
+            return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if (wordBytes.get(start + i) != bytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    private FloatBuffer row(int index) {
+        FloatBuffer view = matrix[index / rowsPerChunk].duplicate();
+        view.position((index % rowsPerChunk) * vectorLength);
+        return view;
+    }
+
+    private float[] rowAsFloats(int index) {
+        float[] result = new float[vectorLength];
+        row(index).get(result);
+        return result;
+    }
+
+    private int resolve(String word) {
+        int idx = word == null ? -1 : indexOf(word);
+        if (idx < 0 && getUNK() != null)
+            idx = indexOf(getUNK());
+        return idx;
+    }
+
+    @Override
+    public INDArray getWordVectorMatrix(String word) {
+        int idx = resolve(word);
+        if (idx < 0)
+            return null;
+
+        return Nd4j.createFromArray(rowAsFloats(idx));
+    }
+
+    @Override
+    public double[] getWordVector(String word) {
+        INDArray array = getWordVectorMatrix(word);
+        return array == null ? null : array.toDoubleVector();
+    }
+
+    @Override
+    public INDArray getWordVectorMatrixNormalized(String word) {
+        INDArray array = getWordVectorMatrix(word);
+        return array == null ? null : Transforms.unitVec(array);
+    }
+
+    @Override
+    public INDArray getWordVectors(@NonNull Collection<String> labels) {
+        List<INDArray> words = new ArrayList<>();
+        for (String label : labels) {
+            INDArray array = getWordVectorMatrix(label);
+            if (array != null)
+                words.add(array);
+        }
+
+        return Nd4j.vstack(words);
+    }
+
+    @Override
+    public INDArray getWordVectorsMean(Collection<String> labels) {
+        INDArray matrix = getWordVectors(labels);
+        return matrix.mean(0);
+    }
+
+    @Override
+    public double similarity(String label1, String label2) {
+        int idx1 = label1 == null ? -1 : indexOf(label1);
+        int idx2 = label2 == null ? -1 : indexOf(label2);
+        if (idx1 < 0 || idx2 < 0) {
+            log.debug("{}: {}; {}: {}", label1, idx1 < 0 ? "null" : "exists", label2, idx2 < 0 ? "null" : "exists");
+            return Double.NaN;
+        }
+
+        if (label1.equals(label2))
+            return 1.0;
+
+        return cosine(rowAsFloats(idx1), idx2);
+    }
+
+    private double cosine(float[] query, int index) {
+        FloatBuffer row = row(index);
+        int base = row.position();
+        double dot = 0.0, qNorm = 0.0, rNorm = 0.0;
+        for (int i = 0; i < vectorLength; i++) {
+            float r = row.get(base + i);
+            dot += query[i] * r;
+            qNorm += query[i] * query[i];
+            rNorm += r * r;
+        }
+        if (qNorm == 0.0 || rNorm == 0.0)
+            return 0.0;
+        return dot / (Math.sqrt(qNorm) * Math.sqrt(rNorm));
+    }
+
+    /**
+     * Words nearest to the given vector, using cosine similarity over all mapped vectors
+     *
+     * @param words vector to search for
+     * @param top   number of words to return
+     * @return
+     */
+    @Override
+    public Collection<String> wordsNearest(@NonNull INDArray words, int top) {
+        return nearest(words.toFloatVector(), top, new HashSet<Integer>());
+    }
+
+    private List<String> nearest(float[] query, int top, Set<Integer> exclude) {
+        Preconditions.checkArgument(query.length == vectorLength, "Expected vector of length %s, got %s", vectorLength,
+                        query.length);
+        PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        for (int i = 0; i < numWords; i++) {
+            if (exclude.contains(i))
+                continue;
+            double sim = cosine(query, i);
+            if (queue.size() < top) {
+                queue.add(new double[] {sim, i});
+            } else if (top > 0 && sim > queue.peek()[0]) {
+                queue.poll();
+                queue.add(new double[] {sim, i});
+            }
+        }
+
+        String[] result = new String[queue.size()];
+        for (int i = result.length - 1; i >= 0; i--)
+            result[i] = wordAtIndex((int) queue.poll()[1]);
+
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    @Override
+    public Collection<String> wordsNearest(String word, int n) {
+        return wordsNearest(Collections.singletonList(word), new ArrayList<String>(), n);
+    }
+
+    @Override
+    public Collection<String> wordsNearest(@NonNull Collection<String> positive, @NonNull Collection<String> negative,
+                    int top) {
+        Set<Integer> exclude = new HashSet<>();
+        float[] mean = new float[vectorLength];
+        for (String s : positive) {
+            if (!accumulate(s, mean, 1.0f, exclude))
+                return new ArrayList<>();
+        }
+        for (String s : negative) {
+            if (!accumulate(s, mean, -1.0f, exclude))
+                return new ArrayList<>();
+        }
+
+        int count = positive.size() + negative.size();
+        for (int i = 0; i < vectorLength; i++)
+            mean[i] /= count;
+
+        return nearest(mean, top, exclude);
+    }
+
+    private boolean accumulate(String word, float[] target, float sign, Set<Integer> exclude) {
+        int idx = word == null ? -1 : indexOf(word);
+        if (idx < 0)
+            return false;
+
+        float[] vector = rowAsFloats(idx);
+        for (int i = 0; i < vectorLength; i++)
+            target[i] += sign * vector[i];
+        exclude.add(idx);
+        return true;
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Collection<String> wordsNearestSum(INDArray words, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Collection<String> wordsNearestSum(String word, int n) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Collection<String> wordsNearestSum(Collection<String> positive, Collection<String> negative, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Map<String, Double> accuracy(List<String> questions) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public List<String> similarWordsInVocabTo(String word, double accuracy) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation, there's no in-memory vocabulary.
+     * Use {@link #indexOf(String)}, {@link #wordAtIndex(int)} and {@link #numWords()} instead.
+     */
+    @Override
+    public VocabCache vocab() {
+        throw new UnsupportedOperationException("Mapped WordVectors have no in-memory vocabulary");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public WeightLookupTable lookupTable() {
+        throw new UnsupportedOperationException("Mapped WordVectors have no in-memory lookup table");
+    }
+
+    /**
+     * Specifies ModelUtils to be used to access model
+     * PLEASE NOTE: This method has no effect in this implementation.
+     *
+     * @param utils
+     */
+    @Override
+    public void setModelUtils(ModelUtils utils) {
+        // no-op
+    }
+
+    @Override
+    public void loadWeightsInto(INDArray array) {
+        for (int i = 0; i < numWords; i++)
+            array.putRow(i, Nd4j.createFromArray(rowAsFloats(i)).castTo(array.dataType()));
+    }
+
+    @Override
+    public long vocabSize() {
+        return numWords;
+    }
+
+    @Override
+    public int vectorSize() {
+        return vectorLength;
+    }
+
+    @Override
+    public boolean jsonSerializable() {
+        return false;
+    }
+
+    @Override
+    public boolean outOfVocabularySupported() {
+        return false;
+    }
+}
@@ -36,6 +36,7 @@ import org.deeplearning4j.models.sequencevectors.iterators.AbstractSequenceItera
 import org.deeplearning4j.models.sequencevectors.transformers.impl.SentenceTransformer;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.PrimitiveVocabCache;
 import org.deeplearning4j.text.documentiterator.DocumentIterator;
 import org.deeplearning4j.text.documentiterator.LabelAwareIterator;
 import org.deeplearning4j.text.sentenceiterator.SentenceIterator;
@@ -130,6 +131,8 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
 
         if (this.vocab instanceof AbstractCache) {
             retVal.addProperty(VOCAB_LIST_FIELD, ((AbstractCache<VocabWord>) this.vocab).toJson());
+        } else if (this.vocab instanceof PrimitiveVocabCache) {
+            retVal.addProperty(VOCAB_LIST_FIELD, ((PrimitiveVocabCache) this.vocab).toJson());
         }
 
         return retVal.toString();
@@ -604,6 +607,12 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
             return this;
         }
 
+        @Override
+        public Builder useBatchedRounds(boolean reallyUse) {
+            super.useBatchedRounds(reallyUse);
+            return this;
+        }
+
         @Override
         public Builder intersectModel(@NonNull SequenceVectors vectors, boolean isLocked) {
             super.intersectModel(vectors, isLocked);
@@ -694,6 +703,7 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
             this.configuration.setModelUtils(this.modelUtils.getClass().getCanonicalName());
             this.configuration.setAllowParallelTokenization(this.allowParallelTokenization);
             this.configuration.setPreciseMode(this.preciseMode);
+            this.configuration.setBatchedRounds(this.batchedRounds);
 
             if (tokenizerFactory != null) {
                 this.configuration.setTokenizerFactory(tokenizerFactory.getClass().getCanonicalName());
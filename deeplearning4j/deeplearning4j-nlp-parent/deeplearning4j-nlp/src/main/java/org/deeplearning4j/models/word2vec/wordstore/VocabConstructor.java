@@ -30,15 +30,13 @@ import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.word2vec.Huffman;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.PrimitiveVocabCache;
 import org.deeplearning4j.text.invertedindex.InvertedIndex;
-import org.nd4j.common.util.ThreadUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.threadly.concurrent.PriorityScheduler;
 
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class VocabConstructor<T extends SequenceElement> {
@@ -54,9 +52,17 @@ public class VocabConstructor<T extends SequenceElement> {
     private T unk;
     private boolean allowParallelBuilder = true;
     private boolean lockf = false;
+    private long workerTableSize = WORKER_TABLE_SIZE;
 
     protected static final Logger log = LoggerFactory.getLogger(VocabConstructor.class);
 
+    private static final int BATCH_SIZE = 64;
+    // scavenger is fired when vocabulary is larger then this, and this many new elements were added since last run
+    private static final long SCAVENGER_VOCAB_SIZE = 10000000;
+    private static final long SCAVENGER_LOOP = 2000000;
+    // total number of elements all counting workers may hold before flushing their tables into shared partitions
+    private static final long WORKER_TABLE_SIZE = 4000000;
+
     private VocabConstructor() {
 
     }
@@ -185,79 +191,27 @@ public class VocabConstructor<T extends SequenceElement> {
         }
 
         if (buildHuffman) {
-            val huffman = new Huffman(result.vocabWords());
-            huffman.build();
-            huffman.applyIndexes(result);
+            if (result instanceof PrimitiveVocabCache) {
+                ((PrimitiveVocabCache) result).buildHuffmanTree();
+            } else {
+                val huffman = new Huffman(result.vocabWords());
+                huffman.build();
+                huffman.applyIndexes(result);
+            }
         }
 
         return result;
     }
 
-    public void processDocument(AbstractCache<T> targetVocab, Sequence<T> document,
-                                AtomicLong finalCounter, AtomicLong loopCounter) {
-        try {
-            Map<String, AtomicLong> seqMap = new HashMap<>();
-            //  log.info("Sequence length: ["+ document.getElements().size()+"]");
-
-            if (fetchLabels && document.getSequenceLabels() != null) {
-                for (T labelWord : document.getSequenceLabels()) {
-                    if (!targetVocab.hasToken(labelWord.getLabel())) {
-                        labelWord.setSpecial(true);
-                        labelWord.markAsLabel(true);
-                        labelWord.setElementFrequency(1);
-
-                        targetVocab.addToken(labelWord);
-                    }
-                }
-            }
-
-            List<String> tokens = document.asLabels();
-            for (String token : tokens) {
-                if (stopWords != null && stopWords.contains(token))
-                    continue;
-                if (token == null || token.isEmpty())
-                    continue;
-
-                if (!targetVocab.containsWord(token)) {
-                    T element = document.getElementByLabel(token);
-                    element.setElementFrequency(1);
-                    element.setSequencesCount(1);
-                    targetVocab.addToken(element);
-                    //                    elementsCounter.incrementAndGet();
-                    loopCounter.incrementAndGet();
-
-                    // if there's no such element in tempHolder, it's safe to set seqCount to 1
-                    seqMap.put(token, new AtomicLong(0));
-                } else {
-                    targetVocab.incrementWordCount(token);
-
-                    // if element exists in tempHolder, we should update it seqCount, but only once per sequence
-                    if (!seqMap.containsKey(token)) {
-                        seqMap.put(token, new AtomicLong(1));
-                        T element = targetVocab.wordFor(token);
-                        element.incrementSequencesCount();
-                    }
-
-                    if (index != null) {
-                        if (document.getSequenceLabel() != null) {
-                            index.addWordsToDoc(index.numDocuments(), document.getElements(), document.getSequenceLabel());
-                        } else {
-                            index.addWordsToDoc(index.numDocuments(), document.getElements());
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        finally {
-            finalCounter.incrementAndGet();
-        }
-    }
     /**
      * This method scans all sources passed through builder, and returns all words as vocab.
      * If TargetVocabCache was set during instance creation, it'll be filled too.
      *
+     * Sequences are read by the calling thread (so tokenization performed by the SequenceIterator isn't parallelized),
+     * and handed over in batches to counting workers. Each worker counts
+     * elements into its own primitive tables, split into partitions by element hash. Partition N of every worker
+     * holds the same subset of elements, so it's merged into shared partition N only: whenever a worker table grows
+     * above its size limit, and for all worker tables once source is exhausted (in parallel).
      *
      * @return
      */
@@ -266,7 +220,7 @@ public class VocabConstructor<T extends SequenceElement> {
         long lastSequences = 0;
         long lastElements = 0;
         long startTime = lastTime;
-        AtomicLong parsedCount = new AtomicLong(0);
+        long parsedCount = 0;
         if (resetCounters && buildHuffmanTree)
             throw new IllegalStateException("You can't reset counters and build Huffman tree at the same time!");
 
@@ -274,123 +228,103 @@ public class VocabConstructor<T extends SequenceElement> {
             cache = new AbstractCache.Builder<T>().build();
 
         log.debug("Target vocab size before building: [" + cache.numWords() + "]");
-        final AtomicLong loopCounter = new AtomicLong(0);
 
-        AbstractCache<T> topHolder = new AbstractCache.Builder<T>().minElementFrequency(0).build();
+        Set<String> stopWordsSet = stopWords == null ? Collections.<String>emptySet() : new HashSet<>(stopWords);
+        int numWorkers = allowParallelBuilder ? Math.max(2, Runtime.getRuntime().availableProcessors()) : 1;
+        ExecutorService executorService = numWorkers > 1 ? Executors.newFixedThreadPool(numWorkers, r -> {
+            Thread thread = new Thread(r, "VocabConstructor worker");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
 
         int cnt = 0;
-        int numProc = Runtime.getRuntime().availableProcessors();
-        int numThreads = Math.max(numProc / 2, 2);
-        PriorityScheduler executorService = new PriorityScheduler(numThreads);
-        final AtomicLong execCounter = new AtomicLong(0);
-        final AtomicLong finCounter = new AtomicLong(0);
-
-        for (VocabSource<T> source : sources) {
-            SequenceIterator<T> iterator = source.getIterator();
-            iterator.reset();
-
-            log.debug("Trying source iterator: [" + cnt + "]");
-            log.debug("Target vocab size before building: [" + cache.numWords() + "]");
-            cnt++;
-
-            AbstractCache<T> tempHolder = new AbstractCache.Builder<T>().build();
-
-            int sequences = 0;
-            while (iterator.hasMoreSequences()) {
-                Sequence<T> document = iterator.nextSequence();
-
-                seqCount.incrementAndGet();
-                parsedCount.addAndGet(document.size());
-                tempHolder.incrementTotalDocCount();
-                execCounter.incrementAndGet();
-
-                if (allowParallelBuilder) {
-                    executorService.execute(new VocabRunnable(tempHolder, document, finCounter, loopCounter));
-                    // as we see in profiler, this lock isn't really happen too often
-                    // we don't want too much left in tail
-
-                    while (execCounter.get() - finCounter.get() > numProc) {
-                        ThreadUtils.uncheckedSleep(1);
+        try {
+            for (VocabSource<T> source : sources) {
+                SequenceIterator<T> iterator = source.getIterator();
+                iterator.reset();
+
+                log.debug("Trying source iterator: [" + cnt + "]");
+                log.debug("Target vocab size before building: [" + cache.numWords() + "]");
+                cnt++;
+
+                SharedCounts shared = new SharedCounts(numWorkers, source.getMinWordFrequency());
+                List<CountingWorker> workers = new ArrayList<>();
+                for (int w = 0; w < numWorkers; w++)
+                    workers.add(new CountingWorker(shared, numWorkers, stopWordsSet));
+
+                BlockingQueue<List<Sequence<T>>> queue = null;
+                List<Future<?>> futures = new ArrayList<>();
+                if (executorService != null) {
+                    queue = new ArrayBlockingQueue<>(numWorkers * 4);
+                    for (CountingWorker worker : workers) {
+                        BlockingQueue<List<Sequence<T>>> workerQueue = queue;
+                        futures.add(executorService.submit(() -> worker.consume(workerQueue)));
                     }
                 }
-                else  {
-                    processDocument(tempHolder, document, finCounter, loopCounter);
-                }
 
-                sequences++;
-                if (seqCount.get() % 100000 == 0) {
-                    long currentTime = System.currentTimeMillis();
-                    long currentSequences = seqCount.get();
-                    long currentElements = parsedCount.get();
-
-                    double seconds = (currentTime - lastTime) / (double) 1000;
-
-                    //                    Collections.sort(timesHasNext);
-                    //                    Collections.sort(timesNext);
-
-                    double seqPerSec = (currentSequences - lastSequences) / seconds;
-                    double elPerSec = (currentElements - lastElements) / seconds;
-                    //                    log.info("Document time: {} us; hasNext time: {} us", timesNext.get(timesNext.size() / 2), timesHasNext.get(timesHasNext.size() / 2));
-                    log.info("Sequences checked: [{}]; Current vocabulary size: [{}]; Sequences/sec: {}; Words/sec: {};",
-                                    seqCount.get(), tempHolder.numWords(), String.format("%.2f", seqPerSec),
-                                    String.format("%.2f", elPerSec));
-                    lastTime = currentTime;
-                    lastElements = currentElements;
-                    lastSequences = currentSequences;
-
-                    //                    timesHasNext.clear();
-                    //                    timesNext.clear();
-                }
+                long sourceSequences = 0;
+                List<Sequence<T>> batch = new ArrayList<>(BATCH_SIZE);
+                while (iterator.hasMoreSequences()) {
+                    Sequence<T> document = iterator.nextSequence();
 
-                /**
-                 * Firing scavenger loop
-                 */
-                if (enableScavenger && loopCounter.get() >= 2000000 && tempHolder.numWords() > 10000000) {
-                    log.info("Starting scavenger...");
-                    while (execCounter.get() != finCounter.get()) {
-                        ThreadUtils.uncheckedSleep(1);
+                    seqCount.incrementAndGet();
+                    parsedCount += document.size();
+                    sourceSequences++;
+
+                    if (queue == null) {
+                        workers.get(0).process(document);
+                    } else {
+                        batch.add(document);
+                        if (batch.size() == BATCH_SIZE) {
+                            enqueue(queue, batch);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
                     }
 
-                    filterVocab(tempHolder, Math.max(1, source.getMinWordFrequency() / 2));
-                    loopCounter.set(0);
+                    if (seqCount.get() % 100000 == 0) {
+                        long currentTime = System.currentTimeMillis();
+                        long currentSequences = seqCount.get();
+
+                        double seconds = (currentTime - lastTime) / (double) 1000;
+                        double seqPerSec = (currentSequences - lastSequences) / seconds;
+                        double elPerSec = (parsedCount - lastElements) / seconds;
+                        log.info("Sequences checked: [{}]; Sequences/sec: {}; Words/sec: {};", seqCount.get(),
+                                        String.format("%.2f", seqPerSec), String.format("%.2f", elPerSec));
+                        lastTime = currentTime;
+                        lastElements = parsedCount;
+                        lastSequences = currentSequences;
+                    }
                 }
 
-                //                timesNext.add((time2 - time1) / 1000L);
-                //                timesHasNext.add((time1 - time3) / 1000L);
-
-                //                time3 = System.nanoTime();
-            }
+                if (queue != null) {
+                    if (!batch.isEmpty())
+                        enqueue(queue, batch);
+                    // empty batch tells worker that source is exhausted
+                    for (int w = 0; w < numWorkers; w++)
+                        enqueue(queue, Collections.<Sequence<T>>emptyList());
+                    await(futures);
+                }
 
-            // block untill all threads are finished
-            log.debug("Waiting till all processes stop...");
-            while (execCounter.get() != finCounter.get()) {
-                ThreadUtils.uncheckedSleep(1);
-            }
+                reduce(shared, workers, executorService);
 
+                // apply minWordFrequency set for this source, and transfer results to target vocab
+                boolean added = false;
+                for (TokenCounts counts : shared.partitions) {
+                    if (counts.transferTo(cache, source.getMinWordFrequency()))
+                        added = true;
+                }
+                if (added)
+                    cache.incrementTotalDocCount(sourceSequences);
 
-            // apply minWordFrequency set for this source
-            log.debug("Vocab size before truncation: [" + tempHolder.numWords() + "],  NumWords: ["
-                            + tempHolder.totalWordOccurrences() + "], sequences parsed: [" + seqCount.get()
-                            + "], counter: [" + parsedCount.get() + "]");
-            if (source.getMinWordFrequency() > 0) {
-                filterVocab(tempHolder, source.getMinWordFrequency());
+                log.debug("Vocab size after source: [" + cache.numWords() + "],  NumWords: ["
+                                + cache.totalWordOccurrences() + "], sequences parsed: [" + seqCount.get()
+                                + "], counter: [" + parsedCount + "]");
             }
-
-            log.debug("Vocab size after truncation: [" + tempHolder.numWords() + "],  NumWords: ["
-                            + tempHolder.totalWordOccurrences() + "], sequences parsed: [" + seqCount.get()
-                            + "], counter: [" + parsedCount.get() + "]");
-            // at this moment we're ready to transfer
-            topHolder.importVocabulary(tempHolder);
+        } finally {
+            if (executorService != null)
+                executorService.shutdownNow();
         }
 
-        // at this moment, we have vocabulary full of words, and we have to reset counters before transfer everything back to VocabCache
-
-        //topHolder.resetWordCounters();
-
-
-        System.gc();
-        cache.importVocabulary(topHolder);
-
         // adding UNK word
         if (unk != null) {
             log.info("Adding UNK element to vocab...");
@@ -419,15 +353,15 @@ public class VocabConstructor<T extends SequenceElement> {
                 }
             }
             // and now we're building Huffman tree
-            val huffman = new Huffman(cache.vocabWords());
-            huffman.build();
-            huffman.applyIndexes(cache);
+            if (cache instanceof PrimitiveVocabCache) {
+                ((PrimitiveVocabCache) cache).buildHuffmanTree();
+            } else {
+                val huffman = new Huffman(cache.vocabWords());
+                huffman.build();
+                huffman.applyIndexes(cache);
+            }
         }
 
-        executorService.shutdown();
-
-        System.gc();
-
         long endSequences = seqCount.get();
         long endTime = System.currentTimeMillis();
         double seconds = (endTime - startTime) / (double) 1000;
@@ -437,19 +371,349 @@ public class VocabConstructor<T extends SequenceElement> {
         return cache;
     }
 
-    protected void filterVocab(AbstractCache<T> cache, int minWordFrequency) {
-        int numWords = cache.numWords();
-        LinkedBlockingQueue<String> labelsToRemove = new LinkedBlockingQueue<>();
-        for (T element : cache.vocabWords()) {
-            if (element.getElementFrequency() < minWordFrequency && !element.isSpecial() && !element.isLabel())
-                labelsToRemove.add(element.getLabel());
+    private static <E> void enqueue(BlockingQueue<E> queue, E element) {
+        try {
+            queue.put(element);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void await(List<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Flushes remaining partitions of all workers into shared partitions, partitions are processed in parallel
+     */
+    private void reduce(SharedCounts shared, List<CountingWorker> workers, ExecutorService executorService) {
+        int numPartitions = shared.partitions.length;
+        if (executorService == null) {
+            for (int p = 0; p < numPartitions; p++)
+                mergePartition(workers, p);
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(numPartitions);
+        for (int p = 0; p < numPartitions; p++) {
+            int partition = p;
+            futures.add(executorService.submit(() -> mergePartition(workers, partition)));
+        }
+        await(futures);
+    }
+
+    private void mergePartition(List<CountingWorker> workers, int partition) {
+        for (CountingWorker worker : workers)
+            worker.flush(partition);
+    }
+
+    /**
+     * Partitions all counting workers flush their tables into. Each partition is guarded by its own lock, so workers
+     * flushing different partitions don't contend.
+     */
+    private class SharedCounts {
+        private final TokenCounts[] partitions;
+        private final long[] addedSinceScavenge;
+        private final int scavengerThreshold;
+        private final long scavengerSize;
+        private final long scavengerLoop;
+
+        private SharedCounts(int numPartitions, int minWordFrequency) {
+            this.partitions = new VocabConstructor.TokenCounts[numPartitions];
+            for (int p = 0; p < numPartitions; p++)
+                partitions[p] = new TokenCounts();
+            this.addedSinceScavenge = new long[numPartitions];
+            // shared partitions hold counts merged from all workers, so the usual threshold applies
+            this.scavengerThreshold = Math.max(1, minWordFrequency / 2);
+            this.scavengerSize = SCAVENGER_VOCAB_SIZE / numPartitions;
+            this.scavengerLoop = SCAVENGER_LOOP / numPartitions;
+        }
+
+        private void merge(int partition, TokenCounts counts) {
+            TokenCounts target = partitions[partition];
+            synchronized (target) {
+                addedSinceScavenge[partition] += target.mergeFrom(counts);
+                if (enableScavenger && addedSinceScavenge[partition] >= scavengerLoop && target.size > scavengerSize) {
+                    target.filter(scavengerThreshold);
+                    addedSinceScavenge[partition] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Counting worker: holds its own partitions, so no synchronization is needed while counting. Partitions are
+     * flushed into shared ones once they grow above the limit, so worker tables stay bounded.
+     */
+    private class CountingWorker {
+        private final SharedCounts shared;
+        private final TokenCounts[] partitions;
+        private final Set<String> stopWords;
+        private final long flushSize;
+        private long sequenceId = 0;
+
+        private CountingWorker(SharedCounts shared, int numWorkers, Set<String> stopWords) {
+            this.shared = shared;
+            this.partitions = new VocabConstructor.TokenCounts[shared.partitions.length];
+            for (int p = 0; p < partitions.length; p++)
+                partitions[p] = new TokenCounts();
+            this.stopWords = stopWords;
+            this.flushSize = Math.max(1, workerTableSize / numWorkers / partitions.length);
+        }
+
+        private TokenCounts partitionFor(String label) {
+            if (partitions.length == 1)
+                return partitions[0];
+
+            // different mixing from TokenCounts slots, so partitions don't cluster inside tables
+            int h = label.hashCode() * 0x85EBCA6B;
+            h ^= h >>> 13;
+            return partitions[(h & Integer.MAX_VALUE) % partitions.length];
+        }
+
+        private Void consume(BlockingQueue<List<Sequence<T>>> queue) throws Exception {
+            Exception error = null;
+            while (true) {
+                List<Sequence<T>> batch = queue.take();
+                if (batch.isEmpty())
+                    break;
+
+                // after failure we keep draining the queue, so producer never blocks
+                if (error != null)
+                    continue;
+
+                try {
+                    for (Sequence<T> document : batch)
+                        process(document);
+                } catch (Exception e) {
+                    error = e;
+                }
+            }
+
+            if (error != null)
+                throw error;
+            return null;
+        }
+
+        private void process(Sequence<T> document) {
+            long sequence = sequenceId++;
+
+            if (fetchLabels && document.getSequenceLabels() != null) {
+                for (T labelWord : document.getSequenceLabels())
+                    partitionFor(labelWord.getLabel()).addLabel(labelWord);
+            }
+
+            boolean hasTokens = false;
+            List<String> tokens = document.asLabels();
+            for (String token : tokens) {
+                if (token == null || token.isEmpty())
+                    continue;
+                if (stopWords.contains(token))
+                    continue;
+
+                hasTokens = true;
+                partitionFor(token).add(token, document, sequence);
+            }
+
+            if (index != null && hasTokens) {
+                if (document.getSequenceLabel() != null) {
+                    index.addWordsToDoc(index.numDocuments(), document.getElements(), document.getSequenceLabel());
+                } else {
+                    index.addWordsToDoc(index.numDocuments(), document.getElements());
+                }
+            }
+
+            // flushing only between sequences, so sequence counts stay exact
+            for (int p = 0; p < partitions.length; p++) {
+                if (partitions[p].size >= flushSize)
+                    flush(p);
+            }
+        }
+
+        private void flush(int partition) {
+            TokenCounts counts = partitions[partition];
+            if (counts.size == 0)
+                return;
+
+            shared.merge(partition, counts);
+            // releasing memory, table will grow again as needed
+            partitions[partition] = new TokenCounts();
+        }
+    }
+
+    /**
+     * Open addressing table of element counters. Element frequencies, number of sequences containing element, and
+     * the last sequence element was seen in are kept in primitive arrays. First element instance seen for each label
+     * is kept, to be transferred into target vocabulary.
+     */
+    private class TokenCounts {
+        private String[] keys = new String[64];
+        private long[] frequencies = new long[64];
+        private long[] sequences = new long[64];
+        private long[] lastSequence = new long[64];
+        private boolean[] labels = new boolean[64];
+        private Object[] elements = new Object[64];
+        private int size;
+
+        private int slot(String key) {
+            int mask = keys.length - 1;
+            int h = key.hashCode() * 0x9E3779B9;
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (keys[slot] != null && !keys[slot].equals(key))
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private int insert(String key, Object element) {
+            if ((size + 1) * 2 > keys.length)
+                resize(keys.length * 2);
+
+            int slot = slot(key);
+            keys[slot] = key;
+            elements[slot] = element;
+            lastSequence[slot] = -1;
+            size++;
+            return slot;
+        }
+
+        /**
+         * @return true if element wasn't seen before
+         */
+        private boolean add(String token, Sequence<T> document, long sequence) {
+            int slot = slot(token);
+            boolean added = keys[slot] == null;
+            if (added)
+                slot = insert(token, document.getElementByLabel(token));
+
+            frequencies[slot]++;
+            if (lastSequence[slot] != sequence) {
+                lastSequence[slot] = sequence;
+                sequences[slot]++;
+            }
+            return added;
+        }
+
+        private void addLabel(T label) {
+            int slot = slot(label.getLabel());
+            if (keys[slot] == null) {
+                slot = insert(label.getLabel(), label);
+            } else if (!labels[slot]) {
+                elements[slot] = label;
+            }
+            labels[slot] = true;
+        }
+
+        /**
+         * @return number of elements that weren't present in this table before
+         */
+        private int mergeFrom(TokenCounts other) {
+            int added = 0;
+            if (other.size > size && size < keys.length / 4)
+                resize(Integer.highestOneBit(Math.max(other.size + size, 32) - 1) << 2);
+
+            for (int i = 0; i < other.keys.length; i++) {
+                String key = other.keys[i];
+                if (key == null)
+                    continue;
+
+                int slot = slot(key);
+                if (keys[slot] == null) {
+                    slot = insert(key, other.elements[i]);
+                    added++;
+                } else if (other.labels[i] && !labels[slot])
+                    elements[slot] = other.elements[i];
+
+                frequencies[slot] += other.frequencies[i];
+                sequences[slot] += other.sequences[i];
+                labels[slot] |= other.labels[i];
+            }
+            return added;
         }
 
-        for (String label : labelsToRemove) {
-            cache.removeElement(label);
+        private void resize(int capacity) {
+            String[] oldKeys = keys;
+            long[] oldFrequencies = frequencies;
+            long[] oldSequences = sequences;
+            long[] oldLastSequence = lastSequence;
+            boolean[] oldLabels = labels;
+            Object[] oldElements = elements;
+
+            keys = new String[capacity];
+            frequencies = new long[capacity];
+            sequences = new long[capacity];
+            lastSequence = new long[capacity];
+            labels = new boolean[capacity];
+            elements = new Object[capacity];
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null)
+                    continue;
+
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                frequencies[slot] = oldFrequencies[i];
+                sequences[slot] = oldSequences[i];
+                lastSequence[slot] = oldLastSequence[i];
+                labels[slot] = oldLabels[i];
+                elements[slot] = oldElements[i];
+            }
         }
 
-        log.debug("Scavenger: Words before: {}; Words after: {};", numWords, cache.numWords());
+        /**
+         * Removes rare elements, keeping labels and special elements
+         */
+        private void filter(int minWordFrequency) {
+            String[] oldKeys = keys;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null && frequencies[i] < minWordFrequency && !labels[i]
+                                && !((T) elements[i]).isSpecial()) {
+                    keys[i] = null;
+                    size--;
+                }
+            }
+            // rehash survivors, since removal breaks probe sequences
+            resize(keys.length);
+        }
+
+        /**
+         * Transfers counted elements into target vocabulary
+         *
+         * @return true if at least one element was added to vocabulary
+         */
+        @SuppressWarnings("unchecked")
+        private boolean transferTo(VocabCache<T> target, int minWordFrequency) {
+            boolean added = false;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == null)
+                    continue;
+
+                T element = (T) elements[i];
+                // labels are counted once, plus their occurrences as regular elements
+                long frequency = frequencies[i] + (labels[i] ? 1 : 0);
+                if (labels[i]) {
+                    element.setSpecial(true);
+                    element.markAsLabel(true);
+                }
+
+                if (minWordFrequency > 0 && frequency < minWordFrequency && !element.isSpecial() && !element.isLabel())
+                    continue;
+
+                element.setElementFrequency(frequency);
+                element.setSequencesCount(sequences[i]);
+                if (target.addToken(element))
+                    added = true;
+            }
+            return added;
+        }
     }
 
     public static class Builder<T extends SequenceElement> {
@@ -464,6 +728,7 @@ public class VocabConstructor<T extends SequenceElement> {
         private T unk;
         private boolean allowParallelBuilder = true;
         private boolean lockf = false;
+        private long workerTableSize = WORKER_TABLE_SIZE;
 
         public Builder() {
 
@@ -488,6 +753,18 @@ public class VocabConstructor<T extends SequenceElement> {
             return this;
         }
 
+        /**
+         * This method sets the total number of elements counting workers keep in their own tables, before flushing
+         * them into shared tables. Mostly useful for tests.
+         *
+         * @param workerTableSize
+         * @return
+         */
+        protected Builder<T> setWorkerTableSize(long workerTableSize) {
+            this.workerTableSize = workerTableSize;
+            return this;
+        }
+
         /**
          * Defines, if adaptive gradients should be created during vocabulary mastering
          *
@@ -584,6 +861,7 @@ public class VocabConstructor<T extends SequenceElement> {
             constructor.unk = this.unk;
             constructor.allowParallelBuilder = this.allowParallelBuilder;
             constructor.lockf = this.lockf;
+            constructor.workerTableSize = this.workerTableSize;
 
             return constructor;
         }
@@ -602,32 +880,4 @@ public class VocabConstructor<T extends SequenceElement> {
         private int minWordFrequency;
     }
 
-
-    protected class VocabRunnable implements Runnable {
-        private final AtomicLong finalCounter;
-        private final Sequence<T> document;
-        private final AbstractCache<T> targetVocab;
-        private final AtomicLong loopCounter;
-        private AtomicBoolean done = new AtomicBoolean(false);
-
-        public VocabRunnable(@NonNull AbstractCache<T> targetVocab, @NonNull Sequence<T> sequence,
-                        @NonNull AtomicLong finalCounter, @NonNull AtomicLong loopCounter) {
-            this.finalCounter = finalCounter;
-            this.document = sequence;
-            this.targetVocab = targetVocab;
-            this.loopCounter = loopCounter;
-        }
-
-	    @Override
-        public void run() {
-             try {
-                 processDocument(targetVocab, document, finalCounter, loopCounter);
-             } catch (Exception e) {
-                 throw new RuntimeException(e);
-             }
-             finally {
-                done.set(true);
-            }
-        }
-    }
 }
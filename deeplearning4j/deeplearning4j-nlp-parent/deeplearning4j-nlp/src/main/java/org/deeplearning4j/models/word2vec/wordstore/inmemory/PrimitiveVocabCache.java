@@ -0,0 +1,1185 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.deeplearning4j.models.word2vec.wordstore.inmemory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.shade.jackson.core.JsonProcessingException;
+import org.nd4j.shade.jackson.databind.DeserializationFeature;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+import org.nd4j.shade.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * VocabCache implementation that keeps the whole vocabulary in primitive arrays instead of a graph of
+ * VocabWord objects:
+ * <ul>
+ *     <li>labels are interned into a single char arena, entries reference them by offset and length</li>
+ *     <li>frequencies, document counts, Huffman indexes and flags are stored in parallel arrays</li>
+ *     <li>Huffman codes and points are packed into shared byte/int arrays</li>
+ *     <li>label, storage id and Huffman index lookups use open addressing tables of entry ids</li>
+ * </ul>
+ * That makes per-word overhead a few dozen bytes, and the vocabulary itself a fixed number of large objects
+ * regardless of its size.<br>
+ * <br>
+ * Elements returned by {@link #wordFor(String)}, {@link #elementAtIndex(int)}, {@link #vocabWords()} etc. are
+ * materialized on demand. Up to 4096 recently materialized elements are kept and reused, so per-token lookups during
+ * training don't rebuild frequent elements. A kept element is dropped when its own entry is modified through this
+ * cache or through another element instance; all of them are dropped when elements are removed or the Huffman tree
+ * is rebuilt. Updates made through the kept element itself keep it, so write-through doesn't produce garbage.
+ * Changes to element frequencies, counters, index and flags are written back to this cache,
+ * Huffman codes and points are not: use {@link #buildHuffmanTree()} instead of {@link org.deeplearning4j.models.word2vec.Huffman}.
+ * Collections returned by {@link #words()} and {@link #vocabWords()} are views, that shouldn't be iterated while the
+ * vocabulary is modified.<br>
+ * <br>
+ * PLEASE NOTE: Only VocabWord elements are supported.
+ */
+@Slf4j
+public class PrimitiveVocabCache implements VocabCache<VocabWord> {
+    private static final long serialVersionUID = 5281316395735021937L;
+
+    private static final String CLASS_FIELD = "@class";
+    private static final String VOCAB_LIST_FIELD = "VocabList";
+    private static final String VOCAB_ITEM_FIELD = "VocabItem";
+    private static final String DOC_CNT_FIELD = "DocumentsCounter";
+    private static final String MINW_FREQ_FIELD = "MinWordsFrequency";
+    private static final String HUGE_MODEL_FIELD = "HugeModelExpected";
+    private static final String STOP_WORDS_FIELD = "StopWords";
+    private static final String SCAVENGER_FIELD = "ScavengerThreshold";
+    private static final String RETENTION_FIELD = "RetentionDelay";
+    private static final String TOTAL_WORD_FIELD = "TotalWordCount";
+
+    private static final int MAX_CODE_LENGTH = 40;
+    // number of recently materialized elements kept, power of 2
+    private static final int ELEMENT_CACHE_SIZE = 4096;
+
+    private static final byte FLAG_SPECIAL = 1;
+    private static final byte FLAG_LABEL = 2;
+    private static final byte FLAG_LOCKED = 4;
+    private static final byte FLAG_INIT = 8;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int size;
+
+    // interned labels
+    private char[] arena;
+    private int arenaSize;
+    private int arenaGarbage;
+
+    // per-entry data, indexed by entry id
+    private int[] labelOffsets;
+    private int[] labelLengths;
+    private long[] storageIds;
+    private double[] frequencies;
+    private long[] sequencesCounts;
+    private int[] indexes;
+    private byte[] flags;
+    private byte[] codeLengths;
+    private int[] codeOffsets;
+    private int[] pointOffsets;
+
+    // packed Huffman codes & points
+    private byte[] codes;
+    private int codesSize;
+    private int[] points;
+    private int pointsSize;
+
+    // open addressing tables, values are entry id + 1, 0 means empty slot
+    private int[] labelTable;
+    private int[] idTable;
+    private int[] indexTable;
+
+    // recently materialized elements, direct-mapped by entry id. Elements are valid for a single elementsVersion only,
+    // which changes when entries are moved or rebuilt as a whole. Updates of single entries drop only their own element
+    private transient AtomicReferenceArray<CachedElement> elementCache = new AtomicReferenceArray<>(ELEMENT_CACHE_SIZE);
+    private long elementsVersion;
+
+    private final AtomicLong documentsCounter = new AtomicLong(0);
+    private final AtomicLong totalWordCount = new AtomicLong(0);
+    private int minWordFrequency = 0;
+
+    protected PrimitiveVocabCache(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        arena = new char[capacity * 8];
+        labelOffsets = new int[capacity];
+        labelLengths = new int[capacity];
+        storageIds = new long[capacity];
+        frequencies = new double[capacity];
+        sequencesCounts = new long[capacity];
+        indexes = new int[capacity];
+        flags = new byte[capacity];
+        codeLengths = new byte[capacity];
+        codeOffsets = new int[capacity];
+        pointOffsets = new int[capacity];
+        codes = new byte[0];
+        points = new int[0];
+
+        int tableSize = tableSizeFor(capacity);
+        labelTable = new int[tableSize];
+        idTable = new int[tableSize];
+        indexTable = new int[capacity];
+    }
+
+    private static int tableSizeFor(int entries) {
+        // load factor stays below 0.5
+        int size = Integer.highestOneBit(Math.max(2, entries) - 1) << 2;
+        Preconditions.checkState(size > 0, "Vocabulary is too large: %s entries", entries);
+        return size;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int mix(long h) {
+        return mix((int) (h ^ (h >>> 32)));
+    }
+
+    /*
+        Lookups & table maintenance. All of these expect the lock to be held by the caller
+     */
+
+    private int find(String label) {
+        int mask = labelTable.length - 1;
+        int slot = mix(label.hashCode()) & mask;
+        int entry;
+        while ((entry = labelTable[slot]) != 0) {
+            if (labelEquals(entry - 1, label))
+                return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int find(long storageId) {
+        int mask = idTable.length - 1;
+        int slot = mix(storageId) & mask;
+        int entry;
+        while ((entry = idTable[slot]) != 0) {
+            if (storageIds[entry - 1] == storageId)
+                return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int findByIndex(int index) {
+        if (index < 0 || index >= indexTable.length)
+            return -1;
+        return indexTable[index] - 1;
+    }
+
+    private boolean labelEquals(int entry, String label) {
+        int length = labelLengths[entry];
+        if (length != label.length())
+            return false;
+        int offset = labelOffsets[entry];
+        for (int i = 0; i < length; i++) {
+            if (arena[offset + i] != label.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private int labelHash(int entry) {
+        // same as String.hashCode()
+        int h = 0;
+        int offset = labelOffsets[entry];
+        for (int i = 0; i < labelLengths[entry]; i++)
+            h = 31 * h + arena[offset + i];
+        return h;
+    }
+
+    private String label(int entry) {
+        return new String(arena, labelOffsets[entry], labelLengths[entry]);
+    }
+
+    private void insertSlot(int[] table, int hash, int entry) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+        table[slot] = entry + 1;
+    }
+
+    private int slotOf(int[] table, int hash, int entry) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != entry + 1)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Backward shift deletion for linear probing, keeps probe sequences intact without tombstones
+     */
+    private void removeSlot(int[] table, int slot, boolean byLabel) {
+        int mask = table.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (table[next] != 0) {
+            int entry = table[next] - 1;
+            int home = (byLabel ? mix(labelHash(entry)) : mix(storageIds[entry])) & mask;
+            // move entry into the hole, if hole lies within its probe sequence
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[hole] = 0;
+    }
+
+    private void ensureEntryCapacity(int required) {
+        if (required <= labelOffsets.length)
+            return;
+
+        int capacity = Math.max(required, labelOffsets.length + (labelOffsets.length >> 1));
+        labelOffsets = Arrays.copyOf(labelOffsets, capacity);
+        labelLengths = Arrays.copyOf(labelLengths, capacity);
+        storageIds = Arrays.copyOf(storageIds, capacity);
+        frequencies = Arrays.copyOf(frequencies, capacity);
+        sequencesCounts = Arrays.copyOf(sequencesCounts, capacity);
+        indexes = Arrays.copyOf(indexes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        codeLengths = Arrays.copyOf(codeLengths, capacity);
+        codeOffsets = Arrays.copyOf(codeOffsets, capacity);
+        pointOffsets = Arrays.copyOf(pointOffsets, capacity);
+
+        int tableSize = tableSizeFor(capacity);
+        if (tableSize > labelTable.length) {
+            labelTable = new int[tableSize];
+            idTable = new int[tableSize];
+            for (int e = 0; e < size; e++) {
+                insertSlot(labelTable, mix(labelHash(e)), e);
+                insertSlot(idTable, mix(storageIds[e]), e);
+            }
+        }
+    }
+
+    private void ensureIndexCapacity(int index) {
+        if (index >= indexTable.length)
+            indexTable = Arrays.copyOf(indexTable, Math.max(index + 1, indexTable.length + (indexTable.length >> 1)));
+    }
+
+    private int appendLabel(String label) {
+        int length = label.length();
+        if (arenaSize + length > arena.length) {
+            if (arenaGarbage > arenaSize / 2) {
+                compactArena();
+            }
+            if (arenaSize + length > arena.length) {
+                long capacity = Math.max((long) arenaSize + length, arena.length + (long) (arena.length >> 1));
+                Preconditions.checkState(capacity <= Integer.MAX_VALUE - 8, "Label arena overflow");
+                arena = Arrays.copyOf(arena, (int) capacity);
+            }
+        }
+        int offset = arenaSize;
+        label.getChars(0, length, arena, offset);
+        arenaSize += length;
+        return offset;
+    }
+
+    private void compactArena() {
+        char[] compacted = new char[arena.length];
+        int position = 0;
+        for (int e = 0; e < size; e++) {
+            System.arraycopy(arena, labelOffsets[e], compacted, position, labelLengths[e]);
+            labelOffsets[e] = position;
+            position += labelLengths[e];
+        }
+        arena = compacted;
+        arenaSize = position;
+        arenaGarbage = 0;
+    }
+
+    private void storeCodes(int entry, List<Byte> elementCodes, List<Integer> elementPoints, int codeLength) {
+        // codes are stored as codeLength bytes, points as codeLength + 1 ints, same as Huffman leaves them
+        int pointsLength = codeLength == 0 ? 0 : codeLength + 1;
+        if (codesSize + codeLength > codes.length)
+            codes = Arrays.copyOf(codes, Math.max(codesSize + codeLength, codes.length + (codes.length >> 1)));
+        if (pointsSize + pointsLength > points.length)
+            points = Arrays.copyOf(points, Math.max(pointsSize + pointsLength, points.length + (points.length >> 1)));
+
+        codeLengths[entry] = (byte) codeLength;
+        codeOffsets[entry] = codesSize;
+        pointOffsets[entry] = pointsSize;
+        for (int i = 0; i < codeLength; i++)
+            codes[codesSize++] = i < elementCodes.size() ? elementCodes.get(i) : 0;
+        for (int i = 0; i < pointsLength; i++)
+            points[pointsSize++] = i < elementPoints.size() ? elementPoints.get(i) : 0;
+    }
+
+    private int insert(VocabWord element) {
+        String label = element.getLabel();
+        ensureEntryCapacity(size + 1);
+
+        int entry = size++;
+        labelOffsets[entry] = appendLabel(label);
+        labelLengths[entry] = label.length();
+        storageIds[entry] = element.getStorageId();
+        frequencies[entry] = element.getElementFrequency();
+        sequencesCounts[entry] = element.getSequencesCount();
+        indexes[entry] = element.getIndex();
+        flags[entry] = (byte) ((element.isSpecial() ? FLAG_SPECIAL : 0) | (element.isLabel() ? FLAG_LABEL : 0)
+                        | (element.isLocked() ? FLAG_LOCKED : 0) | (element.isInit() ? FLAG_INIT : 0));
+        storeCodes(entry, element.getCodes(), element.getPoints(), element.getCodeLength());
+
+        insertSlot(labelTable, mix(label.hashCode()), entry);
+        insertSlot(idTable, mix(storageIds[entry]), entry);
+        return entry;
+    }
+
+    private void remove(int entry) {
+        invalidateElements();
+        removeSlot(labelTable, slotOf(labelTable, mix(labelHash(entry)), entry), true);
+        removeSlot(idTable, slotOf(idTable, mix(storageIds[entry]), entry), false);
+        if (findByIndex(indexes[entry]) == entry)
+            indexTable[indexes[entry]] = 0;
+        arenaGarbage += labelLengths[entry];
+
+        // last entry takes place of the removed one, so entries stay dense
+        int last = --size;
+        if (entry != last) {
+            int labelSlot = slotOf(labelTable, mix(labelHash(last)), last);
+            int idSlot = slotOf(idTable, mix(storageIds[last]), last);
+            labelTable[labelSlot] = entry + 1;
+            idTable[idSlot] = entry + 1;
+            if (findByIndex(indexes[last]) == last)
+                indexTable[indexes[last]] = entry + 1;
+
+            labelOffsets[entry] = labelOffsets[last];
+            labelLengths[entry] = labelLengths[last];
+            storageIds[entry] = storageIds[last];
+            frequencies[entry] = frequencies[last];
+            sequencesCounts[entry] = sequencesCounts[last];
+            indexes[entry] = indexes[last];
+            flags[entry] = flags[last];
+            codeLengths[entry] = codeLengths[last];
+            codeOffsets[entry] = codeOffsets[last];
+            pointOffsets[entry] = pointOffsets[last];
+        }
+    }
+
+    /**
+     * Returns element for specified entry, reusing recently materialized one if vocabulary wasn't modified since.
+     * Expects read lock to be held by the caller. Concurrent readers may race on the same slot, that only costs
+     * an extra materialization.
+     */
+    private VocabWord materialize(int entry) {
+        if (entry < 0)
+            return null;
+
+        int slot = entry & (ELEMENT_CACHE_SIZE - 1);
+        CachedElement cached = elementCache.get(slot);
+        if (cached != null && cached.entry == entry && cached.version == elementsVersion)
+            return cached.element;
+
+        VocabWord element = createElement(entry);
+        elementCache.set(slot, new CachedElement(entry, elementsVersion, element));
+        return element;
+    }
+
+    /**
+     * Drops all cached elements, so next lookups reflect values stored in this cache.
+     * Expects write lock to be held by the caller.
+     */
+    private void invalidateElements() {
+        elementsVersion++;
+    }
+
+    /**
+     * Drops cached element of the specified entry, unless it's the source of the update: the source element
+     * has already applied the update to itself. Expects write lock to be held by the caller.
+     */
+    private void invalidateElement(int entry, VocabWord source) {
+        int slot = entry & (ELEMENT_CACHE_SIZE - 1);
+        CachedElement cached = elementCache.get(slot);
+        if (cached != null && cached.entry == entry && cached.element != source)
+            elementCache.set(slot, null);
+    }
+
+    private VocabWord createElement(int entry) {
+        int codeLength = codeLengths[entry];
+        List<Byte> elementCodes = new ArrayList<>(codeLength);
+        for (int i = 0; i < codeLength; i++)
+            elementCodes.add(codes[codeOffsets[entry] + i]);
+
+        int pointsLength = codeLength == 0 ? 0 : codeLength + 1;
+        List<Integer> elementPoints = new ArrayList<>(pointsLength);
+        for (int i = 0; i < pointsLength; i++)
+            elementPoints.add(points[pointOffsets[entry] + i]);
+
+        return new BackedVocabWord(this, label(entry), storageIds[entry], frequencies[entry], sequencesCounts[entry],
+                        indexes[entry], flags[entry], elementCodes, elementPoints, codeLength);
+    }
+
+    /*
+        VocabCache implementation
+     */
+
+    @Override
+    public void loadVocab() {
+        // no-op
+    }
+
+    @Override
+    public boolean vocabExists() {
+        return numWords() > 0;
+    }
+
+    @Override
+    public void saveVocab() {
+        // no-op
+    }
+
+    /**
+     * Returns view of labels available in this vocabulary
+     *
+     * @return
+     */
+    @Override
+    public Collection<String> words() {
+        return new EntryView<String>() {
+            @Override
+            protected String get(int entry) {
+                return label(entry);
+            }
+        };
+    }
+
+    @Override
+    public void incrementWordCount(String word) {
+        incrementWordCount(word, 1);
+    }
+
+    @Override
+    public void incrementWordCount(String word, int increment) {
+        lock.writeLock().lock();
+        try {
+            int entry = find(word);
+            if (entry >= 0) {
+                frequencies[entry] += increment;
+                totalWordCount.addAndGet(increment);
+                invalidateElement(entry, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int wordFrequency(@NonNull String word) {
+        lock.readLock().lock();
+        try {
+            int entry = find(word);
+            return entry >= 0 ? (int) frequencies[entry] : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsWord(String word) {
+        lock.readLock().lock();
+        try {
+            return find(word) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String wordAtIndex(int index) {
+        lock.readLock().lock();
+        try {
+            int entry = findByIndex(index);
+            return entry >= 0 ? label(entry) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public VocabWord elementAtIndex(int index) {
+        lock.readLock().lock();
+        try {
+            return materialize(findByIndex(index));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns Huffman index for specified label
+     *
+     * @param label the label to get index for
+     * @return >=0 if label exists, -1 if Huffman tree wasn't built yet, -2 if specified label wasn't found
+     */
+    @Override
+    public int indexOf(String label) {
+        lock.readLock().lock();
+        try {
+            int entry = find(label);
+            return entry >= 0 ? indexes[entry] : -2;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns view of elements stored in this vocabulary, elements are materialized while iterating
+     *
+     * @return
+     */
+    @Override
+    public Collection<VocabWord> vocabWords() {
+        return new EntryView<VocabWord>() {
+            @Override
+            protected VocabWord get(int entry) {
+                return materialize(entry);
+            }
+        };
+    }
+
+    @Override
+    public long totalWordOccurrences() {
+        return totalWordCount.get();
+    }
+
+    public void setTotalWordOccurences(long value) {
+        totalWordCount.set(value);
+    }
+
+    @Override
+    public VocabWord wordFor(@NonNull String label) {
+        lock.readLock().lock();
+        try {
+            return materialize(find(label));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public VocabWord wordFor(long id) {
+        lock.readLock().lock();
+        try {
+            return materialize(find(id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void addWordToIndex(int index, String label) {
+        if (index < 0)
+            return;
+
+        lock.writeLock().lock();
+        try {
+            mapIndex(index, find(label));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addWordToIndex(int index, long elementId) {
+        if (index < 0)
+            return;
+
+        lock.writeLock().lock();
+        try {
+            mapIndex(index, find(elementId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void mapIndex(int index, int entry) {
+        if (entry < 0)
+            return;
+
+        if (findByIndex(indexes[entry]) == entry)
+            indexTable[indexes[entry]] = 0;
+        ensureIndexCapacity(index);
+        indexTable[index] = entry + 1;
+        indexes[entry] = index;
+        invalidateElement(entry, null);
+    }
+
+    @Override
+    @Deprecated
+    public void putVocabWord(String word) {
+        if (!containsWord(word))
+            throw new IllegalStateException("Specified label is not present in vocabulary");
+    }
+
+    @Override
+    public int numWords() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int docAppearedIn(String word) {
+        lock.readLock().lock();
+        try {
+            int entry = find(word);
+            return entry >= 0 ? (int) sequencesCounts[entry] : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void incrementDocCount(String word, long howMuch) {
+        lock.writeLock().lock();
+        try {
+            int entry = find(word);
+            if (entry >= 0) {
+                sequencesCounts[entry] += howMuch;
+                invalidateElement(entry, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setCountForDoc(String word, long count) {
+        lock.writeLock().lock();
+        try {
+            int entry = find(word);
+            if (entry >= 0) {
+                sequencesCounts[entry] = count;
+                invalidateElement(entry, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long totalNumberOfDocs() {
+        return documentsCounter.get();
+    }
+
+    @Override
+    public void incrementTotalDocCount() {
+        documentsCounter.incrementAndGet();
+    }
+
+    @Override
+    public void incrementTotalDocCount(long by) {
+        documentsCounter.addAndGet(by);
+    }
+
+    public void setTotalDocCount(long by) {
+        documentsCounter.set(by);
+    }
+
+    @Override
+    public Collection<VocabWord> tokens() {
+        return vocabWords();
+    }
+
+    /**
+     * This method adds specified element to vocabulary. If element with the same storage id already exists,
+     * frequency and sequences counters are merged into existing one.
+     *
+     * @param element the word to add
+     * @return true if element was added, false if updated
+     */
+    @Override
+    public boolean addToken(@NonNull VocabWord element) {
+        lock.writeLock().lock();
+        try {
+            int entry = find(element.getStorageId());
+            if (entry < 0) {
+                Preconditions.checkArgument(element.getLabel() != null, "Element label can't be null");
+                insert(element);
+            } else {
+                frequencies[entry] += element.getElementFrequency();
+                sequencesCounts[entry] += element.getSequencesCount();
+                invalidateElement(entry, null);
+            }
+            totalWordCount.addAndGet((long) element.getElementFrequency());
+            return entry < 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public VocabWord tokenFor(String label) {
+        return wordFor(label);
+    }
+
+    @Override
+    public VocabWord tokenFor(long id) {
+        return wordFor(id);
+    }
+
+    @Override
+    public boolean hasToken(String label) {
+        return containsWord(label);
+    }
+
+    @Override
+    public void importVocabulary(@NonNull VocabCache<VocabWord> vocabCache) {
+        boolean added = false;
+        for (VocabWord element : vocabCache.vocabWords()) {
+            if (this.addToken(element))
+                added = true;
+        }
+
+        if (added)
+            this.documentsCounter.addAndGet(vocabCache.totalNumberOfDocs());
+    }
+
+    @Override
+    public void updateWordsOccurrences() {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            for (int e = 0; e < size; e++) {
+                if (frequencies[e] > 0)
+                    total += (long) frequencies[e];
+            }
+            totalWordCount.set(total);
+        } finally {
+            lock.readLock().unlock();
+        }
+        log.info("Updated counter: [" + totalWordCount.get() + "]");
+    }
+
+    @Override
+    public void removeElement(String label) {
+        lock.writeLock().lock();
+        try {
+            int entry = find(label);
+            if (entry < 0)
+                throw new IllegalStateException("Can't get label: '" + label + "'");
+
+            totalWordCount.getAndAdd((long) frequencies[entry] * -1);
+            remove(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeElement(VocabWord element) {
+        removeElement(element.getLabel());
+    }
+
+    /**
+     * This method builds Huffman tree over all elements of this vocabulary, and applies resulting indexes, codes and
+     * points in place. Results are the same as {@link org.deeplearning4j.models.word2vec.Huffman} produces, without
+     * materializing elements. Elements with equal frequencies keep their order within this cache.
+     */
+    public void buildHuffmanTree() {
+        lock.writeLock().lock();
+        try {
+            int n = size;
+            int[] order = sortByFrequency();
+
+            long[] count = new long[n * 2 + 1];
+            byte[] binary = new byte[n * 2 + 1];
+            int[] parentNode = new int[n * 2 + 1];
+            for (int a = 0; a < n; a++)
+                count[a] = (long) frequencies[order[a]];
+            for (int a = n; a < n * 2; a++)
+                count[a] = Integer.MAX_VALUE;
+
+            int pos1 = n - 1;
+            int pos2 = n;
+            int min1i, min2i;
+            for (int a = 0; a < n - 1; a++) {
+                if (pos1 >= 0 && count[pos1] < count[pos2]) {
+                    min1i = pos1--;
+                } else {
+                    min1i = pos2++;
+                }
+                if (pos1 >= 0 && count[pos1] < count[pos2]) {
+                    min2i = pos1--;
+                } else {
+                    min2i = pos2++;
+                }
+
+                count[n + a] = count[min1i] + count[min2i];
+                parentNode[min1i] = n + a;
+                parentNode[min2i] = n + a;
+                binary[min2i] = 1;
+            }
+
+            // all codes are rebuilt, so packed arrays are rebuilt as well
+            byte[] code = new byte[MAX_CODE_LENGTH];
+            int[] point = new int[MAX_CODE_LENGTH];
+            codes = new byte[n * 8];
+            points = new int[n * 8];
+            codesSize = 0;
+            pointsSize = 0;
+            Arrays.fill(indexTable, 0);
+            ensureIndexCapacity(n - 1);
+
+            for (int a = 0; a < n; a++) {
+                int b = a;
+                int i = 0;
+                do {
+                    code[i] = binary[b];
+                    point[i] = b;
+                    i++;
+                    b = parentNode[b];
+                } while (b != n * 2 - 2 && i < 39);
+
+                if (codesSize + i > codes.length)
+                    codes = Arrays.copyOf(codes, Math.max(codesSize + i, codes.length + (codes.length >> 1)));
+                if (pointsSize + i + 1 > points.length)
+                    points = Arrays.copyOf(points, Math.max(pointsSize + i + 1, points.length + (points.length >> 1)));
+
+                // same layout as Huffman leaves in SequenceElement: codes in root-to-leaf order, points shifted by one
+                int entry = order[a];
+                codeLengths[entry] = (byte) i;
+                codeOffsets[entry] = codesSize;
+                pointOffsets[entry] = pointsSize;
+                for (b = 0; b < i; b++)
+                    codes[codesSize + i - b - 1] = code[b];
+                points[pointsSize] = 0;
+                for (b = 0; b < i; b++)
+                    points[pointsSize + i - b] = point[b] - n;
+                codesSize += i;
+                pointsSize += i + 1;
+
+                indexes[entry] = a;
+                indexTable[a] = entry + 1;
+            }
+            invalidateElements();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stable merge sort of entry ids by descending frequency
+     */
+    private int[] sortByFrequency() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+
+        int[] buffer = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int lo = 0; lo < size - width; lo += width * 2) {
+                int mid = lo + width;
+                int hi = Math.min(lo + width * 2, size);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi)
+                    buffer[k++] = frequencies[order[j]] > frequencies[order[i]] ? order[j++] : order[i++];
+                while (i < mid)
+                    buffer[k++] = order[i++];
+                while (j < hi)
+                    buffer[k++] = order[j++];
+                System.arraycopy(buffer, lo, order, lo, hi - lo);
+            }
+        }
+        return order;
+    }
+
+    /*
+        Write-through for materialized elements
+     */
+
+    private void update(VocabWord source, Updater updater) {
+        lock.writeLock().lock();
+        try {
+            int entry = find(source.getLabel());
+            if (entry >= 0) {
+                updater.update(entry);
+                invalidateElement(entry, source);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void setFlag(VocabWord source, byte flag, boolean value) {
+        update(source, e -> flags[e] = (byte) (value ? flags[e] | flag : flags[e] & ~flag));
+    }
+
+    private interface Updater {
+        void update(int entry);
+    }
+
+    private static class CachedElement {
+        private final int entry;
+        private final long version;
+        private final VocabWord element;
+
+        private CachedElement(int entry, long version, VocabWord element) {
+            this.entry = entry;
+            this.version = version;
+            this.element = element;
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        elementCache = new AtomicReferenceArray<>(ELEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * Returns JSON representation of this vocabulary, compatible with {@link AbstractCache#fromJson(String)}
+     *
+     * @return
+     */
+    public String toJson() throws JsonProcessingException {
+        JsonObject retVal = new JsonObject();
+        ObjectMapper mapper = MapperHolder.MAPPER;
+
+        retVal.addProperty(CLASS_FIELD, mapper.writeValueAsString(this.getClass().getName()));
+
+        JsonArray jsonValues = new JsonArray();
+        for (VocabWord value : vocabWords()) {
+            JsonObject item = new JsonObject();
+            item.addProperty(CLASS_FIELD, mapper.writeValueAsString(VocabWord.class));
+            item.addProperty(VOCAB_ITEM_FIELD, mapper.writeValueAsString(((BackedVocabWord) value).detach()));
+            jsonValues.add(item);
+        }
+        retVal.add(VOCAB_LIST_FIELD, jsonValues);
+
+        retVal.addProperty(DOC_CNT_FIELD, mapper.writeValueAsString(documentsCounter.longValue()));
+        retVal.addProperty(MINW_FREQ_FIELD, mapper.writeValueAsString(minWordFrequency));
+        retVal.addProperty(HUGE_MODEL_FIELD, mapper.writeValueAsString(false));
+        retVal.addProperty(STOP_WORDS_FIELD, mapper.writeValueAsString(Collections.emptyList()));
+        retVal.addProperty(SCAVENGER_FIELD, mapper.writeValueAsString(3000000));
+        retVal.addProperty(RETENTION_FIELD, mapper.writeValueAsString(3));
+        retVal.addProperty(TOTAL_WORD_FIELD, mapper.writeValueAsString(totalWordCount.longValue()));
+
+        return retVal.toString();
+    }
+
+    private static class MapperHolder {
+        private static final ObjectMapper MAPPER = new ObjectMapper()
+                        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                        .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+    }
+
+    /**
+     * Collection view over entries, backed by this cache
+     */
+    private abstract class EntryView<E> extends AbstractCollection<E> {
+
+        protected abstract E get(int entry);
+
+        @Override
+        public int size() {
+            return numWords();
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                private int entry = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return entry < numWords();
+                }
+
+                @Override
+                public E next() {
+                    lock.readLock().lock();
+                    try {
+                        if (entry >= size)
+                            throw new NoSuchElementException();
+                        return get(entry++);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * VocabWord materialized from PrimitiveVocabCache. Counters, index and flags are written back to the cache.
+     */
+    private static class BackedVocabWord extends VocabWord {
+        private static final long serialVersionUID = -3624719183212470826L;
+
+        private transient PrimitiveVocabCache cache;
+
+        private BackedVocabWord(PrimitiveVocabCache cache, String label, long storageId, double frequency,
+                        long sequencesCount, int index, byte flags, List<Byte> codes, List<Integer> points,
+                        int codeLength) {
+            super(frequency, label, storageId);
+            this.sequencesCount.set(sequencesCount);
+            this.index = index;
+            this.special = (flags & FLAG_SPECIAL) != 0;
+            this.isLabel = (flags & FLAG_LABEL) != 0;
+            this.isLocked = (flags & FLAG_LOCKED) != 0;
+            this.init = (flags & FLAG_INIT) != 0;
+            this.codes = codes;
+            this.points = points;
+            this.codeLength = (short) codeLength;
+            this.cache = cache;
+        }
+
+        private VocabWord detach() {
+            VocabWord word = new VocabWord(getElementFrequency(), getLabel(), getStorageId());
+            word.setSequencesCount(getSequencesCount());
+            word.setIndex(getIndex());
+            word.setSpecial(isSpecial());
+            word.markAsLabel(isLabel());
+            word.setLocked(isLocked());
+            word.setCodes(new ArrayList<>(getCodes()));
+            word.setPoints(new ArrayList<>(getPoints()));
+            word.setCodeLength((short) getCodeLength());
+            return word;
+        }
+
+        @Override
+        public void setElementFrequency(long value) {
+            super.setElementFrequency(value);
+            if (cache != null)
+                cache.update(this, e -> cache.frequencies[e] = value);
+        }
+
+        @Override
+        public void increaseElementFrequency(int by) {
+            super.increaseElementFrequency(by);
+            if (cache != null)
+                cache.update(this, e -> cache.frequencies[e] += by);
+        }
+
+        @Override
+        public void setSequencesCount(long count) {
+            super.setSequencesCount(count);
+            if (cache != null)
+                cache.update(this, e -> cache.sequencesCounts[e] = count);
+        }
+
+        @Override
+        public void incrementSequencesCount() {
+            incrementSequencesCount(1);
+        }
+
+        @Override
+        public void incrementSequencesCount(long count) {
+            super.incrementSequencesCount(count);
+            if (cache != null)
+                cache.update(this, e -> cache.sequencesCounts[e] += count);
+        }
+
+        @Override
+        public void setIndex(int index) {
+            super.setIndex(index);
+            if (cache != null)
+                cache.update(this, e -> cache.indexes[e] = index);
+        }
+
+        @Override
+        public void setSpecial(boolean special) {
+            super.setSpecial(special);
+            if (cache != null)
+                cache.setFlag(this, FLAG_SPECIAL, special);
+        }
+
+        @Override
+        public void markAsLabel(boolean isLabel) {
+            super.markAsLabel(isLabel);
+            if (cache != null)
+                cache.setFlag(this, FLAG_LABEL, isLabel);
+        }
+
+        @Override
+        public void setLocked(boolean locked) {
+            super.setLocked(locked);
+            if (cache != null)
+                cache.setFlag(this, FLAG_LOCKED, locked);
+        }
+
+        @Override
+        public void setInit(boolean init) {
+            super.setInit(init);
+            if (cache != null)
+                cache.setFlag(this, FLAG_INIT, init);
+        }
+
+        @Override
+        public String toJSON() {
+            return detach().toJSON();
+        }
+    }
+
+    public static class Builder {
+        protected int expectedSize = 1024;
+        protected int minElementFrequency;
+
+        /**
+         * Number of elements expected in vocabulary, used for initial allocation only
+         *
+         * @param expectedSize
+         * @return
+         */
+        public Builder expectedSize(int expectedSize) {
+            this.expectedSize = expectedSize;
+            return this;
+        }
+
+        public Builder minElementFrequency(int minFrequency) {
+            this.minElementFrequency = minFrequency;
+            return this;
+        }
+
+        public PrimitiveVocabCache build() {
+            PrimitiveVocabCache cache = new PrimitiveVocabCache(expectedSize);
+            cache.minWordFrequency = this.minElementFrequency;
+            return cache;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.learning.impl.elements;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchSequencesTest extends BaseDL4JTest {
+
+    @Test
+    public void testPutSizeAndClear() {
+        BatchSequences<VocabWord> batch = new BatchSequences<>(2);
+        VocabWord word = new VocabWord(1.0, "word");
+        VocabWord test = new VocabWord(1.0, "test");
+
+        assertTrue(batch.isEmpty());
+        assertFalse(batch.isFull());
+        assertEquals(2, batch.getBatchSize());
+
+        batch.put(word, test, 7L, 0.5);
+        assertEquals(1, batch.size());
+        assertFalse(batch.isFull());
+
+        batch.put(test, new int[] {1, 2, 3}, new boolean[] {true, false, true}, 9L, 0.25, 1);
+        assertEquals(2, batch.size());
+        assertTrue(batch.isFull());
+
+        // skip-gram round
+        assertSame(word, batch.getWord(0));
+        assertSame(test, batch.getLastWord(0));
+        assertEquals(7L, batch.getRandomValue(0));
+        assertEquals(0.5, batch.getAlpha(0), 1e-8);
+        assertEquals(0, batch.getWindowLength(0));
+
+        // CBOW round
+        assertSame(test, batch.getWord(1));
+        assertEquals(9L, batch.getRandomValue(1));
+        assertEquals(0.25, batch.getAlpha(1), 1e-8);
+        assertEquals(1, batch.getNumLabels(1));
+        assertEquals(3, batch.getWindowLength(1));
+        assertEquals(3, batch.getWindowWord(1, 2));
+        assertFalse(batch.getWordStatus(1, 1));
+
+        // buffer grows past batch size, if flush is delayed
+        batch.put(word, new int[] {4, 5}, new boolean[] {false, false}, 1L, 0.1);
+        batch.put(word, test, 2L, 0.1);
+        assertEquals(4, batch.size());
+        assertEquals(2, batch.getWindowLength(2));
+        assertEquals(5, batch.getWindowWord(2, 1));
+        assertEquals(0, batch.getWindowLength(3));
+        assertSame(test, batch.getLastWord(3));
+
+        batch.clear();
+        assertTrue(batch.isEmpty());
+        assertFalse(batch.isFull());
+        assertNull(batch.getWord(0));
+        assertNull(batch.getLastWord(0));
+
+        // windows start from scratch after clear
+        batch.put(word, new int[] {8}, new boolean[] {true}, 1L, 0.1);
+        assertEquals(1, batch.size());
+        assertEquals(1, batch.getWindowLength(0));
+        assertEquals(8, batch.getWindowWord(0, 0));
+        assertTrue(batch.getWordStatus(0, 0));
+    }
+
+    @Test
+    public void testWindowsPadding() {
+        BatchSequences<VocabWord> batch = new BatchSequences<>(3);
+        VocabWord word = new VocabWord(1.0, "word");
+
+        batch.put(word, new int[] {1, 2}, new boolean[] {true, false}, 1L, 0.1);
+        batch.put(word, new int[] {3, 4, 5, 6}, new boolean[] {false, true, false, true}, 1L, 0.1);
+        batch.put(word, new int[] {7}, new boolean[] {true}, 1L, 0.1);
+        assertEquals(4, batch.getMaxWindowLength());
+
+        int columns = batch.getMaxWindowLength();
+        int[] windowWords = new int[batch.size() * columns];
+        int[] statuses = new int[batch.size() * columns];
+        batch.packWindows(windowWords, statuses, columns);
+
+        assertArrayEquals(new int[] {1, 2, -1, -1, 3, 4, 5, 6, 7, -1, -1, -1}, windowWords);
+        assertArrayEquals(new int[] {1, 0, -1, -1, 0, 1, 0, 1, 1, -1, -1, -1}, statuses);
+    }
+
+    @Test
+    public void testMaxWindowLengthWithoutWindows() {
+        BatchSequences<VocabWord> batch = new BatchSequences<>(2);
+        assertEquals(1, batch.getMaxWindowLength());
+
+        batch.put(new VocabWord(1.0, "word"), new VocabWord(1.0, "test"), 1L, 0.1);
+        assertEquals(1, batch.getMaxWindowLength());
+    }
+}
@@ -28,6 +28,7 @@ import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.learning.impl.elements.CBOW;
 import org.deeplearning4j.models.embeddings.reader.impl.BasicModelUtils;
 import org.deeplearning4j.models.embeddings.reader.impl.FlatModelUtils;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.deeplearning4j.models.fasttext.FastText;
 import org.deeplearning4j.models.paragraphvectors.ParagraphVectors;
 import org.deeplearning4j.models.sequencevectors.SequenceVectors;
@@ -336,6 +337,46 @@ public class WordVectorSerializerTest extends BaseDL4JTest {
         assertEquals(fastText.getOutputFile(), deser.getOutputFile());
     }
 
+    @Test
+    public void mappedWordVectors_Correct_WhenLoaded(@TempDir Path testDir) throws Exception {
+        INDArray syn0 = Nd4j.rand(DataType.FLOAT, 3, 5);
+
+        InMemoryLookupTable<VocabWord> lookupTable = new InMemoryLookupTable
+                .Builder<VocabWord>()
+                .useAdaGrad(false)
+                .cache(cache)
+                .vectorLength(5)
+                .build();
+        lookupTable.setSyn0(syn0);
+
+        Word2Vec word2Vec = new Word2Vec.Builder()
+                .vocabCache(cache)
+                .lookupTable(lookupTable)
+                .modelUtils(new BasicModelUtils<VocabWord>())
+                .layerSize(5)
+                .build();
+
+        File file = testDir.resolve("vectors.mmap").toFile();
+        WordVectorSerializer.writeMappedWordVectors(word2Vec, file);
+        WordVectors restored = WordVectorSerializer.loadMappedModel(file);
+
+        assertEquals(3, restored.vocabSize());
+        assertEquals(5, restored.vectorSize());
+        assertFalse(restored.hasWord("unknown"));
+        assertEquals(null, restored.getWordVectorMatrix("unknown"));
+        for (int i = 0; i < cache.numWords(); i++) {
+            String word = cache.wordAtIndex(i);
+            assertTrue(restored.hasWord(word));
+            assertEquals(i, restored.indexOf(word));
+            assertEquals(word2Vec.getWordVectorMatrix(word), restored.getWordVectorMatrix(word));
+            assertEquals(word2Vec.similarity(word, "test"), restored.similarity(word, "test"), 1e-5);
+        }
+        assertEquals(word2Vec.wordsNearest("word", 2), restored.wordsNearest("word", 2));
+
+        restored.setUNK("word");
+        assertEquals(word2Vec.getWordVectorMatrix("word"), restored.getWordVectorMatrix("unknown"));
+    }
+
     @Test
     public void testIsHeader_withValidHeader () {
 
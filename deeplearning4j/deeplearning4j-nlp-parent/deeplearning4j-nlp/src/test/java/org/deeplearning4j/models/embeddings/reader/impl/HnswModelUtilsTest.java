@@ -0,0 +1,104 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectorsImpl;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.FILE_IO)
+@NativeTag
+public class HnswModelUtilsTest extends BaseDL4JTest {
+
+    @Test
+    public void testWordsNearestMatchesFullScan(@TempDir Path testDir) throws Exception {
+        int numWords = 500;
+        AbstractCache<VocabWord> cache = new AbstractCache<>();
+        for (int i = 0; i < numWords; i++) {
+            VocabWord w = new VocabWord(1.0, "word" + i);
+            w.setIndex(i);
+            cache.addToken(w);
+            cache.addWordToIndex(i, "word" + i);
+        }
+        InMemoryLookupTable<VocabWord> table = new InMemoryLookupTable.Builder<VocabWord>()
+                .cache(cache).vectorLength(16).build();
+        Nd4j.getRandom().setSeed(12345);
+        table.setSyn0(Nd4j.randn(DataType.FLOAT, numWords, 16));
+
+        WordVectorsImpl<VocabWord> exact = new WordVectorsImpl<>();
+        exact.setLookupTable(table);
+        exact.setVocab(cache);
+        exact.setModelUtils(new FlatModelUtils<VocabWord>());
+
+        WordVectorsImpl<VocabWord> approx = new WordVectorsImpl<>();
+        approx.setLookupTable(table);
+        approx.setVocab(cache);
+        HnswModelUtils<VocabWord> hnsw = new HnswModelUtils<>();
+        approx.setModelUtils(hnsw);
+
+        int k = 10;
+        double recall = recall(exact, approx, k);
+        assertTrue(recall >= 0.95, "Recall: " + recall);
+
+        //Save, restore and compare
+        File f = testDir.resolve("vectors.hnsw").toFile();
+        hnsw.saveIndex(f);
+        HnswModelUtils<VocabWord> restored = new HnswModelUtils<>();
+        approx.setModelUtils(restored);
+        restored.loadIndex(f);
+        for (int i = 0; i < 50; i++) {
+            assertEquals(hnsw.wordsNearest("word" + i, k), restored.wordsNearest("word" + i, k));
+        }
+    }
+
+    private static double recall(WordVectorsImpl<VocabWord> exact, WordVectorsImpl<VocabWord> approx, int k) {
+        int found = 0;
+        int total = 0;
+        for (int i = 0; i < 100; i++) {
+            Collection<String> expected = exact.wordsNearest("word" + i, k);
+            List<String> actual = new ArrayList<>(approx.wordsNearest("word" + i, k));
+            assertEquals(k, actual.size());
+            for (String s : expected) {
+                if (actual.contains(s))
+                    found++;
+                total++;
+            }
+        }
+        return found / (double) total;
+    }
+}
@@ -23,6 +23,8 @@ package org.deeplearning4j.models.word2vec;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.embeddings.learning.impl.elements.CBOW;
+import org.deeplearning4j.models.embeddings.learning.impl.elements.SkipGram;
 import org.deeplearning4j.models.paragraphvectors.ParagraphVectorsTest;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
@@ -32,6 +34,7 @@ import org.deeplearning4j.nn.conf.layers.OutputLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.text.documentiterator.FileLabelAwareIterator;
 import org.deeplearning4j.text.documentiterator.LabelAwareIterator;
+import org.deeplearning4j.text.sentenceiterator.BasicLineIterator;
 import org.deeplearning4j.text.tokenization.tokenizer.preprocessor.CommonPreprocessor;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory;
 import org.deeplearning4j.util.ModelSerializer;
@@ -220,4 +223,76 @@ public class Word2VecTestsSmall extends BaseDL4JTest {
         assertEquals(net.getLayerWiseConfigurations(), restored.getLayerWiseConfigurations());
         assertTrue(net.params().equalsWithEps(restored.params(), 2e-3));
     }
+
+    @Test
+    @Timeout(300000)
+    public void testBatchedTraining_Quality() throws Exception {
+        val inputFile = Resources.asFile("big/raw_sentences.txt");
+
+        for (String algorithm : new String[] {"SkipGram", "CBOW"}) {
+            val vec = buildModel(inputFile, algorithm, 64);
+            vec.fit();
+
+            double sim = vec.similarity("day", "night");
+            log.info("{}: day/night similarity: [{}]; nearest to 'day': {}", algorithm, sim, vec.wordsNearest("day", 10));
+            assertTrue(sim > 0.6, algorithm + " day/night similarity is too low: " + sim);
+        }
+    }
+
+    @Test
+    @Tag(TagNames.LONG_TEST)
+    @Tag(TagNames.LARGE_RESOURCES)
+    @Timeout(600000)
+    public void testBatchedTraining_Throughput() throws Exception {
+        val inputFile = Resources.asFile("big/raw_sentences.txt");
+
+        for (String algorithm : new String[] {"SkipGram", "CBOW"}) {
+            // batchSize of 1 (batched rounds disabled) executes every round as separate op
+            double perRound = wordsPerSecond(inputFile, algorithm, 1);
+            double batched = wordsPerSecond(inputFile, algorithm, 512);
+
+            log.info("{}: per-round words/sec: [{}]; batched words/sec: [{}]; speedup: [{}]", algorithm,
+                    String.format("%.2f", perRound), String.format("%.2f", batched),
+                    String.format("%.2f", batched / perRound));
+
+            assertTrue(perRound > 0);
+            assertTrue(batched > 0);
+        }
+    }
+
+    private double wordsPerSecond(File inputFile, String algorithm, int batchSize) throws Exception {
+        val vec = buildModel(inputFile, algorithm, batchSize);
+
+        // vocabulary is built separately, so only training is timed
+        vec.buildVocab();
+        long time = System.currentTimeMillis();
+        vec.fit();
+        time = Math.max(1, System.currentTimeMillis() - time);
+
+        assertEquals(100, vec.getWordVector("day").length);
+        return vec.getVocab().totalWordOccurrences() / (time / 1000.0);
+    }
+
+    private Word2Vec buildModel(File inputFile, String algorithm, int batchSize) throws Exception {
+        val t = new DefaultTokenizerFactory();
+        t.setTokenPreProcessor(new CommonPreprocessor());
+
+        return new Word2Vec.Builder()
+                .minWordFrequency(5)
+                .epochs(1)
+                .iterations(1)
+                .layerSize(100)
+                .windowSize(5)
+                .batchSize(batchSize)
+                .useBatchedRounds(batchSize > 1)
+                .learningRate(0.025)
+                .useHierarchicSoftmax(true)
+                .elementsLearningAlgorithm(algorithm.equals("CBOW") ? new CBOW<VocabWord>() : new SkipGram<VocabWord>())
+                .seed(42)
+                .workers(4)
+                .resetModel(false)
+                .iterate(new BasicLineIterator(inputFile))
+                .tokenizerFactory(t)
+                .build();
+    }
 }
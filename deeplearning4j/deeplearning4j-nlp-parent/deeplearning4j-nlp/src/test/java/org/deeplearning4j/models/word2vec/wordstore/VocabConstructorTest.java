@@ -454,4 +454,104 @@ public class VocabConstructorTest extends BaseDL4JTest {
 
         constructor.buildJointVocabulary(false, true);
     }
+
+    @Test
+    public void testParallelCounting_MatchesSerial() throws Exception {
+        File inputFile = Resources.asFile("big/raw_sentences.txt");
+
+        VocabCache<VocabWord> parallel = buildRawSentencesVocab(inputFile, true, 4000000);
+        VocabCache<VocabWord> serial = buildRawSentencesVocab(inputFile, false, 4000000);
+        assertSameCounts(serial, parallel);
+    }
+
+    @Test
+    public void testParallelCounting_FlushedTablesMatchSerial() throws Exception {
+        File inputFile = Resources.asFile("big/raw_sentences.txt");
+
+        // small worker tables, so they're flushed into shared tables many times while counting
+        VocabCache<VocabWord> parallel = buildRawSentencesVocab(inputFile, true, 64);
+        VocabCache<VocabWord> serial = buildRawSentencesVocab(inputFile, false, 4000000);
+        assertSameCounts(serial, parallel);
+    }
+
+    private static void assertSameCounts(VocabCache<VocabWord> serial, VocabCache<VocabWord> parallel) {
+        assertEquals(serial.numWords(), parallel.numWords());
+        assertEquals(serial.totalWordOccurrences(), parallel.totalWordOccurrences());
+        assertEquals(serial.totalNumberOfDocs(), parallel.totalNumberOfDocs());
+        for (VocabWord word : serial.vocabWords()) {
+            VocabWord other = parallel.wordFor(word.getLabel());
+            assertNotNull(other, word.getLabel());
+            assertEquals(word.getElementFrequency(), other.getElementFrequency(), 1e-5, word.getLabel());
+            assertEquals(word.getSequencesCount(), other.getSequencesCount(), word.getLabel());
+        }
+    }
+
+    @Test
+    @Tag(TagNames.LONG_TEST)
+    @Tag(TagNames.LARGE_RESOURCES)
+    public void testParallelCounting_Timing() throws Exception {
+        File inputFile = Resources.asFile("big/raw_sentences.txt");
+
+        // sentences are tokenized once upfront, so only counting is timed: tokenization happens on the calling thread
+        final List<List<String>> tokens = new ArrayList<>();
+        SentenceIterator iter = new BasicLineIterator(inputFile);
+        while (iter.hasNext())
+            tokens.add(t.create(iter.nextSentence()).getTokens());
+
+        // warmup
+        buildTokenizedVocab(tokens, true);
+        buildTokenizedVocab(tokens, false);
+
+        long time1 = System.currentTimeMillis();
+        VocabCache<VocabWord> serial = buildTokenizedVocab(tokens, false);
+        long time2 = System.currentTimeMillis();
+        VocabCache<VocabWord> parallel = buildTokenizedVocab(tokens, true);
+        long time3 = System.currentTimeMillis();
+
+        log.info("Vocab counting time: single worker: {} ms, {} workers: {} ms", time2 - time1,
+                        Math.max(2, Runtime.getRuntime().availableProcessors()), time3 - time2);
+
+        assertEquals(serial.numWords(), parallel.numWords());
+        assertEquals(serial.totalWordOccurrences(), parallel.totalWordOccurrences());
+    }
+
+    private VocabCache<VocabWord> buildTokenizedVocab(final List<List<String>> tokens, boolean allowParallel) {
+        Iterable<Sequence<VocabWord>> sequences = () -> new Iterator<Sequence<VocabWord>>() {
+            private final Iterator<List<String>> iter = tokens.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            @Override
+            public Sequence<VocabWord> next() {
+                Sequence<VocabWord> sequence = new Sequence<>();
+                for (String token : iter.next())
+                    sequence.addElement(new VocabWord(1.0, token));
+                return sequence;
+            }
+        };
+
+        VocabCache<VocabWord> cache = new AbstractCache.Builder<VocabWord>().build();
+        new VocabConstructor.Builder<VocabWord>().addSource(new AbstractSequenceIterator.Builder<>(sequences).build(), 5)
+                .setTargetVocabCache(cache).allowParallelTokenization(allowParallel).build()
+                .buildJointVocabulary(false, true);
+        return cache;
+    }
+
+    private VocabCache<VocabWord> buildRawSentencesVocab(File inputFile, boolean allowParallel, long workerTableSize)
+                    throws Exception {
+        SentenceIterator iter = new BasicLineIterator(inputFile);
+        SentenceTransformer transformer = new SentenceTransformer.Builder().iterator(iter).tokenizerFactory(t).build();
+
+        AbstractSequenceIterator<VocabWord> sequenceIterator =
+                new AbstractSequenceIterator.Builder<>(transformer).build();
+
+        VocabCache<VocabWord> cache = new AbstractCache.Builder<VocabWord>().build();
+        new VocabConstructor.Builder<VocabWord>().addSource(sequenceIterator, 5).setTargetVocabCache(cache)
+                .allowParallelTokenization(allowParallel).setWorkerTableSize(workerTableSize).build()
+                .buildJointVocabulary(false, true);
+        return cache;
+    }
 }
@@ -0,0 +1,181 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.deeplearning4j.models.word2vec.wordstore.inmemory;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.word2vec.Huffman;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimitiveVocabCacheTest extends BaseDL4JTest {
+
+    @Test
+    public void testHuffmanMatchesAbstractCache() throws Exception {
+        AbstractCache<VocabWord> reference = new AbstractCache.Builder<VocabWord>().build();
+        PrimitiveVocabCache cache = new PrimitiveVocabCache.Builder().expectedSize(4).build();
+
+        for (int i = 0; i < 100; i++) {
+            reference.addToken(new VocabWord(i * 3 + 1, "word_" + i));
+            cache.addToken(new VocabWord(i * 3 + 1, "word_" + i));
+        }
+
+        Huffman huffman = new Huffman(reference.vocabWords());
+        huffman.build();
+        huffman.applyIndexes(reference);
+        cache.buildHuffmanTree();
+
+        assertEquals(reference.numWords(), cache.numWords());
+        assertEquals(reference.totalWordOccurrences(), cache.totalWordOccurrences());
+        for (int i = 0; i < reference.numWords(); i++) {
+            VocabWord expected = reference.elementAtIndex(i);
+            VocabWord actual = cache.elementAtIndex(i);
+
+            assertEquals(expected.getLabel(), actual.getLabel());
+            assertEquals(expected.getIndex(), actual.getIndex());
+            assertEquals(expected.getCodeLength(), actual.getCodeLength());
+            assertEquals(expected.getCodes(), actual.getCodes());
+            assertEquals(expected.getPoints(), actual.getPoints());
+            assertEquals(i, cache.indexOf(expected.getLabel()));
+        }
+    }
+
+    @Test
+    public void testRemoval() throws Exception {
+        PrimitiveVocabCache cache = new PrimitiveVocabCache.Builder().expectedSize(4).build();
+        for (int i = 0; i < 1000; i++)
+            cache.addToken(new VocabWord(1.0, "word_" + i));
+        assertEquals(1000, cache.numWords());
+        assertEquals(1000, cache.totalWordOccurrences());
+
+        for (int i = 0; i < 1000; i += 2)
+            cache.removeElement("word_" + i);
+        assertEquals(500, cache.numWords());
+        assertEquals(500, cache.totalWordOccurrences());
+
+        for (int i = 0; i < 1000; i++) {
+            String label = "word_" + i;
+            assertEquals(i % 2 != 0, cache.containsWord(label));
+            if (i % 2 != 0) {
+                assertEquals(label, cache.wordFor(label).getLabel());
+                assertEquals(label, cache.tokenFor(VocabWord.getLongHash(label)).getLabel());
+            }
+        }
+        assertEquals(500, cache.words().size());
+        assertTrue(cache.words().contains("word_999"));
+        assertFalse(cache.words().contains("word_998"));
+    }
+
+    @Test
+    public void testElementsWriteThrough() throws Exception {
+        PrimitiveVocabCache cache = new PrimitiveVocabCache.Builder().build();
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.addToken(new VocabWord(3.0, "word"));
+
+        assertEquals(2, cache.numWords());
+        assertEquals(4, cache.wordFrequency("word"));
+
+        VocabWord word = cache.wordFor("word");
+        word.setLocked(true);
+        word.setSpecial(true);
+        word.increaseElementFrequency(5);
+        word.incrementSequencesCount(7);
+
+        VocabWord restored = cache.wordFor("word");
+        assertTrue(restored.isLocked());
+        assertTrue(restored.isSpecial());
+        assertFalse(restored.isLabel());
+        assertEquals(9, cache.wordFrequency("word"));
+        assertEquals(7, cache.docAppearedIn("word"));
+    }
+
+    @Test
+    public void testMaterializedElementsReused() throws Exception {
+        PrimitiveVocabCache cache = new PrimitiveVocabCache.Builder().build();
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.buildHuffmanTree();
+
+        VocabWord word = cache.wordFor("word");
+        assertSame(word, cache.wordFor("word"));
+        assertSame(word, cache.tokenFor(VocabWord.getLongHash("word")));
+        assertSame(word, cache.elementAtIndex(cache.indexOf("word")));
+
+        // write-through is visible in later lookups, and keeps the element that made it
+        word.increaseElementFrequency(2);
+        assertEquals(3, cache.wordFor("word").getElementFrequency(), 1e-5);
+        assertSame(word, cache.wordFor("word"));
+
+        // updates made through the cache invalidate the updated element only
+        VocabWord test = cache.wordFor("test");
+        cache.incrementWordCount("word", 4);
+        VocabWord updated = cache.wordFor("word");
+        assertNotSame(word, updated);
+        assertEquals(7, updated.getElementFrequency(), 1e-5);
+        assertSame(test, cache.wordFor("test"));
+
+        // as well as updates made through stale elements
+        word.incrementSequencesCount(3);
+        assertEquals(3, cache.wordFor("word").getSequencesCount());
+
+        cache.buildHuffmanTree();
+        assertEquals(0, cache.wordFor("word").getIndex());
+        assertEquals(cache.wordFor("word").getCodes(), cache.elementAtIndex(0).getCodes());
+    }
+
+    @Test
+    public void testMaterializedElementsBounded() throws Exception {
+        PrimitiveVocabCache cache = new PrimitiveVocabCache.Builder().build();
+        for (int i = 0; i < 10000; i++)
+            cache.addToken(new VocabWord(1.0, "word" + i));
+
+        VocabWord first = cache.wordFor("word0");
+        for (int i = 1; i < 10000; i++)
+            assertEquals("word" + i, cache.wordFor("word" + i).getLabel());
+
+        // only a limited number of elements is kept, so early ones were replaced
+        VocabWord again = cache.wordFor("word0");
+        assertNotSame(first, again);
+        assertEquals(first, again);
+        assertSame(again, cache.wordFor("word0"));
+    }
+
+    @Test
+    public void testJsonCompatibility() throws Exception {
+        PrimitiveVocabCache cache = new PrimitiveVocabCache.Builder().build();
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.addToken(new VocabWord(3.0, "tester"));
+        cache.incrementTotalDocCount(4);
+        cache.buildHuffmanTree();
+
+        VocabCache<VocabWord> restored = AbstractCache.fromJson(cache.toJson());
+        assertEquals(cache.numWords(), restored.numWords());
+        assertEquals(cache.totalWordOccurrences(), restored.totalWordOccurrences());
+        assertEquals(cache.totalNumberOfDocs(), restored.totalNumberOfDocs());
+        for (int i = 0; i < cache.numWords(); i++) {
+            assertEquals(cache.wordAtIndex(i), restored.wordAtIndex(i));
+            assertEquals(cache.elementAtIndex(i).getCodes(), restored.elementAtIndex(i).getCodes());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.api.layers;
+
+/**
+ * A layer with parameters that are row sparse: only a few rows get a non-zero gradient in each iteration,
+ * as is the case for the weights of embedding layers with a large vocabulary.<br>
+ * For these parameters, the updater is applied lazily: only the gradient and updater state rows returned by
+ * {@link #getSparseGradientRows(String)} are read and updated, and all other gradient rows must be zero.
+ */
+public interface SparseGradientLayer {
+
+    /**
+     * @param paramName Name of the parameter
+     * @return True if the gradient of the given (2d) parameter is row sparse
+     */
+    boolean isSparseGradient(String paramName);
+
+    /**
+     * @param paramName Name of the parameter
+     * @return Distinct rows of the parameter that may have a non-zero gradient after the last backward pass, or null
+     * if these are not known (in which case the full gradient is used)
+     */
+    int[] getSparseGradientRows(String paramName);
+
+    /**
+     * Override the rows returned by {@link #getSparseGradientRows(String)} - used when the gradient is the sum of
+     * several backward passes (gradient accumulation), and hence may be non-zero for rows from all of them
+     *
+     * @param paramName Name of the parameter
+     * @param rows      Sorted distinct rows that may have a non-zero gradient, or null if these are not known
+     */
+    void setSparseGradientRows(String paramName, int[] rows);
+}
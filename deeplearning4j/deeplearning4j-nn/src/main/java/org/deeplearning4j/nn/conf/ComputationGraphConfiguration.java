@@ -35,6 +35,7 @@ import org.deeplearning4j.nn.conf.layers.recurrent.LastTimeStep;
 import org.deeplearning4j.nn.conf.layers.samediff.SameDiffVertex;
 import org.deeplearning4j.nn.conf.memory.MemoryReport;
 import org.deeplearning4j.nn.conf.memory.NetworkMemoryReport;
+import org.deeplearning4j.nn.graph.util.ActivationCheckpointPlan;
 import org.deeplearning4j.nn.conf.serde.JsonMappers;
 import org.deeplearning4j.nn.weights.IWeightInit;
 import org.deeplearning4j.nn.weights.WeightInit;
@@ -79,6 +80,13 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
     @Setter
     protected DataType dataType = DataType.FLOAT;   //Default to float for 1.0.0-beta3 and earlier nets
 
+    @Getter
+    @Setter
+    protected DataType mixedPrecisionDataType;      //Null: mixed precision training disabled
+
+    //Number of minibatches to accumulate gradients over, before each parameter update
+    protected int gradientAccumulationSteps = 1;
+
     protected boolean validateOutputLayerConfig = true;     //Default for 1.0.0-beta3 and earlier nets
 
     /**
@@ -107,6 +115,10 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
     protected int[] topologicalOrder;
     protected List<String> topologicalOrderStr;
 
+    //Activation checkpointing: either user specified checkpoint vertices, or every N-th vertex (N < 0: sqrt(numVertices))
+    protected List<String> activationCheckpoints;
+    protected int activationCheckpointFrequency = 0;
+
     /**
      * @return YAML representation of configuration
      */
@@ -334,6 +346,10 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         conf.defaultConfiguration.cacheMode = this.cacheMode;
         conf.validateOutputLayerConfig = this.validateOutputLayerConfig;
         conf.dataType = this.dataType;
+        conf.mixedPrecisionDataType = this.mixedPrecisionDataType;
+        conf.gradientAccumulationSteps = this.gradientAccumulationSteps;
+        conf.activationCheckpoints = (activationCheckpoints == null ? null : new ArrayList<>(activationCheckpoints));
+        conf.activationCheckpointFrequency = activationCheckpointFrequency;
 
         return conf;
     }
@@ -703,8 +719,13 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             memoryReportMap.put(s, mr);
         }
 
-        return new NetworkMemoryReport(memoryReportMap, ComputationGraphConfiguration.class, "ComputationGraph",
-                inputTypes);
+        Map<String, Integer> recomputedSegments = null;
+        if (ActivationCheckpointPlan.isEnabled(this)) {
+            recomputedSegments = ActivationCheckpointPlan.create(this, topologicalOrdering).getRecomputedSegments();
+        }
+
+        return new NetworkMemoryReport(memoryReportMap, recomputedSegments, ComputationGraphConfiguration.class,
+                "ComputationGraph", inputTypes);
     }
 
     @Data
@@ -733,6 +754,8 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         protected boolean allowNoOutput = false;
         protected boolean validateOutputConfig = true;
         protected boolean validateTbpttConfig = true;
+        protected List<String> activationCheckpoints;
+        protected int activationCheckpointFrequency = 0;
 
         protected String lastAdded = null;
 
@@ -1143,6 +1166,41 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Enable activation checkpointing (rematerialization) for training, with a checkpoint every sqrt(numVertices)
+         * vertices. See {@link #activationCheckpointing(int)}
+         */
+        public GraphBuilder activationCheckpointing() {
+            return activationCheckpointing(-1);
+        }
+
+        /**
+         * Enable activation checkpointing (rematerialization) for training. Instead of keeping the activations of all
+         * vertices in memory until backprop, only the activations of every {@code everyN}-th vertex (in topological
+         * order) - plus those that can't be recomputed, such as skip connections across checkpoints and layers with
+         * dropout - are kept. The remaining activations are recomputed, one segment at a time, during backprop.<br>
+         * This trades roughly one extra forward pass for activation memory - O(sqrt(depth)) instead of O(depth) for
+         * {@code everyN = sqrt(depth)}. Has no effect when the training workspace mode is {@link WorkspaceMode#NONE}.
+         *
+         * @param everyN Checkpoint frequency. 0 to disable, negative for sqrt(numVertices)
+         * @see #activationCheckpoints(String...)
+         */
+        public GraphBuilder activationCheckpointing(int everyN) {
+            this.activationCheckpointFrequency = everyN;
+            return this;
+        }
+
+        /**
+         * Enable activation checkpointing (rematerialization) for training, using the specified vertices as checkpoints.
+         * See {@link #activationCheckpointing(int)} for details.
+         *
+         * @param vertexNames Names of the vertices whose activations should be kept
+         */
+        public GraphBuilder activationCheckpoints(String... vertexNames) {
+            this.activationCheckpoints = new ArrayList<>(Arrays.asList(vertexNames));
+            return this;
+        }
+
         /**
          * For the (perhaps partially constructed) network configuration, return a map of activation sizes for each
          * layer and vertex in the graph.<br>
@@ -1190,6 +1248,8 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             conf.backpropType = backpropType;
             conf.tbpttBackLength = tbpttBackLength;
             conf.tbpttFwdLength = tbpttFwdLength;
+            conf.activationCheckpoints = activationCheckpoints;
+            conf.activationCheckpointFrequency = activationCheckpointFrequency;
 
             conf.networkInputs = networkInputs;
             conf.networkOutputs = networkOutputs;
@@ -1201,6 +1261,8 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             conf.cacheMode = globalConfiguration.cacheMode;
             conf.validateOutputLayerConfig = validateOutputConfig;
             conf.dataType = globalConfiguration.dataType;
+            conf.mixedPrecisionDataType = globalConfiguration.mixedPrecisionDataType;
+            conf.gradientAccumulationSteps = globalConfiguration.gradientAccumulationSteps;
 
             conf.defaultConfiguration = globalConfiguration.build();
 
@@ -34,6 +34,7 @@ import org.deeplearning4j.nn.conf.serde.JsonMappers;
 import org.deeplearning4j.nn.weights.IWeightInit;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.deeplearning4j.util.OutputLayerUtil;
+import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.activations.IActivation;
 import org.nd4j.linalg.api.buffer.DataType;
@@ -81,6 +82,13 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
     @Setter
     protected DataType dataType = DataType.FLOAT;   //Default to float for deserialization of beta3 and earlier nets
 
+    @Getter
+    @Setter
+    protected DataType mixedPrecisionDataType;      //Null: mixed precision training disabled
+
+    //Number of minibatches to accumulate gradients over, before each parameter update
+    protected int gradientAccumulationSteps = 1;
+
     //Counter for the number of parameter updates so far
     // This is important for learning rate schedules, for example, and is stored here to ensure it is persisted
     // for Spark and model serialization
@@ -392,6 +400,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             clone.cacheMode = this.cacheMode;
             clone.validateOutputLayerConfig = this.validateOutputLayerConfig;
             clone.dataType = this.dataType;
+            clone.mixedPrecisionDataType = this.mixedPrecisionDataType;
 
             return clone;
 
@@ -478,6 +487,8 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
         protected boolean validateOutputConfig = true;
         protected boolean validateTbpttConfig = true;
         protected DataType dataType;
+        protected DataType mixedPrecisionDataType;
+        protected int gradientAccumulationSteps = 1;
         protected boolean overrideNinUponBuild = true;
 
 
@@ -643,6 +654,28 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Set the data type for activations and gradients when training with mixed precision. See
+         * {@link NeuralNetConfiguration.Builder#mixedPrecision(DataType)}
+         * @param mixedPrecisionDataType Data type for activations and gradients during training, or null to disable
+         *                               mixed precision training
+         */
+        public Builder mixedPrecision(DataType mixedPrecisionDataType){
+            this.mixedPrecisionDataType = mixedPrecisionDataType;
+            return this;
+        }
+
+        /**
+         * Number of minibatches to accumulate gradients over before each parameter update. See
+         * {@link NeuralNetConfiguration.Builder#gradientAccumulationSteps(int)}
+         * @param steps Gradient accumulation steps. Must be >= 1
+         */
+        public Builder gradientAccumulationSteps(int steps){
+            Preconditions.checkArgument(steps >= 1, "Gradient accumulation steps must be >= 1, got %s", steps);
+            this.gradientAccumulationSteps = steps;
+            return this;
+        }
+
 
         public MultiLayerConfiguration build() {
             //Validate BackpropType setting
@@ -750,6 +783,8 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
             conf.cacheMode = cacheMode;
             conf.dataType = dataType;
+            conf.mixedPrecisionDataType = mixedPrecisionDataType;
+            conf.gradientAccumulationSteps = gradientAccumulationSteps;
 
             Nd4j.getRandom().setSeed(conf.getConf(0).getSeed());
 
@@ -331,6 +331,8 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
                     .inferenceWorkspaceMode(wsmTest).confs(list).validateOutputLayerConfig(validateOutputConfig)
                     .overrideNinUponBuild(overrideNinUponBuild)
                     .dataType(globalConfig.dataType)
+                    .mixedPrecision(globalConfig.mixedPrecisionDataType)
+                    .gradientAccumulationSteps(globalConfig.gradientAccumulationSteps)
                     .build();
         }
 
@@ -485,6 +487,8 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
         protected boolean setIWM = false;
         protected CacheMode cacheMode = CacheMode.NONE;
         protected DataType dataType = DataType.FLOAT;
+        protected DataType mixedPrecisionDataType;
+        protected int gradientAccumulationSteps = 1;
 
         protected ConvolutionMode convolutionMode = ConvolutionMode.Truncate;
         protected ConvolutionLayer.AlgoMode cudnnAlgoMode = ConvolutionLayer.AlgoMode.PREFER_FASTEST;
@@ -1153,6 +1157,40 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Enable mixed precision training. Parameters (and updater state) are kept in the network data type
+         * (see {@link #dataType(DataType)}, usually {@link DataType#FLOAT}) as the "master" copy, while the forward and
+         * backward passes - and hence activations and gradients in the workspaces - use the specified lower precision
+         * data type. Dynamic loss scaling (see {@link org.deeplearning4j.nn.updater.LossScaler}) is used to avoid
+         * gradient underflow.<br>
+         * Only applies to training (fit) - inference uses the network data type.<br>
+         * Note that with {@link DataType#BFLOAT16}, the backward pass of most activation functions (for example TANH,
+         * SIGMOID, RELU) is not currently supported by the native ops - SWISH, GELU, MISH, SOFTMAX and IDENTITY are.
+         *
+         * @param dataType Data type for activations and gradients: {@link DataType#BFLOAT16} or {@link DataType#HALF}
+         */
+        public Builder mixedPrecision(@NonNull DataType dataType){
+            Preconditions.checkState(dataType == DataType.BFLOAT16 || dataType == DataType.HALF,
+                    "Mixed precision data type must be one of BFLOAT16 or HALF. Got datatype: %s", dataType);
+            this.mixedPrecisionDataType = dataType;
+            return this;
+        }
+
+        /**
+         * Gradient accumulation: the gradients of the specified number of consecutive minibatches ("micro-batches") are
+         * accumulated before a single parameter update is performed, for an effective minibatch size of
+         * {@code steps * minibatchSize}. Each fit call on a minibatch performs one forward/backward pass; the updater
+         * is applied (and the iteration count incremented) only on every {@code steps}-th call. Default: 1 (no
+         * accumulation)
+         *
+         * @param steps Number of minibatches to accumulate gradients over, before each parameter update. Must be >= 1
+         */
+        public Builder gradientAccumulationSteps(int steps){
+            Preconditions.checkArgument(steps >= 1, "Gradient accumulation steps must be >= 1, got %s", steps);
+            this.gradientAccumulationSteps = steps;
+            return this;
+        }
+
         /**
          * Return a configuration based on this builder
          *
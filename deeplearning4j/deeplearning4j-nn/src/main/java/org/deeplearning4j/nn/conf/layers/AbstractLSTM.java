@@ -34,12 +34,14 @@ public abstract class AbstractLSTM extends BaseRecurrentLayer {
     protected double forgetGateBiasInit;
     protected IActivation gateActivationFn = new ActivationSigmoid();
     protected boolean helperAllowFallback = true;
+    protected boolean useFusedOp = false;
 
     protected AbstractLSTM(Builder builder) {
         super(builder);
         this.forgetGateBiasInit = builder.forgetGateBiasInit;
         this.gateActivationFn = builder.gateActivationFn;
         this.helperAllowFallback = builder.helperAllowFallback;
+        this.useFusedOp = builder.useFusedOp;
     }
 
     @AllArgsConstructor
@@ -68,6 +70,12 @@ public abstract class AbstractLSTM extends BaseRecurrentLayer {
          */
         protected boolean helperAllowFallback = true;
 
+        /**
+         * Whether the fused (single op for the whole sequence) lstmLayer op should be used for the forward and backward
+         * pass, when supported. See {@link #useFusedOp(boolean)}
+         */
+        protected boolean useFusedOp = false;
+
         /**
          * Set forget gate bias initalizations. Values in range 1-5 can potentially help with learning or longer-term
          * dependencies.
@@ -120,6 +128,25 @@ public abstract class AbstractLSTM extends BaseRecurrentLayer {
             return (T) this;
         }
 
+        /**
+         * Whether the fused lstmLayer op should be used for the forward and backward pass when no CuDNN/MKLDNN helper
+         * is available. The fused op processes the entire sequence in a single native op call, instead of executing
+         * multiple ops per time step, which is usually much faster for long sequences and/or small layer sizes.<br>
+         * The fused op is used only when supported: gate and layer activation functions must be one of sigmoid, hard
+         * sigmoid, tanh, softsign or softplus, and any mask array must be of the standard "variable length" form
+         * (1s followed by 0s for each example). Otherwise, or if the fused op fails and {@link #helperAllowFallback(boolean)}
+         * is true, the built-in implementation is used.<br>
+         * Note that with the fused op, the returned epsilons are zero for masked time steps, and for truncated BPTT an
+         * additional forward pass is used in backprop to obtain the final state.<br>
+         * Default: false
+         *
+         * @param useFusedOp Whether the fused op should be used when supported
+         */
+        public T useFusedOp(boolean useFusedOp) {
+            this.setUseFusedOp(useFusedOp);
+            return (T) this;
+        }
+
     }
 
 }
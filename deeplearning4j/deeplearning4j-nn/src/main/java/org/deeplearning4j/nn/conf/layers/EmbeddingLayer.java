@@ -48,10 +48,12 @@ import java.util.Map;
 public class EmbeddingLayer extends FeedForwardLayer {
 
     private boolean hasBias = true; //Default for pre-0.9.2 implementations
+    private boolean sparseGradients = false;
 
     private EmbeddingLayer(Builder builder) {
         super(builder);
         this.hasBias = builder.hasBias;
+        this.sparseGradients = builder.sparseGradients;
         initializeConstraints(builder);
     }
 
@@ -107,6 +109,13 @@ public class EmbeddingLayer extends FeedForwardLayer {
          */
         private boolean hasBias = false;
 
+        /**
+         * If true: only the rows of the weight matrix for the indices in the minibatch get gradients and
+         * updater state updates. False (default): the full weight matrix is updated each iteration.
+         *
+         */
+        private boolean sparseGradients = false;
+
         public Builder(){
             //Default to Identity activation - i.e., don't inherit.
             //For example, if user sets ReLU as global default, they very likely don't intend to use it for Embedding layer also
@@ -124,6 +133,21 @@ public class EmbeddingLayer extends FeedForwardLayer {
             return this;
         }
 
+        /**
+         * If true: gradients and updater state (Adam moments, AdaGrad history etc) of the weights are only computed
+         * and updated for the rows of the indices present in the minibatch, so that the cost of each iteration is
+         * proportional to the number of distinct indices rather than the vocabulary size.<br>
+         * Note that this is a lazy update: the updater state of rows not present in a minibatch is not decayed, and
+         * regularization is only applied to the rows present in the minibatch.<br>
+         * False (default): the full weight matrix is updated each iteration.
+         *
+         * @param sparseGradients If true: use sparse (row-wise) gradients and updates for the weights
+         */
+        public Builder sparseGradients(boolean sparseGradients) {
+            this.sparseGradients = sparseGradients;
+            return this;
+        }
+
         @Override
         public Builder weightInit(IWeightInit weightInit) {
             if(weightInit instanceof WeightInitEmbedding){
@@ -52,6 +52,7 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
     private boolean hasBias = false;
     private boolean inferInputLength = false; // use input length as provided by input data
     private RNNFormat outputFormat = RNNFormat.NCW;       //Default value for older deserialized models
+    private boolean sparseGradients = false;
 
     private EmbeddingSequenceLayer(Builder builder) {
         super(builder);
@@ -59,6 +60,7 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
         this.inputLength = builder.inputLength;
         this.inferInputLength = builder.inferInputLength;
         this.outputFormat = builder.outputFormat;
+        this.sparseGradients = builder.sparseGradients;
         initializeConstraints(builder);
     }
 
@@ -171,6 +173,13 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
 
         private RNNFormat outputFormat = RNNFormat.NCW;       //Default value for older deserialized models
 
+        /**
+         * If true: only the rows of the weight matrix for the indices in the minibatch get gradients and
+         * updater state updates. False (default): the full weight matrix is updated each iteration.
+         *
+         */
+        private boolean sparseGradients = false;
+
         public Builder outputDataFormat(RNNFormat format){
             this.outputFormat = format;
             return this;
@@ -209,6 +218,18 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
             return this;
         }
 
+        /**
+         * If true: gradients and updater state of the weights are only computed and updated for the rows of the
+         * indices present in the minibatch. See {@link EmbeddingLayer.Builder#sparseGradients(boolean)} for details.
+         *
+         * @param sparseGradients If true: use sparse (row-wise) gradients and updates for the weights
+         * @return Builder
+         */
+        public Builder sparseGradients(boolean sparseGradients) {
+            this.setSparseGradients(sparseGradients);
+            return this;
+        }
+
         @Override
         public Builder weightInit(IWeightInit weightInit) {
             this.setWeightInitFn(weightInit);
@@ -31,6 +31,7 @@ import org.nd4j.shade.jackson.annotation.JsonProperty;
 
 import java.text.DecimalFormat;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -44,13 +45,22 @@ public class NetworkMemoryReport extends MemoryReport {
     private final Class<?> modelClass;
     private final String modelName;
     private final InputType[] networkInputTypes;
+    //Activation checkpointing: segment index for each vertex whose activations are recomputed in backprop. May be null
+    private final Map<String, Integer> recomputedSegments;
+
+    public NetworkMemoryReport(@NonNull Map<String, MemoryReport> layerAndVertexReports, @NonNull Class<?> modelClass,
+                    String modelName, @NonNull InputType... networkInputTypes) {
+        this(layerAndVertexReports, null, modelClass, modelName, networkInputTypes);
+    }
 
     public NetworkMemoryReport(
                     @NonNull @JsonProperty("layerAndVertexReports") Map<String, MemoryReport> layerAndVertexReports,
+                    @JsonProperty("recomputedSegments") Map<String, Integer> recomputedSegments,
                     @NonNull @JsonProperty("modelClass") Class<?> modelClass,
                     @JsonProperty("modelName") String modelName,
                     @NonNull @JsonProperty("networkInputTypes") InputType... networkInputTypes) {
         this.layerAndVertexReports = layerAndVertexReports;
+        this.recomputedSegments = recomputedSegments;
         this.modelClass = modelClass;
         this.modelName = modelName;
         this.networkInputTypes = networkInputTypes;
@@ -79,10 +89,12 @@ public class NetworkMemoryReport extends MemoryReport {
         long maxWorking = 0;
         long maxWorkingFixed = 0;
         long maxWorkingVariable = 0;
+        boolean checkpointed = isCheckpointed(memoryUseMode);
         for (MemoryReport lmr : layerAndVertexReports.values()) {
 
             for (MemoryType mt : MemoryType.values()) {
-                if (mt == MemoryType.WORKING_MEMORY_FIXED || mt == MemoryType.WORKING_MEMORY_VARIABLE) {
+                if (mt == MemoryType.WORKING_MEMORY_FIXED || mt == MemoryType.WORKING_MEMORY_VARIABLE
+                                || (checkpointed && mt == MemoryType.ACTIVATIONS)) {
                     continue;
                 }
                 totalBytes += lmr.getMemoryBytes(mt, minibatchSize, memoryUseMode, cacheMode, dataType);
@@ -101,12 +113,20 @@ public class NetworkMemoryReport extends MemoryReport {
             }
         }
 
+        if (checkpointed) {
+            totalBytes += checkpointedActivationBytes(minibatchSize, cacheMode, dataType);
+        }
+
         return totalBytes + maxWorkingFixed + maxWorkingVariable;
     }
 
     @Override
     public long getMemoryBytes(MemoryType memoryType, int minibatchSize, MemoryUseMode memoryUseMode,
                     CacheMode cacheMode, DataType dataType) {
+        if (memoryType == MemoryType.ACTIVATIONS && isCheckpointed(memoryUseMode)) {
+            return checkpointedActivationBytes(minibatchSize, cacheMode, dataType);
+        }
+
         long totalBytes = 0;
         for (MemoryReport lmr : layerAndVertexReports.values()) {
 
@@ -122,6 +142,58 @@ public class NetworkMemoryReport extends MemoryReport {
         return totalBytes;
     }
 
+    private boolean isCheckpointed(MemoryUseMode memoryUseMode) {
+        return memoryUseMode == MemoryUseMode.TRAINING && recomputedSegments != null && !recomputedSegments.isEmpty();
+    }
+
+    /**
+     * Training activation memory with activation checkpointing: the activations of all kept vertices, plus the
+     * activations of the largest recomputed segment
+     */
+    private long checkpointedActivationBytes(int minibatchSize, CacheMode cacheMode, DataType dataType) {
+        long keptBytes = 0;
+        Map<Integer, Long> segmentBytes = new HashMap<>();
+        for (Map.Entry<String, MemoryReport> e : layerAndVertexReports.entrySet()) {
+            long bytes = e.getValue().getMemoryBytes(MemoryType.ACTIVATIONS, minibatchSize, MemoryUseMode.TRAINING,
+                            cacheMode, dataType);
+            Integer segment = recomputedSegments.get(e.getKey());
+            if (segment == null) {
+                keptBytes += bytes;
+            } else {
+                Long current = segmentBytes.get(segment);
+                segmentBytes.put(segment, (current == null ? 0 : current) + bytes);
+            }
+        }
+        long maxSegment = 0;
+        for (Long l : segmentBytes.values()) {
+            maxSegment = Math.max(maxSegment, l);
+        }
+        return keptBytes + maxSegment;
+    }
+
+    /**
+     * Get the recomputation cost of activation checkpointing: the total size of the activations that are computed a
+     * second time during backprop, for each training iteration. Returns 0 if activation checkpointing is not used.
+     *
+     * @param minibatchSize Mini batch size
+     * @param dataType      Data type
+     * @return Bytes of activations recomputed per iteration
+     */
+    public long getRecomputedActivationBytes(int minibatchSize, @NonNull DataType dataType) {
+        if (recomputedSegments == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (String s : recomputedSegments.keySet()) {
+            MemoryReport mr = layerAndVertexReports.get(s);
+            if (mr != null) {
+                bytes += mr.getMemoryBytes(MemoryType.ACTIVATIONS, minibatchSize, MemoryUseMode.TRAINING,
+                                CacheMode.NONE, dataType);
+            }
+        }
+        return bytes;
+    }
+
     @Override
     public String toString() {
 
@@ -159,6 +231,14 @@ public class NetworkMemoryReport extends MemoryReport {
         appendFixedPlusVariable(sb, "  Inference Memory (FP32)             ", fixedMemBytes, perEx);
         appendFixedPlusVariable(sb, "  Training Memory (FP32):             ", fixedMemBytesTrain, perExTrain);
 
+        if (isCheckpointed(MemoryUseMode.TRAINING)) {
+            sb.append("  Activation Checkpointing:           ").append(recomputedSegments.size()).append(" of ")
+                            .append(layerAndVertexReports.size()).append(" vertices recomputed in backprop\n");
+            long fixedRecompute = getRecomputedActivationBytes(0, DataType.FLOAT);
+            appendFixedPlusVariable(sb, "  Recomputed Activations (FP32):      ", fixedRecompute,
+                            getRecomputedActivationBytes(1, DataType.FLOAT) - fixedRecompute);
+        }
+
         sb.append("  Inference Memory Breakdown (FP32):\n");
         appendBreakDown(sb, MemoryUseMode.INFERENCE, CacheMode.NONE, DataType.FLOAT);
 
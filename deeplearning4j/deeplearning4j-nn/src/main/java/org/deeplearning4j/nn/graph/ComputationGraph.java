@@ -44,6 +44,7 @@ import org.deeplearning4j.nn.conf.layers.recurrent.Bidirectional;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.util.ComputationGraphUtil;
+import org.deeplearning4j.nn.graph.util.ActivationCheckpointPlan;
 import org.deeplearning4j.nn.graph.util.GraphIndices;
 import org.deeplearning4j.nn.graph.vertex.GraphVertex;
 import org.deeplearning4j.nn.graph.vertex.VertexIndices;
@@ -54,12 +55,14 @@ import org.deeplearning4j.nn.layers.FrozenLayer;
 import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
 import org.deeplearning4j.nn.layers.recurrent.BidirectionalLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.LossScaler;
 import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.deeplearning4j.optimize.Solver;
 import org.deeplearning4j.optimize.api.ConvexOptimizer;
 import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.optimize.api.LayerExecutionListener;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.evaluation.IEvaluation;
@@ -117,10 +120,24 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     @Setter
     private boolean initDone = false;
     protected boolean clearTbpttState = true;  //Mainly for unit testing (should be enabled otherwise)
+    //Params are backed by read-only memory (for example, restored from a read-only file via MappedModelSerializer):
+    //the network can only be used for inference
+    @Getter @Setter
+    protected transient boolean readOnly = false;
     //Workspaces for CUDNN. Pass to LayerWorkspaceMgr for re-use in cudnn helpers
     @Getter
     protected transient Map<String,Pointer> helperWorkspaces = new HashMap<>();
 
+    //Mixed precision training: low precision working copy of this network, used for forward and backward passes
+    protected transient ComputationGraph mixedPrecisionNet;
+    protected transient Gradient mixedPrecisionGradient;
+    protected transient LossScaler lossScaler;
+
+    //Activation checkpointing: segment index and whether activations are recomputed in backprop, by vertex index
+    protected transient int[] checkpointSegment;
+    protected transient boolean[] checkpointRecompute;
+    protected transient boolean recomputeActivations;
+
     private transient final AtomicLong occupiedBy = new AtomicLong(-1);
 
     /**
@@ -142,6 +159,11 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
      * Workspace for output methods that use OutputAdapter
      */
     protected static final String WS_OUTPUT_MEM = "WS_OUTPUT_MEM";
+    /**
+     * Workspace for activations that are recomputed during backprop when using activation checkpointing - opened and
+     * closed once per checkpoint segment, in both the forward and backward pass
+     */
+    protected static final String WS_CHECKPOINT_SEGMENT = "WS_CHECKPOINT_SEGMENT";
 
     protected final WorkspaceConfiguration WS_LAYER_WORKING_MEM_CONFIG;
 
@@ -904,6 +926,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     }
 
     private void pretrainLayerHelper(String layerName, MultiDataSetIterator iter, int numEpochs){
+        checkWritable();
         if (flattenedGradients == null) {
             initGradientsView();
         }
@@ -1052,6 +1075,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
      * @param multi Training data (MultiDataSetIterator)
      */
     public synchronized void fit(MultiDataSetIterator multi) {
+        checkWritable();
         if (flattenedGradients == null) {
             initGradientsView();
         }
@@ -1123,6 +1147,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         if (numParams() == 0) {
             return; //Edge case: net with no params: fitting is a no-op
         }
+        checkWritable();
 
         if (flattenedGradients == null) {
             initGradientsView();
@@ -1342,6 +1367,10 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     }
 
     public void computeGradientAndScore() {
+        if (configuration.getMixedPrecisionDataType() != null) {
+            computeGradientAndScoreMixedPrecision();
+            return;
+        }
         synchronizeIterEpochCounts();
 
         LayerWorkspaceMgr workspaceMgr;
@@ -1365,12 +1394,18 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         boolean tbptt = configuration.getBackpropType() == BackpropType.TruncatedBPTT;
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
+        boolean checkpointing = isActivationCheckpointingActive();
         synchronizeIterEpochCounts();
 
         //Calculate activations (which are stored in each layer, and used in backprop)
         try(MemoryWorkspace wsAllActivations = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
-            Map<String, INDArray> activations = ffToLayerActivationsInWS(true, -1, getOutputLayerIndices(),
-                    fwdType, tbptt, inputs, inputMaskArrays, labelMaskArrays, false);
+            Map<String, INDArray> activations;
+            if (checkpointing) {
+                activations = ffToLayerActivationsCheckpointed(inputs, inputMaskArrays, labelMaskArrays);
+            } else {
+                activations = ffToLayerActivationsInWS(true, -1, getOutputLayerIndices(),
+                        fwdType, tbptt, inputs, inputMaskArrays, labelMaskArrays, false);
+            }
             if (!trainingListeners.isEmpty()) {
                 try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
                     for (TrainingListener tl : trainingListeners) {
@@ -1378,7 +1413,12 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     }
                 }
             }
-            calcBackpropGradients(false,false);
+            recomputeActivations = checkpointing;
+            try {
+                calcBackpropGradients(false, false);
+            } finally {
+                recomputeActivations = false;
+            }
 
             workspaceMgr.assertCurrentWorkspace(ArrayType.ACTIVATIONS, null);
 
@@ -1427,6 +1467,118 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     }
 
 
+    /**
+     * Mixed precision version of {@link #computeGradientAndScore()}: the forward and backward passes are performed by a
+     * low precision working copy of this network, using the current (full precision) master parameters. The resulting
+     * gradients - computed with a scaled loss - are copied into this network's flattened gradients view, and are
+     * unscaled by the updater.
+     */
+    protected void computeGradientAndScoreMixedPrecision() {
+        Preconditions.checkState(configuration.getBackpropType() != BackpropType.TruncatedBPTT,
+                "Mixed precision training is not supported with truncated backpropagation through time");
+        synchronizeIterEpochCounts();
+        ComputationGraph net = getMixedPrecisionNet();
+        DataType dataType = net.getConfiguration().getDataType();
+
+        net.params().assign(flattenedParams);
+        net.getConfiguration().setIterationCount(configuration.getIterationCount());
+        net.getConfiguration().setEpochCount(configuration.getEpochCount());
+        INDArray[] in = new INDArray[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            in[i] = LossScaler.castForMixedPrecision(inputs[i], isIndexInput(configuration.getNetworkInputs().get(i)), dataType);
+        }
+        INDArray[] l = new INDArray[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            l[i] = LossScaler.castForMixedPrecision(labels[i], LossScaler.isIndexLabels(getOutputLayer(i).conf().getLayer()), dataType);
+        }
+        net.setInputs(in);
+        net.setLabels(l);
+        net.setLayerMaskArrays(inputMaskArrays, labelMaskArrays);
+        try {
+            net.computeGradientAndScore();
+        } finally {
+            net.clearLayerMaskArrays();
+        }
+
+        flattenedGradients.assign(net.getFlattenedGradients());
+        gradient = mixedPrecisionGradient;
+        score = net.score();
+
+        if (!trainingListeners.isEmpty()) {
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (TrainingListener tl : trainingListeners) {
+                    tl.onBackwardPass(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if the specified network input is used as indices by any of the layers it is fed into
+     */
+    private boolean isIndexInput(String inputName) {
+        for (Map.Entry<String, List<String>> e : configuration.getVertexInputs().entrySet()) {
+            if (!e.getValue().contains(inputName))
+                continue;
+            org.deeplearning4j.nn.conf.graph.GraphVertex v = configuration.getVertices().get(e.getKey());
+            if (v instanceof org.deeplearning4j.nn.conf.graph.LayerVertex && LossScaler.isIndexInput(
+                    ((org.deeplearning4j.nn.conf.graph.LayerVertex) v).getLayerConf().getLayer()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get (creating if necessary) the low precision working copy of this network used for mixed precision training.
+     * The output layer losses of the working copy are scaled by this network's {@link LossScaler}
+     */
+    protected ComputationGraph getMixedPrecisionNet() {
+        if (mixedPrecisionNet == null) {
+            if (flattenedGradients == null) {
+                initGradientsView();
+            }
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                DataType dataType = configuration.getMixedPrecisionDataType();
+                ComputationGraphConfiguration conf = ComputationGraphConfiguration.fromJson(configuration.toJson());
+                conf.setDataType(dataType);
+                conf.setMixedPrecisionDataType(null);
+                ComputationGraph net = new ComputationGraph(conf);
+                net.init(flattenedParams.castTo(dataType), false);
+                for (int i = 0; i < net.getNumOutputArrays(); i++) {
+                    getLossScaler().applyTo(net.getOutputLayer(i));
+                }
+
+                //Gradient for the updater: views of the full precision flattened gradients
+                Gradient g = new DefaultGradient(flattenedGradients);
+                for (Layer l : layers) {
+                    if (l.numParams() == 0)
+                        continue;
+                    Map<String, INDArray> m = l.conf().getLayer().initializer()
+                            .getGradientsFromFlattened(l.conf(), l.getGradientsViewArray());
+                    for (Map.Entry<String, INDArray> e : m.entrySet()) {
+                        g.setGradientFor(l.conf().getLayer().getLayerName() + "_" + e.getKey(), e.getValue());
+                    }
+                }
+                mixedPrecisionGradient = g;
+                mixedPrecisionNet = net;
+            }
+        }
+        return mixedPrecisionNet;
+    }
+
+    /**
+     * Get the dynamic loss scaler used for mixed precision training.
+     *
+     * @return The loss scaler, or null if mixed precision training is not enabled for this network
+     * @see NeuralNetConfiguration.Builder#mixedPrecision(DataType)
+     */
+    public LossScaler getLossScaler() {
+        if (lossScaler == null && configuration.getMixedPrecisionDataType() != null) {
+            lossScaler = new LossScaler();
+        }
+        return lossScaler;
+    }
+
     /**
      * Conduct forward pass using a single input array. Note that this method can only be used with ComputationGraphs
      * with a single input array.
@@ -1970,6 +2122,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     out = inputs[vIdx];
                 } else {
 
+                    fireLayerStart(current, false);
                     if(fwdPassType == FwdPassType.STANDARD) {
                         //Standard feed-forward case
                         out = current.doForward(train, workspaceMgr);
@@ -2015,6 +2168,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     } else {
                         throw new IllegalArgumentException("Unsupported forward pass type for this method: " + fwdPassType);
                     }
+                    fireLayerEnd(current, false, out);
                     validateArrayWorkspaces(workspaceMgr, out, ArrayType.ACTIVATIONS, vName, false, "Feed forward (inference)");
                 }
                 activations.put(current.getVertexName(), out);
@@ -2131,6 +2285,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     out = inputs[vIdx];
                 } else {
 
+                    fireLayerStart(current, false);
                     if(fwdPassType == FwdPassType.STANDARD){
                         out = current.doForward(train, workspaceMgr);
                     } else if(fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE) {
@@ -2156,6 +2311,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     } else {
                         throw new IllegalStateException("FwdPassType not supported for this method: " + fwdPassType);
                     }
+                    fireLayerEnd(current, false, out);
 
                     validateArrayWorkspaces(workspaceMgr, out, ArrayType.ACTIVATIONS, vName, false, "Feed forward (inference)");
                 }
@@ -2185,6 +2341,170 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     }
 
 
+    /**
+     * @return True if activation checkpointing should be used for the training forward/backward pass: it is configured,
+     * workspaces are enabled and truncated BPTT is not used
+     */
+    protected boolean isActivationCheckpointingActive() {
+        if (!ActivationCheckpointPlan.isEnabled(configuration) || configuration.getTrainingWorkspaceMode() == WorkspaceMode.NONE
+                || configuration.getBackpropType() == BackpropType.TruncatedBPTT) {
+            return false;
+        }
+
+        if (checkpointSegment == null) {
+            List<String> order = new ArrayList<>(topologicalOrder.length);
+            for (int idx : topologicalOrder) {
+                order.add(vertices[idx].getVertexName());
+            }
+            ActivationCheckpointPlan plan = ActivationCheckpointPlan.create(configuration, order);
+            int[] segment = new int[vertices.length];
+            boolean[] recompute = new boolean[vertices.length];
+            for (GraphVertex gv : vertices) {
+                segment[gv.getVertexIndex()] = plan.getSegment(gv.getVertexName());
+                recompute[gv.getVertexIndex()] = plan.isRecomputed(gv.getVertexName());
+            }
+            checkpointRecompute = recompute;
+            checkpointSegment = segment;
+        }
+        return true;
+    }
+
+    /**
+     * Workspace manager for the training forward pass with activation checkpointing
+     *
+     * @param segment If true: activations and inputs are placed in the checkpoint segment workspace (for vertices that
+     *                are recomputed in backprop). Otherwise, they are placed in WS_ALL_LAYERS_ACT
+     */
+    protected LayerWorkspaceMgr checkpointWorkspaceMgr(boolean segment) {
+        String wsName = (segment ? WS_CHECKPOINT_SEGMENT : WS_ALL_LAYERS_ACT);
+        WorkspaceConfiguration wsConf = (segment ? WS_LAYER_ACT_X_CONFIG : WS_ALL_LAYERS_ACT_CONFIG);
+        LayerWorkspaceMgr workspaceMgr = LayerWorkspaceMgr.builder()
+                .with(ArrayType.ACTIVATIONS, wsName, wsConf)
+                .with(ArrayType.INPUT, wsName, wsConf)
+                .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                .build();
+        if(configuration.getCacheMode() != CacheMode.NONE){
+            workspaceMgr.setWorkspace(ArrayType.FF_CACHE, wsName, wsConf);
+        }
+        if(inputs[0].isAttached()){
+            //Don't leverage out of async DataMultiSetIterator workspaces
+            workspaceMgr.setNoLeverageOverride(inputs[0].data().getParentWorkspace().getId());
+        }
+        workspaceMgr.setHelperWorkspacePointers(helperWorkspaces);
+        return workspaceMgr;
+    }
+
+    /**
+     * Training forward pass with activation checkpointing. Equivalent to
+     * {@link #ffToLayerActivationsInWS(boolean, int, int[], FwdPassType, boolean, INDArray[], INDArray[], INDArray[], boolean)}
+     * in training mode with output layers excluded, except that the activations of vertices that are recomputed in
+     * backprop are placed in the checkpoint segment workspace, which is reset at the end of each segment.
+     * Requires workspace WS_ALL_LAYERS_ACT to be open.
+     *
+     * @return Activations of the kept (not recomputed) vertices
+     */
+    protected Map<String,INDArray> ffToLayerActivationsCheckpointed(INDArray[] input, INDArray[] fMask, INDArray[] lMask) {
+        setInputs(input);
+        setLayerMaskArrays(fMask, lMask);
+        WorkspaceUtils.assertOpenAndActive(WS_ALL_LAYERS_ACT, "ffToLayerActivationsCheckpointed method requires workspace WS_ALL_LAYERS_ACT to be open");
+
+        LayerWorkspaceMgr keptMgr = checkpointWorkspaceMgr(false);
+        LayerWorkspaceMgr segmentMgr = checkpointWorkspaceMgr(true);
+        int[] outputIdxs = getOutputLayerIndices();
+
+        Map<String, INDArray> activations = new HashMap<>();
+        MemoryWorkspace wsSegment = null;
+        int currSegment = -1;
+        try {
+            for (int i = 0; i < topologicalOrder.length; i++) {
+                GraphVertex current = vertices[topologicalOrder[i]];
+                int vIdx = current.getVertexIndex();
+                if (ArrayUtils.contains(outputIdxs, vIdx)) {
+                    continue;
+                }
+
+                if (checkpointSegment[vIdx] != currSegment) {
+                    //End of segment: discard the activations that will be recomputed in backprop
+                    if (wsSegment != null) {
+                        wsSegment.close();
+                        wsSegment = null;
+                    }
+                    currSegment = checkpointSegment[vIdx];
+                }
+
+                if (checkpointRecompute[vIdx]) {
+                    if (wsSegment == null) {
+                        wsSegment = segmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS);
+                    }
+                    checkpointForward(current, segmentMgr);
+                } else {
+                    activations.put(current.getVertexName(), checkpointForward(current, keptMgr));
+                }
+            }
+        } finally {
+            if (wsSegment != null) {
+                wsSegment.close();
+            }
+        }
+        return activations;
+    }
+
+    /**
+     * Recompute the activations of the specified checkpoint segment, prior to backprop for that segment
+     *
+     * @param segment          Segment to recompute
+     * @param lastPosition     Last position (in topological order) of the segment
+     * @param initialWorkspace Workspace to set as the previous workspace for the segment workspace
+     * @return The (open) segment workspace, to be closed when backprop for the segment is complete. Null if nothing
+     * needed to be recomputed for the segment
+     */
+    protected MemoryWorkspace recomputeSegment(int segment, int lastPosition, MemoryWorkspace initialWorkspace) {
+        int firstPosition = lastPosition;
+        boolean anyRecompute = false;
+        while (firstPosition >= 0 && checkpointSegment[topologicalOrder[firstPosition]] == segment) {
+            anyRecompute |= checkpointRecompute[topologicalOrder[firstPosition]];
+            firstPosition--;
+        }
+        if (!anyRecompute) {
+            return null;
+        }
+
+        LayerWorkspaceMgr segmentMgr = checkpointWorkspaceMgr(true);
+        MemoryWorkspace wsSegment = segmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS);
+        //Segment workspace is closed in the middle of backprop (not simply nested) - see calcBackpropGradients
+        wsSegment.setPreviousWorkspace(initialWorkspace);
+        for (int i = firstPosition + 1; i <= lastPosition; i++) {
+            GraphVertex current = vertices[topologicalOrder[i]];
+            if (checkpointRecompute[current.getVertexIndex()]) {
+                checkpointForward(current, segmentMgr);
+            }
+        }
+        return wsSegment;
+    }
+
+    private INDArray checkpointForward(GraphVertex current, LayerWorkspaceMgr workspaceMgr) {
+        try (MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+            INDArray out;
+            if (current.isInputVertex()) {
+                out = inputs[current.getVertexIndex()];
+            } else {
+                fireLayerStart(current, false);
+                out = current.doForward(true, workspaceMgr);
+                fireLayerEnd(current, false, out);
+                validateArrayWorkspaces(workspaceMgr, out, ArrayType.ACTIVATIONS, current.getVertexName(), false, "Feed forward (checkpointed)");
+            }
+
+            VertexIndices[] inputsTo = current.getOutputVertices();
+            if (inputsTo != null) {
+                for (VertexIndices v : inputsTo) {
+                    vertices[v.getVertexIndex()].setInput(v.getVertexEdgeNumber(), out, workspaceMgr);
+                }
+            }
+            return out;
+        }
+    }
+
     /**
      * Provide the output of the specified layers, detached from any workspace. This is most commonly used at inference/test
      * time, and is more memory efficient than {@link #ffToLayerActivationsDetached(boolean, FwdPassType, boolean, int, int[], INDArray[], INDArray[], INDArray[], boolean)}
@@ -2376,6 +2696,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                         out = features[vIdx];
                     } else {
 
+                        fireLayerStart(current, false);
                         if (fwdPassType == FwdPassType.STANDARD) {
                             //Standard feed-forward case
 
@@ -2460,6 +2781,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                         } else {
                             throw new IllegalArgumentException("Unsupported forward pass type for this method: " + fwdPassType);
                         }
+                        fireLayerEnd(current, false, out);
                         validateArrayWorkspaces(workspaceMgr, out, ArrayType.ACTIVATIONS, vName, false, "Feed forward (inference)");
                     }
 
@@ -2548,6 +2870,27 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     }
 
 
+    private void fireLayerStart(GraphVertex vertex, boolean backward) {
+        if (trainingListeners == null || trainingListeners.isEmpty())
+            return;
+        for (TrainingListener tl : trainingListeners) {
+            if (tl instanceof LayerExecutionListener) {
+                ((LayerExecutionListener) tl).layerStart(this, vertex.getVertexIndex(), vertex.getVertexName(), backward);
+            }
+        }
+    }
+
+    private void fireLayerEnd(GraphVertex vertex, boolean backward, INDArray output) {
+        if (trainingListeners == null || trainingListeners.isEmpty())
+            return;
+        for (TrainingListener tl : trainingListeners) {
+            if (tl instanceof LayerExecutionListener) {
+                ((LayerExecutionListener) tl).layerEnd(this, vertex.getVertexIndex(), vertex.getVertexName(),
+                        vertex.hasLayer() ? vertex.getLayer() : null, backward, output);
+            }
+        }
+    }
+
     /**
      * Calculate the gradient of the network with respect to some external errors.
      * Note that this is typically used for things like reinforcement learning, not typical networks that include
@@ -2659,6 +3002,11 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         boolean traceLog = log.isTraceEnabled();
 
+        //Activation checkpointing: recompute the discarded activations, one segment at a time
+        boolean recompute = recomputeActivations;
+        MemoryWorkspace wsRecompute = null;
+        int recomputedSegment = -1;
+
         Throwable t = null;
         try {
             for (int i = topologicalOrder.length - 1; i >= 0; i--) {
@@ -2671,6 +3019,14 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     log.trace("About backprop: {} (\"{}\") - {}", i, vertexName, current.getClass().getSimpleName());
                 }
 
+                if (recompute && checkpointSegment[vIdx] != recomputedSegment) {
+                    if (wsRecompute != null) {
+                        wsRecompute.close();
+                    }
+                    recomputedSegment = checkpointSegment[vIdx];
+                    wsRecompute = recomputeSegment(recomputedSegment, i, initialWorkspace);
+                }
+
                 //FIXME: make the frozen vertex feature extraction more flexible
                 if (current.hasLayer() && current.getLayer() instanceof FrozenLayer || current instanceof FrozenVertex) {
                     hitFrozen = true;
@@ -2769,8 +3125,10 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 Pair<Gradient, INDArray[]> pair;
                 INDArray[] epsilons;
                 try (MemoryWorkspace wsWorkingMem = workspaceMgr.notifyScopeEntered(ArrayType.BP_WORKING_MEM)) {
+                    fireLayerStart(current, true);
                     pair = current.doBackward(truncatedBPTT, workspaceMgr);
                     epsilons = pair.getSecond();
+                    fireLayerEnd(current, true, epsilons != null && epsilons.length > 0 ? epsilons[0] : null);
 
                     //Validate workspace location for the activation gradients:
                     //validateArrayWorkspaces(LayerWorkspaceMgr mgr, INDArray array, ArrayType arrayType, String vertexName, boolean isInputVertex, String op){
@@ -2839,6 +3197,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         } catch (Throwable t2){
             t = t2;
         } finally {
+            if (wsRecompute != null) {
+                wsRecompute.close();
+            }
             //Close all open workspaces... usually this list will be empty, but not if an exception is thrown
             for(MemoryWorkspace ws : openActivationsWorkspaces.keySet()){
                 try{
@@ -3326,6 +3687,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     public void setParams(INDArray params) {
         if (params == flattenedParams)
             return; //No op
+        checkWritable();
 
         if (this.flattenedParams != null && this.flattenedParams.length() == params.length()) {
             this.flattenedParams.assign(params);
@@ -3481,9 +3843,16 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             throw new IllegalStateException("Invalid param key: not have layer separator: \"" + key + "\"");
         String layerName = key.substring(0, idx);
         String paramType = key.substring(idx + 1);
+        checkWritable();
         getLayer(layerName).setParam(paramType, val);
     }
 
+    private void checkWritable() {
+        if (readOnly)
+            throw new IllegalStateException("Cannot update parameters of a read-only network (for example, restored from " +
+                    "a read-only file via MappedModelSerializer): use clone() to get a copy of the network that can be trained");
+    }
+
     @Override
     public void clear() {
         inputs = null;
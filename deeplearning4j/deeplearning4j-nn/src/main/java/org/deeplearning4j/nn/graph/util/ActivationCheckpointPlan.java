@@ -0,0 +1,184 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.graph.util;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.layers.wrapper.BaseWrapperLayer;
+
+import java.util.*;
+
+/**
+ * Activation checkpointing (rematerialization) plan for a ComputationGraph.<br>
+ * The topological order of the graph is split into segments, each ending at a checkpoint vertex. During the training
+ * forward pass, only the activations of the "kept" vertices are retained until backprop; the activations of all other
+ * vertices are discarded at the end of each segment, and recomputed (one segment at a time) during backprop.<br>
+ * Kept vertices are: network inputs, checkpoint vertices, output layers and their inputs, vertices whose activations
+ * are used by a later segment (skip connections), and stochastic layers (dropout or weight noise) and their inputs -
+ * the latter can't be recomputed without changing the random masks used.
+ *
+ * @see ComputationGraphConfiguration.GraphBuilder#activationCheckpointing(int)
+ * @see ComputationGraphConfiguration.GraphBuilder#activationCheckpoints(String...)
+ */
+@Getter
+public class ActivationCheckpointPlan {
+
+    private final List<String> checkpoints;
+    private final Map<String, Integer> segments;
+    private final Set<String> recomputed;
+    private final int numSegments;
+
+    protected ActivationCheckpointPlan(List<String> checkpoints, Map<String, Integer> segments, Set<String> recomputed,
+                                       int numSegments) {
+        this.checkpoints = checkpoints;
+        this.segments = segments;
+        this.recomputed = recomputed;
+        this.numSegments = numSegments;
+    }
+
+    /**
+     * @return True if activation checkpointing is enabled for the specified configuration
+     */
+    public static boolean isEnabled(@NonNull ComputationGraphConfiguration conf) {
+        return conf.getActivationCheckpointFrequency() != 0
+                || (conf.getActivationCheckpoints() != null && !conf.getActivationCheckpoints().isEmpty());
+    }
+
+    /**
+     * Create the checkpointing plan for the specified configuration.
+     *
+     * @param conf               Graph configuration. Activation checkpointing must be enabled
+     * @param topologicalOrder   Names of all vertices (including network inputs) in topological order
+     * @return Checkpoint plan
+     */
+    public static ActivationCheckpointPlan create(@NonNull ComputationGraphConfiguration conf, @NonNull List<String> topologicalOrder) {
+        List<String> networkInputs = conf.getNetworkInputs();
+        Map<String, List<String>> vertexInputs = conf.getVertexInputs();
+
+        //Select checkpoints: either user specified, or every k-th non-input vertex in topological order
+        List<String> checkpoints = new ArrayList<>();
+        if (conf.getActivationCheckpoints() != null && !conf.getActivationCheckpoints().isEmpty()) {
+            for (String s : conf.getActivationCheckpoints()) {
+                if (!conf.getVertices().containsKey(s)) {
+                    throw new IllegalStateException("Invalid activation checkpoint: no vertex with name \"" + s + "\" exists in the graph");
+                }
+                checkpoints.add(s);
+            }
+        } else {
+            int numVertices = topologicalOrder.size() - networkInputs.size();
+            int every = conf.getActivationCheckpointFrequency();
+            if (every < 0) {
+                every = Math.max(1, (int) Math.round(Math.sqrt(numVertices)));
+            }
+            int count = 0;
+            for (String s : topologicalOrder) {
+                if (networkInputs.contains(s))
+                    continue;
+                if (++count % every == 0) {
+                    checkpoints.add(s);
+                }
+            }
+        }
+        Set<String> checkpointSet = new HashSet<>(checkpoints);
+
+        //Assign each vertex to a segment: a segment ends (inclusive) at each checkpoint vertex
+        Map<String, Integer> segments = new LinkedHashMap<>();
+        int segment = 0;
+        for (String s : topologicalOrder) {
+            segments.put(s, segment);
+            if (checkpointSet.contains(s)) {
+                segment++;
+            }
+        }
+        int numSegments = segments.isEmpty() ? 0 : segments.get(topologicalOrder.get(topologicalOrder.size() - 1)) + 1;
+
+        Set<String> kept = new HashSet<>(networkInputs);
+        kept.addAll(checkpointSet);
+        for (String s : topologicalOrder) {
+            if (networkInputs.contains(s))
+                continue;
+            List<String> inputs = vertexInputs.get(s);
+            boolean pinned = conf.getNetworkOutputs().contains(s) || isStochastic(conf.getVertices().get(s));
+            if (pinned) {
+                kept.add(s);
+            }
+            if (inputs != null) {
+                for (String in : inputs) {
+                    if (pinned || !segments.get(in).equals(segments.get(s))) {
+                        kept.add(in);
+                    }
+                }
+            }
+        }
+
+        Set<String> recomputed = new LinkedHashSet<>();
+        for (String s : topologicalOrder) {
+            if (!kept.contains(s)) {
+                recomputed.add(s);
+            }
+        }
+        return new ActivationCheckpointPlan(checkpoints, segments, recomputed, numSegments);
+    }
+
+    private static boolean isStochastic(GraphVertex gv) {
+        if (!(gv instanceof LayerVertex) || ((LayerVertex) gv).getLayerConf() == null) {
+            return false;
+        }
+        Layer l = ((LayerVertex) gv).getLayerConf().getLayer();
+        while (l instanceof BaseWrapperLayer) {
+            if (l.getIDropout() != null)
+                return true;
+            l = ((BaseWrapperLayer) l).getUnderlying();
+        }
+        return l.getIDropout() != null || (l instanceof BaseLayer && ((BaseLayer) l).getWeightNoise() != null);
+    }
+
+    /**
+     * @return True if the activations of the specified vertex are discarded after the forward pass, and recomputed
+     * during backprop
+     */
+    public boolean isRecomputed(String vertexName) {
+        return recomputed.contains(vertexName);
+    }
+
+    /**
+     * @return Segment index for each recomputed vertex
+     */
+    public Map<String, Integer> getRecomputedSegments() {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for (String s : recomputed) {
+            out.put(s, segments.get(s));
+        }
+        return out;
+    }
+
+    /**
+     * @return Index of the segment of the specified vertex
+     */
+    public int getSegment(String vertexName) {
+        return segments.get(vertexName);
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.inference;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.FrozenVertex;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.Convolution2D;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.DropoutLayer;
+import org.deeplearning4j.nn.conf.layers.misc.FrozenLayer;
+import org.deeplearning4j.nn.conf.layers.misc.FrozenLayerWithBackprop;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastMulOp;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.*;
+
+/**
+ * Compiles a trained {@link MultiLayerNetwork} or {@link ComputationGraph} into an equivalent, inference-only network.<br>
+ * The returned network is a new instance with copied parameters; the original network is not modified.
+ * The following rewrites are applied:
+ * <ul>
+ *     <li>Frozen layer and vertex wrappers are removed</li>
+ *     <li>Dropout, weight noise and {@link DropoutLayer}s (training only) are removed</li>
+ *     <li>{@link BatchNormalization} layers directly following a {@link DenseLayer} or 2D {@link ConvolutionLayer}
+ *     are folded into the weights and bias of that layer, using the global mean and variance</li>
+ *     <li>{@link ActivationLayer}s directly following a dense or convolution layer are merged into that layer, so the
+ *     activation function is applied in-place together with the bias</li>
+ *     <li>Training-only configuration (gradient accumulation, mixed precision, activation checkpointing) is reset</li>
+ * </ul>
+ * A layer is only removed or merged when doing so cannot change the network output: it must have a single input,
+ * no input preprocessor, must not be a network output, and (for merges) must be the only consumer of its input.
+ * Outputs of the compiled network match the original network's inference outputs up to floating point rounding.
+ * The compiled network should not be trained further.
+ */
+@Slf4j
+public class InferenceOptimizer {
+
+    private static final String MLN_INPUT = "__input";
+
+    private InferenceOptimizer() {
+    }
+
+    /**
+     * Compile the given network into an inference-only network. See {@link InferenceOptimizer} for details.
+     *
+     * @param net Trained network. Not modified.
+     * @return New network with equivalent inference outputs
+     */
+    public static MultiLayerNetwork optimize(@NonNull MultiLayerNetwork net) {
+        MultiLayerConfiguration origConf = net.getLayerWiseConfigurations();
+        LinkedHashMap<String, Node> nodes = new LinkedHashMap<>();
+        String prev = MLN_INPUT;
+        for (int i = 0; i < net.getnLayers(); i++) {
+            String name = String.valueOf(i);
+            Node n = new Node(name, Collections.singletonList(prev));
+            n.conf = unwrap(origConf.getConf(i).clone());
+            InputPreProcessor pp = origConf.getInputPreProcess(i);
+            n.preProcessor = pp == null ? null : pp.clone();
+            n.params = copyParams(net.getLayer(i));
+            nodes.put(name, n);
+            prev = name;
+        }
+
+        int before = nodes.size();
+        rewrite(nodes, Collections.singletonList(prev));
+
+        MultiLayerConfiguration conf = origConf.clone();
+        List<NeuralNetConfiguration> confs = new ArrayList<>();
+        Map<Integer, InputPreProcessor> preProcessors = new HashMap<>();
+        for (Node n : nodes.values()) {
+            if (n.preProcessor != null)
+                preProcessors.put(confs.size(), n.preProcessor);
+            n.conf.clearVariables();
+            confs.add(n.conf);
+        }
+        conf.setConfs(confs);
+        conf.setInputPreProcessors(preProcessors);
+        conf.setGradientAccumulationSteps(1);
+        conf.setMixedPrecisionDataType(null);
+
+        MultiLayerNetwork out = new MultiLayerNetwork(conf);
+        out.init();
+        int i = 0;
+        for (Node n : nodes.values()) {
+            assignParams(out.getLayer(i++), n);
+        }
+        log.info("Compiled MultiLayerNetwork for inference: {} layers -> {} layers", before, nodes.size());
+        return out;
+    }
+
+    /**
+     * Compile the given network into an inference-only network. See {@link InferenceOptimizer} for details.
+     * Vertex names are preserved for all vertices that are not removed or merged.
+     *
+     * @param net Trained network. Not modified.
+     * @return New network with equivalent inference outputs
+     */
+    public static ComputationGraph optimize(@NonNull ComputationGraph net) {
+        ComputationGraphConfiguration origConf = net.getConfiguration();
+        LinkedHashMap<String, Node> nodes = new LinkedHashMap<>();
+        org.deeplearning4j.nn.graph.vertex.GraphVertex[] vertices = net.getVertices();
+        for (int idx : net.topologicalSortOrder()) {
+            org.deeplearning4j.nn.graph.vertex.GraphVertex gv = vertices[idx];
+            if (gv.isInputVertex())
+                continue;
+            String name = gv.getVertexName();
+            Node n = new Node(name, origConf.getVertexInputs().get(name));
+            GraphVertex orig = origConf.getVertices().get(name);
+            while (orig instanceof FrozenVertex) {
+                orig = ((FrozenVertex) orig).getUnderlying();
+            }
+            GraphVertex v = orig.clone();
+            if (v instanceof LayerVertex) {
+                LayerVertex lv = (LayerVertex) v;
+                n.conf = unwrap(lv.getLayerConf());
+                n.preProcessor = lv.getPreProcessor();
+                n.outputVertex = ((LayerVertex) orig).isOutputVertex();
+                n.params = copyParams(gv.getLayer());
+            } else {
+                n.vertex = v;
+            }
+            nodes.put(name, n);
+        }
+
+        int before = nodes.size();
+        rewrite(nodes, origConf.getNetworkOutputs());
+
+        ComputationGraphConfiguration conf = origConf.clone();
+        Map<String, GraphVertex> newVertices = new LinkedHashMap<>();
+        Map<String, List<String>> newInputs = new LinkedHashMap<>();
+        for (Node n : nodes.values()) {
+            if (n.conf != null) {
+                n.conf.clearVariables();
+                LayerVertex lv = new LayerVertex(n.conf, n.preProcessor);
+                lv.setOutputVertex(n.outputVertex);
+                newVertices.put(n.name, lv);
+            } else {
+                newVertices.put(n.name, n.vertex);
+            }
+            newInputs.put(n.name, new ArrayList<>(n.inputs));
+        }
+        conf.setVertices(newVertices);
+        conf.setVertexInputs(newInputs);
+        conf.setTopologicalOrder(null);
+        conf.setTopologicalOrderStr(null);
+        conf.setGradientAccumulationSteps(1);
+        conf.setMixedPrecisionDataType(null);
+        conf.setActivationCheckpoints(null);
+        conf.setActivationCheckpointFrequency(0);
+
+        ComputationGraph out = new ComputationGraph(conf);
+        out.init();
+        for (Node n : nodes.values()) {
+            if (n.conf != null)
+                assignParams(out.getLayer(n.name), n);
+        }
+        log.info("Compiled ComputationGraph for inference: {} vertices -> {} vertices", before, nodes.size());
+        return out;
+    }
+
+    private static void rewrite(LinkedHashMap<String, Node> nodes, List<String> networkOutputs) {
+        for (String name : new ArrayList<>(nodes.keySet())) {
+            Node n = nodes.get(name);
+            if (n == null || n.conf == null || !removable(n, networkOutputs))
+                continue;
+            org.deeplearning4j.nn.conf.layers.Layer l = n.conf.getLayer();
+            if (l instanceof DropoutLayer) {
+                remove(nodes, n);
+                continue;
+            }
+
+            Node p = nodes.get(n.inputs.get(0));
+            if (p == null || p.conf == null || !singleConsumer(nodes, p, networkOutputs))
+                continue;
+            org.deeplearning4j.nn.conf.layers.Layer pl = p.conf.getLayer();
+            if (l instanceof BatchNormalization && canFoldBatchNorm(pl, (BatchNormalization) l)) {
+                foldBatchNorm(p, (BatchNormalization) l, n.params);
+                remove(nodes, n);
+            } else if (l instanceof ActivationLayer && (pl instanceof DenseLayer || pl instanceof ConvolutionLayer)
+                    && ((BaseLayer) pl).getActivationFn() instanceof ActivationIdentity) {
+                ((BaseLayer) pl).setActivationFn(((ActivationLayer) l).getActivationFn());
+                remove(nodes, n);
+            }
+        }
+    }
+
+    private static boolean removable(Node n, List<String> networkOutputs) {
+        return n.inputs.size() == 1 && n.preProcessor == null && !networkOutputs.contains(n.name);
+    }
+
+    private static boolean singleConsumer(Map<String, Node> nodes, Node p, List<String> networkOutputs) {
+        if (networkOutputs.contains(p.name))
+            return false;
+        int count = 0;
+        for (Node n : nodes.values()) {
+            for (String in : n.inputs) {
+                if (in.equals(p.name))
+                    count++;
+            }
+        }
+        return count == 1;
+    }
+
+    private static void remove(Map<String, Node> nodes, Node removed) {
+        String replacement = removed.inputs.get(0);
+        nodes.remove(removed.name);
+        for (Node n : nodes.values()) {
+            for (int i = 0; i < n.inputs.size(); i++) {
+                if (n.inputs.get(i).equals(removed.name))
+                    n.inputs.set(i, replacement);
+            }
+        }
+    }
+
+    private static boolean canFoldBatchNorm(org.deeplearning4j.nn.conf.layers.Layer pl, BatchNormalization bn) {
+        if (!(pl instanceof BaseLayer) || !(((BaseLayer) pl).getActivationFn() instanceof ActivationIdentity))
+            return false;
+        if (pl instanceof DenseLayer)
+            return !((DenseLayer) pl).hasLayerNorm();
+        //Only plain 2D convolutions: weights are [nOut, nIn, kH, kW] and the channels dimension must match
+        return (pl.getClass() == ConvolutionLayer.class || pl.getClass() == Convolution2D.class)
+                && ((ConvolutionLayer) pl).getCnn2dDataFormat() == bn.getCnn2DFormat();
+    }
+
+    /**
+     * Fold inference-mode batch norm, y = gamma * (x - mean) / sqrt(var + eps) + beta, into the preceding layer:
+     * W' = W * scale and b' = b * scale + beta - mean * scale, with scale = gamma / sqrt(var + eps), per output channel
+     */
+    private static void foldBatchNorm(Node p, BatchNormalization bn, Map<String, INDArray> bnParams) {
+        INDArray mean = bnParams.get(BatchNormalizationParamInitializer.GLOBAL_MEAN);
+        long nOut = mean.length();
+        mean = mean.reshape(1, nOut);
+        INDArray var;
+        if (bn.isUseLogStd()) {
+            INDArray log10s = bnParams.get(BatchNormalizationParamInitializer.GLOBAL_LOG_STD).reshape(1, nOut);
+            var = Transforms.pow(Nd4j.valueArrayOf(log10s.shape(), 10.0, log10s.dataType()), log10s, false);
+            var.muli(var);
+        } else {
+            var = bnParams.get(BatchNormalizationParamInitializer.GLOBAL_VAR).reshape(1, nOut);
+        }
+        INDArray std = Transforms.sqrt(var.add(bn.getEps()), false);
+
+        INDArray gamma;
+        INDArray beta;
+        if (bn.isLockGammaBeta()) {
+            //Mirrors BatchNormalization.preOutput: fixed gamma/beta are only applied if both differ from the defaults
+            boolean apply = bn.getGamma() != 1.0 && bn.getBeta() != 0.0;
+            gamma = Nd4j.valueArrayOf(mean.shape(), apply ? bn.getGamma() : 1.0, mean.dataType());
+            beta = Nd4j.valueArrayOf(mean.shape(), apply ? bn.getBeta() : 0.0, mean.dataType());
+        } else {
+            gamma = bnParams.get(BatchNormalizationParamInitializer.GAMMA).reshape(1, nOut);
+            beta = bnParams.get(BatchNormalizationParamInitializer.BETA).reshape(1, nOut);
+        }
+
+        INDArray scale = gamma.div(std);
+        INDArray shift = beta.sub(mean.mul(scale));
+
+        INDArray w = p.params.get(DefaultParamInitializer.WEIGHT_KEY);
+        INDArray b = p.params.get(DefaultParamInitializer.BIAS_KEY);
+        org.deeplearning4j.nn.conf.layers.Layer pl = p.conf.getLayer();
+        if (pl instanceof DenseLayer) {
+            //Dense weights: [nIn, nOut]
+            w.muliRowVector(scale);
+            ((DenseLayer) pl).setHasBias(true);
+        } else {
+            //Convolution weights: [nOut, nIn, kH, kW]
+            Nd4j.getExecutioner().exec(new BroadcastMulOp(w, scale.reshape(nOut), w, 0));
+            ((ConvolutionLayer) pl).setHasBias(true);
+        }
+        INDArray newBias = b == null ? shift : b.reshape(1, nOut).mul(scale).addi(shift);
+        p.params.put(DefaultParamInitializer.BIAS_KEY, newBias);
+    }
+
+    private static NeuralNetConfiguration unwrap(NeuralNetConfiguration conf) {
+        org.deeplearning4j.nn.conf.layers.Layer l = conf.getLayer();
+        while (true) {
+            if (l instanceof FrozenLayer) {
+                l = ((FrozenLayer) l).getLayer();
+            } else if (l instanceof FrozenLayerWithBackprop) {
+                l = ((FrozenLayerWithBackprop) l).getUnderlying();
+            } else {
+                break;
+            }
+        }
+        l.setIDropout(null);
+        if (l instanceof BaseLayer)
+            ((BaseLayer) l).setWeightNoise(null);
+        conf.setLayer(l);
+        return conf;
+    }
+
+    private static Map<String, INDArray> copyParams(Layer layer) {
+        Map<String, INDArray> out = new LinkedHashMap<>();
+        for (Map.Entry<String, INDArray> e : layer.paramTable(false).entrySet()) {
+            out.put(e.getKey(), e.getValue().dup());
+        }
+        return out;
+    }
+
+    private static void assignParams(Layer layer, Node n) {
+        Map<String, INDArray> target = layer.paramTable(false);
+        for (Map.Entry<String, INDArray> e : target.entrySet()) {
+            INDArray source = n.params.get(e.getKey());
+            if (source == null)
+                throw new IllegalStateException("No parameter \"" + e.getKey() + "\" available for layer \"" + n.name
+                        + "\" of compiled network");
+            e.getValue().assign(source.reshape(e.getValue().shape()));
+        }
+    }
+
+    private static class Node {
+        private final String name;
+        private final List<String> inputs;
+        private NeuralNetConfiguration conf;        //Null for non-layer vertices
+        private GraphVertex vertex;                 //Non-layer vertices only
+        private InputPreProcessor preProcessor;
+        private boolean outputVertex;
+        private Map<String, INDArray> params;
+
+        private Node(String name, List<String> inputs) {
+            this.name = name;
+            this.inputs = new ArrayList<>(inputs);
+        }
+    }
+}
@@ -80,28 +80,63 @@ public class LSTM extends BaseRecurrentLayer<org.deeplearning4j.nn.conf.layers.L
         final INDArray inputWeights = getParamWithNoise(LSTMParamInitializer.INPUT_WEIGHT_KEY, true, workspaceMgr);
         final INDArray recurrentWeights = getParamWithNoise(LSTMParamInitializer.RECURRENT_WEIGHT_KEY, true, workspaceMgr); //Shape: [hiddenLayerSize,4*hiddenLayerSize+3]; order: [wI,wF,wO,wG,wFF,wOO,wGG]
 
-        //First: Do forward pass to get gate activations, zs etc.
-        FwdPassReturn fwdPass;
+        Pair<Gradient, INDArray> p = null;
+        if (LSTMHelpers.fusedOpSupported(this, layerConf().getGateActivationFn(), permuteIfNWC(this.input), inputWeights,
+                        null, maskArray, true, helper, layerConf().isHelperAllowFallback())
+                        && (!truncatedBPTT || tbpttBackwardLength >= permuteIfNWC(this.input).size(2))) {
+            p = fusedBackpropGradientHelper(epsilon, truncatedBPTT, inputWeights, recurrentWeights, workspaceMgr);
+        }
+
+        if (p == null) {
+            //First: Do forward pass to get gate activations, zs etc.
+            FwdPassReturn fwdPass;
+            if (truncatedBPTT) {
+                fwdPass = activateHelper(true, stateMap.get(STATE_KEY_PREV_ACTIVATION),
+                        stateMap.get(STATE_KEY_PREV_MEMCELL), true, workspaceMgr);
+                //Store last time step of output activations and memory cell state in tBpttStateMap
+                tBpttStateMap.put(STATE_KEY_PREV_ACTIVATION, fwdPass.lastAct.detach());
+                tBpttStateMap.put(STATE_KEY_PREV_MEMCELL, fwdPass.lastMemCell.detach());
+            } else {
+                fwdPass = activateHelper(true, null, null, true, workspaceMgr);
+            }
+            fwdPass.fwdPassOutput = permuteIfNWC(fwdPass.fwdPassOutput);
+            p = LSTMHelpers.backpropGradientHelper(this,
+                    this.conf, this.layerConf().getGateActivationFn(), permuteIfNWC(this.input),
+                    recurrentWeights, inputWeights, permuteIfNWC(epsilon), truncatedBPTT, tbpttBackwardLength, fwdPass, true,
+                    LSTMParamInitializer.INPUT_WEIGHT_KEY, LSTMParamInitializer.RECURRENT_WEIGHT_KEY,
+                    LSTMParamInitializer.BIAS_KEY, gradientViews, null, false, helper, workspaceMgr,
+                    layerConf().isHelperAllowFallback());
+        }
+
+        weightNoiseParams.clear();
+        p.setSecond(permuteIfNWC(backpropDropOutIfPresent(p.getSecond())));
+        return p;
+    }
+
+    /**
+     * Backprop using the fused lstmLayer_bp op. Returns null if the op failed and fallback is allowed
+     */
+    private Pair<Gradient, INDArray> fusedBackpropGradientHelper(final INDArray epsilon, final boolean truncatedBPTT,
+                    final INDArray inputWeights, final INDArray recurrentWeights, LayerWorkspaceMgr workspaceMgr) {
+        applyDropOutIfNecessary(true, workspaceMgr);
+        INDArray prevAct = null;
+        INDArray prevMemCell = null;
         if (truncatedBPTT) {
-            fwdPass = activateHelper(true, stateMap.get(STATE_KEY_PREV_ACTIVATION),
-                    stateMap.get(STATE_KEY_PREV_MEMCELL), true, workspaceMgr);
+            prevAct = stateMap.get(STATE_KEY_PREV_ACTIVATION);
+            prevMemCell = stateMap.get(STATE_KEY_PREV_MEMCELL);
+            //The fused backprop op doesn't return the final state - get it from a (fused) forward pass
+            FwdPassReturn fwdPass = activateHelper(true, prevAct, prevMemCell, false, workspaceMgr);
             //Store last time step of output activations and memory cell state in tBpttStateMap
             tBpttStateMap.put(STATE_KEY_PREV_ACTIVATION, fwdPass.lastAct.detach());
             tBpttStateMap.put(STATE_KEY_PREV_MEMCELL, fwdPass.lastMemCell.detach());
-        } else {
-            fwdPass = activateHelper(true, null, null, true, workspaceMgr);
         }
-        fwdPass.fwdPassOutput = permuteIfNWC(fwdPass.fwdPassOutput);
-        Pair<Gradient,INDArray> p = LSTMHelpers.backpropGradientHelper(this,
-                this.conf, this.layerConf().getGateActivationFn(), permuteIfNWC(this.input),
-                recurrentWeights, inputWeights, permuteIfNWC(epsilon), truncatedBPTT, tbpttBackwardLength, fwdPass, true,
-                LSTMParamInitializer.INPUT_WEIGHT_KEY, LSTMParamInitializer.RECURRENT_WEIGHT_KEY,
-                LSTMParamInitializer.BIAS_KEY, gradientViews, null, false, helper, workspaceMgr,
-                layerConf().isHelperAllowFallback());
 
-        weightNoiseParams.clear();
-        p.setSecond(permuteIfNWC(backpropDropOutIfPresent(p.getSecond())));
-        return p;
+        final INDArray biases = getParamWithNoise(LSTMParamInitializer.BIAS_KEY, true, workspaceMgr);
+        return LSTMHelpers.backpropGradientFused(this, layerConf().getGateActivationFn(), permuteIfNWC(this.input),
+                        recurrentWeights, inputWeights, biases, permuteIfNWC(epsilon), prevAct, prevMemCell,
+                        LSTMParamInitializer.INPUT_WEIGHT_KEY, LSTMParamInitializer.RECURRENT_WEIGHT_KEY,
+                        LSTMParamInitializer.BIAS_KEY, gradientViews, maskArray, false, workspaceMgr,
+                        layerConf().isHelperAllowFallback());
     }
 
     @Override
@@ -36,9 +36,20 @@ import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.activations.impl.ActivationHardSigmoid;
 import org.nd4j.linalg.activations.impl.ActivationSigmoid;
+import org.nd4j.linalg.activations.impl.ActivationSoftPlus;
+import org.nd4j.linalg.activations.impl.ActivationSoftSign;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastMulOp;
+import org.nd4j.linalg.api.ops.impl.layers.recurrent.config.LSTMActivations;
+import org.nd4j.linalg.api.ops.impl.layers.recurrent.config.LSTMDataFormat;
+import org.nd4j.linalg.api.ops.impl.layers.recurrent.config.LSTMDirectionMode;
 import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.MulOp;
 import org.nd4j.linalg.api.ops.impl.transforms.same.TimesOneMinus;
 import org.nd4j.linalg.api.shape.Shape;
@@ -48,8 +59,10 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.common.primitives.Pair;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.nd4j.linalg.indexing.NDArrayIndex.*;
@@ -127,6 +140,16 @@ public class LSTMHelpers {
             }
         }
 
+        if (!forBackprop && fusedOpSupported(layer, gateActivationFn, input, inputWeights, prevOutputActivations, maskArray,
+                        forwards, helper, isHelperAllowFallback)) {
+            FwdPassReturn ret = activateFused(layer, gateActivationFn, input, recurrentWeights, inputWeights, biases,
+                            originalPrevOutputActivations, originalPrevMemCellState, maskArray, hasPeepholeConnections,
+                            workspaceMgr, isHelperAllowFallback);
+            if (ret != null) {
+                return ret;
+            }
+        }
+
         //Allocate arrays for activations:
         boolean sigmoidGates = gateActivationFn instanceof ActivationSigmoid;
         IActivation afn = layer.layerConf().getActivationFn();
@@ -408,6 +431,291 @@ public class LSTMHelpers {
         return toReturn;
     }
 
+    /**
+     * Whether the fused lstmLayer op can be used to execute the forward and backward pass of the specified layer in
+     * a single op call for the whole sequence, instead of the per time step implementation.
+     * Requires that:<br>
+     * - The layer is an LSTM or GravesLSTM (not bidirectional), with {@link AbstractLSTM#isUseFusedOp()} set<br>
+     * - No (CuDNN/MKLDNN) helper is available, and the fused op has not previously failed for this layer<br>
+     * - The gate and layer activation functions are supported by the op<br>
+     * - The mask array (if present) is a standard variable length mask - i.e., 1s followed by 0s for each example
+     */
+    static boolean fusedOpSupported(final BaseRecurrentLayer layer, final IActivation gateActivationFn,
+                                    final INDArray input, final INDArray inputWeights, final INDArray prevOutputActivations,
+                                    final INDArray maskArray, final boolean forwards, final LSTMHelper helper,
+                                    final boolean isHelperAllowFallback) {
+        if (helper != null || !forwards || (isHelperAllowFallback && layer.helperCountFail > 0))
+            return false;
+        if (!(layer.layerConf() instanceof AbstractLSTM) || !((AbstractLSTM) layer.layerConf()).isUseFusedOp())
+            return false;
+        if (input.rank() != 3 || !input.dataType().isFPType() || input.size(1) != inputWeights.size(0))
+            return false;
+        if (prevOutputActivations != null && prevOutputActivations.size(0) != input.size(0))
+            return false;   //Invalid previous state - let built-in implementation produce the appropriate exception
+        if (fusedActivation(gateActivationFn) == null || fusedActivation(layer.layerConf().getActivationFn()) == null)
+            return false;
+        return maskArray == null || isVariableLengthMask(maskArray, input.size(0), input.size(2));
+    }
+
+    /**
+     * Mask arrays are supported by the fused op only if they are of the form [1,...,1,0,...,0] for each example: in
+     * this case, the built-in implementation (which zeros the state for masked steps) and the fused op followed by
+     * masking of the outputs give identical results for all unmasked time steps.
+     */
+    private static boolean isVariableLengthMask(INDArray mask, long miniBatchSize, long timeSeriesLength) {
+        if (mask.rank() != 2 || mask.size(0) != miniBatchSize || mask.size(1) != timeSeriesLength)
+            return false;
+        if (mask.mul(mask.rsub(1.0)).amaxNumber().doubleValue() != 0.0)
+            return false;   //Not all 0s and 1s
+        if (timeSeriesLength > 1) {
+            INDArray diff = mask.get(all(), interval(1, timeSeriesLength)).sub(mask.get(all(), interval(0, timeSeriesLength - 1)));
+            return diff.maxNumber().doubleValue() <= 0.0;
+        }
+        return true;
+    }
+
+    private static LSTMActivations fusedActivation(IActivation activation) {
+        if (activation instanceof ActivationSigmoid) {
+            return LSTMActivations.SIGMOID;
+        } else if (activation instanceof ActivationTanH) {
+            return LSTMActivations.TANH;
+        } else if (activation instanceof ActivationHardSigmoid) {
+            return LSTMActivations.HARD_SIGMOID;
+        } else if (activation instanceof ActivationSoftSign) {
+            return LSTMActivations.SOFTSIGN;
+        } else if (activation instanceof ActivationSoftPlus) {
+            return LSTMActivations.SOFTPLUS;
+        }
+        return null;
+    }
+
+    /**
+     * Integer args for lstmLayer and lstmLayer_bp: data format, direction mode, gate/cell/output activations.
+     * Data format is [bS, nIn, sL] (same as DL4J NCW format), direction is forward only
+     */
+    private static int[] fusedIntArgs(BaseRecurrentLayer layer, IActivation gateActivationFn) {
+        int afn = fusedActivation(layer.layerConf().getActivationFn()).ordinal();
+        return new int[] {LSTMDataFormat.NST.ordinal(), LSTMDirectionMode.FWD.ordinal(),
+                        fusedActivation(gateActivationFn).ordinal(), afn, afn};
+    }
+
+    /**
+     * Convert from DL4J gate order [block input, forget, output, input modulation] (i.e., [c', f, o, i] in the usual
+     * notation) to the order used by the lstmLayer op: [i, f, c', o]. Used for weights, biases and their gradients.
+     */
+    private static void toFusedGateOrder(INDArray dl4j, INDArray fused, long n) {
+        fused.get(all(), interval(0, n)).assign(dl4j.get(all(), interval(3 * n, 4 * n)));
+        fused.get(all(), interval(n, 2 * n)).assign(dl4j.get(all(), interval(n, 2 * n)));
+        fused.get(all(), interval(2 * n, 3 * n)).assign(dl4j.get(all(), interval(0, n)));
+        fused.get(all(), interval(3 * n, 4 * n)).assign(dl4j.get(all(), interval(2 * n, 3 * n)));
+    }
+
+    /**
+     * Inverse of {@link #toFusedGateOrder(INDArray, INDArray, long)}
+     */
+    private static void fromFusedGateOrder(INDArray fused, INDArray dl4j, long n) {
+        dl4j.get(all(), interval(3 * n, 4 * n)).assign(fused.get(all(), interval(0, n)));
+        dl4j.get(all(), interval(n, 2 * n)).assign(fused.get(all(), interval(n, 2 * n)));
+        dl4j.get(all(), interval(0, n)).assign(fused.get(all(), interval(2 * n, 3 * n)));
+        dl4j.get(all(), interval(2 * n, 3 * n)).assign(fused.get(all(), interval(3 * n, 4 * n)));
+    }
+
+    /**
+     * Get the inputs for the lstmLayer and lstmLayer_bp ops: x, Wx, Wr, b, [hI], [cI], [Wp]
+     */
+    private static List<INDArray> fusedInputs(INDArray input, INDArray recurrentWeights, INDArray inputWeights,
+                                              INDArray biases, INDArray prevOutputActivations, INDArray prevMemCellState,
+                                              boolean hasPeepholeConnections, LayerWorkspaceMgr workspaceMgr, ArrayType arrayType) {
+        long n = recurrentWeights.size(0);
+        DataType dt = inputWeights.dataType();
+        INDArray wx = workspaceMgr.createUninitialized(arrayType, dt, new long[] {inputWeights.size(0), 4 * n}, 'c');
+        toFusedGateOrder(inputWeights, wx, n);
+        INDArray wr = workspaceMgr.createUninitialized(arrayType, dt, new long[] {n, 4 * n}, 'c');
+        toFusedGateOrder(recurrentWeights, wr, n);
+        INDArray b = workspaceMgr.createUninitialized(arrayType, dt, new long[] {1, 4 * n}, 'c');
+        toFusedGateOrder(biases.reshape(1, 4 * n), b, n);
+
+        List<INDArray> inputs = new ArrayList<>();
+        inputs.add(input);
+        inputs.add(wx);
+        inputs.add(wr);
+        inputs.add(b.reshape(4 * n));
+        if (prevOutputActivations != null)
+            inputs.add(prevOutputActivations.castTo(dt));
+        if (prevMemCellState != null)
+            inputs.add(prevMemCellState.castTo(dt));
+        if (hasPeepholeConnections) {
+            //DL4J: [wFF, wOO, wGG] columns after the IFOG weights (GG: input modulation gate); lstmLayer order: [i, f, o]
+            INDArray wp = workspaceMgr.createUninitialized(arrayType, dt, new long[] {3 * n}, 'c');
+            wp.get(interval(0, n)).assign(recurrentWeights.get(all(), point(4 * n + 2)));
+            wp.get(interval(n, 2 * n)).assign(recurrentWeights.get(all(), point(4 * n)));
+            wp.get(interval(2 * n, 3 * n)).assign(recurrentWeights.get(all(), point(4 * n + 1)));
+            inputs.add(wp);
+        }
+        return inputs;
+    }
+
+    private static boolean handleFusedFailure(BaseRecurrentLayer layer, RuntimeException e, boolean isHelperAllowFallback,
+                                              String pass) {
+        if (e.getMessage() != null && e.getMessage().contains("Failed to allocate")) {
+            //This is a memory exception - don't fallback to built-in implementation
+            throw e;
+        }
+        if (isHelperAllowFallback) {
+            layer.helperCountFail++;
+            log.warn("Fused LSTM op execution failed during " + pass + " - falling back on built-in implementation", e);
+            return true;
+        }
+        throw new RuntimeException("Error during fused LSTM op " + pass + " - helperAllowFallback() is set to false", e);
+    }
+
+    /**
+     * Forward pass for the whole sequence using the fused lstmLayer op. Returns null if the op execution failed and
+     * fallback to the built-in implementation is allowed.
+     */
+    private static FwdPassReturn activateFused(final BaseRecurrentLayer layer, final IActivation gateActivationFn,
+                                               final INDArray input, final INDArray recurrentWeights,
+                                               final INDArray inputWeights, final INDArray biases,
+                                               final INDArray prevOutputActivations, final INDArray prevMemCellState,
+                                               final INDArray maskArray, final boolean hasPeepholeConnections,
+                                               final LayerWorkspaceMgr workspaceMgr, final boolean isHelperAllowFallback) {
+        long n = recurrentWeights.size(0);
+        long miniBatchSize = input.size(0);
+        long timeSeriesLength = input.size(2);
+        DataType dt = inputWeights.dataType();
+
+        INDArray outputActivations = workspaceMgr.create(ArrayType.ACTIVATIONS, dt, new long[] {miniBatchSize, n, timeSeriesLength}, 'f');
+        INDArray lastAct = workspaceMgr.create(ArrayType.FF_WORKING_MEM, dt, new long[] {miniBatchSize, n}, 'f');
+        INDArray lastMemCell = workspaceMgr.create(ArrayType.FF_WORKING_MEM, dt, new long[] {miniBatchSize, n}, 'f');
+
+        try {
+            List<INDArray> inputs = fusedInputs(input, recurrentWeights, inputWeights, biases, prevOutputActivations,
+                            prevMemCellState, hasPeepholeConnections, workspaceMgr, ArrayType.FF_WORKING_MEM);
+            CustomOp op = DynamicCustomOp.builder("lstmLayer")
+                            .addInputs(inputs.toArray(new INDArray[0]))
+                            .addOutputs(outputActivations, lastAct, lastMemCell)
+                            .addIntegerArguments(fusedIntArgs(layer, gateActivationFn))
+                            .addFloatingPointArguments(0.0)     //Cell clipping: none
+                            .addBooleanArguments(true, false, prevOutputActivations != null, prevMemCellState != null,
+                                            hasPeepholeConnections, true, true, true)
+                            .build();
+            Nd4j.exec(op);
+        } catch (ND4JOpProfilerException e) {
+            throw e;    //NaN panic etc for debugging
+        } catch (RuntimeException e) {
+            handleFusedFailure(layer, e, isHelperAllowFallback, "forward pass");
+            return null;
+        }
+
+        if (maskArray != null) {
+            //Variable length mask: zero outputs and final state for masked steps, as per built-in implementation
+            Nd4j.getExecutioner().exec(new BroadcastMulOp(outputActivations, maskArray, outputActivations, 0, 2));
+            INDArray lastStepMask = maskArray.getColumn(timeSeriesLength - 1, true);
+            lastAct.muliColumnVector(lastStepMask);
+            lastMemCell.muliColumnVector(lastStepMask);
+        }
+
+        FwdPassReturn toReturn = new FwdPassReturn();
+        toReturn.fwdPassOutput = outputActivations;
+        toReturn.lastAct = lastAct;
+        toReturn.lastMemCell = lastMemCell;
+        toReturn.prevAct = prevOutputActivations;
+        toReturn.prevMemCell = prevMemCellState;
+        return toReturn;
+    }
+
+    /**
+     * Backward pass for the whole sequence using the fused lstmLayer_bp op (which internally recomputes the forward
+     * pass, hence no forward pass state is required). Gradients are placed in the gradient views.<br>
+     * Should only be used if {@link #fusedOpSupported(BaseRecurrentLayer, IActivation, INDArray, INDArray, INDArray, INDArray, boolean, LSTMHelper, boolean)}
+     * returns true. Truncated BPTT is supported only if the backward length is at least the sequence length.
+     *
+     * @return Gradients and epsilon, or null if the op execution failed and fallback to the built-in implementation
+     * is allowed
+     */
+    static public Pair<Gradient, INDArray> backpropGradientFused(final BaseRecurrentLayer layer,
+                    final IActivation gateActivationFn, INDArray input, final INDArray recurrentWeights, //Shape: [hiddenLayerSize,4*hiddenLayerSize+3]; order: [wI,wF,wO,wG,wFF,wOO,wGG]
+                    final INDArray inputWeights, //Shape: [n^(L-1),4*hiddenLayerSize]; order: [wi,wf,wo,wg]
+                    final INDArray biases, final INDArray epsilon, final INDArray prevOutputActivations,
+                    final INDArray prevMemCellState, final String inputWeightKey, final String recurrentWeightKey,
+                    final String biasWeightKey, final Map<String, INDArray> gradientViews, INDArray maskArray,
+                    final boolean hasPeepholeConnections, final LayerWorkspaceMgr workspaceMgr,
+                    final boolean isHelperAllowFallback) {
+        DataType dt = inputWeights.dataType();
+        input = input.castTo(dt);
+        long n = recurrentWeights.size(0);
+        long prevLayerSize = inputWeights.size(0);
+        long miniBatchSize = input.size(0);
+        long timeSeriesLength = input.size(2);
+
+        INDArray dLdh = epsilon.castTo(dt);
+        if (maskArray != null) {
+            maskArray = maskArray.castTo(dt);
+            dLdh = workspaceMgr.dup(ArrayType.BP_WORKING_MEM, dLdh, 'f');
+            Nd4j.getExecutioner().exec(new BroadcastMulOp(dLdh, maskArray, dLdh, 0, 2));
+        }
+
+        INDArray epsilonNext = workspaceMgr.create(ArrayType.ACTIVATION_GRAD, dt, new long[] {miniBatchSize, prevLayerSize, timeSeriesLength}, 'f');
+        INDArray dLdWx = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[] {prevLayerSize, 4 * n}, 'c');
+        INDArray dLdWr = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[] {n, 4 * n}, 'c');
+        INDArray dLdb = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[] {4 * n}, 'c');
+        List<INDArray> outputs = new ArrayList<>(Arrays.asList(epsilonNext, dLdWx, dLdWr, dLdb));
+        if (prevOutputActivations != null)
+            outputs.add(workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[] {miniBatchSize, n}, 'c'));
+        if (prevMemCellState != null)
+            outputs.add(workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[] {miniBatchSize, n}, 'c'));
+        INDArray dLdWp = null;
+        if (hasPeepholeConnections) {
+            dLdWp = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM, dt, new long[] {3 * n}, 'c');
+            outputs.add(dLdWp);
+        }
+
+        try {
+            List<INDArray> inputs = fusedInputs(input, recurrentWeights, inputWeights, biases, prevOutputActivations,
+                            prevMemCellState, hasPeepholeConnections, workspaceMgr, ArrayType.BP_WORKING_MEM);
+            inputs.add(dLdh);
+            CustomOp op = DynamicCustomOp.builder("lstmLayer_bp")
+                            .addInputs(inputs.toArray(new INDArray[0]))
+                            .addOutputs(outputs.toArray(new INDArray[0]))
+                            .addIntegerArguments(fusedIntArgs(layer, gateActivationFn))
+                            .addFloatingPointArguments(0.0)     //Cell clipping: none
+                            .addBooleanArguments(true, false, prevOutputActivations != null, prevMemCellState != null,
+                                            hasPeepholeConnections, true, false, false)
+                            .build();
+            Nd4j.exec(op);
+        } catch (ND4JOpProfilerException e) {
+            throw e;    //NaN panic etc for debugging
+        } catch (RuntimeException e) {
+            handleFusedFailure(layer, e, isHelperAllowFallback, "backprop");
+            return null;
+        }
+
+        //Copy gradients to the gradient views, converting back to DL4J gate order
+        INDArray iwGradientsOut = gradientViews.get(inputWeightKey);
+        INDArray rwGradientsOut = gradientViews.get(recurrentWeightKey); //Order: {I,F,O,G,FF,OO,GG}
+        INDArray bGradientsOut = gradientViews.get(biasWeightKey);
+        fromFusedGateOrder(dLdWx, iwGradientsOut, n);
+        fromFusedGateOrder(dLdWr, rwGradientsOut.get(all(), interval(0, 4 * n)), n);
+        fromFusedGateOrder(dLdb.reshape(1, 4 * n), bGradientsOut, n);
+        if (hasPeepholeConnections) {
+            rwGradientsOut.get(all(), point(4 * n + 2)).assign(dLdWp.get(interval(0, n)));
+            rwGradientsOut.get(all(), point(4 * n)).assign(dLdWp.get(interval(n, 2 * n)));
+            rwGradientsOut.get(all(), point(4 * n + 1)).assign(dLdWp.get(interval(2 * n, 3 * n)));
+        }
+
+        if (maskArray != null) {
+            //Don't send anything but 0s to the layer below for masked steps
+            Nd4j.getExecutioner().exec(new BroadcastMulOp(epsilonNext, maskArray, epsilonNext, 0, 2));
+        }
+
+        Gradient retGradient = new DefaultGradient();
+        retGradient.gradientForVariable().put(inputWeightKey, iwGradientsOut);
+        retGradient.gradientForVariable().put(recurrentWeightKey, rwGradientsOut);
+        retGradient.gradientForVariable().put(biasWeightKey, bGradientsOut);
+
+        return new Pair<>(retGradient, epsilonNext);
+    }
+
     private static boolean shouldCache(boolean training, CacheMode cacheMode, LayerWorkspaceMgr workspaceMgr){
         return training && cacheMode != CacheMode.NONE && workspaceMgr.hasConfiguration(ArrayType.FF_CACHE) && workspaceMgr.isWorkspaceOpen(ArrayType.FF_CACHE);
     }
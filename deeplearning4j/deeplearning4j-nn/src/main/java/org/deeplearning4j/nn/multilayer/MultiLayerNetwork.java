@@ -50,11 +50,13 @@ import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
 import org.deeplearning4j.nn.layers.LayerHelper;
 import org.deeplearning4j.nn.layers.recurrent.BidirectionalLayer;
 import org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer;
+import org.deeplearning4j.nn.updater.LossScaler;
 import org.deeplearning4j.nn.updater.UpdaterCreator;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.deeplearning4j.optimize.Solver;
 import org.deeplearning4j.optimize.api.ConvexOptimizer;
+import org.deeplearning4j.optimize.api.LayerExecutionListener;
 import org.deeplearning4j.optimize.api.TrainingListener;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.util.*;
@@ -126,6 +128,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     protected transient INDArray flattenedGradients; //Gradients for all layers are a view/subset of this array
 
     protected boolean clearTbpttState = true;  //Mainly for unit testing (should be enabled otherwise)
+    //Params are backed by read-only memory (for example, restored from a read-only file via MappedModelSerializer):
+    //the network can only be used for inference
+    @Getter @Setter
+    protected transient boolean readOnly = false;
     protected transient ThreadLocal<Long> lastEtlTime = new ThreadLocal<>();
     protected INDArray mask;
 
@@ -136,6 +142,13 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     @Getter
     protected transient Map<String,Pointer> helperWorkspaces = new HashMap<>();
 
+    //Mixed precision training: low precision working copy of this network, used for forward and backward passes
+    protected transient MultiLayerNetwork mixedPrecisionNet;
+    protected transient Gradient mixedPrecisionGradient;
+    protected transient LossScaler lossScaler;
+    protected transient INDArray featuresMaskArray;
+    protected transient INDArray labelsMaskArray;
+
 
     /**
      * Workspace for working memory for a single layer: forward pass and backward pass
@@ -340,6 +353,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     public void pretrainLayer(int layerIdx, DataSetIterator iter, int numEpochs) {
         Preconditions.checkState(numEpochs > 0, "Number of epochs (%s) must be a positive number", numEpochs);
+        checkWritable();
 
         if (flattenedGradients == null) {
             initGradientsView();
@@ -384,6 +398,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      * @param features Training data array
      */
     public void pretrainLayer(int layerIdx, INDArray features) {
+        checkWritable();
         setInput(features);
         setLayerMaskArrays(null, null);
 
@@ -577,6 +592,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         int layerIdx = Integer.parseInt(key.substring(0, idx));
         String newKey = key.substring(idx + 1);
 
+        checkWritable();
         layers[layerIdx].setParam(newKey, val);
     }
 
@@ -1037,6 +1053,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     validateArrayWorkspaces(workspaceMgr, input, ArrayType.ACTIVATIONS, i, true, "Feed forward to layer (inference)");
                 }
 
+                fireLayerStart(i, false);
                 if(fwdPassType == FwdPassType.STANDARD){
                     input = layers[i].activate(input, train, workspaceMgr);
                 } else if (fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE) {
@@ -1055,6 +1072,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 } else {
                     throw new IllegalStateException("Forward pass type not supported for this method: " + fwdPassType);
                 }
+                fireLayerEnd(i, false, input);
 
                 //Validation: Exception if invalid (bad layer implementation)
                 validateArrayWorkspaces(workspaceMgr, input, ArrayType.ACTIVATIONS, i, false, "Feed forward to layer (inference)");
@@ -1134,6 +1152,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     log.trace("About to forward pass: {} - {}", i, layers[i].getClass().getSimpleName());
                 }
 
+                fireLayerStart(i, false);
                 if(fwdPassType == FwdPassType.STANDARD){
                     input = layers[i].activate(input, true, workspaceMgr);
                 } else if(fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE){
@@ -1151,6 +1170,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 } else {
                     throw new IllegalStateException("FwdPassType not supported for this method: " + fwdPassType);
                 }
+                fireLayerEnd(i, false, input);
 
                 if(input == null){
                     throw new IllegalStateException("Layer " + i + " returned null activations");
@@ -1302,6 +1322,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         }
                     }
 
+                    fireLayerStart(i, false);
                     if (fwdPassType == FwdPassType.STANDARD) {
                         //Standard feed-forward case
                         if(i > 0 && ConvolutionUtils.layerHasConvolutionLayout(layers[i - 1].conf().getLayer())
@@ -1353,6 +1374,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     } else {
                         throw new IllegalArgumentException("Unsupported forward pass type for this method: " + fwdPassType);
                     }
+                    fireLayerEnd(i, false, input);
                     layers[i].clear();
                     //Validation: Exception if invalid (bad layer implementation)
                     validateArrayWorkspaces(mgr, input, ArrayType.ACTIVATIONS, i, false, "Output of layer (inference)");
@@ -1557,6 +1579,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         if (flattenedParams == params) {
             return; //No op
         }
+        checkWritable();
 
         if (flattenedParams != null && params.length() == flattenedParams.length()) {
             if (params != flattenedParams) {
@@ -1678,6 +1701,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     }
 
     private synchronized void fitHelper(DataSetIterator iterator){
+        checkWritable();
         // we're wrapping all iterators into AsyncDataSetIterator to provide background prefetch - where appropriate
         DataSetIterator iter;
         boolean destructable = false;
@@ -1978,6 +2002,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
                     INDArray eps = (i == layers.length - 1 ? epsilon : currPair.getRight());  //eps is null for OutputLayer
 
+                    fireLayerStart(i, true);
                     if (!tbptt) {
                         //Standard case
                         currPair = layers[i].backpropGradient(eps, workspaceMgr);
@@ -1990,6 +2015,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                             currPair = layers[i].backpropGradient(currPair.getSecond(), workspaceMgr);
                         }
                     }
+                    fireLayerEnd(i, true, currPair.getSecond());
 
                     if (currPair.getSecond() != null) {
                         //Edge case: may be null for Embedding layer, for example
@@ -2309,6 +2335,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             //No op: can't fit a network with 0 parameters
             return;
         }
+        checkWritable();
 
         setInput(features);
         setLabels(labels);
@@ -2750,6 +2777,11 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                             "using backpropagation, the final layer must be an output layer");
         }
 
+        if (layerWiseConfigurations.getMixedPrecisionDataType() != null) {
+            computeGradientAndScoreMixedPrecision();
+            return;
+        }
+
         //Note: Workspace manager is only ose here for score calculation... other workspace managers are used in the
         // various FF/backprop methds
         LayerWorkspaceMgr mgr;
@@ -2818,6 +2850,95 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         getOutputLayer().clearNoiseWeightParams();
     }
 
+    /**
+     * Mixed precision version of {@link #computeGradientAndScore()}: the forward and backward passes are performed by a
+     * low precision working copy of this network, using the current (full precision) master parameters. The resulting
+     * gradients - computed with a scaled loss - are copied into this network's flattened gradients view, and are
+     * unscaled by the updater.
+     */
+    protected void computeGradientAndScoreMixedPrecision() {
+        Preconditions.checkState(layerWiseConfigurations.getBackpropType() != BackpropType.TruncatedBPTT,
+                "Mixed precision training is not supported with truncated backpropagation through time");
+        synchronizeIterEpochCounts();
+        MultiLayerNetwork net = getMixedPrecisionNet();
+        DataType dataType = net.getLayerWiseConfigurations().getDataType();
+
+        net.params().assign(flattenedParams);
+        net.setIterationCount(getIterationCount());
+        net.setEpochCount(getEpochCount());
+        net.setInput(LossScaler.castForMixedPrecision(input,
+                LossScaler.isIndexInput(layerWiseConfigurations.getConf(0).getLayer()), dataType));
+        net.setLabels(LossScaler.castForMixedPrecision(labels,
+                LossScaler.isIndexLabels(getOutputLayer().conf().getLayer()), dataType));
+        net.setLayerMaskArrays(featuresMaskArray, labelsMaskArray);
+        try {
+            net.computeGradientAndScore();
+        } finally {
+            net.clearLayerMaskArrays();
+        }
+
+        flattenedGradients.assign(net.getFlattenedGradients());
+        gradient = mixedPrecisionGradient;
+        score = net.score();
+
+        if (!trainingListeners.isEmpty()) {
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (TrainingListener tl : trainingListeners) {
+                    tl.onBackwardPass(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get (creating if necessary) the low precision working copy of this network used for mixed precision training.
+     * The output layer loss of the working copy is scaled by this network's {@link LossScaler}
+     */
+    protected MultiLayerNetwork getMixedPrecisionNet() {
+        if (mixedPrecisionNet == null) {
+            if (flattenedGradients == null) {
+                initGradientsView();
+            }
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                DataType dataType = layerWiseConfigurations.getMixedPrecisionDataType();
+                MultiLayerConfiguration conf = MultiLayerConfiguration.fromJson(layerWiseConfigurations.toJson());
+                conf.setDataType(dataType);
+                conf.setMixedPrecisionDataType(null);
+                MultiLayerNetwork net = new MultiLayerNetwork(conf);
+                net.init(flattenedParams.castTo(dataType), false);
+                getLossScaler().applyTo(net.getOutputLayer());
+
+                //Gradient for the updater: views of the full precision flattened gradients
+                Gradient g = new DefaultGradient(flattenedGradients);
+                for (int i = 0; i < layers.length; i++) {
+                    if (layers[i].numParams() == 0)
+                        continue;
+                    Map<String, INDArray> m = layers[i].conf().getLayer().initializer()
+                            .getGradientsFromFlattened(layers[i].conf(), layers[i].getGradientsViewArray());
+                    for (Map.Entry<String, INDArray> e : m.entrySet()) {
+                        g.setGradientFor(i + "_" + e.getKey(), e.getValue());
+                    }
+                }
+                mixedPrecisionGradient = g;
+                mixedPrecisionNet = net;
+            }
+        }
+        return mixedPrecisionNet;
+    }
+
+    /**
+     * Get the dynamic loss scaler used for mixed precision training.
+     *
+     * @return The loss scaler, or null if mixed precision training is not enabled for this network
+     * @see NeuralNetConfiguration.Builder#mixedPrecision(DataType)
+     */
+    public LossScaler getLossScaler() {
+        if (lossScaler == null && layerWiseConfigurations.getMixedPrecisionDataType() != null) {
+            lossScaler = new LossScaler();
+        }
+        return lossScaler;
+    }
+
     /**
      * Clear the inputs. Clears optimizer state.
      */
@@ -2885,6 +3006,12 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         setParams(params);
     }
 
+    private void checkWritable() {
+        if (readOnly)
+            throw new IllegalStateException("Cannot update parameters of a read-only network (for example, restored from " +
+                    "a read-only file via MappedModelSerializer): use clone() to get a copy of the network that can be trained");
+    }
+
     /**
      * Intended for internal/developer use
      */
@@ -3191,6 +3318,31 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         }
     }
 
+    private void fireLayerStart(int layerIdx, boolean backward) {
+        if (trainingListeners == null || trainingListeners.isEmpty())
+            return;
+        for (TrainingListener tl : trainingListeners) {
+            if (tl instanceof LayerExecutionListener) {
+                ((LayerExecutionListener) tl).layerStart(this, layerIdx, layerName(layerIdx), backward);
+            }
+        }
+    }
+
+    private void fireLayerEnd(int layerIdx, boolean backward, INDArray output) {
+        if (trainingListeners == null || trainingListeners.isEmpty())
+            return;
+        for (TrainingListener tl : trainingListeners) {
+            if (tl instanceof LayerExecutionListener) {
+                ((LayerExecutionListener) tl).layerEnd(this, layerIdx, layerName(layerIdx), layers[layerIdx], backward, output);
+            }
+        }
+    }
+
+    private String layerName(int layerIdx) {
+        String name = layers[layerIdx].conf().getLayer().getLayerName();
+        return name != null ? name : String.valueOf(layerIdx);
+    }
+
     /**Get the state of the RNN layer, as used in rnnTimeStep().
      * @param layer Number/index of the layer.
      * @return Hidden state, or null if layer is not an RNN layer
@@ -3298,6 +3450,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      * @see #clearLayerMaskArrays()
      */
     public void setLayerMaskArrays(INDArray featuresMaskArray, INDArray labelsMaskArray) {
+        this.featuresMaskArray = featuresMaskArray;
+        this.labelsMaskArray = labelsMaskArray;
         if (featuresMaskArray != null) {
 
             if (featuresMaskArray.size(0) > Integer.MAX_VALUE)
@@ -3337,6 +3491,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      * See {@link #setLayerMaskArrays(INDArray, INDArray)} for details on mask arrays.
      */
     public void clearLayerMaskArrays() {
+        featuresMaskArray = null;
+        labelsMaskArray = null;
         for (Layer layer : layers) {
             layer.setMaskArray(null);
         }
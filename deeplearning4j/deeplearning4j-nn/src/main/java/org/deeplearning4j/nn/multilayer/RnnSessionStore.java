@@ -0,0 +1,344 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.multilayer;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.layers.RecurrentLayer;
+import org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session-oriented alternative to {@link MultiLayerNetwork#rnnTimeStep(INDArray)} for serving many independent
+ * time series streams with a single network instance.<br>
+ * rnnTimeStep stores a single set of RNN layer states (one per minibatch row) on the network itself. Instead, this class
+ * keeps the RNN state of each stream ("session"), keyed by a user-provided ID, in pooled arrays (one
+ * [maxSessions, stateSize] array per layer and state key - for example, the LSTM activations and memory cell state) that
+ * are allocated once, outside of any workspace. On each call to {@link #step(List, INDArray)}, the states of the
+ * requested sessions are gathered into a minibatch, the network is stepped once for all of them, and the updated states
+ * are scattered back to the pool.<br>
+ * When all slots are in use, the least recently used session is evicted to make room for a new one. Optionally, sessions
+ * that have not been used for a specified amount of time are also evicted. A new (or evicted) session starts from the
+ * default (zero) initial state, as per rnnTimeStep after {@link MultiLayerNetwork#rnnClearPreviousState()}.<br>
+ * Note that the network's own rnnTimeStep state is cleared by each call to step. Calls are synchronized, as the network
+ * instance is shared by all sessions.
+ *
+ * @param <K> Type of the session ID
+ */
+@Slf4j
+public class RnnSessionStore<K> {
+
+    private final MultiLayerNetwork network;
+    @Getter
+    private final int maxSessions;
+    private final long expireAfterAccessMs;
+    private final int[] recurrentLayers;
+
+    private final LinkedHashMap<K, Session> sessions;                      //Access order: least recently used first
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final Map<Integer, Map<String, INDArray>> statePools = new HashMap<>();    //Key: layer index, then state key
+    @Getter
+    private long evictionCount;
+
+    private static class Session {
+        private final int slot;
+        private long lastAccess;
+
+        private Session(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * @param network     Network to use. Must contain at least one recurrent layer
+     * @param maxSessions Maximum number of sessions to keep state for
+     */
+    public RnnSessionStore(@NonNull MultiLayerNetwork network, int maxSessions) {
+        this(network, maxSessions, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param network           Network to use. Must contain at least one recurrent layer
+     * @param maxSessions       Maximum number of sessions to keep state for
+     * @param expireAfterAccess Sessions not used for this amount of time are evicted. 0 to disable
+     * @param unit              Time unit for expireAfterAccess
+     */
+    public RnnSessionStore(@NonNull MultiLayerNetwork network, int maxSessions, long expireAfterAccess, @NonNull TimeUnit unit) {
+        Preconditions.checkArgument(maxSessions > 0, "Maximum number of sessions must be > 0, got %s", maxSessions);
+        Preconditions.checkArgument(expireAfterAccess >= 0, "Expiry time must be >= 0, got %s", expireAfterAccess);
+        this.network = network;
+        this.maxSessions = maxSessions;
+        this.expireAfterAccessMs = unit.toMillis(expireAfterAccess);
+        this.sessions = new LinkedHashMap<>(16, 0.75f, true);
+        for (int i = 0; i < maxSessions; i++) {
+            freeSlots.add(i);
+        }
+
+        List<Integer> rnnLayers = new ArrayList<>();
+        for (int i = 0; i < network.getnLayers(); i++) {
+            Layer l = network.getLayer(i);
+            if (l instanceof BaseWrapperLayer) {
+                l = ((BaseWrapperLayer) l).getUnderlying();
+            }
+            if (l instanceof RecurrentLayer) {
+                rnnLayers.add(i);
+            }
+        }
+        Preconditions.checkArgument(!rnnLayers.isEmpty(), "Network does not contain any recurrent layers");
+        this.recurrentLayers = new int[rnnLayers.size()];
+        for (int i = 0; i < recurrentLayers.length; i++) {
+            recurrentLayers[i] = rnnLayers.get(i);
+        }
+    }
+
+    /**
+     * Step a single session. See {@link #step(List, INDArray)}
+     *
+     * @param sessionId Session ID
+     * @param input     Input with minibatch size 1: shape [1, inputSize] or [1, inputSize, timeSeriesLength]
+     * @return Network output for the session
+     */
+    public INDArray step(@NonNull K sessionId, @NonNull INDArray input) {
+        return step(Collections.singletonList(sessionId), input);
+    }
+
+    /**
+     * Conduct a forward pass for multiple sessions at once, continuing from each session's stored RNN state, and
+     * store the updated state for each session. New sessions are created as required.
+     *
+     * @param sessionIds Session IDs, one for each example (row) in the input. Must not contain duplicates
+     * @param input      Input: [numSessions, inputSize] or [numSessions, inputSize, timeSeriesLength], as per
+     *                   {@link MultiLayerNetwork#rnnTimeStep(INDArray)}
+     * @return Network output, as per {@link MultiLayerNetwork#rnnTimeStep(INDArray)} - row i is for session i
+     */
+    public synchronized INDArray step(@NonNull List<K> sessionIds, @NonNull INDArray input) {
+        int n = sessionIds.size();
+        Preconditions.checkArgument(n > 0, "No session IDs provided");
+        Preconditions.checkArgument(input.size(0) == n, "Number of session IDs (%s) does not match input minibatch size (%s)",
+                n, input.size(0));
+        Preconditions.checkArgument(n <= maxSessions, "Cannot step %s sessions at once: maximum number of sessions is %s",
+                n, maxSessions);
+        Preconditions.checkArgument(new HashSet<>(sessionIds).size() == n, "Session IDs must not contain duplicates");
+
+        long now = System.currentTimeMillis();
+        expireSessions(now);
+        int[] slots = new int[n];
+        for (int i = 0; i < n; i++) {
+            slots[i] = acquire(sessionIds.get(i), now);
+        }
+
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            network.rnnClearPreviousState();
+            for (Map.Entry<Integer, Map<String, INDArray>> e : statePools.entrySet()) {
+                Map<String, INDArray> state = new HashMap<>();
+                for (Map.Entry<String, INDArray> s : e.getValue().entrySet()) {
+                    state.put(s.getKey(), gather(s.getValue(), slots));
+                }
+                network.rnnSetPreviousState(e.getKey(), state);
+            }
+
+            INDArray out = network.rnnTimeStep(input);
+
+            for (int layer : recurrentLayers) {
+                Map<String, INDArray> state = network.rnnGetPreviousState(layer);
+                for (Map.Entry<String, INDArray> s : state.entrySet()) {
+                    INDArray pool = getOrCreatePool(layer, s.getKey(), s.getValue());
+                    for (int i = 0; i < n; i++) {
+                        pool.slice(slots[i]).assign(s.getValue().slice(i));
+                    }
+                }
+            }
+            network.rnnClearPreviousState();
+            return out;
+        }
+    }
+
+    /**
+     * Get a copy of the RNN state for the specified session, for example to move a session to another store.
+     * This counts as an access of the session, for both least recently used eviction and expiry.
+     *
+     * @param sessionId Session ID
+     * @return State, keyed by layer index then state key, with minibatch size 1 - or null if the session does not exist
+     */
+    public synchronized Map<Integer, Map<String, INDArray>> getState(@NonNull K sessionId) {
+        long now = System.currentTimeMillis();
+        expireSessions(now);
+        //Note: get moves the session to the end of the access order, so lastAccess must be updated to match
+        Session s = sessions.get(sessionId);
+        if (s == null) {
+            return null;
+        }
+        s.lastAccess = now;
+        Map<Integer, Map<String, INDArray>> out = new HashMap<>();
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            for (Map.Entry<Integer, Map<String, INDArray>> e : statePools.entrySet()) {
+                Map<String, INDArray> m = new HashMap<>();
+                for (Map.Entry<String, INDArray> p : e.getValue().entrySet()) {
+                    m.put(p.getKey(), gather(p.getValue(), new int[]{s.slot}));
+                }
+                out.put(e.getKey(), m);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Set the RNN state for the specified session, creating the session if required.
+     *
+     * @param sessionId Session ID
+     * @param state     State as returned by {@link #getState(Object)}
+     */
+    public synchronized void setState(@NonNull K sessionId, @NonNull Map<Integer, Map<String, INDArray>> state) {
+        long now = System.currentTimeMillis();
+        expireSessions(now);
+        int slot = acquire(sessionId, now);
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            for (Map.Entry<Integer, Map<String, INDArray>> e : state.entrySet()) {
+                for (Map.Entry<String, INDArray> s : e.getValue().entrySet()) {
+                    Preconditions.checkArgument(s.getValue().size(0) == 1, "Expected state with minibatch size 1 for layer %s, key %s: got shape %ndShape",
+                            e.getKey(), s.getKey(), s.getValue());
+                    getOrCreatePool(e.getKey(), s.getKey(), s.getValue()).slice(slot).assign(s.getValue().slice(0));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param sessionId Session ID
+     * @return True if state is currently stored for the specified session
+     */
+    public synchronized boolean contains(@NonNull K sessionId) {
+        return sessions.containsKey(sessionId);
+    }
+
+    /**
+     * @return Number of sessions currently stored
+     */
+    public synchronized int numSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Remove the specified session, freeing its slot
+     *
+     * @param sessionId Session ID
+     * @return True if the session existed
+     */
+    public synchronized boolean remove(@NonNull K sessionId) {
+        Session s = sessions.remove(sessionId);
+        if (s == null) {
+            return false;
+        }
+        freeSlots.push(s.slot);
+        return true;
+    }
+
+    /**
+     * Remove all sessions. The pooled state arrays are retained for reuse
+     */
+    public synchronized void clear() {
+        for (Session s : sessions.values()) {
+            freeSlots.push(s.slot);
+        }
+        sessions.clear();
+    }
+
+    private int acquire(K sessionId, long now) {
+        Session s = sessions.get(sessionId);
+        if (s == null) {
+            if (freeSlots.isEmpty()) {
+                //Evict least recently used session
+                Iterator<Map.Entry<K, Session>> iter = sessions.entrySet().iterator();
+                Map.Entry<K, Session> eldest = iter.next();
+                iter.remove();
+                freeSlots.push(eldest.getValue().slot);
+                evictionCount++;
+                log.debug("Evicted RNN session {}", eldest.getKey());
+            }
+            s = new Session(freeSlots.pop());
+            resetSlot(s.slot);
+            sessions.put(sessionId, s);
+        }
+        s.lastAccess = now;
+        return s.slot;
+    }
+
+    private void expireSessions(long now) {
+        if (expireAfterAccessMs <= 0) {
+            return;
+        }
+        Iterator<Map.Entry<K, Session>> iter = sessions.entrySet().iterator();
+        while (iter.hasNext()) {
+            Session s = iter.next().getValue();
+            if (now - s.lastAccess <= expireAfterAccessMs) {
+                break;      //Remaining sessions were used more recently
+            }
+            iter.remove();
+            freeSlots.push(s.slot);
+            evictionCount++;
+        }
+    }
+
+    private void resetSlot(int slot) {
+        for (Map<String, INDArray> m : statePools.values()) {
+            for (INDArray pool : m.values()) {
+                pool.slice(slot).assign(0);
+            }
+        }
+    }
+
+    private INDArray getOrCreatePool(int layer, String key, INDArray state) {
+        Map<String, INDArray> m = statePools.get(layer);
+        if (m == null) {
+            m = new HashMap<>();
+            statePools.put(layer, m);
+        }
+        INDArray pool = m.get(key);
+        if (pool == null) {
+            long[] shape = state.shape().clone();
+            shape[0] = maxSessions;
+            pool = Nd4j.create(state.dataType(), shape);
+            m.put(key, pool);
+        }
+        return pool;
+    }
+
+    private static INDArray gather(INDArray pool, int[] slots) {
+        if (pool.rank() == 2) {
+            return Nd4j.pullRows(pool, 1, slots);
+        }
+        long[] shape = pool.shape().clone();
+        shape[0] = slots.length;
+        INDArray out = Nd4j.create(pool.dataType(), shape);
+        for (int i = 0; i < slots.length; i++) {
+            out.slice(i).assign(pool.slice(slots[i]));
+        }
+        return out;
+    }
+}
@@ -21,6 +21,7 @@
 package org.deeplearning4j.nn.updater;
 
 import lombok.Getter;
+import lombok.Setter;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.api.Updater;
@@ -52,6 +53,8 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
     protected INDArray updaterStateViewArray;
     protected boolean initializedMinibatchDivision;
     protected List<INDArray> gradientsForMinibatchDivision;
+    @Setter
+    protected LossScaler lossScaler;    //Non-null only for mixed precision training
 
     public BaseMultiLayerUpdater(T network) {
         this(network, null);
@@ -101,8 +104,10 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                     }
 
                     //First: decide whether to add to the existing updater block, or create a new one
-                    if (currentBlock == null || !UpdaterUtils.updaterConfigurationsEquals(lastLayer, lastVariable,
-                                    layers[i], var)) {
+                    //Params with row sparse gradients always get their own block, so they can be updated row-wise
+                    if (currentBlock == null || UpdaterUtils.sparseGradientLayer(lastLayer, lastVariable) != null
+                                    || UpdaterUtils.sparseGradientLayer(layers[i], var) != null
+                                    || !UpdaterUtils.updaterConfigurationsEquals(lastLayer, lastVariable, layers[i], var)) {
 
                         if (paramsViewSoFar + paramSizeThisVariable > Integer.MAX_VALUE || paramsViewSoFar + paramSizeThisVariable > Integer.MAX_VALUE)
                             throw new ND4JArraySizeException();
@@ -263,6 +268,14 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         // hence should be the same object under normal circumstances
         boolean isExternal = gradient.gradient() != getFlattenedGradientsView();
 
+        //Mixed precision training: gradients were computed with a scaled loss. Skip the update entirely on overflow
+        //Only subsets that are divided by minibatch are actual gradients: the rest (i.e., BatchNorm mean/variance
+        // updates) were never scaled
+        if (lossScaler != null && !lossScaler.unscale(getMinibatchDivisionSubsets(isExternal, gradient))) {
+            gradient.gradient().assign(0);
+            return;
+        }
+
         //Split up the gradients on a per-layer basis, for pre-apply
         Map<String, Gradient> layerGradients = new HashMap<>();
 
@@ -329,20 +342,21 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         //However, some 'gradients' are actually updates - an example being BatchNorm mean/variance estimates... these
         // shouldn't be modified
 
-        if(!initializedMinibatchDivision){
-            gradientsForMinibatchDivision = getMinibatchDivisionSubsets(getFlattenedGradientsView());
-            initializedMinibatchDivision = true;
+        for(INDArray arr : getMinibatchDivisionSubsets(isExternal, gradient)){
+            arr.divi(batchSize);
         }
+    }
 
-        List<INDArray> toDivide;
+    protected List<INDArray> getMinibatchDivisionSubsets(boolean isExternal, Gradient gradient){
         if(isExternal){
-            toDivide = getMinibatchDivisionSubsets(gradient.gradient());
-        } else {
-            toDivide = gradientsForMinibatchDivision;
+            return getMinibatchDivisionSubsets(gradient.gradient());
         }
-        for(INDArray arr : toDivide){
-            arr.divi(batchSize);
+
+        if(!initializedMinibatchDivision){
+            gradientsForMinibatchDivision = getMinibatchDivisionSubsets(getFlattenedGradientsView());
+            initializedMinibatchDivision = true;
         }
+        return gradientsForMinibatchDivision;
     }
 
     protected List<INDArray> getMinibatchDivisionSubsets(INDArray from){
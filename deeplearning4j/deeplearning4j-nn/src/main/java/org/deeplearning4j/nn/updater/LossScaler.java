@@ -0,0 +1,275 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.updater;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.layers.BaseOutputLayer;
+import org.deeplearning4j.nn.conf.layers.Cnn3DLossLayer;
+import org.deeplearning4j.nn.conf.layers.CnnLossLayer;
+import org.deeplearning4j.nn.conf.layers.EmbeddingLayer;
+import org.deeplearning4j.nn.conf.layers.EmbeddingSequenceLayer;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.layers.LossLayer;
+import org.deeplearning4j.nn.conf.layers.RnnLossLayer;
+import org.deeplearning4j.nn.conf.layers.misc.FrozenLayer;
+import org.deeplearning4j.nn.conf.layers.wrapper.BaseWrapperLayer;
+import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.primitives.Pair;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.BooleanIndexing;
+import org.nd4j.linalg.indexing.conditions.Conditions;
+import org.nd4j.linalg.lossfunctions.ILossFunction;
+import org.nd4j.linalg.lossfunctions.impl.LossSparseMCXENT;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Dynamic loss scaling for mixed precision training.<br>
+ * The gradient of the loss is multiplied by the current scale before backprop (so that small gradients don't underflow
+ * in the low precision activation/gradient data type), and divided by the scale again in the (full precision) updater.
+ * If the unscaled gradients contain NaN or infinite values, the parameter update is skipped and the scale is reduced
+ * by the backoff factor. After {@code growthInterval} consecutive steps without overflow, the scale is increased by
+ * the growth factor.
+ *
+ * @see org.deeplearning4j.nn.conf.NeuralNetConfiguration.Builder#mixedPrecision(org.nd4j.linalg.api.buffer.DataType)
+ */
+@Slf4j
+@Getter
+public class LossScaler implements Serializable {
+    public static final double DEFAULT_INITIAL_SCALE = 65536.0;
+    public static final double DEFAULT_GROWTH_FACTOR = 2.0;
+    public static final double DEFAULT_BACKOFF_FACTOR = 0.5;
+    public static final int DEFAULT_GROWTH_INTERVAL = 2000;
+
+    private final double growthFactor;
+    private final double backoffFactor;
+    private final int growthInterval;
+    private double scale;
+    private int stepsSinceOverflow;
+    private long skippedSteps;
+
+    public LossScaler() {
+        this(DEFAULT_INITIAL_SCALE, DEFAULT_GROWTH_FACTOR, DEFAULT_BACKOFF_FACTOR, DEFAULT_GROWTH_INTERVAL);
+    }
+
+    /**
+     * @param initialScale   Initial loss scale
+     * @param growthFactor   Factor to multiply the scale by after {@code growthInterval} steps without overflow. Must be >= 1
+     * @param backoffFactor  Factor to multiply the scale by when an overflow is detected. Must be in range (0,1]
+     * @param growthInterval Number of consecutive steps without overflow before the scale is increased
+     */
+    public LossScaler(double initialScale, double growthFactor, double backoffFactor, int growthInterval) {
+        Preconditions.checkArgument(initialScale > 0, "Initial scale must be > 0, got %s", initialScale);
+        Preconditions.checkArgument(growthFactor >= 1.0, "Growth factor must be >= 1.0, got %s", growthFactor);
+        Preconditions.checkArgument(backoffFactor > 0 && backoffFactor <= 1.0, "Backoff factor must be in range (0,1], got %s", backoffFactor);
+        Preconditions.checkArgument(growthInterval > 0, "Growth interval must be > 0, got %s", growthInterval);
+        this.scale = initialScale;
+        this.growthFactor = growthFactor;
+        this.backoffFactor = backoffFactor;
+        this.growthInterval = growthInterval;
+    }
+
+    /**
+     * Divide the (scaled) gradient by the current scale, in place, and update the scale.
+     *
+     * @param gradient Full precision gradient to unscale
+     * @return True if the gradient is finite and the parameter update should be applied, false if the update should
+     * be skipped due to overflow
+     */
+    public boolean unscale(@NonNull INDArray gradient) {
+        return unscale(Collections.singletonList(gradient));
+    }
+
+    /**
+     * Divide the specified (scaled) gradient subsets by the current scale, in place, and update the scale.
+     * Only gradients computed by backprop of the scaled loss should be passed here: pseudo-gradients such as
+     * BatchNormalization global mean/variance updates are never scaled.
+     *
+     * @param gradients Full precision gradient subsets to unscale
+     * @return True if the gradients are finite and the parameter update should be applied, false if the update should
+     * be skipped due to overflow
+     */
+    public synchronized boolean unscale(@NonNull Collection<INDArray> gradients) {
+        boolean finite = true;
+        for (INDArray gradient : gradients) {
+            gradient.divi(scale);
+            if (finite && (BooleanIndexing.or(gradient, Conditions.isNan()) || BooleanIndexing.or(gradient, Conditions.isInfinite())))
+                finite = false;
+        }
+
+        if (!finite) {
+            skippedSteps++;
+            stepsSinceOverflow = 0;
+            scale = Math.max(1.0, scale * backoffFactor);
+            log.debug("Non-finite gradients detected with loss scaling: skipping update, reducing scale to {}", scale);
+            return false;
+        }
+
+        if (++stepsSinceOverflow >= growthInterval) {
+            scale *= growthFactor;
+            stepsSinceOverflow = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Replace the loss function of the specified output layer with one that multiplies the loss gradient by the current
+     * scale of this loss scaler.
+     *
+     * @param outputLayer Output layer
+     */
+    public void applyTo(@NonNull org.deeplearning4j.nn.api.Layer outputLayer) {
+        if (outputLayer instanceof FrozenLayerWithBackprop) {
+            outputLayer = ((FrozenLayerWithBackprop) outputLayer).getInsideLayer();
+        }
+        Layer layer = outputLayer.conf().getLayer();
+
+        if (layer instanceof BaseOutputLayer) {
+            BaseOutputLayer l = (BaseOutputLayer) layer;
+            l.setLossFn(new ScaledLossFunction(l.getLossFn(), this));
+        } else if (layer instanceof LossLayer) {
+            LossLayer l = (LossLayer) layer;
+            l.setLossFn(new ScaledLossFunction(l.getLossFn(), this));
+        } else if (layer instanceof RnnLossLayer) {
+            RnnLossLayer l = (RnnLossLayer) layer;
+            l.setLossFn(new ScaledLossFunction(l.getLossFn(), this));
+        } else if (layer instanceof CnnLossLayer) {
+            CnnLossLayer l = (CnnLossLayer) layer;
+            l.setLossFn(new ScaledLossFunction(l.getLossFn(), this));
+        } else if (layer instanceof Cnn3DLossLayer) {
+            Cnn3DLossLayer l = (Cnn3DLossLayer) layer;
+            l.setLossFn(new ScaledLossFunction(l.getLossFn(), this));
+        } else {
+            throw new UnsupportedOperationException("Mixed precision training is not supported for output layer of type "
+                    + layer.getClass().getSimpleName() + ": loss scaling requires a layer with a configurable ILossFunction");
+        }
+    }
+
+    /**
+     * Cast an input or label array of a network to the data type of its low precision working copy. Integer arrays, and
+     * arrays of indices (embedding layer inputs and sparse class labels), are not cast: BFLOAT16 and HALF only represent
+     * integers exactly up to 256 and 2048 respectively. The layers and loss functions using them accept any data type.
+     *
+     * @param arr      Input or label array. May be null
+     * @param indices  Whether the array holds indices - see {@link #isIndexInput(Layer)} and {@link #isIndexLabels(Layer)}
+     * @param dataType Low precision data type
+     */
+    public static INDArray castForMixedPrecision(INDArray arr, boolean indices, @NonNull DataType dataType) {
+        if (arr == null || indices || !arr.dataType().isFPType())
+            return arr;
+        return arr.castTo(dataType);
+    }
+
+    /**
+     * @return True if the layer takes indices as input (embedding layers)
+     */
+    public static boolean isIndexInput(@NonNull Layer layer) {
+        layer = unwrap(layer);
+        return layer instanceof EmbeddingLayer || layer instanceof EmbeddingSequenceLayer;
+    }
+
+    /**
+     * @return True if the labels of the output layer are class indices, rather than one-hot or real valued
+     */
+    public static boolean isIndexLabels(@NonNull Layer layer) {
+        layer = unwrap(layer);
+        ILossFunction lossFn = null;
+        if (layer instanceof BaseOutputLayer) {
+            lossFn = ((BaseOutputLayer) layer).getLossFn();
+        } else if (layer instanceof LossLayer) {
+            lossFn = ((LossLayer) layer).getLossFn();
+        } else if (layer instanceof RnnLossLayer) {
+            lossFn = ((RnnLossLayer) layer).getLossFn();
+        } else if (layer instanceof CnnLossLayer) {
+            lossFn = ((CnnLossLayer) layer).getLossFn();
+        } else if (layer instanceof Cnn3DLossLayer) {
+            lossFn = ((Cnn3DLossLayer) layer).getLossFn();
+        }
+        if (lossFn instanceof ScaledLossFunction)
+            lossFn = ((ScaledLossFunction) lossFn).underlying;
+        return lossFn instanceof LossSparseMCXENT;
+    }
+
+    private static Layer unwrap(Layer layer) {
+        while (true) {
+            if (layer instanceof FrozenLayer) {
+                layer = ((FrozenLayer) layer).getLayer();
+            } else if (layer instanceof BaseWrapperLayer) {
+                layer = ((BaseWrapperLayer) layer).getUnderlying();
+            } else {
+                return layer;
+            }
+        }
+    }
+
+    /**
+     * Loss function wrapper: the score is unchanged, the gradient is multiplied by the current loss scale
+     */
+    public static class ScaledLossFunction implements ILossFunction {
+        private final ILossFunction underlying;
+        private final LossScaler scaler;
+
+        public ScaledLossFunction(@NonNull ILossFunction underlying, @NonNull LossScaler scaler) {
+            this.underlying = underlying;
+            this.scaler = scaler;
+        }
+
+        @Override
+        public double computeScore(INDArray labels, INDArray preOutput, IActivation activationFn, INDArray mask, boolean average) {
+            return underlying.computeScore(labels, preOutput, activationFn, mask, average);
+        }
+
+        @Override
+        public INDArray computeScoreArray(INDArray labels, INDArray preOutput, IActivation activationFn, INDArray mask) {
+            return underlying.computeScoreArray(labels, preOutput, activationFn, mask);
+        }
+
+        @Override
+        public INDArray computeGradient(INDArray labels, INDArray preOutput, IActivation activationFn, INDArray mask) {
+            return underlying.computeGradient(labels, preOutput, activationFn, mask).muli(scaler.getScale());
+        }
+
+        @Override
+        public Pair<Double, INDArray> computeGradientAndScore(INDArray labels, INDArray preOutput, IActivation activationFn,
+                                                              INDArray mask, boolean average) {
+            Pair<Double, INDArray> p = underlying.computeGradientAndScore(labels, preOutput, activationFn, mask, average);
+            p.getSecond().muli(scaler.getScale());
+            return p;
+        }
+
+        @Override
+        public String name() {
+            return "Scaled(" + underlying.name() + ")";
+        }
+
+        @Override
+        public String toString() {
+            return name();
+        }
+    }
+}
@@ -40,6 +40,7 @@ public class MultiLayerUpdater extends BaseMultiLayerUpdater<MultiLayerNetwork>
 
     public MultiLayerUpdater(MultiLayerNetwork network, INDArray updaterState) {
         super(network, updaterState);
+        this.lossScaler = network.getLossScaler();
 
         layersByName = new HashMap<>();
         Layer[] l = network.getLayers();
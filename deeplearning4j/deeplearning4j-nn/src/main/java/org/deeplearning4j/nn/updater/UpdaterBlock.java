@@ -25,10 +25,13 @@ import lombok.Data;
 import lombok.val;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Trainable;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.BaseLayer;
 import org.deeplearning4j.nn.layers.FrozenLayer;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.scatter.ScatterUpdate;
+import org.nd4j.linalg.api.shape.Shape;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.GradientUpdater;
@@ -40,6 +43,8 @@ import java.util.List;
 
 @Data
 public class UpdaterBlock {
+    private static final int[] ROW_DIM = new int[]{1};
+
     private int paramOffsetStart;
     private int paramOffsetEnd;
     private int updaterViewOffsetStart;
@@ -154,6 +159,11 @@ public class UpdaterBlock {
             return;
         }
 
+        if (!externalGradient && applySparseUpdater(iteration, epoch)) {
+            //Row sparse parameter: only the rows used in the last backward pass were updated
+            return;
+        }
+
         //Pre-updater regularization: l1 and l2
         applyRegularizationAllVariables(Regularization.ApplyStep.BEFORE_UPDATER, iteration, epoch, externalGradient, fullNetworkGradientView, fullNetworkParamsArray);
 
@@ -164,6 +174,71 @@ public class UpdaterBlock {
         applyRegularizationAllVariables(Regularization.ApplyStep.POST_UPDATER, iteration, epoch, externalGradient, fullNetworkGradientView, fullNetworkParamsArray);
     }
 
+    /**
+     * Lazy, row-wise update for a block consisting of a single parameter with a row sparse gradient (see
+     * {@link SparseGradientLayer}). Regularization and the updater are applied only to the gradient rows and updater
+     * state rows for the rows used in the last backward pass; the state of all other rows is left unchanged.
+     *
+     * @return False if the block is not a row sparse parameter, or the rows are not known - in which case the
+     * standard (dense) update should be used instead
+     */
+    protected boolean applySparseUpdater(int iteration, int epoch) {
+        if (layersAndVariablesInBlock.size() != 1)
+            return false;
+
+        ParamState ps = layersAndVariablesInBlock.get(0);
+        SparseGradientLayer sparseLayer = UpdaterUtils.sparseGradientLayer(ps.getLayer(), ps.getParamName());
+        if (sparseLayer == null)
+            return false;
+        int[] rows = sparseLayer.getSparseGradientRows(ps.getParamName());
+        if (rows == null)
+            return false;
+        if (rows.length == 0)
+            return true;
+
+        //Param, gradient and each updater state array have the same layout: view them as [numRows, rowLength]
+        INDArray param = ps.getLayer().paramTable(false).get(ps.getParamName());
+        long[] shape = param.shape();
+        boolean fOrder = param.ordering() == 'f';
+        long length = param.length();
+        long sparseLength = rows.length * shape[1];
+
+        INDArray gradient2d = Shape.newShapeNoCopy(ps.getGradView(), shape, fOrder);
+        INDArray sparseGradient = Nd4j.pullRows(gradient2d, 1, rows, 'c').reshape('c', 1, sparseLength);
+        INDArray sparseParams = Nd4j.pullRows(param, 1, rows, 'c').reshape('c', 1, sparseLength);
+
+        //Updater state is laid out as [state0, state1, ...], each with one value per parameter
+        int numStates = updaterView == null ? 0 : (int) (updaterView.length() / length);
+        INDArray[] state2d = new INDArray[numStates];
+        INDArray sparseState = null;
+        GradientUpdater u = gradientUpdater;
+        if (numStates > 0) {
+            sparseState = Nd4j.createUninitialized(updaterView.dataType(), new long[]{1, numStates * sparseLength}, 'c');
+            for (int j = 0; j < numStates; j++) {
+                state2d[j] = Shape.newShapeNoCopy(updaterView.get(NDArrayIndex.interval(0, 0, true),
+                        NDArrayIndex.interval(j * length, (j + 1) * length)), shape, fOrder);
+                sparseState.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex.interval(j * sparseLength, (j + 1) * sparseLength))
+                        .assign(Nd4j.pullRows(state2d[j], 1, rows, 'c').reshape('c', 1, sparseLength));
+            }
+            u = gradientUpdater.getConfig().instantiate(sparseState, false);
+        }
+
+        boolean hasLR = gradientUpdater.getConfig().hasLearningRate();
+        double lr = (hasLR ? gradientUpdater.getConfig().getLearningRate(iteration, epoch) : 1.0);
+        applyRegularization(Regularization.ApplyStep.BEFORE_UPDATER, ps.getLayer(), ps.getParamName(), sparseGradient, sparseParams, iteration, epoch, lr);
+        u.applyUpdater(sparseGradient, iteration, epoch);
+        applyRegularization(Regularization.ApplyStep.POST_UPDATER, ps.getLayer(), ps.getParamName(), sparseGradient, sparseParams, iteration, epoch, lr);
+
+        //Write back the updates and the new updater state for the rows
+        INDArray indices = Nd4j.createFromArray(rows);
+        Nd4j.scatterUpdate(ScatterUpdate.UpdateOp.ASSIGN, gradient2d, indices, sparseGradient.reshape('c', rows.length, shape[1]), ROW_DIM);
+        for (int j = 0; j < numStates; j++) {
+            INDArray rowState = sparseState.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex.interval(j * sparseLength, (j + 1) * sparseLength));
+            Nd4j.scatterUpdate(ScatterUpdate.UpdateOp.ASSIGN, state2d[j], indices, rowState.reshape('c', rows.length, shape[1]), ROW_DIM);
+        }
+        return true;
+    }
+
     protected void applyRegularizationAllVariables(Regularization.ApplyStep applyStep, int iteration, int epoch, boolean externalGradient, INDArray fullNetworkGradientView,
                                                    INDArray fullNetworkParamsArray) {
         for (ParamState p : layersAndVariablesInBlock) {
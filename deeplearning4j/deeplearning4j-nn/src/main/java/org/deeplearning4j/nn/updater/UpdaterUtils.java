@@ -22,6 +22,8 @@ package org.deeplearning4j.nn.updater;
 
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.api.TrainingConfig;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
 import org.nd4j.linalg.learning.config.IUpdater;
 
 public class UpdaterUtils {
@@ -54,4 +56,20 @@ public class UpdaterUtils {
 
         return true;
     }
+
+    /**
+     * @param layer Layer (or graph vertex) of the parameter
+     * @param param Name of the parameter
+     * @return The layer, if the given parameter has a row sparse gradient; null otherwise
+     */
+    public static SparseGradientLayer sparseGradientLayer(Trainable layer, String param) {
+        Trainable l = layer;
+        if (l instanceof GraphVertex && ((GraphVertex) l).hasLayer()) {
+            l = ((GraphVertex) l).getLayer();
+        }
+        if (l instanceof SparseGradientLayer && ((SparseGradientLayer) l).isSparseGradient(param)) {
+            return (SparseGradientLayer) l;
+        }
+        return null;
+    }
 }
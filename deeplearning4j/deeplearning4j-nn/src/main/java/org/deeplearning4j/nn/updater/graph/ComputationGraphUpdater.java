@@ -40,6 +40,7 @@ public class ComputationGraphUpdater extends BaseMultiLayerUpdater<ComputationGr
 
     public ComputationGraphUpdater(ComputationGraph graph, INDArray updaterState) {
         super(graph, updaterState);
+        this.lossScaler = graph.getLossScaler();
 
         layersByName = new HashMap<>();
         Trainable[] layers = getOrderedLayers();
@@ -0,0 +1,58 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.optimize.api;
+
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.Model;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Optional interface for {@link TrainingListener} instances that need to be notified about the execution of each
+ * individual layer (for {@link org.deeplearning4j.nn.multilayer.MultiLayerNetwork}) or vertex (for
+ * {@link org.deeplearning4j.nn.graph.ComputationGraph}), such as for per-layer profiling.<br>
+ * Listeners implementing this interface are called immediately before and after the forward pass (training and
+ * inference) and backward pass of each layer/vertex. Calls for a given layer are always in start/end pairs, on the
+ * thread executing the network.
+ */
+public interface LayerExecutionListener {
+
+    /**
+     * Called immediately before the forward or backward pass of a layer/vertex
+     *
+     * @param model    Model being executed
+     * @param index    Index of the layer (MultiLayerNetwork) or vertex (ComputationGraph)
+     * @param name     Name of the layer/vertex
+     * @param backward True for the backward pass, false for the forward pass
+     */
+    void layerStart(Model model, int index, String name, boolean backward);
+
+    /**
+     * Called immediately after the forward or backward pass of a layer/vertex
+     *
+     * @param model    Model being executed
+     * @param index    Index of the layer (MultiLayerNetwork) or vertex (ComputationGraph)
+     * @param name     Name of the layer/vertex
+     * @param layer    The layer. May be null for ComputationGraph vertices that are not layers
+     * @param backward True for the backward pass, false for the forward pass
+     * @param output   Output activations (forward pass) or gradient with respect to the input (backward pass). May be null
+     */
+    void layerEnd(Model model, int index, String name, Layer layer, boolean backward, INDArray output);
+}
@@ -30,11 +30,14 @@ import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.optimize.api.BaseTrainingListener;
 import org.deeplearning4j.util.ModelSerializer;
 import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 @Slf4j
 public class CheckpointListener extends BaseTrainingListener implements Serializable {
@@ -48,6 +51,7 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
     private int keepEvery;
     private boolean logSaving;
     private boolean deleteExisting;
+    private boolean asyncSaving;
 
     private Integer saveEveryNEpochs;
     private Integer saveEveryNIterations;
@@ -65,6 +69,12 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
     private int startIter = -1;
     private Long lastSaveEveryMsNoSinceLast;
 
+    //Asynchronous saving: copies of the parameters and updater state, written to disk by a background thread
+    private transient ExecutorService saveExecutor;
+    private transient Future<?> pendingSave;
+    private transient INDArray stagingParams;
+    private transient INDArray stagingUpdaterState;
+
     private CheckpointListener(Builder builder){
         this.rootDir = builder.rootDir;
         this.keepMode = builder.keepMode;
@@ -72,6 +82,7 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
         this.keepEvery = builder.keepEvery;
         this.logSaving = builder.logSaving;
         this.deleteExisting = builder.deleteExisting;
+        this.asyncSaving = builder.asyncSaving;
 
         this.saveEveryNEpochs = builder.saveEveryNEpochs;
         this.saveEveryNIterations = builder.saveEveryNIterations;
@@ -166,6 +177,11 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
     }
 
     private void saveCheckpoint(Model model) {
+        if(asyncSaving && (model instanceof MultiLayerNetwork || model instanceof ComputationGraph)){
+            saveCheckpointAsync(model);
+            return;
+        }
+
         try{
             saveCheckpointHelper(model);
         } catch (Exception e){
@@ -174,17 +190,121 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
     }
 
     private void saveCheckpointHelper(Model model) throws Exception {
-        if(!checkpointRecordFile.exists()){
-            checkpointRecordFile.createNewFile();
-            write(Checkpoint.getFileHeader() + "\n", checkpointRecordFile);
+        Checkpoint c = newCheckpoint(model);
+        ModelSerializer.writeModel(model, new File(rootDir, c.getFilename()), true);
+        this.lastCheckpoint = c;
+        checkpointSaved(c);
+    }
+
+    private Checkpoint newCheckpoint(Model model) {
+        try {
+            if (!checkpointRecordFile.exists()) {
+                checkpointRecordFile.createNewFile();
+                write(Checkpoint.getFileHeader() + "\n", checkpointRecordFile);
+            }
+        } catch (IOException e){
+            throw new RuntimeException("Error creating checkpoint record file: " + checkpointRecordFile.getAbsolutePath(), e);
         }
 
         Checkpoint c = new Checkpoint(++lastCheckpointNum, System.currentTimeMillis(), getIter(model), getEpoch(model),
                 getModelType(model), null);
         setFileName(c);
+        return c;
+    }
 
-        ModelSerializer.writeModel(model, new File(rootDir, c.getFilename()), true);
+    /**
+     * Asynchronous save: the training thread only copies the parameters and updater state into (reused) staging
+     * arrays; serialization, the checkpoint record and deletion of old checkpoints happens in a background thread.
+     * At most one save is in flight at any time: if the previous save has not yet completed, we block until it has.
+     */
+    private void saveCheckpointAsync(Model model) {
+        waitForPendingSave();
+
+        Checkpoint c = newCheckpoint(model);
+        String json;
+        INDArray updaterState;
+        if (model instanceof MultiLayerNetwork) {
+            MultiLayerNetwork net = (MultiLayerNetwork) model;
+            json = net.getLayerWiseConfigurations().toJson();
+            updaterState = net.getUpdater().getStateViewArray();
+        } else {
+            ComputationGraph graph = (ComputationGraph) model;
+            json = graph.getConfiguration().toJson();
+            updaterState = graph.getUpdater().getStateViewArray();
+        }
+
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            stagingParams = stage(stagingParams, model.params());
+            stagingUpdaterState = stage(stagingUpdaterState, updaterState);
+        }
+        this.lastCheckpoint = c;
+
+        final INDArray params = stagingParams;
+        final INDArray updater = stagingUpdaterState;
+        final int deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        pendingSave = getSaveExecutor().submit(() -> {
+            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+            //Write to a temporary file first, so a partially written checkpoint never has the checkpoint's file name
+            File tempFile = new File(rootDir, c.getFilename() + ".tmp");
+            try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+                ModelSerializer.writeModel(json, params, updater, null, os);
+            }
+            Files.move(tempFile, new File(rootDir, c.getFilename()));
+            checkpointSaved(c);
+            return null;
+        });
+    }
+
+    private static INDArray stage(INDArray staging, INDArray source){
+        if(source == null){
+            return null;
+        }
+        if(staging == null || staging.dataType() != source.dataType() || !staging.equalShapes(source)){
+            staging = Nd4j.createUninitialized(source.dataType(), source.shape(), source.ordering());
+        }
+        return staging.assign(source);
+    }
 
+    private ExecutorService getSaveExecutor(){
+        if(saveExecutor == null){
+            //Non-daemon thread: the JVM does not exit until a pending save has completed. The short keep-alive means
+            //an idle save thread does not delay JVM shutdown once training is done
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+                Thread t = new Thread(r, "CheckpointListener-AsyncSave");
+                t.setDaemon(false);
+                return t;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            saveExecutor = executor;
+        }
+        return saveExecutor;
+    }
+
+    /**
+     * Block until any in-progress asynchronous checkpoint save has completed. This is a no-op unless asynchronous
+     * saving is enabled (see {@link Builder#asyncSaving(boolean)}). Should be called once training has completed,
+     * to ensure the last checkpoint has been fully written to disk.
+     */
+    public void waitForPendingSave(){
+        Future<?> f = pendingSave;
+        if(f == null){
+            return;
+        }
+        try {
+            f.get();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for checkpoint save to complete", e);
+        } catch (ExecutionException e){
+            throw new RuntimeException("Error saving checkpoint", e.getCause());
+        } finally {
+            if(f.isDone()){
+                pendingSave = null;
+            }
+        }
+    }
+
+    private void checkpointSaved(Checkpoint c) {
         String s = c.toFileString();
         write(s + "\n", checkpointRecordFile);
 
@@ -192,33 +312,32 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
             log.info("Model checkpoint saved: epoch {}, iteration {}, path: {}", c.getEpoch(), c.getIteration(),
                     new File(rootDir, c.getFilename()).getPath() );
         }
-        this.lastCheckpoint = c;
 
 
         //Finally: determine if we should delete some old models...
         if(keepMode == null || keepMode == KeepMode.ALL){
             return;
         } else if(keepMode == KeepMode.LAST){
-            List<Checkpoint> checkpoints = availableCheckpoints();
+            List<Checkpoint> checkpoints = availableCheckpoints(rootDir);
             Iterator<Checkpoint> iter = checkpoints.iterator();
             while(checkpoints.size() > keepLast){
                 Checkpoint toRemove = iter.next();
-                File f = getFileForCheckpoint(toRemove);
+                File f = getFileForCheckpoint(rootDir, toRemove.getCheckpointNum());
                 f.delete();
                 iter.remove();
             }
         } else {
             //Keep mode: last N and every M
-            for(Checkpoint cp : availableCheckpoints()){
+            for(Checkpoint cp : availableCheckpoints(rootDir)){
                 if(cp.getCheckpointNum() > 0 && (cp.getCheckpointNum()+1) % keepEvery == 0){
                     //One of the "every M to keep" models
                     continue;
-                } else if(cp.getCheckpointNum() > lastCheckpointNum - keepLast ){        //Example: latest is 5, keep last 2 -> keep checkpoints 4 and 5
+                } else if(cp.getCheckpointNum() > c.getCheckpointNum() - keepLast ){        //Example: latest is 5, keep last 2 -> keep checkpoints 4 and 5
                     //One of last N to keep
                     continue;
                 }
                 //Otherwise: delete file
-                File f = getFileForCheckpoint(cp);
+                File f = getFileForCheckpoint(rootDir, cp.getCheckpointNum());
                 f.delete();
             }
         }
@@ -282,6 +401,7 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
      * @return List of checkpoint files that can be loaded
      */
     public List<Checkpoint> availableCheckpoints(){
+        waitForPendingSave();
         if(!checkpointRecordFile.exists()){
             return Collections.emptyList();
         }
@@ -322,6 +442,7 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
      * @return Checkpoint
      */
     public Checkpoint lastCheckpoint(){
+        waitForPendingSave();
         if(!checkpointRecordFile.exists()){
             return null;
         }
@@ -358,6 +479,7 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
      * @return Model file for the checkpoint
      */
     public File getFileForCheckpoint(int checkpointNum) {
+        waitForPendingSave();
         return getFileForCheckpoint(rootDir, checkpointNum);
     }
 
@@ -496,6 +618,7 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
         private int keepEvery;
         private boolean logSaving = true;
         private boolean deleteExisting = false;
+        private boolean asyncSaving = false;
 
         private Integer saveEveryNEpochs;
         private Integer saveEveryNIterations;
@@ -640,6 +763,21 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
             return this;
         }
 
+        /**
+         * If true: save checkpoints asynchronously. The training thread only copies the parameters and updater state
+         * into staging arrays (reused between checkpoints); the model file is then written (and old checkpoints deleted)
+         * by a background thread. At most one save can be in progress at a time - if the previous checkpoint is still
+         * being written when the next is due, training blocks until it has completed.<br>
+         * Call {@link CheckpointListener#waitForPendingSave()} after training to ensure the last checkpoint has been
+         * written. Default: false (save synchronously)
+         *
+         * @param asyncSaving Whether checkpoints should be saved asynchronously
+         */
+        public Builder asyncSaving(boolean asyncSaving){
+            this.asyncSaving = asyncSaving;
+            return this;
+        }
+
         public CheckpointListener build(){
             if(saveEveryNEpochs == null && saveEveryAmount == null && saveEveryNIterations == null){
                 throw new IllegalStateException("Cannot construct listener: no models will be saved (must use at least" +
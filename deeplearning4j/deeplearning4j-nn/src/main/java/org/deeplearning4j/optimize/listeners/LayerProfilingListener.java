@@ -0,0 +1,457 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.deeplearning4j.optimize.listeners;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.layers.AbstractLSTM;
+import org.deeplearning4j.nn.conf.layers.BaseOutputLayer;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.DepthwiseConvolution2D;
+import org.deeplearning4j.nn.conf.layers.FeedForwardLayer;
+import org.deeplearning4j.nn.conf.layers.misc.FrozenLayer;
+import org.deeplearning4j.nn.conf.layers.recurrent.SimpleRnn;
+import org.deeplearning4j.nn.conf.layers.wrapper.BaseWrapperLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.optimize.api.BaseTrainingListener;
+import org.deeplearning4j.optimize.api.LayerExecutionListener;
+import org.nd4j.autodiff.listeners.profiler.ProfilingListener;
+import org.nd4j.autodiff.listeners.profiler.data.Phase;
+import org.nd4j.autodiff.listeners.profiler.data.TraceEvent;
+import org.nd4j.autodiff.listeners.profiler.data.TraceEvents;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * A training listener that profiles the execution of each layer (MultiLayerNetwork) or vertex (ComputationGraph),
+ * for both the forward and backward passes.<br>
+ * For each layer, the following are recorded:<br>
+ * - Number of executions and total wall-clock time, for the forward and backward pass separately<br>
+ * - Estimated number of floating point operations (FLOPs), based on the layer type and output size<br>
+ * - Bytes allocated in the current workspace while executing the layer, and the size of the layer outputs<br>
+ * <br>
+ * Results can be obtained via {@link #getLayerStats()}, printed as a table (sorted by total time) via
+ * {@link #summary()}, or exported in Chrome trace format via {@link #exportChromeTrace(File)}. The trace can be
+ * viewed using chrome://tracing or https://ui.perfetto.dev<br>
+ * <br>
+ * Note that to measure the execution time of each layer, this listener blocks until all queued operations have
+ * completed at the start and end of each layer. Consequently, it will reduce throughput somewhat (especially on
+ * CUDA), and should not be left attached for normal training.<br>
+ * FLOPs are estimates only: multiply-adds are counted as 2 operations, and the backward pass is assumed to be 2x
+ * the forward pass for layers with parameters (gradients with respect to both the input and the parameters), and 1x
+ * otherwise.
+ */
+@Slf4j
+public class LayerProfilingListener extends BaseTrainingListener implements LayerExecutionListener {
+
+    private final int warmup;
+    private final boolean recordTrace;
+    private final int maxTraceEvents;
+    private final long pid;
+
+    private final Map<String, LayerStats> stats = new LinkedHashMap<>();
+    private final Map<String, Long> lastForwardFlops = new HashMap<>();
+    private final List<TraceEvent> traceEvents = new ArrayList<>();
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    @Getter
+    private int iterationCount;
+    private boolean traceLimitWarned;
+
+    /**
+     * Create a LayerProfilingListener with no warmup, recording a trace with at most 100,000 events
+     */
+    public LayerProfilingListener() {
+        this(new Builder());
+    }
+
+    protected LayerProfilingListener(Builder b) {
+        this.warmup = b.warmup;
+        this.recordTrace = b.recordTrace;
+        this.maxTraceEvents = b.maxTraceEvents;
+        this.pid = getProcessId();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public synchronized void iterationDone(Model model, int iteration, int epoch) {
+        iterationCount++;
+        //Unbalanced start/end calls are possible only if an exception was thrown during execution
+        frames.clear();
+    }
+
+    @Override
+    public synchronized void layerStart(Model model, int index, String name, boolean backward) {
+        if (iterationCount < warmup)
+            return;
+        Nd4j.getExecutioner().commit();
+        MemoryWorkspace ws = Nd4j.getMemoryManager().getCurrentWorkspace();
+        long wsStart = ws == null ? 0 : ws.getThisCycleAllocations();
+        frames.push(new Frame(name, backward, ws, wsStart, System.nanoTime()));
+    }
+
+    @Override
+    public synchronized void layerEnd(Model model, int index, String name, Layer layer, boolean backward, INDArray output) {
+        if (iterationCount < warmup || frames.isEmpty())
+            return;
+        Nd4j.getExecutioner().commit();
+        long end = System.nanoTime();
+        Frame f = frames.pop();
+        if (!f.name.equals(name) || f.backward != backward) {
+            //Should never happen (calls are always paired) - discard rather than record garbage
+            log.warn("Unbalanced layer start/end calls: start {} (backward={}), end {} (backward={})", f.name, f.backward, name, backward);
+            frames.clear();
+            return;
+        }
+        long durNanos = end - f.startNanos;
+
+        MemoryWorkspace ws = Nd4j.getMemoryManager().getCurrentWorkspace();
+        long wsBytes = 0;
+        if (ws != null && ws == f.workspace) {
+            wsBytes = Math.max(0, ws.getThisCycleAllocations() - f.workspaceStart);
+        }
+        long outBytes = (output == null || output.isEmpty()) ? 0 : output.length() * output.dataType().width();
+
+        LayerStats s = stats.get(name);
+        if (s == null) {
+            s = new LayerStats(name, layerType(model, name, layer));
+            stats.put(name, s);
+        }
+
+        long flops;
+        if (!backward) {
+            flops = estimateForwardFlops(layer, output);
+            lastForwardFlops.put(name, flops);
+            s.forwardCount++;
+            s.forwardNanos += durNanos;
+            s.forwardFlops += flops;
+        } else {
+            Long fwd = lastForwardFlops.get(name);
+            flops = fwd == null ? 0 : (layer != null && layer.numParams() > 0 ? 2 * fwd : fwd);
+            s.backwardCount++;
+            s.backwardNanos += durNanos;
+            s.backwardFlops += flops;
+        }
+        s.workspaceBytes += wsBytes;
+        s.outputBytes += outBytes;
+
+        if (recordTrace) {
+            if (traceEvents.size() < maxTraceEvents) {
+                Map<String, Object> args = new LinkedHashMap<>();
+                args.put("index", index);
+                args.put("type", s.getType());
+                args.put("iteration", iterationCount);
+                args.put("flops", flops);
+                args.put("workspaceBytes", wsBytes);
+                args.put("outputBytes", outBytes);
+                traceEvents.add(TraceEvent.builder()
+                        .name(name)
+                        .categories(Collections.singletonList(backward ? "Backward" : "Forward"))
+                        .ph(Phase.X)
+                        .ts(f.startNanos / 1000)
+                        .dur(durNanos / 1000)
+                        .pid(pid)
+                        .tid(Thread.currentThread().getId())
+                        .args(args)
+                        .build());
+            } else if (!traceLimitWarned) {
+                log.warn("Maximum number of trace events ({}) reached - no further events will be recorded", maxTraceEvents);
+                traceLimitWarned = true;
+            }
+        }
+    }
+
+    /**
+     * @return Statistics for each layer/vertex, in order of first execution
+     */
+    public synchronized List<LayerStats> getLayerStats() {
+        List<LayerStats> out = new ArrayList<>(stats.size());
+        for (LayerStats s : stats.values()) {
+            out.add(s.copy());
+        }
+        return out;
+    }
+
+    /**
+     * @param name Name of the layer/vertex. For MultiLayerNetwork layers without a name, this is the layer index
+     * @return Statistics for the specified layer/vertex, or null if it has not been executed
+     */
+    public synchronized LayerStats getLayerStats(String name) {
+        LayerStats s = stats.get(name);
+        return s == null ? null : s.copy();
+    }
+
+    /**
+     * Clear all recorded statistics and trace events. The warmup period (if any) is not repeated.
+     */
+    public synchronized void reset() {
+        stats.clear();
+        lastForwardFlops.clear();
+        traceEvents.clear();
+        frames.clear();
+        traceLimitWarned = false;
+    }
+
+    /**
+     * Export the recorded events in Chrome trace format (JSON). Requires recordTrace to be enabled (default: true)
+     *
+     * @param file Output file. Will be overwritten if it exists
+     */
+    public synchronized void exportChromeTrace(@NonNull File file) throws IOException {
+        Preconditions.checkState(recordTrace, "Cannot export trace: trace recording was disabled for this listener");
+        ProfilingListener.jsonMapper().writeValue(file, new TraceEvents(new ArrayList<>(traceEvents)));
+    }
+
+    /**
+     * @return A table of per-layer statistics, sorted by total (forward + backward) time, descending
+     */
+    public synchronized String summary() {
+        List<LayerStats> list = new ArrayList<>(stats.values());
+        Collections.sort(list, new Comparator<LayerStats>() {
+            @Override
+            public int compare(LayerStats o1, LayerStats o2) {
+                return Long.compare(o2.getTotalNanos(), o1.getTotalNanos());
+            }
+        });
+
+        long totalNanos = 0;
+        int nameLength = 10;
+        int typeLength = 10;
+        for (LayerStats s : list) {
+            totalNanos += s.getTotalNanos();
+            nameLength = Math.max(nameLength, s.getName().length() + 2);
+            typeLength = Math.max(typeLength, s.getType().length() + 2);
+        }
+
+        String header = "%-" + nameLength + "s%-" + typeLength + "s%10s%14s%12s%10s%14s%12s%9s%14s%12s%12s%12s\n";
+        String row = "%-" + nameLength + "s%-" + typeLength + "s%10d%14.3f%12.3f%10d%14.3f%12.3f%9.2f%14.4f%12.2f%12.2f%12.2f\n";
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Layer profile - ").append(list.size()).append(" layers, ").append(iterationCount)
+                .append(" iterations (").append(warmup).append(" warmup), total time ")
+                .append(String.format("%.3f", totalNanos / 1e6)).append(" ms\n");
+        sb.append(String.format(header, "Name", "Type", "Fwd N", "Fwd Tot (ms)", "Fwd Avg", "Bwd N", "Bwd Tot (ms)",
+                "Bwd Avg", "% Time", "Est. GFLOP", "GFLOP/s", "WS (MB)", "Out (MB)"));
+        for (LayerStats s : list) {
+            double fwdMs = s.getForwardNanos() / 1e6;
+            double bwdMs = s.getBackwardNanos() / 1e6;
+            double gflop = (s.getForwardFlops() + s.getBackwardFlops()) / 1e9;
+            double sec = s.getTotalNanos() / 1e9;
+            sb.append(String.format(row, s.getName(), s.getType(),
+                    s.getForwardCount(), fwdMs, s.getForwardCount() == 0 ? 0.0 : fwdMs / s.getForwardCount(),
+                    s.getBackwardCount(), bwdMs, s.getBackwardCount() == 0 ? 0.0 : bwdMs / s.getBackwardCount(),
+                    totalNanos == 0 ? 0.0 : 100.0 * s.getTotalNanos() / totalNanos,
+                    gflop, sec == 0 ? 0.0 : gflop / sec,
+                    s.getWorkspaceBytes() / (1024.0 * 1024.0), s.getOutputBytes() / (1024.0 * 1024.0)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Estimate the number of floating point operations for the forward pass of the specified layer
+     *
+     * @param layer  Layer (may be null for ComputationGraph vertices that aren't layers)
+     * @param output Output activations of the layer
+     * @return Estimated FLOPs
+     */
+    public static long estimateForwardFlops(Layer layer, INDArray output) {
+        if (output == null || output.isEmpty())
+            return 0;
+        long outLength = output.length();
+        if (layer == null)
+            return outLength;
+
+        org.deeplearning4j.nn.conf.layers.Layer l = layer.conf().getLayer();
+        //Unwrap wrapper layers (Bidirectional, LastTimeStep, etc) to estimate using the underlying layer
+        while (l instanceof BaseWrapperLayer || l instanceof FrozenLayer) {
+            l = (l instanceof FrozenLayer) ? ((FrozenLayer) l).getLayer() : ((BaseWrapperLayer) l).getUnderlying();
+        }
+
+        if (l instanceof DenseLayer || l instanceof BaseOutputLayer) {
+            return 2 * outLength * ((FeedForwardLayer) l).getNIn();
+        } else if (l instanceof DepthwiseConvolution2D) {
+            return 2 * outLength * prod(((DepthwiseConvolution2D) l).getKernelSize());
+        } else if (l instanceof ConvolutionLayer) {
+            ConvolutionLayer c = (ConvolutionLayer) l;
+            return 2 * outLength * c.getNIn() * prod(c.getKernelSize());
+        } else if (l instanceof AbstractLSTM) {
+            //4 gates, each with input and recurrent weights
+            AbstractLSTM lstm = (AbstractLSTM) l;
+            return 8 * outLength * (lstm.getNIn() + lstm.getNOut());
+        } else if (l instanceof SimpleRnn) {
+            SimpleRnn rnn = (SimpleRnn) l;
+            return 2 * outLength * (rnn.getNIn() + rnn.getNOut());
+        }
+        //Element-wise or otherwise unknown layer types
+        return outLength;
+    }
+
+    private static long prod(int[] arr) {
+        long p = 1;
+        if (arr != null) {
+            for (int i : arr) {
+                p *= i;
+            }
+        }
+        return p;
+    }
+
+    private static String layerType(Model model, String name, Layer layer) {
+        if (layer != null) {
+            return layer.conf().getLayer().getClass().getSimpleName();
+        }
+        if (model instanceof ComputationGraph) {
+            GraphVertex v = ((ComputationGraph) model).getVertex(name);
+            if (v != null) {
+                return v.getClass().getSimpleName();
+            }
+        }
+        return "Unknown";
+    }
+
+    private static long getProcessId() {
+        //Something like '<pid>@<hostname>' in most JVMs; fallback to 0 if not available
+        String jvmName = ManagementFactory.getRuntimeMXBean().getName();
+        int idx = jvmName.indexOf('@');
+        if (idx < 1)
+            return 0;
+        try {
+            return Long.parseLong(jvmName.substring(0, idx));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static class Frame {
+        private final String name;
+        private final boolean backward;
+        private final MemoryWorkspace workspace;
+        private final long workspaceStart;
+        private final long startNanos;
+
+        private Frame(String name, boolean backward, MemoryWorkspace workspace, long workspaceStart, long startNanos) {
+            this.name = name;
+            this.backward = backward;
+            this.workspace = workspace;
+            this.workspaceStart = workspaceStart;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * Execution statistics for a single layer/vertex
+     */
+    @Getter
+    public static class LayerStats {
+        private final String name;
+        private final String type;
+        private long forwardCount;
+        private long forwardNanos;
+        private long forwardFlops;
+        private long backwardCount;
+        private long backwardNanos;
+        private long backwardFlops;
+        private long workspaceBytes;
+        private long outputBytes;
+
+        public LayerStats(String name, String type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        /**
+         * @return Total forward and backward pass time, in nanoseconds
+         */
+        public long getTotalNanos() {
+            return forwardNanos + backwardNanos;
+        }
+
+        private LayerStats copy() {
+            LayerStats s = new LayerStats(name, type);
+            s.forwardCount = forwardCount;
+            s.forwardNanos = forwardNanos;
+            s.forwardFlops = forwardFlops;
+            s.backwardCount = backwardCount;
+            s.backwardNanos = backwardNanos;
+            s.backwardFlops = backwardFlops;
+            s.workspaceBytes = workspaceBytes;
+            s.outputBytes = outputBytes;
+            return s;
+        }
+
+        @Override
+        public String toString() {
+            return "LayerStats(name=" + name + ", type=" + type + ", forwardCount=" + forwardCount + ", forwardNanos=" + forwardNanos
+                    + ", backwardCount=" + backwardCount + ", backwardNanos=" + backwardNanos + ", forwardFlops=" + forwardFlops
+                    + ", backwardFlops=" + backwardFlops + ", workspaceBytes=" + workspaceBytes + ", outputBytes=" + outputBytes + ")";
+        }
+    }
+
+    public static class Builder {
+        private int warmup = 0;
+        private boolean recordTrace = true;
+        private int maxTraceEvents = 100_000;
+
+        /**
+         * Number of iterations to skip before recording statistics. Default: 0
+         */
+        public Builder warmup(int iterations) {
+            Preconditions.checkArgument(iterations >= 0, "Warmup iterations must be >= 0, got %s", iterations);
+            this.warmup = iterations;
+            return this;
+        }
+
+        /**
+         * Whether to record per-execution events, for export via {@link #exportChromeTrace(File)}. Default: true
+         */
+        public Builder recordTrace(boolean recordTrace) {
+            this.recordTrace = recordTrace;
+            return this;
+        }
+
+        /**
+         * Maximum number of trace events to keep in memory. Events after this are not recorded (statistics are still
+         * collected). Default: 100,000
+         */
+        public Builder maxTraceEvents(int maxTraceEvents) {
+            Preconditions.checkArgument(maxTraceEvents > 0, "Max trace events must be > 0, got %s", maxTraceEvents);
+            this.maxTraceEvents = maxTraceEvents;
+            return this;
+        }
+
+        public LayerProfilingListener build() {
+            return new LayerProfilingListener(this);
+        }
+    }
+}
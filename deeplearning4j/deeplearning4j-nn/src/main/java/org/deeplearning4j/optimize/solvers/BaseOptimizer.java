@@ -342,6 +342,16 @@ public abstract class BaseOptimizer implements ConvexOptimizer {
         }
     }
 
+    public static int getGradientAccumulationSteps(Model model) {
+        if (model instanceof MultiLayerNetwork) {
+            return ((MultiLayerNetwork) model).getLayerWiseConfigurations().getGradientAccumulationSteps();
+        } else if (model instanceof ComputationGraph) {
+            return ((ComputationGraph) model).getConfiguration().getGradientAccumulationSteps();
+        } else {
+            return 1;
+        }
+    }
+
     public static void incrementIterationCount(Model model, int incrementBy) {
         if (model instanceof MultiLayerNetwork) {
             MultiLayerConfiguration conf = ((MultiLayerNetwork) model).getLayerWiseConfigurations();
@@ -21,7 +21,9 @@
 package org.deeplearning4j.optimize.solvers;
 
 import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.ComputationGraph;
@@ -34,11 +36,25 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.common.primitives.Pair;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Slf4j
 public class StochasticGradientDescent extends BaseOptimizer {
 
+    //Gradient accumulation state: sum of the gradients for the micro-batches seen so far in the current step
+    protected INDArray accumulatedGradient;
+    protected List<INDArray> accumulatedNonBatchDividedViews;
+    protected int accumulatedSteps;
+    protected int accumulatedBatchSize;
+    protected double accumulatedScore;
+    //Union of the row sparse gradient rows over the micro-batches, per layer and param. Null value: rows not known
+    protected Map<SparseGradientLayer, Map<String, int[]>> accumulatedSparseRows = new IdentityHashMap<>();
 
     public StochasticGradientDescent(NeuralNetConfiguration conf, StepFunction stepFunction,
                     Collection<TrainingListener> trainingListeners, Model model) {
@@ -58,7 +74,17 @@ public class StochasticGradientDescent extends BaseOptimizer {
             }
         }
 
-        Pair<Gradient, Double> pair = gradientAndScore(workspaceMgr);
+        Pair<Gradient, Double> pair;
+        int accumulationSteps = BaseOptimizer.getGradientAccumulationSteps(model);
+        if (accumulationSteps > 1) {
+            pair = accumulateGradientAndScore(accumulationSteps, workspaceMgr);
+            if (pair == null) {
+                //Not the last micro-batch for this step: no parameter update yet
+                return true;
+            }
+        } else {
+            pair = gradientAndScore(workspaceMgr);
+        }
 
         Gradient gradient = pair.getFirst();
 
@@ -108,6 +134,154 @@ public class StochasticGradientDescent extends BaseOptimizer {
         return true;
     }
 
+    /**
+     * Gradient accumulation: compute the gradient for the current micro-batch and add it to the accumulated gradient.
+     * Returns null for all but the last micro-batch of each step; for the last micro-batch, the gradient for the
+     * full (effective) minibatch is returned, after it has been processed by the updater.<br>
+     * Gradients in DL4J are summed (not averaged) over the examples in a minibatch, with the division by minibatch
+     * size done in the updater. Hence we sum the micro-batch gradients and pass the total number of examples to the
+     * updater. Gradients for parameters that are not divided by the minibatch size (such as the batch norm global
+     * mean/variance) are averaged over the micro-batches instead.
+     */
+    protected Pair<Gradient, Double> accumulateGradientAndScore(int accumulationSteps, LayerWorkspaceMgr workspaceMgr) {
+        oldScore = score;
+        model.computeGradientAndScore(workspaceMgr);
+
+        if (trainingListeners != null && !trainingListeners.isEmpty()) {
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (TrainingListener l : trainingListeners) {
+                    l.onGradientCalculation(model);
+                }
+            }
+        }
+
+        Pair<Gradient, Double> pair = model.gradientAndScore();
+        INDArray g = pair.getFirst().gradient();
+
+        if (accumulatedGradient == null || !accumulatedGradient.equalShapes(g) || accumulatedGradient.dataType() != g.dataType()) {
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                accumulatedGradient = Nd4j.createUninitialized(g.dataType(), g.shape(), g.ordering());
+            }
+            accumulatedNonBatchDividedViews = null;
+            accumulatedSteps = 0;
+            accumulatedSparseRows.clear();
+        }
+        accumulateSparseGradientRows();
+
+        accumulatedBatchSize += model.batchSize();
+        accumulatedScore += pair.getSecond();
+        if (++accumulatedSteps < accumulationSteps) {
+            if (accumulatedSteps == 1) {
+                accumulatedGradient.assign(g);
+            } else {
+                accumulatedGradient.addi(g);
+            }
+            return null;
+        }
+
+        //Last micro-batch: the model's gradient array becomes the accumulated gradient
+        g.addi(accumulatedGradient);
+        //Row sparse gradients are now non-zero for the rows of all micro-batches: the sparse updater (and the
+        //clearing of the gradient rows in the next backward pass) must use all of them, not just the last ones
+        for (Map.Entry<SparseGradientLayer, Map<String, int[]>> e : accumulatedSparseRows.entrySet()) {
+            for (Map.Entry<String, int[]> rows : e.getValue().entrySet()) {
+                e.getKey().setSparseGradientRows(rows.getKey(), rows.getValue());
+            }
+        }
+        accumulatedSparseRows.clear();
+        for (INDArray view : getNonBatchDividedGradientViews()) {
+            view.divi(accumulationSteps);
+        }
+        score = accumulatedScore / accumulationSteps;
+        if (model instanceof MultiLayerNetwork) {
+            ((MultiLayerNetwork) model).setScore(score);
+        } else if (model instanceof ComputationGraph) {
+            ((ComputationGraph) model).setScore(score);
+        }
+        int batchSize = accumulatedBatchSize;
+        accumulatedSteps = 0;
+        accumulatedBatchSize = 0;
+        accumulatedScore = 0.0;
+
+        updateGradientAccordingToParams(pair.getFirst(), model, batchSize, workspaceMgr);
+        return new Pair<>(pair.getFirst(), score);
+    }
+
+    /**
+     * Add the rows of the row sparse gradients (see {@link SparseGradientLayer}) for the current micro-batch to the
+     * rows accumulated so far in this step
+     */
+    protected void accumulateSparseGradientRows() {
+        for (Layer l : getModelLayers()) {
+            if (!(l instanceof SparseGradientLayer) || l.numParams() == 0)
+                continue;
+            SparseGradientLayer sl = (SparseGradientLayer) l;
+            for (String param : l.paramTable(false).keySet()) {
+                if (!sl.isSparseGradient(param))
+                    continue;
+                Map<String, int[]> m = accumulatedSparseRows.get(sl);
+                if (m == null) {
+                    m = new HashMap<>();
+                    accumulatedSparseRows.put(sl, m);
+                }
+                int[] rows = sl.getSparseGradientRows(param);
+                if (!m.containsKey(param)) {
+                    m.put(param, rows);
+                } else if (m.get(param) != null) {
+                    m.put(param, rows == null ? null : unionSorted(m.get(param), rows));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Union of two sorted arrays of distinct values, also sorted and distinct
+     */
+    protected static int[] unionSorted(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                out[n++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                out[n++] = b[j++];
+            } else {
+                out[n++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    protected Layer[] getModelLayers() {
+        if (model instanceof MultiLayerNetwork) {
+            return ((MultiLayerNetwork) model).getLayers();
+        } else if (model instanceof ComputationGraph) {
+            return ((ComputationGraph) model).getLayers();
+        } else {
+            return new Layer[]{(Layer) model};
+        }
+    }
+
+    protected List<INDArray> getNonBatchDividedGradientViews() {
+        if (accumulatedNonBatchDividedViews == null) {
+            List<INDArray> views = new ArrayList<>();
+            for (Layer l : getModelLayers()) {
+                if (l.numParams() == 0 || l.getGradientsViewArray() == null)
+                    continue;
+                Map<String, INDArray> m = l.conf().getLayer().initializer()
+                        .getGradientsFromFlattened(l.conf(), l.getGradientsViewArray());
+                for (Map.Entry<String, INDArray> e : m.entrySet()) {
+                    if (!l.updaterDivideByMinibatch(e.getKey())) {
+                        views.add(e.getValue());
+                    }
+                }
+            }
+            accumulatedNonBatchDividedViews = views;
+        }
+        return accumulatedNonBatchDividedViews;
+    }
+
     @Override
     public void preProcessLine() {}
 
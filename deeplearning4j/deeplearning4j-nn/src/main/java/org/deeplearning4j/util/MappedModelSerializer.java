@@ -0,0 +1,479 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.util;
+
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.ShortPointer;
+import org.bytedeco.javacpp.indexer.Bfloat16Indexer;
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.indexer.HalfIndexer;
+import org.bytedeco.javacpp.indexer.Indexer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Uncompressed model format in which the flattened parameters (and optionally the updater state) of a
+ * {@link MultiLayerNetwork} or {@link ComputationGraph} can be memory-mapped directly, without any copies.<br>
+ * Compared to {@link ModelSerializer}, restoring a model in this format does not read the file onto the heap, and
+ * the parameters are backed by the OS page cache - hence models load near-instantly, and multiple JVMs loading the
+ * same file on one host share the same physical memory for the parameters.<br>
+ * <br>
+ * If the file is writable by the current process, arrays are mapped copy-on-write: modifying the parameters (for
+ * example, fitting the restored network) is safe, and never changes the file on disk. Otherwise (or if read-only
+ * restoring is requested) the arrays are mapped read-only: the restored model can only be used for inference, and
+ * fitting it throws an exception - use {@code clone()} to get a copy of the model that can be trained. See
+ * {@link MultiLayerNetwork#isReadOnly()} and {@link ComputationGraph#isReadOnly()}.<br>
+ * Arrays larger than 2GB (the limit of a single mapping in Java) are mapped in chunks, that must be contiguous in
+ * memory. If the OS does not place them contiguously, that array is instead read directly into off-heap memory.<br>
+ * <br>
+ * File layout: a header (magic number, version, model type, byte order, configuration JSON and one descriptor
+ * per array), followed by the raw array contents in native byte order, each starting at a page-aligned offset.
+ * The normalizer and other objects added via {@link ModelSerializer#addObjectToFile(File, String, Object)} are
+ * not supported by this format.
+ *
+ * @see ModelSerializer
+ */
+@Slf4j
+public class MappedModelSerializer {
+    public static final byte[] MAGIC = "DL4JMMAP".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+    public static final int ALIGNMENT = 4096;
+
+    protected static final int TYPE_MULTI_LAYER_NETWORK = 1;
+    protected static final int TYPE_COMPUTATION_GRAPH = 2;
+
+    //Max size of a single read/write when copying arrays to/from the file, and of a single mapping
+    private static final int CHUNK_SIZE = 1 << 30;
+
+    private MappedModelSerializer() { }
+
+    /**
+     * Write a MultiLayerNetwork or ComputationGraph to a file in the memory-mappable format
+     *
+     * @param model       the model to save
+     * @param file        the file to write to
+     * @param saveUpdater whether the updater state should be saved
+     * @throws IOException
+     */
+    public static void writeModel(@NonNull Model model, @NonNull File file, boolean saveUpdater) throws IOException {
+        int modelType;
+        String json;
+        INDArray updaterState = null;
+        if (model instanceof MultiLayerNetwork) {
+            MultiLayerNetwork net = (MultiLayerNetwork) model;
+            modelType = TYPE_MULTI_LAYER_NETWORK;
+            json = net.getLayerWiseConfigurations().toJson();
+            if (saveUpdater && net.getUpdater() != null)
+                updaterState = net.getUpdater().getStateViewArray();
+        } else if (model instanceof ComputationGraph) {
+            ComputationGraph net = (ComputationGraph) model;
+            modelType = TYPE_COMPUTATION_GRAPH;
+            json = net.getConfiguration().toJson();
+            if (saveUpdater && net.getUpdater() != null)
+                updaterState = net.getUpdater().getStateViewArray();
+        } else {
+            throw new IllegalArgumentException("Only MultiLayerNetwork and ComputationGraph models are supported: got "
+                    + model.getClass().getName());
+        }
+
+        INDArray params = contiguous(model.params());
+        updaterState = contiguous(updaterState);
+        if (updaterState != null && updaterState.isEmpty())
+            updaterState = null;
+
+        byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+
+        //Header size does not depend on the array offsets, so lay out the file before writing anything
+        long headerSize = header(modelType, jsonBytes, params, 0, updaterState, 0).length;
+        long paramsOffset = align(headerSize);
+        long updaterOffset = align(paramsOffset + byteLength(params));
+        byte[] header = header(modelType, jsonBytes, params, paramsOffset, updaterState, updaterOffset);
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(ch, ByteBuffer.wrap(header), 0);
+            if (params != null)
+                writeArray(ch, params, paramsOffset);
+            if (updaterState != null)
+                writeArray(ch, updaterState, updaterOffset);
+        }
+    }
+
+    /**
+     * Restore a MultiLayerNetwork from a file in the memory-mappable format
+     *
+     * @param file        the file to load from
+     * @param loadUpdater whether the updater state (if present) should be loaded
+     * @return the loaded network
+     * @throws IOException
+     */
+    public static MultiLayerNetwork restoreMultiLayerNetwork(@NonNull File file, boolean loadUpdater) throws IOException {
+        return restoreMultiLayerNetwork(file, loadUpdater, false);
+    }
+
+    /**
+     * Restore a MultiLayerNetwork from a file in the memory-mappable format
+     *
+     * @param file        the file to load from
+     * @param loadUpdater whether the updater state (if present) should be loaded
+     * @param readOnly    if true, map the arrays read-only even if the file is writable. The network can then only be
+     *                    used for inference
+     * @return the loaded network
+     * @throws IOException
+     */
+    public static MultiLayerNetwork restoreMultiLayerNetwork(@NonNull File file, boolean loadUpdater, boolean readOnly) throws IOException {
+        boolean writable = !readOnly && isWritable(file);
+        try (FileChannel ch = open(file, writable)) {
+            Header h = readHeader(ch, file);
+            Preconditions.checkState(h.modelType == TYPE_MULTI_LAYER_NETWORK, "File %s contains a ComputationGraph, " +
+                    "not a MultiLayerNetwork - use restoreComputationGraph instead", file);
+
+            MultiLayerConfiguration conf = MultiLayerConfiguration.fromJson(h.json);
+            INDArray params = h.params == null ? null : map(ch, h.params, writable);
+            if (params != null)
+                conf.setDataType(params.dataType());
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init(params, false);
+
+            if (loadUpdater && h.updater != null) {
+                net.getUpdater().setStateViewArray(net, map(ch, h.updater, writable), false);
+            }
+            net.setReadOnly(!writable);
+            return net;
+        }
+    }
+
+    /**
+     * Restore a ComputationGraph from a file in the memory-mappable format
+     *
+     * @param file        the file to load from
+     * @param loadUpdater whether the updater state (if present) should be loaded
+     * @return the loaded network
+     * @throws IOException
+     */
+    public static ComputationGraph restoreComputationGraph(@NonNull File file, boolean loadUpdater) throws IOException {
+        return restoreComputationGraph(file, loadUpdater, false);
+    }
+
+    /**
+     * Restore a ComputationGraph from a file in the memory-mappable format
+     *
+     * @param file        the file to load from
+     * @param loadUpdater whether the updater state (if present) should be loaded
+     * @param readOnly    if true, map the arrays read-only even if the file is writable. The network can then only be
+     *                    used for inference
+     * @return the loaded network
+     * @throws IOException
+     */
+    public static ComputationGraph restoreComputationGraph(@NonNull File file, boolean loadUpdater, boolean readOnly) throws IOException {
+        boolean writable = !readOnly && isWritable(file);
+        try (FileChannel ch = open(file, writable)) {
+            Header h = readHeader(ch, file);
+            Preconditions.checkState(h.modelType == TYPE_COMPUTATION_GRAPH, "File %s contains a MultiLayerNetwork, " +
+                    "not a ComputationGraph - use restoreMultiLayerNetwork instead", file);
+
+            ComputationGraphConfiguration conf = ComputationGraphConfiguration.fromJson(h.json);
+            INDArray params = h.params == null ? null : map(ch, h.params, writable);
+            if (params != null)
+                conf.setDataType(params.dataType());
+            ComputationGraph net = new ComputationGraph(conf);
+            net.init(params, false);
+
+            if (loadUpdater && h.updater != null) {
+                net.getUpdater().setStateViewArray(map(ch, h.updater, writable));
+            }
+            net.setReadOnly(!writable);
+            return net;
+        }
+    }
+
+    /**
+     * @param file File to check
+     * @return True if the file is in the memory-mappable format (as written by {@link #writeModel(Model, File, boolean)})
+     */
+    public static boolean isMappedModelFile(@NonNull File file) {
+        if (!file.isFile() || file.length() < MAGIC.length)
+            return false;
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            byte[] magic = new byte[MAGIC.length];
+            dis.readFully(magic);
+            return Arrays.equals(MAGIC, magic);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param arr Array to check
+     * @return True if the array (or the array it is a view of) is backed by a read-only mapping of a model file, as
+     * restored by this class from a read-only file. Such arrays must not be modified
+     */
+    public static boolean isReadOnly(INDArray arr) {
+        if (arr == null || arr.isEmpty())
+            return false;
+        DataBuffer original = arr.data().originalDataBuffer();
+        return arr.data().isConstant() || (original != null && original.isConstant());
+    }
+
+    private static byte[] header(int modelType, byte[] json, INDArray params, long paramsOffset,
+                                 INDArray updater, long updaterOffset) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.write(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(modelType);
+            dos.writeBoolean(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN);
+            writeDescriptor(dos, params, paramsOffset);
+            writeDescriptor(dos, updater, updaterOffset);
+            dos.writeInt(json.length);
+            dos.write(json);
+        }
+        return baos.toByteArray();
+    }
+
+    private static void writeDescriptor(DataOutputStream dos, INDArray arr, long offset) throws IOException {
+        dos.writeBoolean(arr != null);
+        if (arr == null)
+            return;
+        dos.writeUTF(arr.dataType().name());
+        long[] shape = arr.shape();
+        dos.writeInt(shape.length);
+        for (long l : shape)
+            dos.writeLong(l);
+        dos.writeLong(offset);
+    }
+
+    private static Header readHeader(FileChannel ch, File file) throws IOException {
+        //Read header through the channel, so we don't open the file twice
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(ch.position(0))));
+        byte[] magic = new byte[MAGIC.length];
+        dis.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic))
+            throw new IllegalStateException("File " + file + " is not a memory-mappable model file - use ModelSerializer to restore it");
+        int version = dis.readInt();
+        if (version > VERSION)
+            throw new IllegalStateException("File " + file + " has format version " + version
+                    + ", but only versions up to " + VERSION + " are supported");
+        int modelType = dis.readInt();
+        boolean bigEndian = dis.readBoolean();
+        if (bigEndian != (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN))
+            throw new IllegalStateException("File " + file + " was written on a system with a different byte order - " +
+                    "re-save the model using ModelSerializer on this system instead");
+        Descriptor params = readDescriptor(dis);
+        Descriptor updater = readDescriptor(dis);
+        byte[] json = new byte[dis.readInt()];
+        dis.readFully(json);
+        return new Header(modelType, new String(json, StandardCharsets.UTF_8), params, updater);
+    }
+
+    private static Descriptor readDescriptor(DataInputStream dis) throws IOException {
+        if (!dis.readBoolean())
+            return null;
+        DataType dataType = DataType.valueOf(dis.readUTF());
+        long[] shape = new long[dis.readInt()];
+        for (int i = 0; i < shape.length; i++)
+            shape[i] = dis.readLong();
+        return new Descriptor(dataType, shape, dis.readLong());
+    }
+
+    private static INDArray map(FileChannel ch, Descriptor d, boolean writable) throws IOException {
+        long length = Shape.lengthOf(d.shape);
+        long bytes = length * d.dataType.width();
+        if (bytes == 0 || !(d.dataType == DataType.DOUBLE || d.dataType == DataType.FLOAT
+                || d.dataType == DataType.HALF || d.dataType == DataType.BFLOAT16)) {
+            return read(ch, d, length, bytes);
+        }
+
+        //Copy-on-write: pages are shared via the page cache until modified, and changes are never written to the file.
+        //Read-only: pages are shared via the page cache, and must never be modified
+        final ByteBuffer[] chunks = mapContiguous(ch, writable ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY,
+                d.offset, bytes);
+        if (chunks == null) {
+            log.warn("Could not map array of {} bytes contiguously in memory, reading it into off-heap memory instead", bytes);
+            return read(ch, d, length, bytes);
+        }
+
+        //Note that the pointer holds a reference to the mapped chunks, keeping the mapping alive for as long as the
+        // DataBuffer is reachable
+        Pointer base = new Pointer(chunks[0]);
+        Pointer pointer;
+        Indexer indexer;
+        switch (d.dataType) {
+            case DOUBLE:
+                DoublePointer dp = new DoublePointer(base) {
+                    private final ByteBuffer[] mapped = chunks;
+                };
+                dp.capacity(length).limit(length);
+                pointer = dp;
+                indexer = DoubleIndexer.create(dp);
+                break;
+            case FLOAT:
+                FloatPointer fp = new FloatPointer(base) {
+                    private final ByteBuffer[] mapped = chunks;
+                };
+                fp.capacity(length).limit(length);
+                pointer = fp;
+                indexer = FloatIndexer.create(fp);
+                break;
+            default:
+                ShortPointer sp = new ShortPointer(base) {
+                    private final ByteBuffer[] mapped = chunks;
+                };
+                sp.capacity(length).limit(length);
+                pointer = sp;
+                indexer = d.dataType == DataType.HALF ? HalfIndexer.create(sp) : Bfloat16Indexer.create(sp);
+                break;
+        }
+
+        DataBuffer buffer = Nd4j.createBuffer(pointer, d.dataType, length, indexer);
+        if (!writable)
+            buffer.setConstant(true);
+        return Nd4j.create(buffer, d.shape, Nd4j.getStrides(d.shape, 'c'), 0, 'c', d.dataType);
+    }
+
+    /**
+     * Map the specified region of the file as a single contiguous block of memory. A single mapping is limited to 2GB,
+     * hence larger regions are mapped in chunks. The chunks are mapped last to first, as the OS usually places each
+     * new mapping directly below the previous one.
+     *
+     * @return The mapped chunks in file order, or null if the chunks are not contiguous in memory
+     */
+    private static ByteBuffer[] mapContiguous(FileChannel ch, FileChannel.MapMode mode, long offset, long bytes) throws IOException {
+        int numChunks = (int) ((bytes + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        ByteBuffer[] chunks = new ByteBuffer[numChunks];
+        long next = -1;
+        for (int i = numChunks - 1; i >= 0; i--) {
+            long pos = (long) i * CHUNK_SIZE;
+            long size = Math.min(CHUNK_SIZE, bytes - pos);
+            chunks[i] = ch.map(mode, offset + pos, size).order(ByteOrder.nativeOrder());
+            long address = new Pointer(chunks[i]).address();
+            if (next >= 0 && address + size != next)
+                return null;
+            next = address;
+        }
+        return chunks;
+    }
+
+    private static INDArray read(FileChannel ch, Descriptor d, long length, long bytes) throws IOException {
+        //Read straight into off-heap memory, without intermediate byte[] copies
+        INDArray arr = Nd4j.createUninitialized(d.dataType, d.shape, 'c');
+        BytePointer bp = new BytePointer(arr.data().addressPointer());
+        bp.capacity(bytes);
+        for (long pos = 0; pos < bytes; pos += CHUNK_SIZE) {
+            long chunk = Math.min(CHUNK_SIZE, bytes - pos);
+            ByteBuffer dst = bp.position(pos).limit(pos + chunk).asByteBuffer();
+            while (dst.hasRemaining()) {
+                if (ch.read(dst, d.offset + pos + dst.position()) < 0)
+                    throw new EOFException("Unexpected end of file while reading array of length " + length);
+            }
+        }
+        Nd4j.getAffinityManager().tagLocation(arr, AffinityManager.Location.HOST);
+        return arr;
+    }
+
+    private static void writeArray(FileChannel ch, INDArray arr, long offset) throws IOException {
+        Nd4j.getAffinityManager().ensureLocation(arr, AffinityManager.Location.HOST);
+        long bytes = byteLength(arr);
+        BytePointer bp = new BytePointer(arr.data().addressPointer());
+        bp.capacity(bytes);
+        for (long pos = 0; pos < bytes; pos += CHUNK_SIZE) {
+            long chunk = Math.min(CHUNK_SIZE, bytes - pos);
+            writeFully(ch, bp.position(pos).limit(pos + chunk).asByteBuffer(), offset + pos);
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer src, long position) throws IOException {
+        long pos = position;
+        while (src.hasRemaining()) {
+            pos += ch.write(src, pos);
+        }
+    }
+
+    private static INDArray contiguous(INDArray arr) {
+        if (arr == null)
+            return null;
+        if (arr.ordering() == 'c' && Shape.hasDefaultStridesForShape(arr) && arr.data().length() == arr.length()
+                && arr.offset() == 0)
+            return arr;
+        return arr.dup('c');
+    }
+
+    private static long byteLength(INDArray arr) {
+        return arr == null ? 0 : arr.length() * arr.dataType().width();
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static FileChannel open(File file, boolean writable) throws IOException {
+        if (writable)
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    private static boolean isWritable(File file) {
+        //Copy-on-write mappings require the channel to be opened for writing, even though nothing is written
+        return file.canWrite();
+    }
+
+    @AllArgsConstructor
+    private static class Header {
+        private final int modelType;
+        private final String json;
+        private final Descriptor params;
+        private final Descriptor updater;
+    }
+
+    @AllArgsConstructor
+    private static class Descriptor {
+        private final DataType dataType;
+        private final long[] shape;
+        private final long offset;
+    }
+}
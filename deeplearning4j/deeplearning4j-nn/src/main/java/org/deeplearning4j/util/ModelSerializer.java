@@ -134,8 +134,6 @@ public class ModelSerializer {
      */
     public static void writeModel(@NonNull Model model, @NonNull OutputStream stream, boolean saveUpdater,DataNormalization dataNormalization)
             throws IOException {
-        ZipOutputStream zipfile = new ZipOutputStream(new CloseShieldOutputStream(stream));
-
         // Save configuration as JSON
         String json = "";
         if (model instanceof MultiLayerNetwork) {
@@ -144,18 +142,45 @@ public class ModelSerializer {
             json = ((ComputationGraph) model).getConfiguration().toJson();
         }
 
+        INDArray updaterState = null;
+        if (saveUpdater) {
+            if (model instanceof MultiLayerNetwork) {
+                updaterState = ((MultiLayerNetwork) model).getUpdater().getStateViewArray();
+            } else if (model instanceof ComputationGraph) {
+                updaterState = ((ComputationGraph) model).getUpdater().getStateViewArray();
+            }
+        }
+
+        writeModel(json, model.params(), updaterState, dataNormalization, stream);
+    }
+
+    /**
+     * Write a model to an output stream, from its JSON configuration, parameters and updater state.<br>
+     * This allows a snapshot of a model (for example, copies of the parameters and updater state made during training)
+     * to be written without accessing the model instance itself.
+     * @param configJson the model configuration JSON (MultiLayerConfiguration or ComputationGraphConfiguration)
+     * @param params the flattened model parameters (may be null)
+     * @param updaterState the flattened updater state (may be null: updater state is not saved)
+     * @param dataNormalization the normalizer to save (may be null)
+     * @param stream the output stream to write to
+     * @throws IOException
+     */
+    public static void writeModel(@NonNull String configJson, INDArray params, INDArray updaterState,
+                                  DataNormalization dataNormalization, @NonNull OutputStream stream) throws IOException {
+        ZipOutputStream zipfile = new ZipOutputStream(new CloseShieldOutputStream(stream));
+
+        // Save configuration as JSON
         ZipEntry config = new ZipEntry(CONFIGURATION_JSON);
         zipfile.putNextEntry(config);
-        zipfile.write(json.getBytes());
+        zipfile.write(configJson.getBytes());
 
         // Save parameters as binary
         ZipEntry coefficients = new ZipEntry(COEFFICIENTS_BIN);
         zipfile.putNextEntry(coefficients);
         DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(zipfile));
-        INDArray params = model.params();
         if(params != null) {
             try {
-                Nd4j.write(model.params(), dos);
+                Nd4j.write(params, dos);
             } finally {
                 dos.flush();
             }
@@ -164,23 +189,14 @@ public class ModelSerializer {
             zipfile.putNextEntry(noParamsMarker);
         }
 
-        if (saveUpdater) {
-            INDArray updaterState = null;
-            if (model instanceof MultiLayerNetwork) {
-                updaterState = ((MultiLayerNetwork) model).getUpdater().getStateViewArray();
-            } else if (model instanceof ComputationGraph) {
-                updaterState = ((ComputationGraph) model).getUpdater().getStateViewArray();
-            }
-
-            if (updaterState != null && updaterState.length() > 0) {
-                ZipEntry updater = new ZipEntry(UPDATER_BIN);
-                zipfile.putNextEntry(updater);
+        if (updaterState != null && updaterState.length() > 0) {
+            ZipEntry updater = new ZipEntry(UPDATER_BIN);
+            zipfile.putNextEntry(updater);
 
-                try {
-                    Nd4j.write(updaterState, dos);
-                } finally {
-                    dos.flush();
-                }
+            try {
+                Nd4j.write(updaterState, dos);
+            } finally {
+                dos.flush();
             }
         }
 
@@ -217,6 +233,8 @@ public class ModelSerializer {
      */
     public static MultiLayerNetwork restoreMultiLayerNetwork(@NonNull File file, boolean loadUpdater)
             throws IOException {
+        if (MappedModelSerializer.isMappedModelFile(file))
+            return MappedModelSerializer.restoreMultiLayerNetwork(file, loadUpdater);
         try(InputStream is = new BufferedInputStream(new FileInputStream(file))){
             return restoreMultiLayerNetwork(is, loadUpdater);
         }
@@ -644,6 +662,8 @@ public class ModelSerializer {
      * @throws IOException
      */
     public static ComputationGraph restoreComputationGraph(@NonNull File file, boolean loadUpdater) throws IOException {
+        if (MappedModelSerializer.isMappedModelFile(file))
+            return MappedModelSerializer.restoreComputationGraph(file, loadUpdater);
     	return restoreComputationGraph(new FileInputStream(file), loadUpdater);
     }
 
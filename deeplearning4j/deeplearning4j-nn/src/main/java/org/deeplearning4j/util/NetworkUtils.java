@@ -63,6 +63,7 @@ public class NetworkUtils {
 
         ComputationGraphConfiguration.GraphBuilder b = new NeuralNetConfiguration.Builder()
                 .dataType(net.getLayerWiseConfigurations().getDataType())
+                .gradientAccumulationSteps(net.getLayerWiseConfigurations().getGradientAccumulationSteps())
                 .graphBuilder();
 
         MultiLayerConfiguration origConf = net.getLayerWiseConfigurations().clone();
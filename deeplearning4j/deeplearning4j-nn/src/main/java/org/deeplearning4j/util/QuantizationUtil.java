@@ -0,0 +1,185 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.util;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.layers.Convolution1D;
+import org.deeplearning4j.nn.conf.layers.Convolution1DLayer;
+import org.deeplearning4j.nn.conf.layers.Convolution2D;
+import org.deeplearning4j.nn.conf.layers.Convolution3D;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.Deconvolution2D;
+import org.deeplearning4j.nn.conf.layers.Deconvolution3D;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.autodiff.samediff.quantization.Int8Quantization;
+import org.nd4j.autodiff.samediff.quantization.QuantizationReport;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.evaluation.classification.Evaluation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+/**
+ * Post-training INT8 weight quantization for {@link MultiLayerNetwork} and {@link ComputationGraph}.<br>
+ * The weights of {@link DenseLayer}, {@link ConvolutionLayer} (1D, 2D and 3D) and deconvolution layers are quantized
+ * per output channel, as per {@link Int8Quantization}; depthwise and separable convolutions are not quantized.
+ * DL4J layers execute in floating point on a single flattened parameter array, so the quantized network stores the
+ * dequantized weights: this is used to measure the accuracy impact of INT8 weights (see
+ * {@link #evaluate(Model, Model, DataSetIterator)}), while {@link #quantizedSizeBytes(Model, long)} gives the size
+ * the weights would have in INT8 form. For executing with INT8 weights in memory, import the model into SameDiff and
+ * use {@code PostTrainingQuantizer}.
+ */
+@Slf4j
+public class QuantizationUtil {
+    public static final long DEFAULT_MIN_ELEMENTS = 1024;
+
+    private QuantizationUtil() { }
+
+    /**
+     * Create a copy of the network with quantized (then dequantized) dense and convolution layer weights.
+     * The original network is not modified
+     *
+     * @param net         Network to quantize
+     * @param minElements Weights with fewer elements than this are not quantized
+     */
+    public static MultiLayerNetwork quantizeWeights(@NonNull MultiLayerNetwork net, long minElements) {
+        MultiLayerNetwork out = net.clone();
+        int count = quantizeLayers(out.getLayers(), minElements);
+        log.info("Quantized weights for {} layers", count);
+        return out;
+    }
+
+    /**
+     * As per {@link #quantizeWeights(MultiLayerNetwork, long)} for a ComputationGraph
+     */
+    public static ComputationGraph quantizeWeights(@NonNull ComputationGraph net, long minElements) {
+        ComputationGraph out = net.clone();
+        int count = quantizeLayers(out.getLayers(), minElements);
+        log.info("Quantized weights for {} layers", count);
+        return out;
+    }
+
+    /**
+     * Evaluate the FP32 and quantized networks on the same data, using {@link Evaluation}
+     *
+     * @param fp32      Original network (MultiLayerNetwork or ComputationGraph)
+     * @param quantized Quantized network, from one of the quantizeWeights methods
+     * @param iterator  Test data. Must support reset
+     * @return Report comparing the two networks. Quantized size is as per {@link #quantizedSizeBytes(Model, long)}
+     *         with {@link #DEFAULT_MIN_ELEMENTS}
+     */
+    public static QuantizationReport evaluate(@NonNull Model fp32, @NonNull Model quantized, @NonNull DataSetIterator iterator) {
+        return evaluate(fp32, quantized, iterator, DEFAULT_MIN_ELEMENTS);
+    }
+
+    /**
+     * As per {@link #evaluate(Model, Model, DataSetIterator)}, with the min elements value that was used for quantization
+     */
+    public static QuantizationReport evaluate(@NonNull Model fp32, @NonNull Model quantized, @NonNull DataSetIterator iterator,
+                                              long minElements) {
+        Preconditions.checkArgument(iterator.resetSupported(), "Iterator must support reset for evaluating both networks");
+        iterator.reset();
+        Evaluation e1 = evaluate(fp32, iterator);
+        iterator.reset();
+        Evaluation e2 = evaluate(quantized, iterator);
+        long fp32Bytes = fp32.params().length() * fp32.params().dataType().width();
+        return new QuantizationReport(e1, e2, fp32Bytes, quantizedSizeBytes(quantized, minElements));
+    }
+
+    /**
+     * @return Size of the network parameters in bytes, if the weights quantized by the quantizeWeights methods were
+     *         stored as INT8 values with FLOAT per-channel scales
+     */
+    public static long quantizedSizeBytes(@NonNull Model model, long minElements) {
+        long bytes = model.params().length() * model.params().dataType().width();
+        for (Layer l : layers(model)) {
+            int channelDim = weightChannelDim(l);
+            INDArray w = channelDim < 0 ? null : l.getParam(DefaultParamInitializer.WEIGHT_KEY);
+            if (w == null || w.length() < minElements)
+                continue;
+            bytes -= w.length() * w.dataType().width();
+            bytes += w.length() + 4 * w.size(channelDim);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Dimension of the output channels in the layer's weights, or -1 if the layer is not quantized
+     */
+    protected static int weightChannelDim(Layer l) {
+        org.deeplearning4j.nn.conf.layers.Layer conf = l.conf() == null ? null : l.conf().getLayer();
+        if (conf instanceof DenseLayer)
+            return 1;               //[nIn, nOut]
+        if (conf == null)
+            return -1;
+
+        //Exact classes only: ConvolutionLayer subclasses don't all share the same weights layout
+        Class<?> c = conf.getClass();
+        if (c == ConvolutionLayer.class || c == Convolution2D.class || c == Convolution1DLayer.class
+                || c == Convolution1D.class || c == Convolution3D.class) {
+            return 0;               //[nOut, nIn, kH, kW], [nOut, nIn, k, 1] for 1D, [nOut, nIn, kD, kH, kW] for 3D
+        } else if (c == Deconvolution2D.class) {
+            return 1;               //[nIn, nOut, kH, kW]
+        } else if (c == Deconvolution3D.class) {
+            return 3;               //[kD, kH, kW, nOut, nIn]
+        }
+        //Not quantized: depthwise weights [kH, kW, nIn, depthMultiplier] have output channels over 2 dimensions,
+        //and separable convolution W holds the depthwise weights as [depthMultiplier, nIn, kH, kW]
+        return -1;
+    }
+
+    private static int quantizeLayers(Layer[] layers, long minElements) {
+        int count = 0;
+        for (Layer l : layers) {
+            int channelDim = weightChannelDim(l);
+            INDArray w = channelDim < 0 ? null : l.getParam(DefaultParamInitializer.WEIGHT_KEY);
+            if (w == null || w.length() < minElements || !w.dataType().isFPType())
+                continue;
+            //Assign in place: the weights are a view of the network's flattened parameters
+            w.assign(Int8Quantization.quantizeDequantize(w, channelDim));
+            count++;
+        }
+        return count;
+    }
+
+    private static Layer[] layers(Model model) {
+        if (model instanceof MultiLayerNetwork) {
+            return ((MultiLayerNetwork) model).getLayers();
+        } else if (model instanceof ComputationGraph) {
+            return ((ComputationGraph) model).getLayers();
+        }
+        throw new IllegalArgumentException("Unsupported model type: " + model.getClass());
+    }
+
+    private static Evaluation evaluate(Model model, DataSetIterator iterator) {
+        if (model instanceof MultiLayerNetwork) {
+            return ((MultiLayerNetwork) model).evaluate(iterator);
+        } else if (model instanceof ComputationGraph) {
+            return ((ComputationGraph) model).evaluate(iterator);
+        }
+        throw new IllegalArgumentException("Unsupported model type: " + model.getClass());
+    }
+}
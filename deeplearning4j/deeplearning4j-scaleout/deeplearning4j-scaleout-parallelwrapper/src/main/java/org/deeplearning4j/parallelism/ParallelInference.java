@@ -29,6 +29,7 @@ import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.AdaptiveBatchPolicy;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
@@ -39,13 +40,18 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.common.primitives.Pair;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -59,6 +65,9 @@ public class ParallelInference {
     protected InferenceMode inferenceMode;
     protected int queueLimit;
     protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+    protected long targetLatencyNanos;
+    protected boolean padTimeSeries;
+    protected AdaptiveBatchPolicy batchPolicy;
 
     // this queue holds data for inference
     private BlockingQueue<InferenceObservable> observables;
@@ -74,6 +83,7 @@ public class ParallelInference {
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static long DEFAULT_TARGET_LATENCY_MS = 50;
 
 
 
@@ -138,9 +148,23 @@ public class ParallelInference {
         if (inferenceMode == InferenceMode.BATCHED) {
             log.info("Initializing ObservablesProvider...");
             provider = new ObservablesProvider(nanos, batchLimit, observables);
+        } else if (inferenceMode == InferenceMode.ADAPTIVE_BATCHED) {
+            log.info("Initializing AdaptiveObservablesProvider...");
+            batchPolicy = new AdaptiveBatchPolicy(targetLatencyNanos, TimeUnit.NANOSECONDS, batchLimit);
+            provider = new AdaptiveObservablesProvider(batchPolicy, padTimeSeries, observables);
         }
     }
 
+    /**
+     * Get the batching policy, which also holds the batch size, queue depth and latency histograms.
+     * Only available for {@link InferenceMode#ADAPTIVE_BATCHED}
+     *
+     * @return Batching policy, or null for other inference modes
+     */
+    public AdaptiveBatchPolicy getBatchPolicy() {
+        return batchPolicy;
+    }
+
     protected long getWorkerCounter(int workerIdx) {
         return zoo[workerIdx].getCounterValue();
     }
@@ -152,6 +176,9 @@ public class ParallelInference {
         if (zoo == null)
             return;
 
+        if (provider != null)
+            provider.shutdown();
+
         for (int e = 0; e < zoo.length; e++) {
             if (zoo[e] == null)
                 continue;
@@ -227,6 +254,7 @@ public class ParallelInference {
      */
     public INDArray[] output(INDArray[] input, INDArray[] inputMasks){
         Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+        long start = System.nanoTime();
 
         // basically, depending on model type we either throw stuff to specific model, or wait for batch
         BasicInferenceObserver observer = new BasicInferenceObserver();
@@ -255,7 +283,12 @@ public class ParallelInference {
             throw new RuntimeException(e);
         }
 
-        return observable.getOutput();
+        INDArray[] output = observable.getOutput();
+        if (provider != null)
+            output = provider.postProcessOutput(output);
+        if (batchPolicy != null)
+            batchPolicy.recordRequestLatency(System.nanoTime() - start);
+        return output;
     }
 
     /**
@@ -290,6 +323,8 @@ public class ParallelInference {
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
         protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+        private long targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TARGET_LATENCY_MS);
+        private boolean padTimeSeries = false;
 
         public Builder(@NonNull Model model) {
             this.model = model;
@@ -375,6 +410,44 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method defines target (p99) latency for a single request. Batch sizes and the time spent waiting
+         * for further requests to join a batch are chosen to keep requests within this latency.
+         *
+         * PLEASE NOTE: This value has effect only in ADAPTIVE_BATCHED inference mode
+         *
+         * Default value: 50 ms
+         *
+         * @param latency
+         * @param unit
+         * @return
+         */
+        public Builder targetLatency(long latency, @NonNull TimeUnit unit) {
+            if (latency < 1)
+                throw new IllegalStateException("Target latency should be positive value");
+
+            this.targetLatencyNanos = unit.toNanos(latency);
+            return this;
+        }
+
+        /**
+         * This method defines, if variable length time series inputs (rank 3, [minibatch, size, length]) should be
+         * padded to the next power of two length (with an input mask), so that inputs of different lengths can be
+         * batched together. Time series outputs are trimmed back to the original length.
+         *
+         * PLEASE NOTE: This value has effect only in ADAPTIVE_BATCHED inference mode, and requires a model that
+         * supports input masks
+         *
+         * Default value: false
+         *
+         * @param padTimeSeries
+         * @return
+         */
+        public Builder padTimeSeries(boolean padTimeSeries) {
+            this.padTimeSeries = padTimeSeries;
+            return this;
+        }
+
         /**
          * This method builds new ParallelInference instance
          *
@@ -399,6 +472,8 @@ public class ParallelInference {
                 inference.model = this.model;
                 inference.workers = this.workers;
                 inference.loadBalanceMode = this.loadBalanceMode;
+                inference.targetLatencyNanos = this.targetLatencyNanos;
+                inference.padTimeSeries = this.padTimeSeries;
 
                 inference.init();
 
@@ -511,7 +586,10 @@ public class ParallelInference {
                                     try {
                                         modelLock.readLock().lock();
 
+                                        long start = System.nanoTime();
                                         INDArray[] output = ((ComputationGraph) replicatedModel).output(false, inBatch.getFirst(), inBatch.getSecond());
+                                        Nd4j.getExecutioner().commit();
+                                        recordBatchExecution(inBatch.getFirst(), System.nanoTime() - start);
                                         out.add(output);
                                     } finally {
                                         Nd4j.getExecutioner().commit();
@@ -533,7 +611,10 @@ public class ParallelInference {
                                     try {
                                         modelLock.readLock().lock();
 
+                                        long start = System.nanoTime();
                                         INDArray output = ((MultiLayerNetwork) replicatedModel).output(f, false, fm, null);
+                                        Nd4j.getExecutioner().commit();
+                                        recordBatchExecution(inBatch.getFirst(), System.nanoTime() - start);
                                         out.add(new INDArray[]{output});
                                     } finally {
                                         Nd4j.getExecutioner().commit();
@@ -561,6 +642,11 @@ public class ParallelInference {
             }
         }
 
+        private void recordBatchExecution(INDArray[] input, long nanos) {
+            if (batchPolicy != null)
+                batchPolicy.recordBatchExecution(input[0].size(0), nanos);
+        }
+
         protected void shutdown() {
             shouldWork.set(false);
             while (!isStopped.get()) {
@@ -571,7 +657,7 @@ public class ParallelInference {
 
 
     protected static class ObservablesProvider {
-        private BlockingQueue<InferenceObservable> targetQueue;
+        protected BlockingQueue<InferenceObservable> targetQueue;
         private long nanos;
         private int batchLimit;
 
@@ -615,5 +701,249 @@ public class ParallelInference {
                 return currentObservable;
             }
         }
+
+        /**
+         * Post process the output for the current thread's request, after inference is complete
+         */
+        protected INDArray[] postProcessOutput(INDArray[] output) {
+            return output;
+        }
+
+        protected void shutdown() {
+            //No op
+        }
+    }
+
+    /**
+     * Batching for {@link InferenceMode#ADAPTIVE_BATCHED}: requests are held in one pending batch per input shape
+     * signature, and each batch is dispatched to the workers once it reaches the maximum batch size, or once its
+     * batch window (both as per {@link AdaptiveBatchPolicy}) has elapsed
+     */
+    protected static class AdaptiveObservablesProvider extends ObservablesProvider {
+        private final AdaptiveBatchPolicy policy;
+        private final boolean padTimeSeries;
+        private final Map<String, PendingBatch> pending = new LinkedHashMap<>();
+        // original and padded time series length, for the current thread's request - or null if not padded
+        private final ThreadLocal<long[]> paddedLength = new ThreadLocal<>();
+        private final Object lock = new Object();
+        private final Thread dispatcher;
+        private volatile boolean running = true;
+
+        protected AdaptiveObservablesProvider(@NonNull AdaptiveBatchPolicy policy, boolean padTimeSeries,
+                                              @NonNull BlockingQueue<InferenceObservable> queue) {
+            super(0, policy.getBatchLimit(), queue);
+            this.policy = policy;
+            this.padTimeSeries = padTimeSeries;
+
+            this.dispatcher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    dispatchLoop();
+                }
+            });
+            this.dispatcher.setDaemon(true);
+            this.dispatcher.setName("AdaptiveBatchDispatcher");
+            this.dispatcher.start();
+        }
+
+        @Override
+        protected InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask) {
+            paddedLength.remove();
+            if (padTimeSeries) {
+                Pair<INDArray[], INDArray[]> padded = padTimeSeries(input, inputMask);
+                input = padded.getFirst();
+                inputMask = padded.getSecond();
+            }
+
+            long now = System.nanoTime();
+            PendingBatch full = null;
+            InferenceObservable observable;
+            synchronized (lock) {
+                policy.recordArrival(now);
+
+                String key = shapeSignature(input, inputMask);
+                PendingBatch batch = pending.get(key);
+                if (batch == null) {
+                    batch = new PendingBatch(now);
+                    pending.put(key, batch);
+                }
+
+                batch.observable.addInput(input, inputMask);
+                batch.observable.addObserver(observer);
+                batch.numExamples += input[0].size(0);
+
+                if (batch.numExamples >= policy.maxBatchSize()) {
+                    pending.remove(key);
+                    policy.recordDispatch(batch.numExamples, targetQueue.size());
+                    full = batch;
+                } else {
+                    // let dispatcher re-evaluate batch windows
+                    lock.notifyAll();
+                }
+
+                observable = batch.observable;
+            }
+
+            // batch isn't reachable from pending anymore, so it can be queued without holding the lock
+            if (full != null)
+                enqueue(full);
+            return observable;
+        }
+
+        @Override
+        protected INDArray[] postProcessOutput(INDArray[] output) {
+            long[] lengths = paddedLength.get();
+            if (lengths == null || output == null)
+                return output;
+
+            // trim time series outputs back to the original length
+            INDArray[] out = new INDArray[output.length];
+            for (int i = 0; i < output.length; i++) {
+                INDArray o = output[i];
+                if (o != null && o.rank() == 3 && o.size(2) == lengths[1]) {
+                    out[i] = o.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.interval(0, lengths[0])).dup();
+                } else {
+                    out[i] = o;
+                }
+            }
+            return out;
+        }
+
+        @Override
+        protected void shutdown() {
+            running = false;
+            dispatcher.interrupt();
+        }
+
+        private void dispatchLoop() {
+            List<PendingBatch> expired = new ArrayList<>();
+            try {
+                while (running) {
+                    synchronized (lock) {
+                        long now = System.nanoTime();
+                        long nextDeadline = Long.MAX_VALUE;
+                        int maxBatchSize = policy.maxBatchSize();
+
+                        Iterator<PendingBatch> iter = pending.values().iterator();
+                        while (iter.hasNext()) {
+                            PendingBatch batch = iter.next();
+                            long deadline = batch.firstArrivalNanos + policy.batchWindowNanos(batch.numExamples, maxBatchSize);
+                            if (deadline <= now) {
+                                iter.remove();
+                                policy.recordDispatch(batch.numExamples, targetQueue.size());
+                                expired.add(batch);
+                            } else {
+                                nextDeadline = Math.min(nextDeadline, deadline);
+                            }
+                        }
+
+                        if (expired.isEmpty()) {
+                            if (nextDeadline == Long.MAX_VALUE) {
+                                lock.wait();
+                            } else {
+                                long waitNanos = nextDeadline - now;
+                                lock.wait(waitNanos / 1000000, (int) (waitNanos % 1000000));
+                            }
+                        }
+                    }
+
+                    // queue may be full: block outside of the lock, so callers can keep adding to pending batches
+                    for (PendingBatch batch : expired)
+                        targetQueue.put(batch.observable);
+                    expired.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void enqueue(PendingBatch batch) {
+            try {
+                targetQueue.put(batch.observable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Pad rank 3 time series inputs to the next power of two length, adding (or extending) the input mask
+         */
+        private Pair<INDArray[], INDArray[]> padTimeSeries(INDArray[] input, INDArray[] inputMask) {
+            INDArray[] outInput = input.clone();
+            INDArray[] outMask = (inputMask == null ? new INDArray[input.length] : inputMask.clone());
+            boolean anyTimeSeries = false;
+            for (int i = 0; i < input.length; i++) {
+                INDArray in = input[i];
+                if (in.rank() != 3)
+                    continue;
+
+                anyTimeSeries = true;
+                long length = in.size(2);
+                long paddedLen = Long.highestOneBit(Math.max(1, length));
+                if (paddedLen < length)
+                    paddedLen <<= 1;
+
+                INDArray mask = outMask[i];
+                if (paddedLen != length) {
+                    INDArray p = Nd4j.create(in.dataType(), in.size(0), in.size(1), paddedLen);
+                    p.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.interval(0, length)).assign(in);
+                    outInput[i] = p;
+                    if (paddedLength.get() == null)
+                        paddedLength.set(new long[]{length, paddedLen});
+                }
+
+                INDArray m = Nd4j.create(in.dataType(), in.size(0), paddedLen);
+                INDArray sub = m.get(NDArrayIndex.all(), NDArrayIndex.interval(0, length));
+                if (mask == null) {
+                    sub.assign(1.0);
+                } else {
+                    sub.assign(mask);
+                }
+                outMask[i] = m;
+            }
+
+            if (!anyTimeSeries)
+                return new Pair<>(input, inputMask);
+            return new Pair<>(outInput, outMask);
+        }
+
+        private static String shapeSignature(INDArray[] input, INDArray[] inputMask) {
+            StringBuilder sb = new StringBuilder();
+            for (INDArray in : input) {
+                appendShape(sb, in);
+            }
+            sb.append("|");
+            if (inputMask != null) {
+                for (INDArray m : inputMask) {
+                    appendShape(sb, m);
+                }
+            }
+            return sb.toString();
+        }
+
+        private static void appendShape(StringBuilder sb, INDArray arr) {
+            if (arr == null) {
+                sb.append("null;");
+                return;
+            }
+            // minibatch dimension can differ within a batch
+            sb.append(arr.dataType());
+            long[] shape = arr.shape();
+            for (int i = 1; i < shape.length; i++) {
+                sb.append(",").append(shape[i]);
+            }
+            sb.append(";");
+        }
+
+        private static class PendingBatch {
+            private final BatchedInferenceObservable observable = new BatchedInferenceObservable();
+            private final long firstArrivalNanos;
+            private long numExamples;
+
+            private PendingBatch(long firstArrivalNanos) {
+                this.firstArrivalNanos = firstArrivalNanos;
+            }
+        }
     }
 }
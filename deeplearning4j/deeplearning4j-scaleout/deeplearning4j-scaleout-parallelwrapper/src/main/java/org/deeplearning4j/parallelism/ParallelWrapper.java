@@ -45,6 +45,8 @@ import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.optimize.solvers.accumulation.Registerable;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
+import org.deeplearning4j.parallelism.allreduce.SharedMemoryAllReduce;
+import org.deeplearning4j.parallelism.factory.AllReduceTrainerContext;
 import org.deeplearning4j.parallelism.factory.DefaultTrainerContext;
 import org.deeplearning4j.parallelism.factory.SymmetricTrainerContext;
 import org.deeplearning4j.parallelism.factory.TrainerContext;
@@ -85,6 +87,12 @@ public class ParallelWrapper implements AutoCloseable {
          * This option assumes use of GradientsAccumulator with any MessageHandler
          */
         CUSTOM,
+
+        /**
+         * Gradients are averaged across all workers before the updater is applied, using bucketed reduce-scatter/all-gather
+         * in shared memory, overlapped with backprop. See {@link SharedMemoryAllReduce}
+         */
+        ALLREDUCE,
     }
 
     protected Supplier<INDArray> modelParamsSupplier;
@@ -118,6 +126,8 @@ public class ParallelWrapper implements AutoCloseable {
     @Getter
     @Setter
     protected GradientsAccumulator gradientsAccumulator;
+    @Getter
+    protected SharedMemoryAllReduce allReduce;
 
     // log uncaught exceptions
     Thread.UncaughtExceptionHandler handler = new Thread.UncaughtExceptionHandler() {
@@ -169,6 +179,10 @@ public class ParallelWrapper implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
+        // release workers that may be waiting for failed workers
+        if (allReduce != null)
+            allReduce.abort();
+
         if (zoo != null) {
             for (int i = 0; i < zoo.length; i++) {
                 if (zoo[i] != null)
@@ -269,6 +283,9 @@ public class ParallelWrapper implements AutoCloseable {
                 ((Registerable) gradientsAccumulator).registerConsumers(dataSets.length);
             }
 
+            if (allReduce != null)
+                allReduce.registerConsumers(dataSets.length);
+
             /*
              now dataSet should be dispatched to next free workers, until all workers are busy. And then we should block till all finished.
             */
@@ -288,6 +305,8 @@ public class ParallelWrapper implements AutoCloseable {
 
             //Nd4j.getMemoryManager().invokeGcOccasionally();
 
+            syncIdleWorkers(dataSets.length);
+
             // optional averaging
             if (zoo[0].averagingRequired() && iterationsCounter.get() % averagingFrequency == 0 ) {
                 /*
@@ -402,6 +421,50 @@ public class ParallelWrapper implements AutoCloseable {
         }
     }
 
+    /**
+     * In ALLREDUCE mode only workers that received a DataSet take part in the round, so on a partial round
+     * (fewer DataSets than workers) the idle workers are left with stale params and updater state.
+     * Since no averaging happens in this mode, we propagate worker 0 state to them instead.
+     *
+     * @param activeWorkers number of workers that took part in the last round
+     */
+    private void syncIdleWorkers(int activeWorkers) {
+        if (allReduce == null || activeWorkers < 1 || activeWorkers >= workers)
+            return;
+
+        Model source = zoo[0].getModel();
+        INDArray params = source.params();
+        INDArray updaterState = null;
+        int iterationCount = 0;
+        int epochCount = 0;
+        if (source instanceof MultiLayerNetwork) {
+            MultiLayerNetwork net = (MultiLayerNetwork) source;
+            updaterState = net.getUpdater().getStateViewArray();
+            iterationCount = net.getIterationCount();
+            epochCount = net.getEpochCount();
+        } else if (source instanceof ComputationGraph) {
+            ComputationGraph graph = (ComputationGraph) source;
+            updaterState = graph.getUpdater().getStateViewArray();
+            iterationCount = graph.getIterationCount();
+            epochCount = graph.getEpochCount();
+        }
+
+        for (int cnt = activeWorkers; cnt < workers; cnt++) {
+            zoo[cnt].updateModelParams(params);
+            if (updaterState != null)
+                zoo[cnt].updateUpdaterParams(updaterState);
+
+            Model target = zoo[cnt].getModel();
+            if (target instanceof MultiLayerNetwork) {
+                ((MultiLayerNetwork) target).setIterationCount(iterationCount);
+                ((MultiLayerNetwork) target).setEpochCount(epochCount);
+            } else if (target instanceof ComputationGraph) {
+                ((ComputationGraph) target).getConfiguration().setIterationCount(iterationCount);
+                ((ComputationGraph) target).getConfiguration().setEpochCount(epochCount);
+            }
+        }
+    }
+
 
     /**
      * This method allows you to specify trainingListeners for this model.
@@ -571,6 +634,9 @@ public class ParallelWrapper implements AutoCloseable {
                 ((Registerable) gradientsAccumulator).registerConsumers(dataSets.length);
             }
 
+            if (allReduce != null)
+                allReduce.registerConsumers(dataSets.length);
+
 
             // feeding datasets
             for (int pos = 0; pos < dataSets.length; pos++) {
@@ -592,6 +658,8 @@ public class ParallelWrapper implements AutoCloseable {
                 }
             }
 
+            syncIdleWorkers(dataSets.length);
+
 
             // optional averaging
             if (iterationsCounter.get() % averagingFrequency == 0 && zoo[0].averagingRequired() ) {
@@ -687,6 +755,7 @@ public class ParallelWrapper implements AutoCloseable {
         protected ThresholdAlgorithm thresholdAlgorithm;
         protected ResidualPostProcessor residualPostProcessor;
         protected Long encoderMemory = -1L;
+        protected long allReduceBucketSize = SharedMemoryAllReduce.DEFAULT_BUCKET_SIZE;
 
         protected GradientsAccumulator accumulator;
 
@@ -827,6 +896,7 @@ public class ParallelWrapper implements AutoCloseable {
          *  1) AVERAGING - stands for parameters averaging. Each X epochs weights and updaters state will be averaged across all models<br>
          *  2) SHARED_GRADIENTS - stands for gradients sharing - more details available here: <a href="https://deeplearning4j.konduit.ai/distributed-deep-learning/intro">https://deeplearning4j.konduit.ai/distributed-deep-learning/intro</a><br>
          *  3) CUSTOM - this method allows you to specify custom gradients accumulator, this giving you better control of configuration params for training.<br>
+         *  4) ALLREDUCE - stands for synchronous gradients averaging across workers via shared memory reduce-scatter/all-gather. See {@link SharedMemoryAllReduce}<br>
          *
          * @param mode
          * @return
@@ -894,6 +964,20 @@ public class ParallelWrapper implements AutoCloseable {
             return this;
         }
 
+        /**
+         * This method allows to define approximate size of gradient buckets (number of elements) used in ALLREDUCE training mode.
+         * Smaller buckets allow more overlap of communication with backprop, at the cost of more synchronization between workers.
+         *
+         * Default value: 1048576
+         * @param numElements number of gradient elements per bucket
+         * @return
+         */
+        public Builder allReduceBucketSize(long numElements) {
+            Preconditions.checkArgument(numElements > 0, "Bucket size must be positive, got %s", numElements);
+            this.allReduceBucketSize = numElements;
+            return this;
+        }
+
         /**
          * This method returns ParallelWrapper instance
          *
@@ -946,6 +1030,16 @@ public class ParallelWrapper implements AutoCloseable {
                                         "Please specify GradientsAccumulator fo encoded gradients mode");
                 }
                     break;
+                case ALLREDUCE: {
+                    if (Nd4j.getAffinityManager().getNumberOfDevices() > 1)
+                        log.warn("ALLREDUCE training mode is designed for single device (shared memory) training, but {} devices are available",
+                                        Nd4j.getAffinityManager().getNumberOfDevices());
+
+                    this.trainerContext = new AllReduceTrainerContext();
+                    this.accumulator = null;
+                    wrapper.allReduce = new SharedMemoryAllReduce(workers, allReduceBucketSize);
+                }
+                    break;
                 default:
                     throw new UnsupportedOperationException("Unknown trainingMode: [" + trainingMode + "]");
             }
@@ -0,0 +1,445 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.allreduce;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.api.BaseTrainingListener;
+import org.deeplearning4j.optimize.api.LayerExecutionListener;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Synchronous gradient averaging across the workers of a single-machine {@link org.deeplearning4j.parallelism.ParallelWrapper},
+ * without any central copy of the gradients.<br>
+ * The flattened gradient view of each worker is split into buckets of approximately {@link #getBucketSize()} elements,
+ * aligned to layer boundaries. Each bucket is summed in two steps over the worker's gradient arrays in shared memory:
+ * <ul>
+ *     <li>Reduce-scatter: bucket is split into one shard per worker; each worker sums its shard over all workers,
+ *     and writes the sum into its own gradient array</li>
+ *     <li>All-gather: each worker copies the summed shards owned by the other workers into its own gradient array</li>
+ * </ul>
+ * Gradients are summed (not averaged) over the examples of a minibatch, and the updater divides them by the worker's
+ * own minibatch size. Once all buckets are reduced, each worker hence scales the summed gradients by
+ * (worker minibatch size / total minibatch size over all workers): after the updater's division, every worker applies
+ * the gradient averaged over all examples of the round, even when the workers' minibatch sizes differ (for example,
+ * for the last partial minibatch). Gradients that the updater does not divide by the minibatch size (such as the batch
+ * norm global mean/variance) are averaged over the workers instead.
+ * Buckets are processed by a separate communication thread per worker, in backprop order: a bucket is reduced as soon as
+ * backprop of all of its layers has completed on all workers (via {@link LayerExecutionListener}), overlapping
+ * communication for the later layers with backprop of the earlier layers. The worker waits for all of its buckets
+ * before the updater is applied ({@link #onGradientCalculation}).<br>
+ * As all workers start from the same parameters and updater state, and apply the updater to identical averaged
+ * gradients, the models stay in sync without any parameter averaging: training is equivalent to single-model training
+ * with a minibatch size equal to the total minibatch size over all workers.<br>
+ * Row sparse gradients ({@link SparseGradientLayer}) are averaged as dense arrays, hence after the reduction they may
+ * be non-zero for the rows used by any of the workers: the rows of all workers are merged, so the sparse updater
+ * applies to the same rows on every worker.
+ */
+@Slf4j
+public class SharedMemoryAllReduce {
+    public static final long DEFAULT_BUCKET_SIZE = 1 << 20;
+
+    @Getter
+    protected final int workers;
+    @Getter
+    protected final long bucketSize;
+    protected final Worker[] registered;
+
+    protected volatile int participants;
+    protected volatile Phaser barrier;
+
+    /**
+     * @param workers    Number of workers (threads)
+     * @param bucketSize Approximate number of gradient elements per bucket
+     */
+    public SharedMemoryAllReduce(int workers, long bucketSize) {
+        Preconditions.checkArgument(workers > 0, "Number of workers must be positive, got %s", workers);
+        Preconditions.checkArgument(bucketSize > 0, "Bucket size must be positive, got %s", bucketSize);
+        this.workers = workers;
+        this.bucketSize = bucketSize;
+        this.registered = new Worker[workers];
+        this.participants = workers;
+        this.barrier = new Phaser(workers);
+    }
+
+    /**
+     * Register the model for the given worker. The returned listener must be added to the model's listeners.
+     *
+     * @param workerIdx Index of the worker, 0 to workers-1
+     * @param model     Model of the worker (MultiLayerNetwork or ComputationGraph)
+     */
+    public synchronized Worker register(int workerIdx, @NonNull Model model) {
+        Preconditions.checkArgument(workerIdx >= 0 && workerIdx < workers, "Invalid worker index %s for %s workers", workerIdx, workers);
+        Preconditions.checkArgument(model instanceof MultiLayerNetwork || model instanceof ComputationGraph,
+                "Only MultiLayerNetwork and ComputationGraph models are supported, got %s", model.getClass());
+        if (registered[workerIdx] != null)
+            registered[workerIdx].close();
+        Worker w = new Worker(workerIdx, model);
+        registered[workerIdx] = w;
+        return w;
+    }
+
+    /**
+     * Set the number of workers taking part in the next training round: workers 0 to numConsumers-1.
+     * Must only be called between rounds, when no worker is training.
+     */
+    public synchronized void registerConsumers(int numConsumers) {
+        Preconditions.checkArgument(numConsumers > 0 && numConsumers <= workers, "Invalid number of consumers: %s", numConsumers);
+        if (numConsumers != participants || barrier.isTerminated()) {
+            participants = numConsumers;
+            barrier = new Phaser(numConsumers);
+        }
+    }
+
+    /**
+     * Release any workers waiting on other workers, for example after one of the workers failed.
+     * Waiting workers, and workers reaching the barrier later in this round, will fail with a {@link BrokenBarrierException}.
+     */
+    public void abort() {
+        barrier.forceTermination();
+    }
+
+    private static void await(Phaser bar) throws InterruptedException, BrokenBarrierException {
+        //Phase is negative once the barrier was terminated by abort()
+        if (bar.awaitAdvanceInterruptibly(bar.arrive()) < 0)
+            throw new BrokenBarrierException();
+    }
+
+    private static INDArray shard(INDArray gradient, long from, long to) {
+        return gradient.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex.interval(from, to));
+    }
+
+    /**
+     * Per-worker state and listener. Receives the backprop events for the worker's model on the worker thread,
+     * and runs the bucket reductions on the worker's communication thread.
+     */
+    public class Worker extends BaseTrainingListener implements LayerExecutionListener {
+        @Getter
+        private final int workerIdx;
+        private final Model model;
+        private final ExecutorService comm;
+
+        private volatile INDArray gradient;
+        private long[] bucketStart;
+        private long[] bucketEnd;
+        private int[] bucketLayers;
+        private Map<Layer, Integer> layerBuckets;
+        //Row sparse parameters of the model, in layer order - same for all workers
+        private SparseGradientLayer[] sparseLayers;
+        private String[] sparseParams;
+        //Subsets of the gradient that the updater does / does not divide by the minibatch size
+        private List<INDArray> minibatchDivided;
+        private List<INDArray> notMinibatchDivided;
+        //Minibatch size of the worker for the current round; set before the first bucket is submitted
+        private volatile int batchSize;
+
+        private int[] remaining;
+        private int nextSubmit;
+        private final List<Future<?>> pending = new ArrayList<>();
+
+        protected Worker(int workerIdx, Model model) {
+            this.workerIdx = workerIdx;
+            this.model = model;
+            this.comm = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "ParallelWrapper allreduce thread " + workerIdx);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        @Override
+        public void layerStart(Model model, int index, String name, boolean backward) {
+            //No op
+        }
+
+        @Override
+        public void layerEnd(Model model, int index, String name, Layer layer, boolean backward, INDArray output) {
+            if (!backward || layer == null || workerIdx >= participants)
+                return;
+            initLayoutIfRequired();
+            Integer b = layerBuckets.get(layer);
+            if (b != null && --remaining[b] == 0)
+                submitReady(false);
+        }
+
+        @Override
+        public void onGradientCalculation(Model model) {
+            if (workerIdx >= participants)
+                return;
+            initLayoutIfRequired();
+            //Buckets may not be complete yet if some layers did not execute backprop (for example, frozen layers)
+            submitReady(true);
+            try {
+                for (Future<?> f : pending) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted during gradient allreduce", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error during gradient allreduce on worker " + workerIdx, e.getCause());
+            } finally {
+                pending.clear();
+                nextSubmit = 0;
+                System.arraycopy(bucketLayers, 0, remaining, 0, bucketLayers.length);
+            }
+        }
+
+        /**
+         * Submit buckets in backprop order. All workers must submit buckets in the same order, as their communication
+         * threads synchronize on a single barrier
+         */
+        private void submitReady(boolean all) {
+            while (nextSubmit < bucketStart.length && (all || remaining[nextSubmit] <= 0)) {
+                final int b = nextSubmit++;
+                if (b == 0)
+                    batchSize = model.batchSize();
+                final boolean last = nextSubmit == bucketStart.length;
+                pending.add(comm.submit(() -> reduceBucket(b, last)));
+            }
+        }
+
+        private void reduceBucket(int b, boolean last) {
+            try {
+                int n = participants;
+                Phaser bar = barrier;
+                long start = bucketStart[b];
+                long length = bucketEnd[b] - start;
+
+                //All workers have finished backprop for the layers in this bucket
+                await(bar);
+
+                //Reduce-scatter: sum this worker's shard over all workers, in place
+                long from = start + length * workerIdx / n;
+                long to = start + length * (workerIdx + 1) / n;
+                if (to > from) {
+                    INDArray own = shard(gradient, from, to);
+                    for (int k = 0; k < n; k++) {
+                        if (k != workerIdx)
+                            own.addi(shard(registered[k].gradient, from, to));
+                    }
+                }
+                await(bar);
+
+                //All-gather: copy the shards owned by the other workers
+                for (int k = 0; k < n; k++) {
+                    long f = start + length * k / n;
+                    long t = start + length * (k + 1) / n;
+                    if (k != workerIdx && t > f)
+                        shard(gradient, f, t).assign(shard(registered[k].gradient, f, t));
+                }
+
+                //Workers may modify their gradient arrays (updater) and sparse rows only once all others are done reading them
+                //Total minibatch size is read before that too: after it, workers may start the next round
+                if (last) {
+                    int[][] rows = mergeSparseRows(n);
+                    long totalBatchSize = 0;
+                    for (int k = 0; k < n; k++)
+                        totalBatchSize += registered[k].batchSize;
+                    await(bar);
+                    for (int i = 0; i < sparseLayers.length; i++)
+                        sparseLayers[i].setSparseGradientRows(sparseParams[i], rows[i]);
+                    normalize(n, totalBatchSize);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort();
+                throw new RuntimeException(e);
+            } catch (BrokenBarrierException e) {
+                throw new RuntimeException("Gradient allreduce aborted: another worker failed", e);
+            } catch (RuntimeException e) {
+                abort();
+                throw e;
+            }
+        }
+
+        /**
+         * All workers hold the gradients summed over all workers: scale them so that, after the updater divides them
+         * by this worker's minibatch size, they are averaged over the examples of all workers
+         */
+        private void normalize(int n, long totalBatchSize) {
+            double scale = batchSize / (double) totalBatchSize;
+            for (INDArray g : minibatchDivided)
+                g.muli(scale);
+            for (INDArray g : notMinibatchDivided)
+                g.divi(n);
+        }
+
+        /**
+         * Backprop has completed on all workers: merge the row sparse gradient rows of all of them
+         *
+         * @return Sorted distinct rows for each sparse parameter, or null for parameters with unknown rows
+         */
+        private int[][] mergeSparseRows(int n) {
+            int[][] merged = new int[sparseLayers.length][];
+            for (int i = 0; i < sparseLayers.length; i++) {
+                int[][] all = new int[n][];
+                int total = 0;
+                for (int k = 0; k < n && all != null; k++) {
+                    all[k] = registered[k].sparseLayers[i].getSparseGradientRows(sparseParams[i]);
+                    if (all[k] == null)
+                        all = null;
+                    else
+                        total += all[k].length;
+                }
+                if (all == null)
+                    continue;
+
+                int[] rows = new int[total];
+                int pos = 0;
+                for (int[] r : all) {
+                    System.arraycopy(r, 0, rows, pos, r.length);
+                    pos += r.length;
+                }
+                Arrays.sort(rows);
+                int distinct = 0;
+                for (int j = 0; j < rows.length; j++) {
+                    if (j == 0 || rows[j] != rows[j - 1])
+                        rows[distinct++] = rows[j];
+                }
+                merged[i] = Arrays.copyOf(rows, distinct);
+            }
+            return merged;
+        }
+
+        private void initLayoutIfRequired() {
+            INDArray g = model.getGradientsViewArray();
+            if (g == gradient)
+                return;
+            Preconditions.checkState(g != null, "Gradient view array is not initialized for worker %s", workerIdx);
+
+            Layer[] layers = model instanceof MultiLayerNetwork ? ((MultiLayerNetwork) model).getLayers()
+                    : ((ComputationGraph) model).getLayers();
+            List<SparseGradientLayer> sLayers = new ArrayList<>();
+            List<String> sParams = new ArrayList<>();
+            for (Layer l : layers) {
+                if (!(l instanceof SparseGradientLayer) || l.numParams() == 0)
+                    continue;
+                for (String param : l.paramTable(false).keySet()) {
+                    if (((SparseGradientLayer) l).isSparseGradient(param)) {
+                        sLayers.add((SparseGradientLayer) l);
+                        sParams.add(param);
+                    }
+                }
+            }
+            sparseLayers = sLayers.toArray(new SparseGradientLayer[0]);
+            sparseParams = sParams.toArray(new String[0]);
+
+            List<INDArray> divided = new ArrayList<>();
+            List<INDArray> notDivided = new ArrayList<>();
+            for (Layer l : layers) {
+                if (l.numParams() == 0 || l.getGradientsViewArray() == null)
+                    continue;
+                Map<String, INDArray> m = l.conf().getLayer().initializer()
+                        .getGradientsFromFlattened(l.conf(), l.getGradientsViewArray());
+                for (Map.Entry<String, INDArray> e : m.entrySet()) {
+                    if (l.updaterDivideByMinibatch(e.getKey()))
+                        divided.add(e.getValue());
+                    else
+                        notDivided.add(e.getValue());
+                }
+            }
+            minibatchDivided = divided;
+            notMinibatchDivided = notDivided;
+
+            //Parameters (and hence gradients) are laid out in forward order; backprop runs in reverse order
+            List<LayerOffset> ordered = new ArrayList<>();
+            for (Layer l : layers) {
+                INDArray v = l.getGradientsViewArray();
+                if (v != null && v.length() > 0)
+                    ordered.add(new LayerOffset(l, v.offset() - g.offset()));
+            }
+            ordered.sort((a, b) -> Long.compare(b.offset, a.offset));
+
+            List<long[]> ranges = new ArrayList<>();
+            List<Integer> counts = new ArrayList<>();
+            Map<Layer, Integer> buckets = new IdentityHashMap<>();
+            long end = g.length();
+            int count = 0;
+            for (int i = 0; i < ordered.size(); i++) {
+                LayerOffset p = ordered.get(i);
+                buckets.put(p.layer, ranges.size());
+                count++;
+                long start = i == ordered.size() - 1 ? 0 : p.offset;
+                if (end - start >= bucketSize || start == 0) {
+                    ranges.add(new long[]{start, end});
+                    counts.add(count);
+                    end = start;
+                    count = 0;
+                }
+            }
+            if (end > 0) {
+                //No layers with gradients (or gap at the start): reduce the remaining range at the end of backprop
+                ranges.add(new long[]{0, end});
+                counts.add(0);
+            }
+
+            int nb = ranges.size();
+            bucketStart = new long[nb];
+            bucketEnd = new long[nb];
+            bucketLayers = new int[nb];
+            for (int i = 0; i < nb; i++) {
+                bucketStart[i] = ranges.get(i)[0];
+                bucketEnd[i] = ranges.get(i)[1];
+                bucketLayers[i] = counts.get(i);
+            }
+            remaining = bucketLayers.clone();
+            nextSubmit = 0;
+            layerBuckets = buckets;
+
+            for (Worker w : registered) {
+                if (w != null && w != this && w.gradient != null)
+                    Preconditions.checkState(w.gradient.length() == g.length(), "Gradient length mismatch between workers: %s vs. %s",
+                            w.gradient.length(), g.length());
+            }
+            gradient = g;
+            log.debug("Worker {}: allreduce over {} gradient elements in {} buckets", workerIdx, g.length(), nb);
+        }
+
+        /**
+         * Stop the communication thread of this worker
+         */
+        public void close() {
+            comm.shutdownNow();
+        }
+    }
+
+    private static class LayerOffset {
+        private final Layer layer;
+        private final long offset;
+
+        private LayerOffset(Layer layer, long offset) {
+            this.layer = layer;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency-aware batching policy, used with {@link InferenceMode#ADAPTIVE_BATCHED}.<br>
+ * The policy maintains an online linear model of batch execution time (latency(n) = a + b*n for a batch of n examples),
+ * fitted with exponentially weighted statistics over the batches executed so far, along with an estimate of the
+ * request arrival rate. From these it derives:<br>
+ * - The maximum batch size: the largest batch that is predicted to execute within half of the latency target<br>
+ * - The batch window: how long the first request of a batch may wait for further requests to arrive, such that
+ * waiting + (possibly) one batch already executing + its own execution stays within the latency target<br>
+ * <br>
+ * The policy also records histograms of batch sizes, worker queue depth and end-to-end request latency.
+ */
+@Slf4j
+public class AdaptiveBatchPolicy {
+    /**
+     * Fraction of the latency target that a single batch execution may use
+     */
+    protected static final double EXEC_BUDGET_FRACTION = 0.5;
+    /**
+     * Weight of the most recent observation, for the exponentially weighted statistics
+     */
+    protected static final double DECAY = 0.05;
+    /**
+     * Number of executed batches before the latency model is used. Until then, batches are limited only by batchLimit
+     */
+    protected static final int WARMUP_BATCHES = 3;
+
+    @Getter
+    protected final long targetLatencyNanos;
+    @Getter
+    protected final int batchLimit;
+
+    //Exponentially weighted sums for the (batch size -> latency) regression
+    private double sw, sx, sy, sxx, sxy;
+    private long numBatches;
+
+    //Exponentially weighted mean time between request arrivals
+    private long lastArrivalNanos = -1;
+    private double meanInterArrivalNanos = -1;
+
+    @Getter
+    protected final Log2Histogram batchSizeHistogram = new Log2Histogram();
+    @Getter
+    protected final Log2Histogram queueDepthHistogram = new Log2Histogram();
+    @Getter
+    protected final Log2Histogram latencyMicrosHistogram = new Log2Histogram();
+
+    /**
+     * @param targetLatency Target (p99) end-to-end latency for a single request
+     * @param unit          Time unit for the latency target
+     * @param batchLimit    Hard upper limit on the number of examples in a single batch
+     */
+    public AdaptiveBatchPolicy(long targetLatency, TimeUnit unit, int batchLimit) {
+        if (targetLatency <= 0)
+            throw new IllegalArgumentException("Target latency must be positive, got " + targetLatency);
+        if (batchLimit < 1)
+            throw new IllegalArgumentException("Batch limit must be positive, got " + batchLimit);
+        this.targetLatencyNanos = unit.toNanos(targetLatency);
+        this.batchLimit = batchLimit;
+    }
+
+    /**
+     * Record the arrival of a new request
+     *
+     * @param nowNanos Current time, as per {@link System#nanoTime()}
+     */
+    public synchronized void recordArrival(long nowNanos) {
+        if (lastArrivalNanos >= 0) {
+            double delta = nowNanos - lastArrivalNanos;
+            meanInterArrivalNanos = meanInterArrivalNanos < 0 ? delta : (1 - DECAY) * meanInterArrivalNanos + DECAY * delta;
+        }
+        lastArrivalNanos = nowNanos;
+    }
+
+    /**
+     * Record the execution of a single batch by a worker
+     *
+     * @param batchSize Number of examples in the batch
+     * @param nanos     Execution time of the batch
+     */
+    public synchronized void recordBatchExecution(long batchSize, long nanos) {
+        double x = batchSize;
+        double y = nanos;
+        double keep = numBatches == 0 ? 0.0 : 1 - DECAY;
+        sw = keep * sw + 1;
+        sx = keep * sx + x;
+        sy = keep * sy + y;
+        sxx = keep * sxx + x * x;
+        sxy = keep * sxy + x * y;
+        numBatches++;
+    }
+
+    /**
+     * Record the dispatch of a batch to the workers
+     *
+     * @param batchSize  Number of examples in the batch
+     * @param queueDepth Number of batches waiting for a worker, at the time of dispatch
+     */
+    public void recordDispatch(long batchSize, int queueDepth) {
+        batchSizeHistogram.record(batchSize);
+        queueDepthHistogram.record(queueDepth);
+    }
+
+    /**
+     * Record the end-to-end latency of a single request, from submission to output being available
+     */
+    public void recordRequestLatency(long nanos) {
+        latencyMicrosHistogram.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * @return Predicted execution time (nanoseconds) of a batch with the specified number of examples, or -1 if
+     * there are not yet enough observations to make a prediction
+     */
+    public synchronized double predictExecutionNanos(int batchSize) {
+        if (numBatches < WARMUP_BATCHES)
+            return -1;
+
+        double meanX = sx / sw;
+        double meanY = sy / sw;
+        double varX = sxx / sw - meanX * meanX;
+        double slope;
+        double intercept;
+        if (varX > 1e-6) {
+            slope = (sxy / sw - meanX * meanY) / varX;
+            intercept = meanY - slope * meanX;
+        } else {
+            //All batches so far have (nearly) the same size: assume latency is proportional to batch size, which
+            // over-estimates the cost of large batches, and hence errs on the side of the latency target
+            slope = meanY / Math.max(meanX, 1.0);
+            intercept = 0;
+        }
+
+        if (slope < 0) {
+            //Noisy measurements: fall back on the mean cost
+            slope = 0;
+            intercept = meanY;
+        }
+        return Math.max(0, intercept) + slope * batchSize;
+    }
+
+    /**
+     * @return The current maximum number of examples per batch: the largest batch predicted to execute within
+     * half of the latency target, between 1 and batchLimit
+     */
+    public int maxBatchSize() {
+        if (predictExecutionNanos(1) < 0)
+            return batchLimit;
+
+        double budget = EXEC_BUDGET_FRACTION * targetLatencyNanos;
+        int lo = 1;
+        int hi = batchLimit;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (predictExecutionNanos(mid) <= budget) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Get how long a batch that currently has the specified number of examples may wait for more requests,
+     * measured from the arrival of its first request
+     *
+     * @param pendingSize  Number of examples in the pending batch
+     * @param maxBatchSize Current maximum batch size, as per {@link #maxBatchSize()}
+     * @return Batch window in nanoseconds. 0 if the batch should be dispatched immediately
+     */
+    public long batchWindowNanos(long pendingSize, int maxBatchSize) {
+        long remaining = maxBatchSize - pendingSize;
+        if (remaining <= 0)
+            return 0;
+
+        double exec = predictExecutionNanos(maxBatchSize);
+        if (exec < 0) {
+            //No latency estimate yet - be conservative
+            return 0;
+        }
+
+        //Worst case: wait for the window, then for a batch already executing on the worker, then our own execution
+        double slack = targetLatencyNanos - 2 * exec;
+        if (slack <= 0)
+            return 0;
+
+        double interArrival;
+        synchronized (this) {
+            interArrival = meanInterArrivalNanos;
+        }
+        if (interArrival > 0) {
+            //No point in waiting longer than it is expected to take to fill the batch
+            slack = Math.min(slack, remaining * interArrival);
+        }
+        return (long) slack;
+    }
+
+    /**
+     * @return Summary of the batching statistics, suitable for logging
+     */
+    public String statsString() {
+        return "AdaptiveBatchPolicy(targetLatencyMs=" + TimeUnit.NANOSECONDS.toMillis(targetLatencyNanos) +
+                ", maxBatchSize=" + maxBatchSize() +
+                ", p50LatencyUs<=" + latencyMicrosHistogram.percentile(50) +
+                ", p99LatencyUs<=" + latencyMicrosHistogram.percentile(99) +
+                ", batchSizes=" + batchSizeHistogram +
+                ", queueDepths=" + queueDepthHistogram + ")";
+    }
+}
@@ -31,6 +31,13 @@ public enum InferenceMode {
      */
     BATCHED,
 
+    /**
+     * As per BATCHED, but the batch size and the time to wait for further requests are chosen adaptively based on
+     * measured model latency, to keep request latency within a target. Inputs are only merged with inputs of the same
+     * shape, optionally after padding variable length time series. See {@link AdaptiveBatchPolicy}
+     */
+    ADAPTIVE_BATCHED,
+
     /**
      * Inference will applied in the calling thread instead of workers. Worker models will be using shared parameters on per-device basis.
      */
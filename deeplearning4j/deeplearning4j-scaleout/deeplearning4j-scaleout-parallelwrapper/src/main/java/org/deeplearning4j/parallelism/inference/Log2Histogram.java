@@ -0,0 +1,137 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A simple, lock-free histogram for non-negative values, with power-of-two bucket boundaries.<br>
+ * Bucket 0 holds the value 0, and bucket i (i &gt; 0) holds values in the range [2^(i-1), 2^i - 1]
+ */
+public class Log2Histogram {
+    private static final int NUM_BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+    /**
+     * Record a single value. Negative values are recorded as 0
+     */
+    public void record(long value) {
+        counts.incrementAndGet(bucketFor(value));
+    }
+
+    /**
+     * @return The bucket index for the specified value
+     */
+    public static int bucketFor(long value) {
+        if (value <= 0)
+            return 0;
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * @return The largest value that can fall into the specified bucket
+     */
+    public static long bucketUpperBound(int bucket) {
+        if (bucket == 0)
+            return 0;
+        if (bucket >= 63)
+            return Long.MAX_VALUE;
+        return (1L << bucket) - 1;
+    }
+
+    /**
+     * @return The total number of values recorded
+     */
+    public long count() {
+        long sum = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            sum += counts.get(i);
+        return sum;
+    }
+
+    /**
+     * @return A copy of the per-bucket counts, with trailing empty buckets removed
+     */
+    public long[] getCounts() {
+        int last = -1;
+        long[] out = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            out[i] = counts.get(i);
+            if (out[i] > 0)
+                last = i;
+        }
+        long[] trimmed = new long[last + 1];
+        System.arraycopy(out, 0, trimmed, 0, last + 1);
+        return trimmed;
+    }
+
+    /**
+     * Get an upper bound for the specified percentile of the recorded values. As values are only tracked at
+     * power-of-two resolution, the returned value is the upper bound of the bucket the percentile falls into
+     *
+     * @param percentile Percentile, in range 0 to 100
+     * @return Upper bound of the percentile, or 0 if no values have been recorded
+     */
+    public long percentile(double percentile) {
+        long[] c = getCounts();
+        long total = 0;
+        for (long l : c)
+            total += l;
+        if (total == 0)
+            return 0;
+
+        long threshold = (long) Math.ceil(total * percentile / 100.0);
+        long soFar = 0;
+        for (int i = 0; i < c.length; i++) {
+            soFar += c[i];
+            if (soFar >= threshold)
+                return bucketUpperBound(i);
+        }
+        return bucketUpperBound(c.length - 1);
+    }
+
+    /**
+     * Reset all counts to zero
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            counts.set(i, 0);
+    }
+
+    @Override
+    public String toString() {
+        long[] c = getCounts();
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        boolean first = true;
+        for (int i = 0; i < c.length; i++) {
+            if (c[i] == 0)
+                continue;
+            if (!first)
+                sb.append(", ");
+            sb.append("<=").append(bucketUpperBound(i)).append(": ").append(c[i]);
+            first = false;
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
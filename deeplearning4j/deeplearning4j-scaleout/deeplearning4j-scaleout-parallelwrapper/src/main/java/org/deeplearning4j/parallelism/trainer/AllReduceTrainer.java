@@ -0,0 +1,130 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.trainer;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.parallelism.ParallelWrapper;
+import org.deeplearning4j.parallelism.allreduce.SharedMemoryAllReduce;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Trainer for {@link ParallelWrapper.TrainingMode#ALLREDUCE}: gradients are averaged across all workers
+ * via {@link SharedMemoryAllReduce} before the updater is applied, hence no parameter averaging is required.
+ */
+@Slf4j
+public class AllReduceTrainer extends DefaultTrainer {
+    protected SharedMemoryAllReduce allReduce;
+    protected SharedMemoryAllReduce.Worker allReduceWorker;
+
+    public AllReduceTrainer(@NonNull Model originalModel, String uuid, int threadIdx, @NonNull WorkspaceMode mode,
+                    @NonNull ParallelWrapper wrapper, boolean useMDS) {
+        super();
+        this.uuid = uuid + "_thread_" + threadIdx;
+        this.useMDS = useMDS;
+        this.originalModel = originalModel;
+        this.threadId = threadIdx;
+        this.workspaceMode = mode;
+        this.parallelWrapper = wrapper;
+        this.allReduce = wrapper.getAllReduce();
+    }
+
+    @Override
+    public boolean averagingRequired() {
+        return false;
+    }
+
+    @Override
+    protected void fit(DataSet dataSet) {
+        try {
+            super.fit(dataSet);
+        } catch (RuntimeException | Error e) {
+            abortAllReduce();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void fit(MultiDataSet dataSet) {
+        try {
+            super.fit(dataSet);
+        } catch (RuntimeException | Error e) {
+            abortAllReduce();
+            throw e;
+        }
+    }
+
+    /**
+     * Other workers would otherwise wait forever for this worker's gradients
+     */
+    protected void abortAllReduce() {
+        if (allReduce != null)
+            allReduce.abort();
+    }
+
+    @Override
+    protected void postInit() {
+        super.postInit();
+
+        if (allReduce == null) {
+            log.warn("SharedMemoryAllReduce is undefined, gradients sharing will be skipped");
+            return;
+        }
+
+        allReduceWorker = allReduce.register(threadId, replicatedModel);
+        replicatedModel.addListeners(allReduceWorker);
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+
+        if (allReduceWorker != null) {
+            allReduceWorker.close();
+
+            // root model is the user's model: don't leave our listener attached to it
+            if (onRootModel) {
+                Collection<TrainingListener> listeners = null;
+                if (replicatedModel instanceof MultiLayerNetwork) {
+                    listeners = ((MultiLayerNetwork) replicatedModel).getListeners();
+                } else if (replicatedModel instanceof ComputationGraph) {
+                    listeners = ((ComputationGraph) replicatedModel).getListeners();
+                }
+
+                if (listeners != null) {
+                    Collection<TrainingListener> remaining = new ArrayList<>(listeners);
+                    remaining.remove(allReduceWorker);
+                    replicatedModel.setListeners(remaining);
+                }
+            }
+            allReduceWorker = null;
+        }
+    }
+}
@@ -57,6 +57,7 @@ import java.lang.reflect.Field;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -459,6 +460,52 @@ public class ParallelInferenceTest extends BaseDL4JTest {
         }
     }
 
+    @Test()
+    @Timeout(120000)
+    public void testAdaptiveBatchedPaddedTS() throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+
+        int nIn = 10;
+        int[] tsLengths = {3,4,5,7,8,10,50,100};
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new LSTM.Builder().nIn(nIn).nOut(5).build())
+                .layer(new RnnOutputLayer.Builder().nIn(5).nOut(5).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        for( int w : new int[]{1,2}) {
+            final ParallelInference inf =
+                    new ParallelInference.Builder(net)
+                            .inferenceMode(InferenceMode.ADAPTIVE_BATCHED)
+                            .targetLatency(20, TimeUnit.MILLISECONDS)
+                            .padTimeSeries(true)
+                            .batchLimit(20)
+                            .queueLimit(64)
+                            .workers(w).build();
+            try {
+                List<INDArray> arrs = new ArrayList<>();
+                List<INDArray> exp = new ArrayList<>();
+                for (int l : tsLengths) {
+                    INDArray in = Nd4j.rand(new int[]{1, nIn, l});
+                    arrs.add(in);
+                    INDArray out = net.output(in);
+                    exp.add(out);
+                }
+
+                testParallelInference(inf, arrs, exp);
+                assertTrue(inf.getBatchPolicy().getLatencyMicrosHistogram().count() > 0);
+            } finally {
+                inf.shutdown();
+            }
+        }
+    }
+
     @Test()
     @Timeout(120000)
     public void testParallelInferenceVariableLengthTS2() throws Exception {
@@ -0,0 +1,326 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.EmbeddingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.factory.AllReduceTrainerContext;
+import org.deeplearning4j.parallelism.trainer.Trainer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class TestAllReduceTraining extends BaseDL4JTest {
+
+    @Test
+    public void testAllReduceMatchesLargeMinibatch() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Sgd(0.1))
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().nIn(8).nOut(8).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        MultiLayerNetwork expected = net.clone();
+
+        Nd4j.getRandom().setSeed(12345);
+        List<DataSet> data = Arrays.asList(
+                new DataSet(Nd4j.rand(DataType.DOUBLE, 5, 4), Nd4j.createFromArray(new double[5][3]).addi(1.0 / 3)),
+                new DataSet(Nd4j.rand(DataType.DOUBLE, 5, 4), Nd4j.createFromArray(new double[5][3]).addi(1.0 / 3)));
+
+        //Small buckets: multiple reductions, overlapped with backprop
+        try (ParallelWrapper pw = new ParallelWrapper.Builder<>(net)
+                .workers(2)
+                .prefetchBuffer(0)
+                .trainingMode(ParallelWrapper.TrainingMode.ALLREDUCE)
+                .allReduceBucketSize(20)
+                .build()) {
+            pw.fit(new ExistingDataSetIterator(data));
+        }
+
+        //Averaged gradients over 2 workers with minibatch 5 == single model with minibatch 10
+        expected.fit(DataSet.merge(data));
+        assertTrue(expected.params().equalsWithEps(net.params(), 1e-8));
+    }
+
+    @Test
+    public void testAllReducePartialRoundKeepsReplicasInSync() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Adam(0.01))
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        Nd4j.getRandom().setSeed(12345);
+        List<DataSet> data = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            data.add(new DataSet(Nd4j.rand(DataType.DOUBLE, 5, 4), Nd4j.createFromArray(new double[5][3]).addi(1.0 / 3)));
+
+        final List<Trainer> trainers = new ArrayList<>();
+        final List<MultiLayerNetwork> replicas = new ArrayList<>();
+        try (ParallelWrapper pw = new ParallelWrapper.Builder<>(net)
+                .workers(4)
+                .prefetchBuffer(0)
+                .trainingMode(ParallelWrapper.TrainingMode.ALLREDUCE)
+                .build()) {
+            pw.trainerContext = new AllReduceTrainerContext() {
+                @Override
+                public Trainer create(String uuid, int threadId, Model model, int rootDevice, boolean useMDS,
+                                ParallelWrapper wrapper, WorkspaceMode mode, int averagingFrequency) {
+                    Trainer trainer = super.create(uuid, threadId, model, rootDevice, useMDS, wrapper, mode, averagingFrequency);
+                    trainers.add(trainer);
+                    return trainer;
+                }
+            };
+
+            //2 rounds: 4 workers, then only worker 0 steps
+            pw.fit(snapshotOnEnd(data, trainers, replicas));
+        }
+
+        assertEquals(4, replicas.size());
+        MultiLayerNetwork first = replicas.get(0);
+        for (int i = 1; i < replicas.size(); i++) {
+            MultiLayerNetwork replica = replicas.get(i);
+            assertEquals(first.params(), replica.params(), "Params differ for replica " + i);
+            assertEquals(first.getUpdater().getStateViewArray(), replica.getUpdater().getStateViewArray(),
+                    "Updater state differs for replica " + i);
+            assertEquals(first.getIterationCount(), replica.getIterationCount());
+        }
+    }
+
+    @Test
+    public void testAllReduceUnequalMinibatchSizes() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Adam(0.01))
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        MultiLayerNetwork expected = net.clone();
+
+        //Different minibatch sizes for the workers in every round
+        Nd4j.getRandom().setSeed(12345);
+        int[] sizes = {5, 2, 7, 3, 1, 6};
+        List<DataSet> data = new ArrayList<>();
+        for (int size : sizes) {
+            INDArray l = Nd4j.zeros(DataType.DOUBLE, size, 3);
+            for (int j = 0; j < size; j++)
+                l.putScalar(j, j % 3, 1.0);
+            data.add(new DataSet(Nd4j.rand(DataType.DOUBLE, size, 4), l));
+        }
+
+        final List<Trainer> trainers = new ArrayList<>();
+        final List<MultiLayerNetwork> replicas = new ArrayList<>();
+        try (ParallelWrapper pw = new ParallelWrapper.Builder<>(net)
+                .workers(2)
+                .prefetchBuffer(0)
+                .trainingMode(ParallelWrapper.TrainingMode.ALLREDUCE)
+                .allReduceBucketSize(20)
+                .build()) {
+            pw.trainerContext = new AllReduceTrainerContext() {
+                @Override
+                public Trainer create(String uuid, int threadId, Model model, int rootDevice, boolean useMDS,
+                                ParallelWrapper wrapper, WorkspaceMode mode, int averagingFrequency) {
+                    Trainer trainer = super.create(uuid, threadId, model, rootDevice, useMDS, wrapper, mode, averagingFrequency);
+                    trainers.add(trainer);
+                    return trainer;
+                }
+            };
+
+            pw.fit(snapshotOnEnd(data, trainers, replicas));
+        }
+
+        assertEquals(2, replicas.size());
+        MultiLayerNetwork first = replicas.get(0);
+        MultiLayerNetwork second = replicas.get(1);
+        assertEquals(first.params(), second.params());
+        assertEquals(first.getUpdater().getStateViewArray(), second.getUpdater().getStateViewArray());
+
+        //Gradients averaged over all examples of each round == single model with the merged minibatches
+        for (int i = 0; i < data.size(); i += 2) {
+            expected.fit(DataSet.merge(data.subList(i, i + 2)));
+        }
+        assertTrue(expected.params().equalsWithEps(first.params(), 1e-8));
+    }
+
+    @Test
+    public void testAllReduceSparseEmbeddingGradients() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Adam(0.05))
+                .list()
+                .layer(new EmbeddingLayer.Builder().nIn(12).nOut(4).sparseGradients(true).build())
+                .layer(new OutputLayer.Builder().nIn(4).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        MultiLayerNetwork expected = net.clone();
+
+        //Each worker uses a different set of embedding rows, which also changes from round to round
+        List<DataSet> data = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            INDArray f = Nd4j.create(DataType.DOUBLE, 3, 1);
+            INDArray l = Nd4j.zeros(DataType.DOUBLE, 3, 3);
+            for (int j = 0; j < 3; j++) {
+                f.putScalar(j, 0, (i * 3 + j) % 12);
+                l.putScalar(j, (i + j) % 3, 1.0);
+            }
+            data.add(new DataSet(f, l));
+        }
+
+        final List<Trainer> trainers = new ArrayList<>();
+        final List<MultiLayerNetwork> replicas = new ArrayList<>();
+        try (ParallelWrapper pw = new ParallelWrapper.Builder<>(net)
+                .workers(2)
+                .prefetchBuffer(0)
+                .trainingMode(ParallelWrapper.TrainingMode.ALLREDUCE)
+                .build()) {
+            pw.trainerContext = new AllReduceTrainerContext() {
+                @Override
+                public Trainer create(String uuid, int threadId, Model model, int rootDevice, boolean useMDS,
+                                ParallelWrapper wrapper, WorkspaceMode mode, int averagingFrequency) {
+                    Trainer trainer = super.create(uuid, threadId, model, rootDevice, useMDS, wrapper, mode, averagingFrequency);
+                    trainers.add(trainer);
+                    return trainer;
+                }
+            };
+
+            pw.fit(snapshotOnEnd(data, trainers, replicas));
+        }
+
+        assertEquals(2, replicas.size());
+        MultiLayerNetwork first = replicas.get(0);
+        MultiLayerNetwork second = replicas.get(1);
+        assertEquals(first.params(), second.params());
+        assertEquals(first.getUpdater().getStateViewArray(), second.getUpdater().getStateViewArray());
+
+        //Same as single model training, with the rows of both workers in each minibatch
+        for (int i = 0; i < data.size(); i += 2) {
+            expected.fit(DataSet.merge(data.subList(i, i + 2)));
+        }
+        assertTrue(expected.params().equalsWithEps(first.params(), 1e-8));
+    }
+
+    @Test
+    public void testAllReduceWorkerFailureDoesNotBlockOthers() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Sgd(0.1))
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        //Second worker gets invalid input: it fails in the forward pass, while the first one waits for its gradients
+        Nd4j.getRandom().setSeed(12345);
+        List<DataSet> data = Arrays.asList(
+                new DataSet(Nd4j.rand(DataType.DOUBLE, 5, 4), Nd4j.createFromArray(new double[5][3]).addi(1.0 / 3)),
+                new DataSet(Nd4j.rand(DataType.DOUBLE, 5, 7), Nd4j.createFromArray(new double[5][3]).addi(1.0 / 3)));
+
+        try (ParallelWrapper pw = new ParallelWrapper.Builder<>(net)
+                .workers(2)
+                .prefetchBuffer(0)
+                .trainingMode(ParallelWrapper.TrainingMode.ALLREDUCE)
+                .build()) {
+            //Training thread waits for all workers, so a deadlock would hang the test without a preemptive timeout
+            assertTimeoutPreemptively(Duration.ofSeconds(60),
+                    () -> assertThrows(RuntimeException.class, () -> pw.fit(new ExistingDataSetIterator(data))));
+        }
+    }
+
+    /**
+     * ParallelWrapper.fit closes the replicas (other than the root model) before returning, so copy all replicas
+     * whenever the data is reported as exhausted. This also happens while fetching the last round, so the final
+     * copies are from the last check, made after the last round (including the sync of idle workers) has completed
+     */
+    private static DataSetIterator snapshotOnEnd(List<DataSet> data, final List<Trainer> trainers,
+                                                 final List<MultiLayerNetwork> replicas) {
+        return new ExistingDataSetIterator(data) {
+            @Override
+            public boolean hasNext() {
+                boolean hasNext = super.hasNext();
+                if (!hasNext) {
+                    replicas.clear();
+                    for (Trainer t : trainers)
+                        replicas.add(((MultiLayerNetwork) t.getModel()).clone());
+                }
+                return hasNext;
+            }
+        };
+    }
+}
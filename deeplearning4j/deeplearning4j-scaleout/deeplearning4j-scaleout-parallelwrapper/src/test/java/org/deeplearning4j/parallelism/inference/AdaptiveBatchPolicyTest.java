@@ -0,0 +1,110 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveBatchPolicyTest extends BaseDL4JTest {
+
+    @Test
+    public void testLog2Histogram() {
+        Log2Histogram h = new Log2Histogram();
+        assertEquals(0, h.percentile(99));
+
+        assertEquals(0, Log2Histogram.bucketFor(0));
+        assertEquals(1, Log2Histogram.bucketFor(1));
+        assertEquals(2, Log2Histogram.bucketFor(2));
+        assertEquals(2, Log2Histogram.bucketFor(3));
+        assertEquals(3, Log2Histogram.bucketFor(4));
+        assertEquals(63, Log2Histogram.bucketFor(Long.MAX_VALUE));
+
+        for (int i = 0; i < 99; i++) {
+            h.record(5);
+        }
+        h.record(1000);
+
+        assertEquals(100, h.count());
+        assertEquals(7, h.percentile(50));
+        assertEquals(7, h.percentile(99));
+        assertEquals(1023, h.percentile(100));
+        assertEquals(11, h.getCounts().length);
+
+        h.reset();
+        assertEquals(0, h.count());
+        assertEquals(0, h.getCounts().length);
+    }
+
+    @Test
+    public void testMaxBatchSize() {
+        AdaptiveBatchPolicy p = new AdaptiveBatchPolicy(10, TimeUnit.MILLISECONDS, 64);
+
+        //No observations yet: limited only by batch limit, and no batch window
+        assertEquals(64, p.maxBatchSize());
+        assertEquals(0, p.batchWindowNanos(1, p.maxBatchSize()));
+
+        //Latency = 1ms + 0.12ms per example
+        for (int i = 0; i < 50; i++) {
+            int bs = 1 + (i % 16);
+            p.recordBatchExecution(bs, 1_000_000L + 120_000L * bs);
+        }
+
+        assertEquals(1_000_000 + 120_000 * 10, p.predictExecutionNanos(10), 1000);
+
+        //Half of 10ms budget: 1ms + 0.12ms * 33 = 4.96ms
+        assertEquals(33, p.maxBatchSize());
+
+        //Worst case is 2x execution time: 10ms - 2*4.96ms
+        assertEquals(80_000, p.batchWindowNanos(1, 33), 1000);
+        //Smaller batches leave more slack: 10ms - 2*3.4ms
+        assertEquals(3_200_000, p.batchWindowNanos(1, 20), 1000);
+        //Full batches are dispatched immediately
+        assertEquals(0, p.batchWindowNanos(20, 20));
+    }
+
+    @Test
+    public void testBatchWindowArrivalRate() {
+        AdaptiveBatchPolicy p = new AdaptiveBatchPolicy(100, TimeUnit.MILLISECONDS, 32);
+        for (int i = 0; i < 10; i++) {
+            p.recordBatchExecution(1 + i, 1_000_000L);
+        }
+
+        //One request every 0.1ms: no point in waiting longer than it takes to fill the batch
+        long t = 0;
+        for (int i = 0; i < 100; i++) {
+            p.recordArrival(t);
+            t += 100_000;
+        }
+        int max = p.maxBatchSize();
+        assertEquals(32, max);
+        assertEquals(100_000L * (max - 2), p.batchWindowNanos(2, max), 1000);
+    }
+
+    @Test
+    public void testInvalidArgs() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchPolicy(0, TimeUnit.MILLISECONDS, 8));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchPolicy(10, TimeUnit.MILLISECONDS, 0));
+    }
+}
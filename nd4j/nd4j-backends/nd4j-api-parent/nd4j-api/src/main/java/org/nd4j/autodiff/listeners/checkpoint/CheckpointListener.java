@@ -31,15 +31,21 @@ import org.nd4j.autodiff.listeners.ListenerResponse;
 import org.nd4j.autodiff.listeners.Loss;
 import org.nd4j.autodiff.listeners.records.LossCurve;
 import org.nd4j.autodiff.listeners.Operation;
+import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
 import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.GradientUpdater;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 @Slf4j
 public class CheckpointListener extends BaseListener implements Serializable {
@@ -54,6 +60,7 @@ public class CheckpointListener extends BaseListener implements Serializable {
     private boolean logSaving;
     private boolean deleteExisting;
     private boolean saveUpdaterState;
+    private boolean asyncSaving;
 
     private Integer saveEveryNEpochs;
     private Integer saveEveryNIterations;
@@ -71,6 +78,11 @@ public class CheckpointListener extends BaseListener implements Serializable {
     private int startIter = -1;
     private Long lastSaveEveryMsNoSinceLast;
 
+    //Asynchronous saving: copy of the SameDiff instance (arrays reused between checkpoints), saved by a background thread
+    private transient ExecutorService saveExecutor;
+    private transient Future<?> pendingSave;
+    private transient SameDiff stagingSameDiff;
+
     private CheckpointListener(Builder builder){
         this.rootDir = builder.rootDir;
         this.fileNamePrefix = builder.fileNamePrefix;
@@ -80,6 +92,7 @@ public class CheckpointListener extends BaseListener implements Serializable {
         this.logSaving = builder.logSaving;
         this.deleteExisting = builder.deleteExisting;
         this.saveUpdaterState = builder.saveUpdaterState;
+        this.asyncSaving = builder.asyncSaving;
 
         this.saveEveryNEpochs = builder.saveEveryNEpochs;
         this.saveEveryNIterations = builder.saveEveryNIterations;
@@ -183,6 +196,11 @@ public class CheckpointListener extends BaseListener implements Serializable {
     }
 
     private void saveCheckpoint(SameDiff sd, At at) {
+        if(asyncSaving){
+            saveCheckpointAsync(sd, at);
+            return;
+        }
+
         try{
             saveCheckpointHelper(sd, at);
         } catch (Exception e){
@@ -191,18 +209,150 @@ public class CheckpointListener extends BaseListener implements Serializable {
     }
 
     private void saveCheckpointHelper(SameDiff model, At at) throws Exception {
-        if(!checkpointRecordFile.exists()){
-            checkpointRecordFile.createNewFile();
-            writeCheckpointInfo(Checkpoint.getFileHeader() + "\n", checkpointRecordFile);
+        Checkpoint c = newCheckpoint(at);
+        File saveFile = new File(rootDir, c.getFilename());
+        model.save(saveFile, this.saveUpdaterState);
+        this.lastCheckpoint = c;
+        checkpointSaved(c);
+    }
+
+    private Checkpoint newCheckpoint(At at) {
+        try {
+            if (!checkpointRecordFile.exists()) {
+                checkpointRecordFile.createNewFile();
+                writeCheckpointInfo(Checkpoint.getFileHeader() + "\n", checkpointRecordFile);
+            }
+        } catch (IOException e){
+            throw new RuntimeException("Error creating checkpoint record file: " + checkpointRecordFile.getAbsolutePath(), e);
         }
 
         Checkpoint c = new Checkpoint(++lastCheckpointNum, System.currentTimeMillis(), at.iteration(), at.epoch(),null);
         String filename = getFileName(lastCheckpointNum, at, c.getTimestamp());
         c.setFilename(filename);
+        return c;
+    }
 
-        File saveFile = new File(rootDir, c.getFilename());
-        model.save(saveFile, this.saveUpdaterState);
+    /**
+     * Asynchronous save: the training thread only copies the variable arrays and updater state into a staging copy of
+     * the SameDiff instance (created on the first save, and reused thereafter); serialization, the checkpoint record and
+     * deletion of old checkpoints happens in a background thread.
+     * At most one save is in flight at any time: if the previous save has not yet completed, we block until it has.
+     */
+    private void saveCheckpointAsync(SameDiff sd, At at) {
+        waitForPendingSave();
+
+        Checkpoint c = newCheckpoint(at);
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            if (stagingSameDiff == null || !copyState(sd, stagingSameDiff)) {
+                //First save, or the graph structure has changed since the last save
+                stagingSameDiff = sd.dup();
+            }
+        }
+        if (sd.getTrainingConfig() != null && stagingSameDiff.getTrainingConfig() != null) {
+            stagingSameDiff.getTrainingConfig().setIterationCount(sd.getTrainingConfig().getIterationCount());
+            stagingSameDiff.getTrainingConfig().setEpochCount(sd.getTrainingConfig().getEpochCount());
+        }
+        this.lastCheckpoint = c;
+
+        final SameDiff staging = stagingSameDiff;
+        final int deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        pendingSave = getSaveExecutor().submit(() -> {
+            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+            //Write to a temporary file first, so a partially written checkpoint never has the checkpoint's file name
+            File tempFile = new File(rootDir, c.getFilename() + ".tmp");
+            staging.save(tempFile, saveUpdaterState);
+            Files.move(tempFile, new File(rootDir, c.getFilename()));
+            checkpointSaved(c);
+            return null;
+        });
+    }
+
+    /**
+     * Copy the variable arrays (and updater state, if required) from one SameDiff instance to another with the same
+     * structure. Returns false if the instances are not compatible.
+     */
+    private boolean copyState(SameDiff from, SameDiff to) {
+        for (SDVariable v : from.variables()) {
+            if (v.getVariableType() != VariableType.VARIABLE) {
+                continue;
+            }
+            if (!to.hasVariable(v.name())) {
+                return false;
+            }
+            INDArray src = v.getArr();
+            INDArray dst = to.getVariable(v.name()).getArr();
+            if (src == null || dst == null || src.dataType() != dst.dataType() || !src.equalShapes(dst)) {
+                return false;
+            }
+            dst.assign(src);
+        }
+
+        if (saveUpdaterState && from.getUpdaterMap() != null) {
+            Map<String, GradientUpdater> toUpdaters = to.getUpdaterMap();
+            if (toUpdaters == null || !toUpdaters.keySet().equals(from.getUpdaterMap().keySet())) {
+                return false;
+            }
+            for (Map.Entry<String, GradientUpdater> e : from.getUpdaterMap().entrySet()) {
+                Map<String, INDArray> src = e.getValue().getState();
+                Map<String, INDArray> dst = toUpdaters.get(e.getKey()).getState();
+                if (src == null || src.isEmpty()) {
+                    continue;
+                }
+                if (dst == null || !dst.keySet().equals(src.keySet())) {
+                    return false;
+                }
+                for (Map.Entry<String, INDArray> s : src.entrySet()) {
+                    INDArray d = dst.get(s.getKey());
+                    if (!d.equalShapes(s.getValue()) || d.dataType() != s.getValue().dataType()) {
+                        return false;
+                    }
+                    d.assign(s.getValue());
+                }
+            }
+        }
+        return true;
+    }
+
+    private ExecutorService getSaveExecutor(){
+        if(saveExecutor == null){
+            //Non-daemon thread: the JVM does not exit until a pending save has completed. The short keep-alive means
+            //an idle save thread does not delay JVM shutdown once training is done
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+                Thread t = new Thread(r, "CheckpointListener-AsyncSave");
+                t.setDaemon(false);
+                return t;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            saveExecutor = executor;
+        }
+        return saveExecutor;
+    }
+
+    /**
+     * Block until any in-progress asynchronous checkpoint save has completed. This is a no-op unless asynchronous
+     * saving is enabled (see {@link Builder#asyncSaving(boolean)}). Should be called once training has completed,
+     * to ensure the last checkpoint has been fully written to disk.
+     */
+    public void waitForPendingSave(){
+        Future<?> f = pendingSave;
+        if(f == null){
+            return;
+        }
+        try {
+            f.get();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for checkpoint save to complete", e);
+        } catch (ExecutionException e){
+            throw new RuntimeException("Error saving checkpoint", e.getCause());
+        } finally {
+            if(f.isDone()){
+                pendingSave = null;
+            }
+        }
+    }
 
+    private void checkpointSaved(Checkpoint c) {
         String s = c.toFileString();
         writeCheckpointInfo(s + "\n", checkpointRecordFile);
 
@@ -210,33 +360,32 @@ public class CheckpointListener extends BaseListener implements Serializable {
             log.info("Model checkpoint saved: epoch {}, iteration {}, path: {}", c.getEpoch(), c.getIteration(),
                     new File(rootDir, c.getFilename()).getPath() );
         }
-        this.lastCheckpoint = c;
 
 
         //Finally: determine if we should delete some old models...
         if(keepMode == null || keepMode == KeepMode.ALL){
             return;
         } else if(keepMode == KeepMode.LAST){
-            List<Checkpoint> checkpoints = availableCheckpoints();
+            List<Checkpoint> checkpoints = availableCheckpoints(rootDir);
             Iterator<Checkpoint> iter = checkpoints.iterator();
             while(checkpoints.size() > keepLast){
                 Checkpoint toRemove = iter.next();
-                File f = getFileForCheckpoint(toRemove);
+                File f = getFileForCheckpoint(rootDir, toRemove.getCheckpointNum());
                 f.delete();
                 iter.remove();
             }
         } else {
             //Keep mode: last N and every M
-            for(Checkpoint cp : availableCheckpoints()){
+            for(Checkpoint cp : availableCheckpoints(rootDir)){
                 if(cp.getCheckpointNum() > 0 && (cp.getCheckpointNum()+1) % keepEvery == 0){
                     //One of the "every M to keep" models
                     continue;
-                } else if(cp.getCheckpointNum() > lastCheckpointNum - keepLast ){        //Example: latest is 5, keep last 2 -> keep checkpoints 4 and 5
+                } else if(cp.getCheckpointNum() > c.getCheckpointNum() - keepLast ){        //Example: latest is 5, keep last 2 -> keep checkpoints 4 and 5
                     //One of last N to keep
                     continue;
                 }
                 //Otherwise: delete file
-                File f = getFileForCheckpoint(cp);
+                File f = getFileForCheckpoint(rootDir, cp.getCheckpointNum());
                 f.delete();
             }
         }
@@ -283,6 +432,7 @@ public class CheckpointListener extends BaseListener implements Serializable {
      * @return List of checkpoint files that can be loaded
      */
     public List<Checkpoint> availableCheckpoints(){
+        waitForPendingSave();
         if(!checkpointRecordFile.exists()){
             return Collections.emptyList();
         }
@@ -323,6 +473,7 @@ public class CheckpointListener extends BaseListener implements Serializable {
      * @return Checkpoint
      */
     public Checkpoint lastCheckpoint(){
+        waitForPendingSave();
         if(!checkpointRecordFile.exists()){
             return null;
         }
@@ -359,6 +510,7 @@ public class CheckpointListener extends BaseListener implements Serializable {
      * @return Model file for the checkpoint
      */
     public File getFileForCheckpoint(int checkpointNum) {
+        waitForPendingSave();
         return getFileForCheckpoint(rootDir, checkpointNum);
     }
 
@@ -375,7 +527,7 @@ public class CheckpointListener extends BaseListener implements Serializable {
         File[] allFiles = rootDir.listFiles();
         if(allFiles != null){
             for(File f : allFiles){
-                if(f.getAbsolutePath().contains(contains)){
+                if(f.getAbsolutePath().contains(contains) && !f.getName().endsWith(".tmp")){
                     return f;
                 }
             }
@@ -431,6 +583,7 @@ public class CheckpointListener extends BaseListener implements Serializable {
         private boolean saveUpdaterState = true;
         private boolean logSaving = true;
         private boolean deleteExisting = false;
+        private boolean asyncSaving = false;
 
         private Integer saveEveryNEpochs;
         private Integer saveEveryNIterations;
@@ -592,6 +745,21 @@ public class CheckpointListener extends BaseListener implements Serializable {
             return this;
         }
 
+        /**
+         * If true: save checkpoints asynchronously. The training thread only copies the variable and updater state
+         * arrays into a staging copy of the SameDiff instance (reused between checkpoints); the checkpoint file is then
+         * written (and old checkpoints deleted) by a background thread. At most one save can be in progress at a time -
+         * if the previous checkpoint is still being written when the next is due, training blocks until it has completed.<br>
+         * Call {@link CheckpointListener#waitForPendingSave()} after training to ensure the last checkpoint has been
+         * written. Default: false (save synchronously)
+         *
+         * @param asyncSaving Whether checkpoints should be saved asynchronously
+         */
+        public Builder asyncSaving(boolean asyncSaving){
+            this.asyncSaving = asyncSaving;
+            return this;
+        }
+
         public CheckpointListener build(){
             if(saveEveryNEpochs == null && saveEveryAmount == null && saveEveryNIterations == null){
                 throw new IllegalStateException("Cannot construct listener: no models will be saved (must use at least" +
@@ -37,6 +37,7 @@ import org.nd4j.autodiff.listeners.impl.HistoryListener;
 import org.nd4j.autodiff.listeners.records.History;
 import org.nd4j.autodiff.listeners.records.LossCurve;
 import org.nd4j.autodiff.samediff.api.OutAndGrad;
+import org.nd4j.autodiff.samediff.array.LazyArrayHolder;
 import org.nd4j.autodiff.samediff.array.SingleThreadArrayHolder;
 import org.nd4j.autodiff.samediff.array.ThreadSafeArrayHolder;
 import org.nd4j.autodiff.samediff.config.BatchOutputConfig;
@@ -47,9 +48,11 @@ import org.nd4j.autodiff.samediff.internal.InferenceSession;
 import org.nd4j.autodiff.samediff.internal.SameDiffOp;
 import org.nd4j.autodiff.samediff.internal.TrainingSession;
 import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.autodiff.samediff.internal.memory.SizeClassArrayPool;
 import org.nd4j.autodiff.samediff.ops.*;
 import org.nd4j.autodiff.samediff.serde.FlatBuffersMapper;
 import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.function.Supplier;
 import org.nd4j.common.primitives.AtomicBoolean;
 import org.nd4j.common.primitives.Pair;
 import org.nd4j.common.util.ArrayUtil;
@@ -96,6 +99,8 @@ import org.tensorflow.framework.GraphDef;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -145,6 +150,32 @@ public class SameDiff extends SDBaseOps {
     @Setter
     private boolean eagerMode = false;
 
+    /**
+     * Maximum number of independent ops to execute concurrently during inference. 1 (the default) executes all ops
+     * sequentially on the calling thread. See {@link InferenceSession#setParallelism(int)}
+     */
+    @Getter
+    @Setter
+    private int inferenceParallelism = 1;
+
+    /**
+     * If set, inference sessions allocate arrays via a {@code SizeClassMemoryMgr} backed by this pool, instead of
+     * each session using its own {@code ArrayCacheMemoryMgr}. The pool can be shared between SameDiff instances -
+     * for example, {@link SizeClassArrayPool#getDefault()}. Changing the pool closes any existing sessions, so that
+     * the next inference call on each thread uses the new pool
+     */
+    @Getter
+    private SizeClassArrayPool sessionArrayPool;
+
+    /**
+     * If true, inference sessions plan the memory layout of all intermediate arrays once per input shape signature,
+     * and reuse preallocated arenas for later executions with the same input shapes.
+     * See {@code StaticPlanMemoryMgr}. Must be set before the first inference call on a thread
+     */
+    @Getter
+    @Setter
+    private boolean staticMemoryPlanning = false;
+
     ///////////////////////////////////////
     //Fields related to training
     @Getter
@@ -797,6 +828,30 @@ public class SameDiff extends SDBaseOps {
         }
     }
 
+    /**
+     * Returns true if the array for the given constant or variable is present in memory.
+     * This only differs from {@link #arrayAlreadyExistsForVarName(String)} for instances loaded with lazy array loading,
+     * where arrays are not loaded until they are first requested.
+     *
+     * @param varName Name of the constant or variable
+     * @return True if the array is present and has been loaded
+     */
+    public boolean isArrayLoaded(String varName) {
+        SDVariable var = getVariable(varName);
+        ArrayHolder holder;
+        if (var.getVariableType() == VariableType.VARIABLE) {
+            holder = variablesArrays;
+        } else if (var.getVariableType() == VariableType.CONSTANT) {
+            holder = constantArrays;
+        } else {
+            return arrayAlreadyExistsForVarName(varName);
+        }
+        if (holder instanceof LazyArrayHolder) {
+            return ((LazyArrayHolder) holder).isLoaded(varName);
+        }
+        return holder.hasArray(varName);
+    }
+
 
     /**
      * Sets an array for the given variable name in the
@@ -1297,6 +1352,30 @@ public class SameDiff extends SDBaseOps {
         }
     }
 
+    /**
+     * Set the pool used by inference sessions to allocate arrays. Existing sessions are closed, and are recreated
+     * with the new pool on the next inference call
+     *
+     * @param sessionArrayPool Pool to use, or null to use a separate {@code ArrayCacheMemoryMgr} for each session
+     */
+    public void setSessionArrayPool(SizeClassArrayPool sessionArrayPool) {
+        if (this.sessionArrayPool != sessionArrayPool) {
+            this.sessionArrayPool = sessionArrayPool;
+            clearSessions();
+        }
+    }
+
+    /**
+     * Remove the inference sessions for all threads, closing each so that memory held by its memory manager is released
+     */
+    private void clearSessions() {
+        for (Long threadId : sessions.keySet()) {
+            InferenceSession s = sessions.remove(threadId);
+            if (s != null)
+                s.close();
+        }
+    }
+
     /**
      * Clear the input arrays to each op.
      * This is usually not required, under normal SameDiff use
@@ -2392,6 +2471,17 @@ public class SameDiff extends SDBaseOps {
         return stackOutputs(outputHelper(iterator, At.defaultAt(Operation.INFERENCE), listeners, outputs));
     }
 
+    /**
+     * As per {@link #output(MultiDataSetIterator, List, String...)}, but executing up to {@code parallelism}
+     * independent ops concurrently. See {@link #setInferenceParallelism(int)}
+     * <p>
+     * Special case of {@link #output()}.
+     */
+    public Map<String, INDArray> output(@NonNull MultiDataSetIterator iterator, @NonNull List<Listener> listeners, int parallelism,
+                                        @NonNull String... outputs) {
+        return stackOutputs(outputHelper(iterator, At.defaultAt(Operation.INFERENCE), listeners, parallelism, outputs));
+    }
+
     /**
      * See {@link #output(MultiDataSetIterator, List, String...)}.  No additional listeners.
      * <p>
@@ -2429,6 +2519,16 @@ public class SameDiff extends SDBaseOps {
         return outputHelper(iterator, At.defaultAt(Operation.INFERENCE), listeners, outputs);
     }
 
+    /**
+     * As per {@link #outputBatches(MultiDataSetIterator, List, String...)}, but executing up to {@code parallelism}
+     * independent ops concurrently. See {@link #setInferenceParallelism(int)}
+     * <p>
+     * Special case of {@link #output()}.
+     */
+    public List<Map<String, INDArray>> outputBatches(MultiDataSetIterator iterator, List<Listener> listeners, int parallelism, String... outputs) {
+        return outputHelper(iterator, At.defaultAt(Operation.INFERENCE), listeners, parallelism, outputs);
+    }
+
     /**
      * See {@link #outputBatches(MultiDataSetIterator, List, String...)}.  No additional listeners.
      * <p>
@@ -2469,6 +2569,14 @@ public class SameDiff extends SDBaseOps {
      * Helper method to run inference.  Also used for validation
      */
     private List<Map<String, INDArray>> outputHelper(MultiDataSetIterator iterator, At at, @NonNull List<Listener> listeners, @NonNull String... outputs) {
+        return outputHelper(iterator, at, listeners, inferenceParallelism, outputs);
+    }
+
+    /**
+     * Helper method to run inference, with the specified maximum number of concurrently executed ops
+     */
+    private List<Map<String, INDArray>> outputHelper(MultiDataSetIterator iterator, At at, @NonNull List<Listener> listeners, int parallelism,
+                                                     @NonNull String... outputs) {
         Preconditions.checkState(trainingConfig != null, "Training config has not been set");
 
         List<Listener> activeListeners = new ArrayList<>();
@@ -2524,7 +2632,7 @@ public class SameDiff extends SDBaseOps {
                     l.iterationStart(this, at, ds, (dataEnd - dataStart));
                 }
 
-                Map<String, INDArray> outs = directExecHelper(placeholderMap, at, ds, requiredVars, activeListeners, neededOutputsArr);
+                Map<String, INDArray> outs = directExecHelper(placeholderMap, at, ds, requiredVars, activeListeners, parallelism, neededOutputsArr);
 
                 for (Listener l : activeListeners) {
                     l.iterationDone(this, at, ds, null);
@@ -2532,7 +2640,7 @@ public class SameDiff extends SDBaseOps {
 
                 predictions.add(outs);
             } else {
-                predictions.add(directExecHelper(placeholderMap, at, ds, requiredVars, activeListeners, neededOutputsArr));
+                predictions.add(directExecHelper(placeholderMap, at, ds, requiredVars, activeListeners, parallelism, neededOutputsArr));
             }
             at.setIteration(at.iteration() + 1);
         }
@@ -2663,6 +2771,16 @@ public class SameDiff extends SDBaseOps {
      */
     protected Map<String, INDArray> directExecHelper(Map<String, INDArray> placeholders, At at, MultiDataSet batch,
                                                      Collection<String> requiredActivations, List<Listener> activeListeners, String... outputs) {
+        return directExecHelper(placeholders, at, batch, requiredActivations, activeListeners, inferenceParallelism, outputs);
+    }
+
+    /**
+     * Do inference for the given variables for a single batch, with training information, executing up to
+     * {@code parallelism} independent ops concurrently
+     */
+    protected Map<String, INDArray> directExecHelper(Map<String, INDArray> placeholders, At at, MultiDataSet batch,
+                                                     Collection<String> requiredActivations, List<Listener> activeListeners,
+                                                     int parallelism, String... outputs) {
         if (at == null)
             at = At.defaultAt();
 
@@ -2682,6 +2800,7 @@ public class SameDiff extends SDBaseOps {
         //Placeholder validation is performed in InferenceSession
 
         InferenceSession is = sessions.get(threadId);
+        is.setParallelism(parallelism);
         return is.output(outputs == null ? Collections.emptyList() : Arrays.asList(outputs),
                 placeholders, batch, requiredActivations, activeListeners, at);
     }
@@ -3160,7 +3279,7 @@ public class SameDiff extends SDBaseOps {
         }
 
         //Remove all sessions in case they have any cached arrays/state
-        sessions.clear();
+        clearSessions();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove(GRAD_FN_KEY);
@@ -3258,7 +3377,7 @@ public class SameDiff extends SDBaseOps {
         }
 
         //Remove all sessions in case they have any cached arrays/state
-        sessions.clear();
+        clearSessions();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove(GRAD_FN_KEY);
@@ -3370,7 +3489,7 @@ public class SameDiff extends SDBaseOps {
         }
 
         if (anyChanged) {
-            sessions.clear();
+            clearSessions();
 
             //Recalculate datatypes of outputs, and dynamically update them
             Set<String> allSeenOps = new HashSet<>();
@@ -5253,6 +5372,27 @@ public class SameDiff extends SDBaseOps {
         }
     }
 
+    /**
+     * As per {@link #load(File, boolean)}, but optionally loads the constant and variable arrays lazily.<br>
+     * With lazy loading, the file is memory-mapped instead of being read into memory, and each constant and
+     * variable array is only created the first time it is used (for example, when it is needed by an op during
+     * inference). This reduces load time and memory use for large graphs, where only part of the graph is needed to
+     * calculate the required outputs.<br>
+     * Note that the file should not be modified or deleted while arrays have not yet been loaded.
+     *
+     * @param file             The file to load the network from
+     * @param loadUpdaterState If true - load the updater state. See {@link #load(File, boolean)}
+     * @param lazyLoadArrays   If true - load constant and variable arrays lazily, on first use
+     * @return The loaded SameDiff network
+     */
+    public static SameDiff load(@NonNull File file, boolean loadUpdaterState, boolean lazyLoadArrays) {
+        try {
+            return fromFlatFile(file, loadUpdaterState, lazyLoadArrays);
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading SameDiff instance from file", e);
+        }
+    }
+
     /**
      * As per {@link #load(File, boolean)} but the SameDiff instance
      *
@@ -5350,6 +5490,28 @@ public class SameDiff extends SDBaseOps {
      * @throws IOException
      */
     public static SameDiff fromFlatFile(@NonNull File file, boolean loadUpdaterState) throws IOException {
+        return fromFlatFile(file, loadUpdaterState, false);
+    }
+
+    /**
+     * Create a {@link SameDiff} instance from a file, optionally also loading the updater state, and optionally
+     * loading the arrays lazily. See {@link #load(File, boolean, boolean)} for details on lazy loading.
+     *
+     * @param file             the file to load from
+     * @param loadUpdaterState If true, load the updater state (Adam etc state). For training, use true. For inference, use false
+     * @param lazyLoadArrays   If true, memory-map the file and load constant and variable arrays on first use
+     * @return the loaded same diff instance
+     * @throws IOException
+     */
+    public static SameDiff fromFlatFile(@NonNull File file, boolean loadUpdaterState, boolean lazyLoadArrays) throws IOException {
+        if (lazyLoadArrays) {
+            ByteBuffer mapped;
+            try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            }
+            return fromFlatBuffers(mapped, loadUpdaterState, true);
+        }
+
         byte[] bytes;
         try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
             bytes = IOUtils.toByteArray(is);
@@ -5385,6 +5547,21 @@ public class SameDiff extends SDBaseOps {
      * @throws IOException
      */
     public static SameDiff fromFlatBuffers(ByteBuffer bbIn, boolean loadUpdaterState) throws IOException {
+        return fromFlatBuffers(bbIn, loadUpdaterState, false);
+    }
+
+    /**
+     * Create a {@link SameDiff}
+     * instance from a byte buffers
+     * instance, optionally loading the constant and variable arrays lazily.
+     *
+     * @param bbIn the input byte buffer. If lazyLoadArrays is true, the buffer must not be modified afterwards
+     * @param loadUpdaterState If true, load the updater state (Adam etc state). For training, use true. For inference, use false
+     * @param lazyLoadArrays If true, constant and variable arrays are only created from the buffer on first use
+     * @return the created samediff instance
+     * @throws IOException
+     */
+    public static SameDiff fromFlatBuffers(ByteBuffer bbIn, boolean loadUpdaterState, boolean lazyLoadArrays) throws IOException {
 
         FlatGraph fg = FlatGraph.getRootAsFlatGraph(bbIn);
 
@@ -5408,6 +5585,14 @@ public class SameDiff extends SDBaseOps {
 
         SameDiff sd = SameDiff.create();
 
+        LazyArrayHolder lazyVariables = null;
+        LazyArrayHolder lazyConstants = null;
+        if (lazyLoadArrays) {
+            lazyVariables = new LazyArrayHolder(new ThreadSafeArrayHolder(true));
+            lazyConstants = new LazyArrayHolder(new ThreadSafeArrayHolder(true));
+            sd.setArrayHolders(lazyVariables, lazyConstants, false);
+        }
+
         //Reconstruct placeholders
         int numPlaceholders = fg.placeholdersLength();
         Set<String> ph = new LinkedHashSet<>();
@@ -5467,7 +5652,19 @@ public class SameDiff extends SDBaseOps {
 
 
             FlatArray fa = v.ndarray();
-            if (fa != null && vt != VariableType.ARRAY) {
+            if (fa != null && lazyLoadArrays && (vt == VariableType.CONSTANT || vt == VariableType.VARIABLE)) {
+                //Defer creating the array until first use. Note that the FlatVariable only references the underlying buffer
+                final FlatVariable lazyVar = v;
+                Supplier<INDArray> loader = new Supplier<INDArray>() {
+                    @Override
+                    public INDArray get() {
+                        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                            return Nd4j.createFromFlatArray(lazyVar.ndarray());
+                        }
+                    }
+                };
+                (vt == VariableType.CONSTANT ? lazyConstants : lazyVariables).setLoader(n, loader);
+            } else if (fa != null && vt != VariableType.ARRAY) {
                 INDArray arr;
                 try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
                     arr = Nd4j.createFromFlatArray(fa);
@@ -0,0 +1,135 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.array;
+
+import lombok.NonNull;
+import org.nd4j.autodiff.samediff.ArrayHolder;
+import org.nd4j.common.function.Supplier;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link ArrayHolder} where arrays may be registered as loaders instead of actual arrays.<br>
+ * The loader for an array is called the first time that array is requested (via {@link #getArray(String)}), after
+ * which the array is stored in the underlying array holder and the loader is discarded. Arrays that are never
+ * requested are never loaded.<br>
+ * Used when loading SameDiff instances lazily, see {@code SameDiff.load(File, boolean, boolean)}
+ */
+public class LazyArrayHolder implements ArrayHolder {
+
+    private final ArrayHolder underlyingHolder;
+    private final Map<String, Supplier<INDArray>> loaders = new ConcurrentHashMap<>();
+
+    public LazyArrayHolder(@NonNull ArrayHolder underlyingHolder) {
+        this.underlyingHolder = underlyingHolder;
+    }
+
+    /**
+     * Set the loader for the specified array, replacing any existing array with that name
+     *
+     * @param name   Name of the array
+     * @param loader Loader to call the first time the array is requested
+     */
+    public void setLoader(@NonNull String name, @NonNull Supplier<INDArray> loader) {
+        if (underlyingHolder.hasArray(name))
+            underlyingHolder.removeArray(name);
+        loaders.put(name, loader);
+    }
+
+    /**
+     * @return True if the array with the specified name has been loaded (or was set directly)
+     */
+    public boolean isLoaded(String name) {
+        return !loaders.containsKey(name) && underlyingHolder.hasArray(name);
+    }
+
+    /**
+     * @return Number of arrays that have not yet been loaded
+     */
+    public int numNotLoaded() {
+        return loaders.size();
+    }
+
+    @Override
+    public boolean hasArray(@NonNull String name) {
+        return loaders.containsKey(name) || underlyingHolder.hasArray(name);
+    }
+
+    @Override
+    public INDArray getArray(@NonNull String name) {
+        if (loaders.containsKey(name)) {
+            synchronized (this) {
+                //Check again: another thread may have loaded the array while we were waiting
+                Supplier<INDArray> loader = loaders.get(name);
+                if (loader != null) {
+                    underlyingHolder.setArray(name, loader.get());
+                    loaders.remove(name);
+                }
+            }
+        }
+        return underlyingHolder.getArray(name);
+    }
+
+    @Override
+    public void setArray(@NonNull String name, @NonNull INDArray array) {
+        loaders.remove(name);
+        underlyingHolder.setArray(name, array);
+    }
+
+    @Override
+    public INDArray removeArray(@NonNull String name) {
+        Supplier<INDArray> loader = loaders.remove(name);
+        if (loader != null)
+            return loader.get();
+        return underlyingHolder.removeArray(name);
+    }
+
+    @Override
+    public int size() {
+        return underlyingHolder.size() + loaders.size();
+    }
+
+    @Override
+    public void initFrom(ArrayHolder arrayHolder) {
+        loaders.clear();
+        underlyingHolder.initFrom(arrayHolder);
+    }
+
+    @Override
+    public Collection<String> arrayNames() {
+        Set<String> set = new HashSet<>();
+        set.addAll(underlyingHolder.arrayNames());
+        set.addAll(loaders.keySet());
+        return set;
+    }
+
+    @Override
+    public void rename(@NonNull String from, @NonNull String to) {
+        Supplier<INDArray> loader = loaders.remove(from);
+        if (loader != null) {
+            loaders.put(to, loader);
+        } else {
+            underlyingHolder.rename(from, to);
+        }
+    }
+}
@@ -442,4 +442,26 @@ public abstract class AbstractDependencyTracker<T, D> {
 
         return null;    //None match predicate
     }
+
+    /**
+     * As per {@link #getFirstNewAllSatisfiedMatching(Predicate)} but returns (and removes) up to maxCount values that
+     * match the provided predicate, in queue order. If no value matches the predicate, an empty list is returned
+     *
+     * @param predicate Predicate for checking
+     * @param maxCount  Maximum number of values to return
+     * @return The values matching the predicate - may be empty
+     */
+    public List<T> getNewAllSatisfiedMatching(@NonNull Predicate<T> predicate, int maxCount) {
+        List<T> ret = new ArrayList<>();
+        Iterator<T> iter = allSatisfiedQueue.iterator();
+        while (ret.size() < maxCount && iter.hasNext()) {
+            T t = iter.next();
+            if (predicate.test(t)) {
+                iter.remove();
+                allSatisfied.remove(t);
+                ret.add(t);
+            }
+        }
+        return ret;
+    }
 }
@@ -34,6 +34,8 @@ import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.common.function.Predicate;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.nd4j.imports.VariableUtils.stripVarSuffix;
 
@@ -81,6 +83,16 @@ public abstract class AbstractSession<T, O> {
      */
     protected final Set<String> zeroInputOpsInSubgraph = new HashSet<>();
 
+    /**
+     * Maximum number of ops to execute concurrently - see {@link #setParallelism(int)}
+     */
+    @Getter
+    protected int parallelism = 1;
+    /**
+     * Worker pool for concurrent op execution. Null if parallelism is 1
+     */
+    protected ExecutorService opExecutor;
+
     public AbstractSession(@NonNull SameDiff sameDiff) {
         this.sameDiff = sameDiff;
     }
@@ -278,6 +290,21 @@ public abstract class AbstractSession<T, O> {
             currentFrameIter = es.getFrameIter().getIteration();
             currParentFrame = es.getFrameIter().getParentFrame();
 
+            //Concurrent execution: if other independent ops are ready in the same frame/iteration, dispatch them all
+            // to the worker pool at once. Listeners expect strictly sequential pre/post op callbacks, hence we only do
+            // this when there are none
+            if (opExecutor != null && es.getType() == ExecType.OP && (listeners == null || listeners.isEmpty()) &&
+                    canExecuteConcurrently(es) && dt.hasNewAllSatisfied()) {
+                List<ExecStep> concurrentSteps = dt.getNewAllSatisfiedMatching(new ConcurrentExecStepPredicate(es.getFrameIter()), parallelism - 1);
+                if (!concurrentSteps.isEmpty()) {
+                    concurrentSteps.add(0, es);
+                    log.trace("Beginning concurrent execution steps {} to {}: {}", step, step + concurrentSteps.size() - 1, concurrentSteps);
+                    execConcurrently(concurrentSteps, placeholderValues, reqOutputVariablesSet, userRequestedUnique, allRequired, out, allExecuted);
+                    step += concurrentSteps.size();
+                    continue;
+                }
+            }
+
             log.trace("Beginning execution step {}: {}", step, es);
 
             FrameIter outFrameIter;
@@ -340,48 +367,10 @@ public abstract class AbstractSession<T, O> {
 
 
                 //Resolve the inputs to this execution step (op) to actual arrays
-                Set<VarId> inputs = null;
-                Set<VarId> allIterInputs = null;
-                Set<String> constAndPhInputs = null;
-                DependencyList<ExecStep, ExecStep> dl = dt.getDependencies(es);
-
-                List<String> inputNames = op.getInputsToOp();
-                if (inputNames != null && !inputNames.isEmpty()) {
-                    inputs = new LinkedHashSet<>();
-                    allIterInputs = new LinkedHashSet<>();
-                    constAndPhInputs = new LinkedHashSet<>();
-                    List<ExecStep> deps = dl.getDependencies();
-                    if (deps != null && !deps.isEmpty()) {
-                        for (ExecStep dep : deps) {
-                            switch (dep.getType()) {
-                                case OP:
-                                case SWITCH_L:
-                                case SWITCH_R:
-                                    //The current execution step depends on one output of the op "dep"
-                                    SameDiffOp toExecOp = sameDiff.getOps().get(es.getName());
-                                    List<String> inputsToExecOp = toExecOp.getInputsToOp();
-                                    SameDiffOp inputOp = sameDiff.getOps().get(dep.getName());
-                                    List<String> inputOpOutNames = inputOp.getOutputsOfOp();
-                                    for (String s : inputsToExecOp) {
-                                        if (inputOpOutNames.contains(s)) {
-                                            VarId vid = new VarId(s, dep.getFrameIter().getFrame(), dep.getFrameIter().getIteration(), dep.getFrameIter().getParentFrame());
-                                            inputs.add(vid);
-                                        }
-                                    }
-                                    break;
-                                case VARIABLE:
-                                    inputs.add(new VarId(dep.getName(), OUTER_FRAME, 0, null));
-                                    break;
-                                case CONSTANT:
-                                case PLACEHOLDER:
-                                    constAndPhInputs.add(dep.getName());
-                                    break;
-                                default:
-                                    throw new UnsupportedOperationException("Not yet implemented: " + dep.getType());
-                            }
-                        }
-                    }
-                }
+                OpInputs opInputs = resolveOpInputs(es, op);
+                Set<VarId> inputs = opInputs.getInputs();
+                Set<VarId> allIterInputs = opInputs.getAllIterInputs();
+                Set<String> constAndPhInputs = opInputs.getConstAndPhInputs();
 
 
                 // Do execution of the op, in 2 steps
@@ -396,23 +385,7 @@ public abstract class AbstractSession<T, O> {
                         opOutVarNames.size(), opOutVarNames);
 
                 //Store the op outputs
-                for (int i = 0; i < opOutputValues.length; i++) {
-                    if (opOutputValues[i] == null && op.getOp() instanceof Switch) {
-                        //Switch op only forwards the input to one of the outputs
-                        continue;
-                    }
-
-                    String n = opOutVarNames.get(i);
-                    VarId vid = new VarId(n, outFrameIter.getFrame(), outFrameIter.getIteration(), outFrameIter.getParentFrame());
-                    nodeOutputs.put(vid, opOutputValues[i]);
-
-                    if (userRequestedUnique.contains(n)) {
-                        out.put(n, opOutputValues[i]);
-                    }
-                    if(allRequired.contains(n)){
-                        allExecuted.add(n);
-                    }
-                }
+                recordOpOutputs(op, outFrameIter, opOutputValues, userRequestedUnique, allRequired, out, allExecuted);
 
                 //Post execution: update dependency tracker so we know what is available to execute next, given we now
                 // have these new values
@@ -464,13 +437,7 @@ public abstract class AbstractSession<T, O> {
                 TODO double check that this is exactly the same behaviour as TF - otherwise this approach might fail in
                      some rare cases that rely on the constant/variable not being available
                  */
-                List<String> cdFor = op.getControlDepFor();
-                if (cdFor != null) {
-                    ExecStep cdEs = new ExecStep(ExecType.CONTROL_DEP, opName, null);
-                    if (!dt.isSatisfied(cdEs)) {
-                        dt.markSatisfied(cdEs, true);
-                    }
-                }
+                markControlDepForSatisfied(op);
 
             } else {
                 //Should never happen
@@ -510,6 +477,172 @@ public abstract class AbstractSession<T, O> {
         }
     }
 
+    /**
+     * Resolve the inputs of the specified op execution step to the variables (at a specific frame/iteration) that
+     * provide them
+     *
+     * @param es Execution step for the op
+     * @param op The op to be executed
+     * @return The op inputs. All three sets are null if the op has no inputs
+     */
+    protected OpInputs resolveOpInputs(ExecStep es, SameDiffOp op) {
+        Set<VarId> inputs = null;
+        Set<VarId> allIterInputs = null;
+        Set<String> constAndPhInputs = null;
+        DependencyList<ExecStep, ExecStep> dl = dt.getDependencies(es);
+
+        List<String> inputNames = op.getInputsToOp();
+        if (inputNames != null && !inputNames.isEmpty()) {
+            inputs = new LinkedHashSet<>();
+            allIterInputs = new LinkedHashSet<>();
+            constAndPhInputs = new LinkedHashSet<>();
+            List<ExecStep> deps = dl.getDependencies();
+            if (deps != null && !deps.isEmpty()) {
+                for (ExecStep dep : deps) {
+                    switch (dep.getType()) {
+                        case OP:
+                        case SWITCH_L:
+                        case SWITCH_R:
+                            //The current execution step depends on one output of the op "dep"
+                            SameDiffOp toExecOp = sameDiff.getOps().get(es.getName());
+                            List<String> inputsToExecOp = toExecOp.getInputsToOp();
+                            SameDiffOp inputOp = sameDiff.getOps().get(dep.getName());
+                            List<String> inputOpOutNames = inputOp.getOutputsOfOp();
+                            for (String s : inputsToExecOp) {
+                                if (inputOpOutNames.contains(s)) {
+                                    VarId vid = new VarId(s, dep.getFrameIter().getFrame(), dep.getFrameIter().getIteration(), dep.getFrameIter().getParentFrame());
+                                    inputs.add(vid);
+                                }
+                            }
+                            break;
+                        case VARIABLE:
+                            inputs.add(new VarId(dep.getName(), OUTER_FRAME, 0, null));
+                            break;
+                        case CONSTANT:
+                        case PLACEHOLDER:
+                            constAndPhInputs.add(dep.getName());
+                            break;
+                        default:
+                            throw new UnsupportedOperationException("Not yet implemented: " + dep.getType());
+                    }
+                }
+            }
+        }
+        return new OpInputs(inputs, allIterInputs, constAndPhInputs);
+    }
+
+    /**
+     * Store the output values of an executed op, and record which of the requested outputs are now available
+     */
+    protected void recordOpOutputs(SameDiffOp op, FrameIter outFrameIter, T[] opOutputValues, Set<String> userRequestedUnique,
+                                   Set<String> allRequired, Map<String, T> out, Set<String> allExecuted) {
+        List<String> opOutVarNames = op.getOutputsOfOp();
+        for (int i = 0; i < opOutputValues.length; i++) {
+            if (opOutputValues[i] == null && op.getOp() instanceof Switch) {
+                //Switch op only forwards the input to one of the outputs
+                continue;
+            }
+
+            String n = opOutVarNames.get(i);
+            VarId vid = new VarId(n, outFrameIter.getFrame(), outFrameIter.getIteration(), outFrameIter.getParentFrame());
+            nodeOutputs.put(vid, opOutputValues[i]);
+
+            if (userRequestedUnique.contains(n)) {
+                out.put(n, opOutputValues[i]);
+            }
+            if (allRequired.contains(n)) {
+                allExecuted.add(n);
+            }
+        }
+    }
+
+    /**
+     * Mark the control dependency of the specified (just executed) op as satisfied, if any ops or variables have a
+     * control dependency on it
+     */
+    protected void markControlDepForSatisfied(SameDiffOp op) {
+        List<String> cdFor = op.getControlDepFor();
+        if (cdFor != null) {
+            ExecStep cdEs = new ExecStep(ExecType.CONTROL_DEP, op.getName(), null);
+            if (!dt.isSatisfied(cdEs)) {
+                dt.markSatisfied(cdEs, true);
+            }
+        }
+    }
+
+    /**
+     * Execute a set of independent op execution steps, all in the same frame and iteration.<br>
+     * Parameterization (which allocates the output arrays) and post-processing of the outputs happen sequentially on
+     * the calling thread; only the op execution itself is dispatched to {@link #opExecutor}.
+     * All steps must satisfy {@link #canExecuteConcurrently(ExecStep)}
+     */
+    protected void execConcurrently(List<ExecStep> steps, Map<String, T> placeholderValues, Set<String> reqOutputVariablesSet,
+                                    Set<String> userRequestedUnique, Set<String> allRequired, Map<String, T> out,
+                                    Set<String> allExecuted) {
+        int n = steps.size();
+        List<O> parameterized = new ArrayList<>(n);
+        List<OpInputs> opInputs = new ArrayList<>(n);
+        for (ExecStep es : steps) {
+            SameDiffOp op = sameDiff.getOps().get(es.getName());
+            OpInputs in = resolveOpInputs(es, op);
+            opInputs.add(in);
+            parameterized.add(getAndParameterizeOp(es.getName(), es.getFrameIter(), in.getInputs(), in.getAllIterInputs(),
+                    in.getConstAndPhInputs(), placeholderValues, reqOutputVariablesSet));
+        }
+
+        List<Future<T[]>> futures = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            final O op = parameterized.get(i);
+            final FrameIter frameIter = steps.get(i).getFrameIter();
+            final OpInputs in = opInputs.get(i);
+            futures.add(opExecutor.submit(new Callable<T[]>() {
+                @Override
+                public T[] call() {
+                    return execParameterizedOp(op, frameIter, in.getInputs(), in.getAllIterInputs(), in.getConstAndPhInputs());
+                }
+            }));
+        }
+
+        //Always wait for all ops to complete before releasing any arrays, even if one of them has failed
+        List<T[]> results = new ArrayList<>(n);
+        Throwable firstError = null;
+        for (Future<T[]> f : futures) {
+            try {
+                results.add(f.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (firstError == null)
+                    firstError = e;
+                results.add(null);
+            } catch (ExecutionException e) {
+                if (firstError == null)
+                    firstError = e.getCause();
+                results.add(null);
+            }
+        }
+        if (firstError != null) {
+            if (firstError instanceof RuntimeException)
+                throw (RuntimeException) firstError;
+            throw new RuntimeException("Error during concurrent execution of ops " + steps, firstError);
+        }
+
+        for (int i = 0; i < n; i++) {
+            ExecStep es = steps.get(i);
+            FrameIter outFrameIter = es.getFrameIter();
+            SameDiffOp op = sameDiff.getOps().get(es.getName());
+            T[] opOutputValues = postProcessOpOutputs(parameterized.get(i), outFrameIter, results.get(i), reqOutputVariablesSet);
+            List<String> opOutVarNames = op.getOutputsOfOp();
+            Preconditions.checkState(opOutputValues.length == opOutVarNames.size(), "Unexpected number of outputs from executed op %s:" +
+                            " got %s outputs when %s outputs were expected (%s)", es.getName(), opOutputValues.length,
+                    opOutVarNames.size(), opOutVarNames);
+
+            recordOpOutputs(op, outFrameIter, opOutputValues, userRequestedUnique, allRequired, out, allExecuted);
+            markControlDepForSatisfied(op);
+            updateDescendantDeps(es, outFrameIter);
+            dt.markSatisfied(es, true);
+        }
+    }
+
     /**
      * Execution failed - can't calculate all requested outputs, and there's nothing left to calculate.
      * Throws an exception with a useful message
@@ -911,6 +1044,75 @@ public abstract class AbstractSession<T, O> {
     public abstract T[] getOutputs(O op, FrameIter outputFrameIter, Set<VarId> inputs, Set<VarId> allIterInputs, Set<String> constAndPhInputs,
                                    List<Listener> listeners, At at, MultiDataSet batch, Set<String> allReqVariables);
 
+    /**
+     * Whether the specified op execution step may be dispatched to a worker thread, concurrently with other
+     * independent ops. Only ops for which this returns true are ever passed to {@link #execParameterizedOp}.
+     * Default: false (all ops are executed sequentially on the calling thread)
+     *
+     * @param es Execution step for the op
+     */
+    protected boolean canExecuteConcurrently(ExecStep es) {
+        return false;
+    }
+
+    /**
+     * Execute an op previously parameterized via {@link #getAndParameterizeOp}, without calling listeners or
+     * updating any session state. Must be safe to call from a thread other than the one executing the session.
+     *
+     * @param op              Operation to execute. This should be parameterized (i.e., all inputs set)
+     * @param outputFrameIter The frame and iteration of the outputs
+     * @return The outputs of the op
+     */
+    public abstract T[] execParameterizedOp(O op, FrameIter outputFrameIter, Set<VarId> inputs, Set<VarId> allIterInputs,
+                                            Set<String> constAndPhInputs);
+
+    /**
+     * Post process the outputs of an op executed via {@link #execParameterizedOp} - i.e., perform any of the
+     * bookkeeping that {@link #getOutputs} would otherwise have done. Always called on the thread executing the session
+     *
+     * @param op              The executed op
+     * @param outputFrameIter The frame and iteration of the outputs
+     * @param outputs         The outputs of the op
+     * @param allReqVariables All required variables requested for the current session execution
+     * @return The outputs of the op
+     */
+    public abstract T[] postProcessOpOutputs(O op, FrameIter outputFrameIter, T[] outputs, Set<String> allReqVariables);
+
+    /**
+     * Set the maximum number of ops to execute concurrently. Independent ops that are ready for execution at the same
+     * time (in the same frame and iteration) are dispatched to a bounded pool of worker threads of this size.
+     * 1 (the default) executes all ops sequentially on the calling thread.<br>
+     * Note that most ops are themselves multi-threaded: this is mainly useful for wide graphs of many small ops
+     *
+     * @param parallelism Maximum number of ops to execute concurrently. Must be 1 or more
+     */
+    public void setParallelism(int parallelism) {
+        Preconditions.checkArgument(parallelism >= 1, "Parallelism must be 1 or more, got %s", parallelism);
+        if (parallelism == this.parallelism)
+            return;
+
+        if (opExecutor != null) {
+            opExecutor.shutdown();
+            opExecutor = null;
+        }
+        this.parallelism = parallelism;
+        if (parallelism > 1) {
+            ThreadPoolExecutor tpe = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "SameDiff-op-executor-" + count.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            tpe.allowCoreThreadTimeOut(true);
+            opExecutor = tpe;
+        }
+    }
+
     /**
      * Get the VarId from the specified name. The VarId should be in one or the other of the collections,
      * and only one VarId with that name should exist
@@ -1012,6 +1214,33 @@ public abstract class AbstractSession<T, O> {
         }
     }
 
+    /**
+     * The inputs to an op execution step: (a) the inputs (excluding constants/placeholders) for the specific
+     * frame + iteration, (b) the inputs that are not iteration-specific and (c) the constant and placeholder inputs
+     */
+    @Getter
+    @AllArgsConstructor
+    protected static class OpInputs {
+        private final Set<VarId> inputs;
+        private final Set<VarId> allIterInputs;
+        private final Set<String> constAndPhInputs;
+    }
+
+    /**
+     * Used in getting the ops (other than the one currently being executed) that are ready to be executed concurrently
+     * in the specified frame/iteration
+     */
+    @AllArgsConstructor
+    protected class ConcurrentExecStepPredicate implements Predicate<ExecStep> {
+
+        protected final FrameIter frameIter;
+
+        @Override
+        public boolean test(ExecStep execStep) {
+            return execStep.getType() == ExecType.OP && frameIter.equals(execStep.getFrameIter()) && canExecuteConcurrently(execStep);
+        }
+    }
+
     /**
      * Used in getting the next ExecStep that matches the specified (current) frame/iteration
      */
@@ -29,6 +29,9 @@ import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.VariableType;
 import org.nd4j.autodiff.samediff.internal.memory.ArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.SizeClassArrayPool;
+import org.nd4j.autodiff.samediff.internal.memory.SizeClassMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.StaticPlanMemoryMgr;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
@@ -77,25 +80,41 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
 
 
     private Map<String,OpContext> opContexts = new HashMap<>();
+    /**
+     * Constants and variables that had not been loaded yet (lazy array loading) when this execution started.
+     * Their ConstantDep/VariableDep is only registered once the array is first requested, so that preprocessing
+     * does not load arrays the requested outputs don't need
+     */
+    private Set<String> unloadedArrays = new HashSet<>();
 
     public InferenceSession(@NonNull SameDiff sameDiff) {
         super(sameDiff);
-        mmgr = new ArrayCacheMemoryMgr();
+        SizeClassArrayPool pool = sameDiff.getSessionArrayPool();
+        mmgr = pool == null ? new ArrayCacheMemoryMgr() : new SizeClassMemoryMgr(pool);
+        if (sameDiff.isStaticMemoryPlanning()) {
+            mmgr = new StaticPlanMemoryMgr(mmgr);
+        }
     }
 
     @Override
     protected Map<String, INDArray> preprocessPlaceholders(Map<String, INDArray> placeholders, At at) {
         arrayUseTracker.clear();
+        if (mmgr instanceof StaticPlanMemoryMgr) {
+            ((StaticPlanMemoryMgr) mmgr).beginExecution(placeholders);
+        }
 
         //We'll also use this method as a "pre execution" hook-in, to mark variables as something we should never deallocate
         //This occurs by never marking these "ConstantDep" and "VariableDep" instances as satisfied, so there's always
         // an unsatisfied dependency for them in the array use tracker
         //TODO we shouldn't be clearing this on every single iteration, in 99.5% of cases variables will be same as last iteration...
+        unloadedArrays.clear();
         for (SDVariable v : sameDiff.variables()) {
-            if (v.getVariableType() == VariableType.CONSTANT) {
-                arrayUseTracker.addDependency(v.getArr(), new ConstantDep(v.name()));
-            } else if (v.getVariableType() == VariableType.VARIABLE) {
-                arrayUseTracker.addDependency(v.getArr(), new VariableDep(v.name()));
+            if (v.getVariableType() != VariableType.CONSTANT && v.getVariableType() != VariableType.VARIABLE)
+                continue;
+            if (sameDiff.isArrayLoaded(v.name())) {
+                addConstantOrVariableDep(v, v.getArr());
+            } else {
+                unloadedArrays.add(v.name());
             }
         }
 
@@ -195,9 +214,21 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
             }
         }
 
+        if (mmgr instanceof StaticPlanMemoryMgr) {
+            ((StaticPlanMemoryMgr) mmgr).endExecution();
+        }
+
         return output;
     }
 
+    /**
+     * Release the memory held by this session's memory manager - for example, buffers cached by the session are
+     * returned to the shared pool. Called when the session is discarded; the session should not be used afterwards
+     */
+    public void close() {
+        mmgr.close();
+    }
+
     @Override
     public INDArray[] getOutputs(Pair<SameDiffOp,OpContext> opPair, FrameIter outputFrameIter, Set<VarId> opInputs, Set<VarId> allIterInputs,
                                  Set<String> constAndPhInputs, List<Listener> listeners, At at, MultiDataSet batch, Set<String> allReqVariables) {
@@ -254,6 +285,34 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
                 }
             }
         }
+
+        return postProcessOpOutputs(opPair, outputFrameIter, out, allReqVariables);
+    }
+
+    @Override
+    protected boolean canExecuteConcurrently(ExecStep es) {
+        DifferentialFunction df = sameDiff.getOps().get(es.getName()).getOp();
+        if (df instanceof LoopCond || df instanceof Enter || df instanceof Exit || df instanceof NextIteration ||
+                df instanceof Merge || df instanceof Switch || df instanceof BaseTensorOp || df instanceof Identity ||
+                df instanceof GradientBackwardsMarker || df instanceof ExternalErrorsFunction) {
+            //Control flow and tensor array ops read or modify session state (nodeOutputs, tensorArrays, memory manager)
+            return false;
+        }
+        return df instanceof CustomOp || df instanceof Op;
+    }
+
+    @Override
+    public INDArray[] execParameterizedOp(Pair<SameDiffOp, OpContext> opPair, FrameIter outputFrameIter, Set<VarId> opInputs,
+                                          Set<VarId> allIterInputs, Set<String> constAndPhInputs) {
+        if (sameDiff.isDebugMode()) {
+            log.info("Executing samediff op: " + opPair.getFirst().getName());
+        }
+        return doExec(opPair.getFirst().getOp(), opPair.getSecond(), outputFrameIter, opInputs, allIterInputs, constAndPhInputs);
+    }
+
+    @Override
+    public INDArray[] postProcessOpOutputs(Pair<SameDiffOp, OpContext> opPair, FrameIter outputFrameIter, INDArray[] out, Set<String> allReqVariables) {
+        SameDiffOp op = opPair.getFirst();
         op.getOp().clearArrays();
         if(opPair.getSecond() != null)
             opPair.getSecond().purge();
@@ -781,7 +840,24 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
         SDVariable v = sameDiff.getVariable(variableName);
         Preconditions.checkState(sameDiff.getVariable(variableName).isConstant() || v.getVariableType() == VariableType.VARIABLE,
                 "Variable %s is not a constant", variableName);
-        return sameDiff.getArrForVarName(variableName);
+        return getConstantOrVariable(v);
+    }
+
+    protected INDArray getConstantOrVariable(SDVariable v) {
+        INDArray arr = sameDiff.getArrForVarName(v.name());
+        if (unloadedArrays.remove(v.name())) {
+            //First use of a lazily loaded array in this execution
+            addConstantOrVariableDep(v, arr);
+        }
+        return arr;
+    }
+
+    protected void addConstantOrVariableDep(SDVariable v, INDArray arr) {
+        if (v.getVariableType() == VariableType.CONSTANT) {
+            arrayUseTracker.addDependency(arr, new ConstantDep(v.name()));
+        } else {
+            arrayUseTracker.addDependency(arr, new VariableDep(v.name()));
+        }
     }
 
     @Override
@@ -829,9 +905,9 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
             for (String s : argNames) {
                 SDVariable v = sameDiff.getVariable(s);
                 if (v.isConstant()) {
-                    args[i] = v.getArr();
+                    args[i] = getConstantOrVariable(v);
                 } else if (v.getVariableType() == VariableType.VARIABLE) {
-                    args[i] = v.getArr();
+                    args[i] = getConstantOrVariable(v);
                 } else if (v.isPlaceHolder()) {
                     Preconditions.checkState(placeholderValues != null && placeholderValues.containsKey(s), "No array was provided for required placeholder variable \"%s\"", s);
                     args[i] = placeholderValues.get(s);
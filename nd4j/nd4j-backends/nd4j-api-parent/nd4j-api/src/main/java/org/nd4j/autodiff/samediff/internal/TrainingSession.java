@@ -154,6 +154,12 @@ public class TrainingSession extends InferenceSession {
         return loss;
     }
 
+    @Override
+    protected boolean canExecuteConcurrently(ExecStep es) {
+        //Gradient updates and loss accumulation happen in getOutputs, which is bypassed for concurrently executed ops
+        return false;
+    }
+
     @Override
     public INDArray[] getOutputs(Pair<SameDiffOp, OpContext> opPair, FrameIter outputFrameIter, Set<VarId> opInputs, Set<VarId> allIterInputs,
                                  Set<String> constAndPhInputs, List<Listener> listeners, At at, MultiDataSet batch, Set<String> allReqVariables) {
@@ -48,6 +48,11 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
     private LinkedHashSet<Long> lruCache = new LinkedHashSet<>();
     private Map<Long,INDArray> lruCacheValues = new HashMap<>();
 
+    //Metrics, for tuning maxMemFrac
+    private long cacheHits;
+    private long cacheMisses;
+    private long evictions;
+
     /**
      * Create an ArrayCacheMemoryMgr with default settings as per {@link ArrayCacheMemoryMgr}
      */
@@ -71,18 +76,26 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
         this.smallArrayThreshold = smallArrayThreshold;
         this.largerArrayMaxMultiple = largerArrayMaxMultiple;
 
+        totalMemBytes = totalMemoryBytes();
+        maxCacheBytes = (long)(maxMemFrac * totalMemBytes);
+    }
+
+    /**
+     * @return Total memory available to the backend, in bytes: the JavaCPP max bytes on CPU, or the memory of the
+     * first device on CUDA
+     */
+    protected static long totalMemoryBytes() {
         if(isCpu()){
-            totalMemBytes = Pointer.maxBytes();
+            return Pointer.maxBytes();
         } else {
             Properties p = Nd4j.getExecutioner().getEnvironmentInformation();
             List devList = (List) p.get("cuda.devicesInformation");
             Map m = (Map) devList.get(0);
-            totalMemBytes = (Long)m.get("cuda.totalMemory");
+            return (Long)m.get("cuda.totalMemory");
         }
-        maxCacheBytes = (long)(maxMemFrac * totalMemBytes);
     }
 
-    private boolean isCpu() {
+    private static boolean isCpu() {
         String backend = Nd4j.getExecutioner().getEnvironmentInformation().getProperty("backend");
         return !"CUDA".equalsIgnoreCase(backend);
     }
@@ -94,12 +107,14 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
             if (arr != null) {
                 //Decrement cache size
                 currentCacheSize -= dataType.width() * arr.data().length();
+                cacheHits++;
 
                 return arr; //Allocated from cache
             }
         }
 
         //Allocation failed, allocate new array
+        cacheMisses++;
         return Nd4j.createUninitializedDetached(dataType, shape);
     }
 
@@ -126,12 +141,14 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
             if (arr != null) {
                 //Decrement cache size
                 currentCacheSize -= dataType.width() * arr.data().length();
+                cacheHits++;
 
                 return arr; //Allocated from cache
             }
         }
 
         //Allocation failed, allocate new array
+        cacheMisses++;
         return Nd4j.createUninitializedDetached(dataType, shape);
     }
 
@@ -171,6 +188,7 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
                 long nextBytes = ndt.width() * nextOldest.data().length();
                 arrayStores.get(ndt).removeObject(nextOldest);
                 currentCacheSize -= nextBytes;
+                evictions++;
 
                 if(nextOldest.closeable())
                     nextOldest.close();
@@ -199,6 +217,23 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
         lruCacheValues.put(array.getId(), array);
     }
 
+    /**
+     * @return Fraction of allocations that were served from the cache, or 0 if there have been no allocations
+     */
+    public double getHitRate() {
+        long total = cacheHits + cacheMisses;
+        return total == 0 ? 0.0 : cacheHits / (double) total;
+    }
+
+    /**
+     * Reset the cache hit, miss and eviction counts to 0
+     */
+    public void resetMetrics() {
+        cacheHits = 0;
+        cacheMisses = 0;
+        evictions = 0;
+    }
+
     @Override
     public void close() {
         for (ArrayStore as : arrayStores.values()) {
@@ -0,0 +1,360 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe pool of data buffers, shared between multiple {@link SizeClassMemoryMgr} instances (and hence
+ * multiple InferenceSessions, possibly for multiple SameDiff instances).<br>
+ * Buffers are grouped by datatype, device and size class. Size classes have 4 steps per power of two (i.e., lengths
+ * 16, 20, 24, 28, 32, 40, 48, ...), so a pooled buffer is at most 25% larger than the requested length.
+ * The pool is split into lock stripes by size class, so threads requesting different size classes don't contend.<br>
+ * Once the total size of the pooled buffers would exceed the maximum, the least recently pooled buffers of the
+ * same stripe are evicted (closed). Hit, miss and eviction counts are tracked, to allow tuning of the maximum
+ * pool size.
+ */
+public class SizeClassArrayPool {
+    public static final long MIN_CLASS_LENGTH = 16;
+
+    private static SizeClassArrayPool defaultPool;
+
+    @Getter
+    private final long maxBytes;
+    private final Stripe[] stripes;
+
+    private final AtomicLong currentBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * Create a pool using up to 25% of the total memory for the current device, with 16 stripes
+     */
+    public SizeClassArrayPool() {
+        this(0.25, 16);
+    }
+
+    /**
+     * @param maxMemFrac Maximum fraction of the total memory of the device (or off-heap memory limit for CPU) to use
+     *                   for pooled buffers
+     * @param numStripes Number of lock stripes
+     */
+    public SizeClassArrayPool(double maxMemFrac, int numStripes) {
+        this((long) (maxMemFrac * ArrayCacheMemoryMgr.totalMemoryBytes()), numStripes);
+        Preconditions.checkArgument(maxMemFrac > 0 && maxMemFrac < 1, "Maximum memory fraction for pool must be between 0.0 and 1.0, got %s", maxMemFrac);
+    }
+
+    /**
+     * @param maxBytes   Maximum total size of the pooled buffers, in bytes
+     * @param numStripes Number of lock stripes
+     */
+    public SizeClassArrayPool(long maxBytes, int numStripes) {
+        Preconditions.checkArgument(maxBytes > 0, "Maximum pool size must be positive, got %s", maxBytes);
+        Preconditions.checkArgument(numStripes > 0, "Number of stripes must be positive, got %s", numStripes);
+        this.maxBytes = maxBytes;
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * @return The default pool instance, shared by all SameDiff instances that use the default pool
+     */
+    public static synchronized SizeClassArrayPool getDefault() {
+        if (defaultPool == null)
+            defaultPool = new SizeClassArrayPool();
+        return defaultPool;
+    }
+
+    /**
+     * Get the size class for the specified length: the smallest class length that is greater than or equal to the
+     * specified length. Buffers of this length can be used for any request of the specified length.
+     */
+    public static long sizeClassCeil(long length) {
+        if (length <= MIN_CLASS_LENGTH)
+            return MIN_CLASS_LENGTH;
+        long step = classStep(length - 1);
+        return (length + step - 1) / step * step;
+    }
+
+    /**
+     * Get the largest class length that is less than or equal to the specified length. A buffer of the specified
+     * length can be used for any request in that size class.
+     */
+    public static long sizeClassFloor(long length) {
+        if (length < MIN_CLASS_LENGTH)
+            return 0;
+        long step = classStep(length);
+        return length / step * step;
+    }
+
+    private static long classStep(long length) {
+        //4 steps per power of two
+        int log2 = 63 - Long.numberOfLeadingZeros(length);
+        return 1L << Math.max(0, log2 - 2);
+    }
+
+    /**
+     * Take a buffer of exactly the specified class length from the pool
+     *
+     * @return The buffer, or null if no buffer is available
+     */
+    public DataBuffer take(@NonNull DataType dataType, long classLength) {
+        Key key = new Key(dataType, Nd4j.getAffinityManager().getDeviceForCurrentThread(), classLength);
+        DataBuffer b = stripeFor(key).take(key);
+        if (b == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+            currentBytes.addAndGet(-bytes(b));
+        }
+        return b;
+    }
+
+    /**
+     * @return True if the specified buffer (by identity) is currently in the pool, under the specified size class
+     */
+    public boolean contains(@NonNull DataBuffer buffer, long classLength) {
+        Key key = new Key(buffer.dataType(), Nd4j.getAffinityManager().getDeviceForCurrentThread(), classLength);
+        return stripeFor(key).contains(buffer);
+    }
+
+    /**
+     * Return a buffer to the pool. The buffer should not be used by the caller after this call
+     *
+     * @param buffer      Buffer to pool
+     * @param classLength Size class for the buffer, as per {@link #sizeClassFloor(long)} of the buffer length
+     */
+    public void offer(@NonNull DataBuffer buffer, long classLength) {
+        long b = bytes(buffer);
+        if (classLength <= 0 || b > maxBytes) {
+            rejections.incrementAndGet();
+            close(buffer);
+            return;
+        }
+
+        Key key = new Key(buffer.dataType(), Nd4j.getAffinityManager().getDeviceForCurrentThread(), classLength);
+        Stripe s = stripeFor(key);
+        synchronized (s) {
+            Preconditions.checkState(!s.contains(buffer), "Buffer was returned to the pool multiple times: length=%s, dataType=%s",
+                    buffer.length(), buffer.dataType());
+
+            //Evict oldest in this stripe until there is space
+            while (currentBytes.get() + b > maxBytes) {
+                DataBuffer evicted = s.evictOldest();
+                if (evicted == null)
+                    break;
+                currentBytes.addAndGet(-bytes(evicted));
+                evictions.incrementAndGet();
+                close(evicted);
+            }
+
+            if (currentBytes.get() + b > maxBytes) {
+                //Remaining space is held by other stripes
+                rejections.incrementAndGet();
+                close(buffer);
+                return;
+            }
+
+            currentBytes.addAndGet(b);
+            s.add(key, buffer);
+        }
+    }
+
+    /**
+     * Close all pooled buffers
+     */
+    public void clear() {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                DataBuffer b;
+                while ((b = s.evictOldest()) != null) {
+                    currentBytes.addAndGet(-bytes(b));
+                    close(b);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of requests that were served from the pool
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of requests that could not be served from the pool
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of pooled buffers that were closed to make space for more recently returned buffers
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Number of returned buffers that were closed instead of pooled, due to lack of space
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    /**
+     * @return Current total size of the pooled buffers, in bytes
+     */
+    public long getCurrentBytes() {
+        return currentBytes.get();
+    }
+
+    /**
+     * Reset the hit, miss, eviction and rejection counts to 0
+     */
+    public void resetMetrics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+        rejections.set(0);
+    }
+
+    @Override
+    public String toString() {
+        long h = getHits();
+        long m = getMisses();
+        return "SizeClassArrayPool(hits=" + h + ", misses=" + m +
+                ", hitRate=" + (h + m == 0 ? 0.0 : h / (double) (h + m)) +
+                ", evictions=" + getEvictions() + ", rejections=" + getRejections() +
+                ", currentBytes=" + getCurrentBytes() + ", maxBytes=" + maxBytes + ")";
+    }
+
+    private Stripe stripeFor(Key key) {
+        return stripes[Math.floorMod(key.hashCode(), stripes.length)];
+    }
+
+    protected static long bytes(DataBuffer b) {
+        return b.length() * b.dataType().width();
+    }
+
+    protected static void close(DataBuffer b) {
+        if (b.closeable())
+            b.close();
+    }
+
+    private static class Key {
+        private final DataType dataType;
+        private final int deviceId;
+        private final long classLength;
+        private final int hash;
+
+        private Key(DataType dataType, Integer deviceId, long classLength) {
+            this.dataType = dataType;
+            this.deviceId = deviceId == null ? 0 : deviceId;
+            this.classLength = classLength;
+            this.hash = Objects.hash(dataType, this.deviceId, classLength);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return dataType == k.dataType && deviceId == k.deviceId && classLength == k.classLength;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class IdentityKey {
+        private final DataBuffer buffer;
+
+        private IdentityKey(DataBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).buffer == buffer;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+    }
+
+    private static class Stripe {
+        private final Map<Key, ArrayDeque<DataBuffer>> buffers = new HashMap<>();
+        //Insertion order of the pooled buffers, for eviction. Keyed by identity, as DataBuffer equality is value based
+        private final Map<IdentityKey, Key> order = new LinkedHashMap<>();
+
+        private synchronized DataBuffer take(Key key) {
+            ArrayDeque<DataBuffer> q = buffers.get(key);
+            if (q == null || q.isEmpty())
+                return null;
+            //Most recently returned buffer first - most likely to still be in cache
+            DataBuffer b = q.pollLast();
+            order.remove(new IdentityKey(b));
+            return b;
+        }
+
+        private synchronized boolean contains(DataBuffer b) {
+            return order.containsKey(new IdentityKey(b));
+        }
+
+        private synchronized void add(Key key, DataBuffer b) {
+            ArrayDeque<DataBuffer> q = buffers.get(key);
+            if (q == null) {
+                q = new ArrayDeque<>();
+                buffers.put(key, q);
+            }
+            q.addLast(b);
+            order.put(new IdentityKey(b), key);
+        }
+
+        private synchronized DataBuffer evictOldest() {
+            Iterator<Map.Entry<IdentityKey, Key>> iter = order.entrySet().iterator();
+            if (!iter.hasNext())
+                return null;
+            Map.Entry<IdentityKey, Key> e = iter.next();
+            iter.remove();
+            //Buffers are taken from the end of the queue, so the oldest buffer for a key is always at the start
+            return buffers.get(e.getValue()).pollFirst();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.util.ArrayUtil;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+
+/**
+ * A session memory manager that allocates arrays from size-class buffers, with a small per-session (hence per-thread)
+ * cache in front of a {@link SizeClassArrayPool} that may be shared by many sessions.<br>
+ * Unlike {@link ArrayCacheMemoryMgr}, buffers released by one session can be reused by other sessions, so multiple
+ * threads running inference concurrently don't each need their own full cache.<br>
+ * Pooled buffers may be up to 25% longer than the arrays using them, so they are only used for internal (non-detached)
+ * arrays. Detached arrays - i.e., the requested outputs, which are returned to the user - are allocated with exactly
+ * the required length, so they are never views of a larger buffer.<br>
+ * Not thread safe: each InferenceSession should use its own instance. The {@link SizeClassArrayPool} is thread safe.
+ */
+@Getter
+public class SizeClassMemoryMgr extends AbstractMemoryMgr {
+    public static final int DEFAULT_MAX_PER_CLASS = 4;
+
+    private final SizeClassArrayPool pool;
+    private final long maxLocalBytes;
+    private final int maxLocalPerClass;
+
+    @Getter(AccessLevel.NONE)
+    private final Map<DataType, Map<Long, ArrayDeque<DataBuffer>>> local = new HashMap<>();
+    //Locally cached buffers, by identity - used to detect arrays being released multiple times
+    @Getter(AccessLevel.NONE)
+    private final Set<DataBuffer> localSet = Collections.newSetFromMap(new IdentityHashMap<DataBuffer, Boolean>());
+    private long localBytes;
+
+    private long localHits;
+    private long poolHits;
+    private long misses;
+
+    /**
+     * Create a memory manager using the default shared pool, as per {@link SizeClassArrayPool#getDefault()}
+     */
+    public SizeClassMemoryMgr() {
+        this(SizeClassArrayPool.getDefault());
+    }
+
+    /**
+     * @param pool Shared pool to use. Local cache is limited to 1/16th of the pool size, and 4 buffers per size class
+     */
+    public SizeClassMemoryMgr(@NonNull SizeClassArrayPool pool) {
+        this(pool, pool.getMaxBytes() / 16, DEFAULT_MAX_PER_CLASS);
+    }
+
+    /**
+     * @param pool             Shared pool to use
+     * @param maxLocalBytes    Maximum total size of the buffers cached locally, in bytes
+     * @param maxLocalPerClass Maximum number of buffers cached locally, per datatype and size class
+     */
+    public SizeClassMemoryMgr(@NonNull SizeClassArrayPool pool, long maxLocalBytes, int maxLocalPerClass) {
+        Preconditions.checkArgument(maxLocalBytes >= 0, "Max local bytes must be >= 0, got %s", maxLocalBytes);
+        Preconditions.checkArgument(maxLocalPerClass >= 0, "Max local buffers per class must be >= 0, got %s", maxLocalPerClass);
+        this.pool = pool;
+        this.maxLocalBytes = maxLocalBytes;
+        this.maxLocalPerClass = maxLocalPerClass;
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, DataType dataType, long... shape) {
+        if (detached) {
+            return Nd4j.createUninitializedDetached(dataType, 'c', shape);
+        }
+        return allocate(dataType, shape, 'c');
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, LongShapeDescriptor descriptor) {
+        if (descriptor.isEmpty()) {
+            INDArray ret = Nd4j.create(descriptor);
+            if (detached) {
+                ret = ret.detach();
+            }
+            return ret;
+        }
+        if (detached) {
+            return Nd4j.createUninitializedDetached(descriptor.dataType(), descriptor.getOrder(), descriptor.getShape());
+        }
+        return allocate(descriptor.dataType(), descriptor.getShape(), descriptor.getOrder());
+    }
+
+    protected INDArray allocate(DataType dataType, long[] shape, char order) {
+        long length = shape.length == 0 ? 1 : ArrayUtil.prod(shape);
+        if (length == 0 || dataType == DataType.UTF8) {
+            return Nd4j.createUninitializedDetached(dataType, order, shape);
+        }
+
+        long classLength = SizeClassArrayPool.sizeClassCeil(length);
+        DataBuffer buffer = takeLocal(dataType, classLength);
+        if (buffer != null) {
+            localHits++;
+        } else {
+            buffer = pool.take(dataType, classLength);
+            if (buffer != null) {
+                poolHits++;
+            } else {
+                misses++;
+                buffer = Nd4j.createUninitializedDetached(dataType, classLength).data();
+            }
+        }
+
+        //Always return a new array object: some SameDiff array use tracking uses object identity
+        return Nd4j.create(buffer, shape, Nd4j.getStrides(shape, order), 0, order, dataType);
+    }
+
+    @Override
+    public void release(@NonNull INDArray array) {
+        DataBuffer buffer = array.data();
+        if (buffer == null || array.isEmpty() || array.dataType() == DataType.UTF8 || array.offset() != 0) {
+            //Don't pool string arrays (variable length buffers), or views with an offset
+            if (array.closeable())
+                array.close();
+            return;
+        }
+
+        long classLength = SizeClassArrayPool.sizeClassFloor(buffer.length());
+        if (classLength == 0) {
+            if (array.closeable())
+                array.close();
+            return;
+        }
+
+        Preconditions.checkState(!localSet.contains(buffer) && !pool.contains(buffer, classLength),
+                "Array was released multiple times: shape=%ndShape", array);
+
+        long bytes = classLength * buffer.dataType().width();
+        ArrayDeque<DataBuffer> q = localQueue(buffer.dataType(), classLength);
+        if (buffer.length() == classLength && q.size() < maxLocalPerClass && localBytes + bytes <= maxLocalBytes) {
+            q.addLast(buffer);
+            localSet.add(buffer);
+            localBytes += bytes;
+        } else {
+            pool.offer(buffer, classLength);
+        }
+    }
+
+    /**
+     * Return all locally cached buffers to the shared pool
+     */
+    @Override
+    public void close() {
+        for (Map<Long, ArrayDeque<DataBuffer>> m : local.values()) {
+            for (Map.Entry<Long, ArrayDeque<DataBuffer>> e : m.entrySet()) {
+                for (DataBuffer b : e.getValue()) {
+                    pool.offer(b, e.getKey());
+                }
+                e.getValue().clear();
+            }
+        }
+        localSet.clear();
+        localBytes = 0;
+    }
+
+    private DataBuffer takeLocal(DataType dataType, long classLength) {
+        Map<Long, ArrayDeque<DataBuffer>> m = local.get(dataType);
+        if (m == null)
+            return null;
+        ArrayDeque<DataBuffer> q = m.get(classLength);
+        if (q == null || q.isEmpty())
+            return null;
+        DataBuffer b = q.pollLast();
+        localSet.remove(b);
+        localBytes -= classLength * dataType.width();
+        return b;
+    }
+
+    private ArrayDeque<DataBuffer> localQueue(DataType dataType, long classLength) {
+        Map<Long, ArrayDeque<DataBuffer>> m = local.get(dataType);
+        if (m == null) {
+            m = new HashMap<>();
+            local.put(dataType, m);
+        }
+        ArrayDeque<DataBuffer> q = m.get(classLength);
+        if (q == null) {
+            q = new ArrayDeque<>();
+            m.put(classLength, q);
+        }
+        return q;
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.autodiff.samediff.internal.SessionMemMgr;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.util.ArrayUtil;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+
+/**
+ * A session memory manager that plans the memory layout of all intermediate arrays ahead of time, for graphs where
+ * the same input shapes are used repeatedly.<br>
+ * The first execution for a given input signature (placeholder names, datatypes and shapes) is executed with dynamic
+ * allocation via the delegate memory manager, while the order of allocations and releases is recorded. The lifetime of
+ * each intermediate array (which follows from the op order and the array dependency tracker) is then used to pack all
+ * arrays into one arena per datatype, at fixed offsets, such that arrays with overlapping lifetimes never share memory.
+ * Later executions with the same signature return views of the arenas, and releasing a planned array is a no-op.<br>
+ * <br>
+ * Each planned execution is validated against the recorded trace: if the sequence of allocations and releases ever
+ * differs (for example, because a different set of outputs was requested), the remainder of that execution falls back
+ * to dynamic allocation and the plan is rebuilt from the new trace. Arrays that are detached (i.e., may be returned to
+ * the user) or that are never released during execution are always allocated dynamically.<br>
+ * <br>
+ * {@link #beginExecution(Map)} and {@link #endExecution()} must be called at the start and end of each execution;
+ * outside of these calls, all allocations are delegated.
+ */
+@Getter
+public class StaticPlanMemoryMgr extends AbstractMemoryMgr {
+    public static final int DEFAULT_MAX_PLANS = 8;
+    public static final int DEFAULT_MAX_REPLANS = 3;
+    /**
+     * Alignment of each array within the arena, in bytes
+     */
+    public static final int ALIGNMENT_BYTES = 64;
+
+    private final SessionMemMgr delegate;
+    private final int maxPlans;
+    private final int maxReplans;
+
+    @Getter(AccessLevel.NONE)
+    private final LinkedHashMap<String, Plan> plans;
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Integer> replanCount = new HashMap<>();
+
+    //State for the current execution
+    @Getter(AccessLevel.NONE)
+    private String signature;
+    @Getter(AccessLevel.NONE)
+    private Plan current;
+    @Getter(AccessLevel.NONE)
+    private boolean valid;
+    @Getter(AccessLevel.NONE)
+    private Trace trace;
+    @Getter(AccessLevel.NONE)
+    private final Map<INDArray, Integer> liveIdx = new IdentityHashMap<>();
+    @Getter(AccessLevel.NONE)
+    private final Set<INDArray> planned = Collections.newSetFromMap(new IdentityHashMap<INDArray, Boolean>());
+
+    /**
+     * The plan used for the most recent execution, or built from it. May be null
+     */
+    private Plan lastPlan;
+
+    private long plannedAllocations;
+    private long dynamicAllocations;
+    private long planMismatches;
+
+    /**
+     * Create a static planning memory manager, delegating dynamic allocations to a new {@link ArrayCacheMemoryMgr}
+     */
+    public StaticPlanMemoryMgr() {
+        this(new ArrayCacheMemoryMgr());
+    }
+
+    /**
+     * @param delegate Memory manager to use for dynamic (unplanned) allocations
+     */
+    public StaticPlanMemoryMgr(@NonNull SessionMemMgr delegate) {
+        this(delegate, DEFAULT_MAX_PLANS, DEFAULT_MAX_REPLANS);
+    }
+
+    /**
+     * @param delegate   Memory manager to use for dynamic (unplanned) allocations
+     * @param maxPlans   Maximum number of input signatures to keep plans (and hence arenas) for. Least recently used
+     *                   plans are discarded first
+     * @param maxReplans Maximum number of times the plan for one signature is rebuilt after a trace mismatch, before
+     *                   static planning is disabled for that signature
+     */
+    public StaticPlanMemoryMgr(@NonNull SessionMemMgr delegate, int maxPlans, int maxReplans) {
+        Preconditions.checkArgument(maxPlans > 0, "Max plans must be > 0, got %s", maxPlans);
+        Preconditions.checkArgument(maxReplans >= 0, "Max replans must be >= 0, got %s", maxReplans);
+        this.delegate = delegate;
+        this.maxPlans = maxPlans;
+        this.maxReplans = maxReplans;
+        this.plans = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Start a new execution with the specified placeholder arrays. Any execution that was not ended (for example,
+     * due to an exception) is discarded without updating its plan
+     *
+     * @param placeholders Placeholder arrays for the execution. May be null
+     */
+    public synchronized void beginExecution(Map<String, INDArray> placeholders) {
+        resetExecution();
+        signature = signature(placeholders);
+        current = plans.get(signature);
+        valid = true;
+        trace = new Trace();
+        lastPlan = current;
+    }
+
+    /**
+     * End the current execution. If the execution did not follow the plan exactly (or there was no plan), a new plan
+     * is built from the recorded trace
+     */
+    public synchronized void endExecution() {
+        if (signature == null)
+            return;
+
+        boolean matched = current != null && valid && trace.numEvents == current.events.length;
+        if (!matched) {
+            if (current != null)
+                planMismatches++;
+            int count = replanCount.containsKey(signature) ? replanCount.get(signature) : 0;
+            if (current == null || count < maxReplans) {
+                if (current != null)
+                    replanCount.put(signature, count + 1);
+                Plan p = buildPlan(trace);
+                Plan old = plans.put(signature, p);
+                if (old != null)
+                    old.close();
+                lastPlan = p;
+                evictPlans();
+            } else {
+                //Trace is not stable for this signature - don't plan it any more
+                Plan old = plans.remove(signature);
+                if (old != null)
+                    old.close();
+                lastPlan = null;
+            }
+        }
+        resetExecution();
+    }
+
+    @Override
+    public synchronized INDArray allocate(boolean detached, DataType dataType, long... shape) {
+        return allocate(detached, dataType, shape, 'c');
+    }
+
+    @Override
+    public synchronized INDArray allocate(boolean detached, LongShapeDescriptor descriptor) {
+        if (detached || signature == null || descriptor.isEmpty() || descriptor.dataType() == DataType.UTF8) {
+            dynamicAllocations++;
+            return delegate.allocate(detached, descriptor);
+        }
+        return allocate(false, descriptor.dataType(), descriptor.getShape(), descriptor.getOrder());
+    }
+
+    protected INDArray allocate(boolean detached, DataType dataType, long[] shape, char order) {
+        long length = shape.length == 0 ? 1 : ArrayUtil.prod(shape);
+        if (detached || signature == null || length == 0 || dataType == DataType.UTF8) {
+            dynamicAllocations++;
+            return delegate.allocate(detached, dataType, shape);
+        }
+
+        int idx = trace.allocate(dataType, length);
+        INDArray out = null;
+        if (current != null && valid) {
+            int pos = trace.numEvents - 1;
+            if (pos < current.events.length && current.events[pos] == idx && current.dataTypes[idx] == dataType
+                    && current.lengths[idx] == length) {
+                if (current.offsets[idx] >= 0) {
+                    DataBuffer arena = current.arena(dataType);
+                    out = Nd4j.create(arena, shape, Nd4j.getStrides(shape, order), current.offsets[idx], order, dataType);
+                    planned.add(out);
+                    plannedAllocations++;
+                }
+            } else {
+                valid = false;
+            }
+        }
+
+        if (out == null) {
+            dynamicAllocations++;
+            out = order == 'c' ? delegate.allocate(false, dataType, shape) :
+                    delegate.allocate(false, LongShapeDescriptor.fromShape(shape, Nd4j.getStrides(shape, order), 1, order, dataType, false));
+        }
+        liveIdx.put(out, idx);
+        return out;
+    }
+
+    @Override
+    public synchronized void release(@NonNull INDArray array) {
+        Integer idx = liveIdx.remove(array);
+        if (idx != null) {
+            trace.release(idx);
+            if (current != null && valid) {
+                int pos = trace.numEvents - 1;
+                if (pos >= current.events.length || current.events[pos] != -(idx + 1))
+                    valid = false;
+            }
+        }
+
+        if (planned.remove(array)) {
+            //View of the arena - memory is reused in the next execution
+            return;
+        }
+        delegate.release(array);
+    }
+
+    /**
+     * @return Number of input signatures that currently have a plan
+     */
+    public synchronized int numPlans() {
+        return plans.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        resetExecution();
+        for (Plan p : plans.values()) {
+            p.close();
+        }
+        plans.clear();
+        replanCount.clear();
+        lastPlan = null;
+        delegate.close();
+    }
+
+    private void resetExecution() {
+        signature = null;
+        current = null;
+        trace = null;
+        valid = false;
+        liveIdx.clear();
+        planned.clear();
+    }
+
+    private void evictPlans() {
+        Iterator<Map.Entry<String, Plan>> iter = plans.entrySet().iterator();
+        while (plans.size() > maxPlans && iter.hasNext()) {
+            Map.Entry<String, Plan> e = iter.next();
+            if (e.getValue() == lastPlan)
+                continue;
+            e.getValue().close();
+            iter.remove();
+        }
+    }
+
+    protected static String signature(Map<String, INDArray> placeholders) {
+        if (placeholders == null || placeholders.isEmpty())
+            return "";
+        StringBuilder sb = new StringBuilder();
+        for (String s : new TreeSet<>(placeholders.keySet())) {
+            INDArray arr = placeholders.get(s);
+            sb.append(s).append(':');
+            if (arr != null) {
+                sb.append(arr.dataType()).append(Arrays.toString(arr.shape()));
+            }
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Build a plan from the recorded trace: each array that is released during the execution is assigned an offset in
+     * the arena for its datatype. Arrays are placed largest first, at the lowest aligned offset that doesn't overlap any
+     * already placed array with an overlapping lifetime
+     */
+    protected static Plan buildPlan(Trace trace) {
+        int n = trace.numAllocs;
+        long[] offsets = new long[n];
+        Arrays.fill(offsets, -1);
+        Map<DataType, List<Integer>> byType = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            if (trace.end[i] < 0)
+                continue;       //Never released: can't be planned
+            DataType dt = trace.dataTypes[i];
+            if (!byType.containsKey(dt))
+                byType.put(dt, new ArrayList<Integer>());
+            byType.get(dt).add(i);
+        }
+
+        Map<DataType, Long> arenaLengths = new HashMap<>();
+        long unpackedBytes = 0;
+        for (Map.Entry<DataType, List<Integer>> e : byType.entrySet()) {
+            DataType dt = e.getKey();
+            final long align = Math.max(1, ALIGNMENT_BYTES / dt.width());
+            List<Integer> idxs = e.getValue();
+            final long[] lengths = trace.lengths;
+            Collections.sort(idxs, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int c = Long.compare(lengths[b], lengths[a]);
+                    return c != 0 ? c : Integer.compare(a, b);
+                }
+            });
+
+            List<Integer> placed = new ArrayList<>();
+            long arenaLength = 0;
+            for (int i : idxs) {
+                long size = alignUp(lengths[i], align);
+                unpackedBytes += lengths[i] * dt.width();
+
+                //Find all placed arrays that are live at the same time as this one, in order of offset
+                List<long[]> conflicts = new ArrayList<>();
+                for (int j : placed) {
+                    if (trace.start[i] < trace.end[j] && trace.start[j] < trace.end[i]) {
+                        conflicts.add(new long[]{offsets[j], offsets[j] + alignUp(lengths[j], align)});
+                    }
+                }
+                Collections.sort(conflicts, new Comparator<long[]>() {
+                    @Override
+                    public int compare(long[] a, long[] b) {
+                        return Long.compare(a[0], b[0]);
+                    }
+                });
+
+                long offset = 0;
+                for (long[] c : conflicts) {
+                    if (offset + size <= c[0])
+                        break;
+                    offset = Math.max(offset, c[1]);
+                }
+                offsets[i] = offset;
+                placed.add(i);
+                arenaLength = Math.max(arenaLength, offset + size);
+            }
+            arenaLengths.put(dt, arenaLength);
+        }
+
+        return new Plan(Arrays.copyOf(trace.events, trace.numEvents), Arrays.copyOf(trace.dataTypes, n),
+                Arrays.copyOf(trace.lengths, n), offsets, arenaLengths, unpackedBytes);
+    }
+
+    private static long alignUp(long value, long align) {
+        return ((value + align - 1) / align) * align;
+    }
+
+    /**
+     * A memory plan for one input signature. Arena buffers are allocated lazily, on first use
+     */
+    @Getter
+    public static class Plan {
+        @Getter(AccessLevel.NONE)
+        private final int[] events;
+        @Getter(AccessLevel.NONE)
+        private final DataType[] dataTypes;
+        @Getter(AccessLevel.NONE)
+        private final long[] lengths;
+        @Getter(AccessLevel.NONE)
+        private final long[] offsets;
+        @Getter(AccessLevel.NONE)
+        private final Map<DataType, Long> arenaLengths;
+        @Getter(AccessLevel.NONE)
+        private final Map<DataType, DataBuffer> arenas = new HashMap<>();
+        /**
+         * Total size of all planned arrays, in bytes, if each had its own buffer
+         */
+        private final long unpackedBytes;
+        /**
+         * Total size of all arenas, in bytes
+         */
+        private final long arenaBytes;
+        private final int numPlanned;
+
+        protected Plan(int[] events, DataType[] dataTypes, long[] lengths, long[] offsets, Map<DataType, Long> arenaLengths,
+                       long unpackedBytes) {
+            this.events = events;
+            this.dataTypes = dataTypes;
+            this.lengths = lengths;
+            this.offsets = offsets;
+            this.arenaLengths = arenaLengths;
+            this.unpackedBytes = unpackedBytes;
+            long bytes = 0;
+            for (Map.Entry<DataType, Long> e : arenaLengths.entrySet()) {
+                bytes += e.getValue() * e.getKey().width();
+            }
+            this.arenaBytes = bytes;
+            int count = 0;
+            for (long l : offsets) {
+                if (l >= 0)
+                    count++;
+            }
+            this.numPlanned = count;
+        }
+
+        protected DataBuffer arena(DataType dataType) {
+            DataBuffer b = arenas.get(dataType);
+            if (b == null) {
+                b = Nd4j.createUninitializedDetached(dataType, arenaLengths.get(dataType)).data();
+                arenas.put(dataType, b);
+            }
+            return b;
+        }
+
+        protected void close() {
+            for (DataBuffer b : arenas.values()) {
+                if (b.closeable())
+                    b.close();
+            }
+            arenas.clear();
+        }
+    }
+
+    /**
+     * Recorded sequence of allocations and releases for one execution. Event values >= 0 are the allocation with that
+     * index; negative values -(i+1) are the release of allocation i
+     */
+    protected static class Trace {
+        private int[] events = new int[64];
+        private int numEvents;
+        private DataType[] dataTypes = new DataType[32];
+        private long[] lengths = new long[32];
+        private int[] start = new int[32];
+        private int[] end = new int[32];
+        private int numAllocs;
+
+        protected int allocate(DataType dataType, long length) {
+            if (numAllocs == dataTypes.length) {
+                int newSize = 2 * numAllocs;
+                dataTypes = Arrays.copyOf(dataTypes, newSize);
+                lengths = Arrays.copyOf(lengths, newSize);
+                start = Arrays.copyOf(start, newSize);
+                end = Arrays.copyOf(end, newSize);
+            }
+            int idx = numAllocs++;
+            dataTypes[idx] = dataType;
+            lengths[idx] = length;
+            start[idx] = numEvents;
+            end[idx] = -1;
+            addEvent(idx);
+            return idx;
+        }
+
+        protected void release(int idx) {
+            end[idx] = numEvents;
+            addEvent(-(idx + 1));
+        }
+
+        private void addEvent(int e) {
+            if (numEvents == events.length)
+                events = Arrays.copyOf(events, 2 * numEvents);
+            events[numEvents++] = e;
+        }
+    }
+}
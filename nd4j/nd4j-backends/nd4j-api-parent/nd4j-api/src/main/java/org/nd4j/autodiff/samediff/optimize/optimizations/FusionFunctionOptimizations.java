@@ -0,0 +1,285 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.optimize.optimizations;
+
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.ArrayHolder;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.autodiff.samediff.optimize.GraphOptimizer;
+import org.nd4j.autodiff.samediff.optimize.OptimizationHelper;
+import org.nd4j.autodiff.samediff.optimize.Optimizer;
+import org.nd4j.linalg.api.ops.BaseScalarOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BiasAdd;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.scalar.RectifiedLinear;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarAdd;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMultiplication;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarSubtraction;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.MulOp;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Sigmoid;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Swish;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This set of optimizations looks for chains of elementwise, scalar and broadcast ops and replaces them with a single
+ * fused op, so each chain makes one pass over memory (and allocates one output array) instead of one per op.
+ * This is mainly useful for inference on imported TF/ONNX models, where these patterns are common.<br>
+ * Only ops whose intermediate outputs are used by exactly one other op (and aren't loss variables or control
+ * dependencies) are fused. Note that these optimizations are not part of {@link GraphOptimizer#defaultOptimizations()}:
+ * fused intermediate variables are removed from the graph, so they can no longer be requested as outputs.
+ */
+public class FusionFunctionOptimizations extends BaseOptimizerSet {
+
+    /**
+     * Replace mmul(x, w) + b (or biasAdd(mmul(x, w), b)) with xw_plus_b(x, w, b), for rank 2 x and w, and rank 1 b
+     */
+    public static class FuseMatMulBiasAdd implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if (!(op.getOp() instanceof AddOp || op.getOp() instanceof BiasAdd) || op.getInputsToOp().size() != 2 || hasControlDeps(op))
+                return false;
+
+            //Bias may be either input for add, but must be the second input for biasAdd
+            for (int i = 0; i < 2; i++) {
+                if (i == 0 && op.getOp() instanceof BiasAdd)
+                    continue;
+                String mmulOut = op.getInputsToOp().get(1 - i);
+                String bName = op.getInputsToOp().get(i);
+                SameDiffOp mmul = producer(sd, mmulOut);
+                if (mmul == null || !(mmul.getOp() instanceof Mmul) || !isFusable(sd, mmulOut) || hasControlDeps(mmul))
+                    continue;
+                if (!isPlainMmul((Mmul) mmul.getOp()))
+                    continue;
+
+                String xName = mmul.getInputsToOp().get(0);
+                String wName = mmul.getInputsToOp().get(1);
+                long[] xShape = sd.getVariable(xName).getShape();
+                long[] wShape = sd.getVariable(wName).getShape();
+                long[] bShape = sd.getVariable(bName).getShape();
+                if (xShape == null || wShape == null || bShape == null || xShape.length != 2 || wShape.length != 2 ||
+                        bShape.length != 1 || bShape[0] != wShape[1])
+                    continue;
+                if (!sameDataTypes(sd, xName, wName, bName, mmulOut, op.getOutputsOfOp().get(0)))
+                    continue;
+
+                XwPlusB fused = new XwPlusB(sd, sd.getVariable(xName), sd.getVariable(wName), sd.getVariable(bName));
+                replaceWithFused(sd, Arrays.asList(mmul, op), fused);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Replace relu(xw_plus_b(x, w, b)) with relu_layer(x, w, b)
+     */
+    public static class FuseXwPlusBRelu implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if (!(op.getOp() instanceof RectifiedLinear) || op.getInputsToOp().size() != 1 || hasControlDeps(op))
+                return false;
+            if (((RectifiedLinear) op.getOp()).scalar().getDouble(0) != 0.0)
+                return false;
+
+            String in = op.getInputsToOp().get(0);
+            SameDiffOp xwb = producer(sd, in);
+            if (xwb == null || xwb.getOp().getClass() != XwPlusB.class || ((XwPlusB) xwb.getOp()).numIArguments() > 0 ||
+                    xwb.getInputsToOp().size() != 3 || !isFusable(sd, in) || hasControlDeps(xwb))
+                return false;
+            if (!sameDataTypes(sd, in, op.getOutputsOfOp().get(0)))
+                return false;
+
+            List<String> inputs = xwb.getInputsToOp();
+            ReluLayer fused = new ReluLayer(sd, sd.getVariable(inputs.get(0)), sd.getVariable(inputs.get(1)), sd.getVariable(inputs.get(2)));
+            replaceWithFused(sd, Arrays.asList(xwb, op), fused);
+            return true;
+        }
+    }
+
+    /**
+     * Replace x * sigmoid(x) (or sigmoid(x) * x) with swish(x)
+     */
+    public static class FuseSwish implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if (!(op.getOp() instanceof MulOp) || op.getInputsToOp().size() != 2 || hasControlDeps(op))
+                return false;
+
+            for (int i = 0; i < 2; i++) {
+                String sigOut = op.getInputsToOp().get(i);
+                String xName = op.getInputsToOp().get(1 - i);
+                SameDiffOp sig = producer(sd, sigOut);
+                if (sig == null || !(sig.getOp() instanceof Sigmoid) || sig.getInputsToOp().size() != 1 ||
+                        !xName.equals(sig.getInputsToOp().get(0)) || !isFusable(sd, sigOut) || hasControlDeps(sig))
+                    continue;
+                if (!sameDataTypes(sd, xName, sigOut, op.getOutputsOfOp().get(0)))
+                    continue;
+
+                Swish fused = new Swish(sd, sd.getVariable(xName));
+                replaceWithFused(sd, Arrays.asList(sig, op), fused);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Merge consecutive scalar add/subtract ops, and consecutive scalar multiply ops, into a single scalar op:
+     * (x + a) - b becomes x + (a - b), and (x * a) * b becomes x * (a * b)
+     */
+    public static class MergeScalarOps implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            DifferentialFunction df = op.getOp();
+            if (!isMergeableScalarOp(df) || op.getInputsToOp().size() != 1 || hasControlDeps(op))
+                return false;
+
+            String in = op.getInputsToOp().get(0);
+            SameDiffOp first = producer(sd, in);
+            if (first == null || !isMergeableScalarOp(first.getOp()) || first.getInputsToOp().size() != 1 ||
+                    !isFusable(sd, in) || hasControlDeps(first))
+                return false;
+
+            boolean mul1 = first.getOp() instanceof ScalarMultiplication;
+            boolean mul2 = df instanceof ScalarMultiplication;
+            if (mul1 != mul2)
+                return false;
+
+            String xName = first.getInputsToOp().get(0);
+            if (!sameDataTypes(sd, xName, in, op.getOutputsOfOp().get(0)))
+                return false;
+
+            double a = signedScalar(first.getOp());
+            double b = signedScalar(df);
+            SDVariable x = sd.getVariable(xName);
+            DifferentialFunction fused = mul1 ? new ScalarMultiplication(sd, x, a * b) : new ScalarAdd(sd, x, a + b, false);
+            replaceWithFused(sd, Arrays.asList(first, op), fused);
+            return true;
+        }
+
+        protected static boolean isMergeableScalarOp(DifferentialFunction df) {
+            //Note exact class checks: subclasses may have different semantics
+            Class<?> c = df.getClass();
+            return c == ScalarAdd.class || c == ScalarSubtraction.class || c == ScalarMultiplication.class;
+        }
+
+        protected static double signedScalar(DifferentialFunction df) {
+            double d = ((BaseScalarOp) df).scalar().getDouble(0);
+            return df instanceof ScalarSubtraction ? -d : d;
+        }
+    }
+
+
+    /**
+     * Replace the specified chain of ops with the (already created) fused op. The fused op takes over the output
+     * variable of the last op in the chain; all intermediate variables are removed
+     *
+     * @param chain Ops to replace, in execution order. Each op (other than the last) must have exactly one output
+     * @param fused Fused op, already added to the SameDiff instance with its inputs
+     */
+    protected static void replaceWithFused(SameDiff sd, List<SameDiffOp> chain, DifferentialFunction fused) {
+        SameDiffOp last = chain.get(chain.size() - 1);
+        String outName = last.getOutputsOfOp().get(0);
+
+        List<String> intermediates = new ArrayList<>();
+        for (int i = 0; i < chain.size() - 1; i++) {
+            intermediates.addAll(chain.get(i).getOutputsOfOp());
+        }
+
+        for (SameDiffOp o : chain) {
+            OptimizationUtils.removeOp(sd, o.getName());
+        }
+        for (String s : intermediates) {
+            OptimizationUtils.removeVariable(sd, s);
+        }
+
+        SameDiffOp fusedOp = sd.getOps().get(fused.getOwnName());
+        fusedOp.setOutputsOfOp(new ArrayList<>(Collections.singletonList(outName)));
+        sd.getVariables().get(outName).setOutputOfOp(fused.getOwnName());
+    }
+
+    /**
+     * @return The op that produces the specified variable, or null if it's not an op output
+     */
+    protected static SameDiffOp producer(SameDiff sd, String varName) {
+        Variable v = sd.getVariables().get(varName);
+        if (v == null || v.getOutputOfOp() == null)
+            return null;
+        SameDiffOp op = sd.getOps().get(v.getOutputOfOp());
+        if (op == null || op.getOutputsOfOp() == null || op.getOutputsOfOp().size() != 1)
+            return null;
+        return op;
+    }
+
+    /**
+     * An intermediate variable can be fused away only if it's an array type variable that is used as an input to
+     * exactly one op, and is not a loss variable or part of any control dependency
+     */
+    protected static boolean isFusable(SameDiff sd, String varName) {
+        Variable v = sd.getVariables().get(varName);
+        if (v == null || v.getVariable().getVariableType() != VariableType.ARRAY)
+            return false;
+        if (v.getInputsForOp() == null || v.getInputsForOp().size() != 1)
+            return false;
+        SameDiffOp consumer = sd.getOps().get(v.getInputsForOp().get(0));
+        if (consumer == null || Collections.frequency(consumer.getInputsToOp(), varName) != 1)
+            return false;
+        return isEmpty(v.getControlDeps()) && isEmpty(v.getControlDepsForOp()) && isEmpty(v.getControlDepsForVar()) &&
+                !sd.getLossVariables().contains(varName);
+    }
+
+    protected static boolean hasControlDeps(SameDiffOp op) {
+        return !isEmpty(op.getControlDeps()) || !isEmpty(op.getVarControlDeps()) || !isEmpty(op.getControlDepFor());
+    }
+
+    protected static boolean isPlainMmul(Mmul mmul) {
+        //No transposes, alpha = 1 and beta = 0
+        for (long l : mmul.iArgs()) {
+            if (l != 0)
+                return false;
+        }
+        double[] t = mmul.tArgs();
+        return t == null || t.length == 0 || (t.length == 2 && t[0] == 1.0 && t[1] == 0.0);
+    }
+
+    protected static boolean sameDataTypes(SameDiff sd, String... varNames) {
+        for (int i = 1; i < varNames.length; i++) {
+            if (sd.getVariable(varNames[i]).dataType() != sd.getVariable(varNames[0]).dataType())
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isEmpty(List<String> l) {
+        return l == null || l.isEmpty();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.quantization;
+
+import lombok.NonNull;
+import org.nd4j.autodiff.listeners.At;
+import org.nd4j.autodiff.listeners.BaseListener;
+import org.nd4j.autodiff.listeners.Operation;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.OpContext;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A listener that records the minimum and maximum values of the activations (input 0) of the ops that
+ * {@link PostTrainingQuantizer} quantizes, over all inference calls it is active for.<br>
+ * Ranges are keyed by the name of the activation variable.
+ */
+public class CalibrationListener extends BaseListener {
+
+    private final Set<String> opNames;
+    private final Map<String, double[]> ranges = new HashMap<>();
+
+    /**
+     * @param opNames Names of the ops to record input activation ranges for
+     */
+    public CalibrationListener(@NonNull Set<String> opNames) {
+        this.opNames = opNames;
+    }
+
+    @Override
+    public boolean isActive(Operation operation) {
+        return operation == Operation.INFERENCE || operation == Operation.EVALUATION;
+    }
+
+    @Override
+    public void preOpExecution(SameDiff sd, At at, SameDiffOp op, OpContext opContext) {
+        if (!opNames.contains(op.getName()) || opContext == null || opContext.numInputArguments() == 0)
+            return;
+
+        INDArray in = opContext.getInputArray(0);
+        if (in == null || in.isEmpty() || !in.dataType().isFPType())
+            return;
+
+        String name = op.getInputsToOp().get(0);
+        double min = in.minNumber().doubleValue();
+        double max = in.maxNumber().doubleValue();
+        synchronized (ranges) {
+            double[] r = ranges.get(name);
+            if (r == null) {
+                ranges.put(name, new double[]{min, max});
+            } else {
+                r[0] = Math.min(r[0], min);
+                r[1] = Math.max(r[1], max);
+            }
+        }
+    }
+
+    /**
+     * @return Activation ranges recorded so far, as [min, max] keyed by variable name
+     */
+    public Map<String, double[]> getRanges() {
+        synchronized (ranges) {
+            Map<String, double[]> out = new HashMap<>();
+            for (Map.Entry<String, double[]> e : ranges.entrySet()) {
+                out.put(e.getKey(), e.getValue().clone());
+            }
+            return Collections.unmodifiableMap(out);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.quantization;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastDivOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastMulOp;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+/**
+ * Symmetric, per-channel INT8 quantization of weight arrays.<br>
+ * For each channel c (index along the channel dimension), scale[c] = max(abs(w[c])) / 127 and
+ * q = round(w / scale), so that w is approximately q * scale with q in the range [-127, 127].
+ */
+public class Int8Quantization {
+    public static final int INT8_MAX = 127;
+
+    private Int8Quantization() { }
+
+    /**
+     * Quantize the specified floating point array to INT8, with one scale per channel
+     *
+     * @param w          Array to quantize
+     * @param channelDim Dimension of the channels - for example, 1 for [nIn, nOut] dense weights
+     * @return Quantized array
+     */
+    public static QuantizedArray quantizePerChannel(@NonNull INDArray w, int channelDim) {
+        Preconditions.checkArgument(w.dataType().isFPType(), "Can only quantize floating point arrays, got %s", w.dataType());
+        Preconditions.checkArgument(channelDim >= 0 && channelDim < w.rank(), "Invalid channel dimension %s for array of rank %s",
+                channelDim, w.rank());
+
+        int[] reduceDims = new int[w.rank() - 1];
+        for (int i = 0, j = 0; i < w.rank(); i++) {
+            if (i != channelDim)
+                reduceDims[j++] = i;
+        }
+
+        INDArray absMax = reduceDims.length == 0 ? Transforms.abs(w, true) : w.amax(reduceDims);
+        INDArray scales = Transforms.max(absMax.castTo(DataType.FLOAT).divi(INT8_MAX), Float.MIN_NORMAL, false);
+
+        INDArray scaled = Nd4j.createUninitialized(DataType.FLOAT, w.shape(), w.ordering());
+        Nd4j.exec(new BroadcastDivOp(w.castTo(DataType.FLOAT), scales, scaled, channelDim));
+        INDArray values = Transforms.round(scaled, false).castTo(DataType.INT8);
+
+        return new QuantizedArray(values, scales.reshape(broadcastShape(w.rank(), channelDim, scales.length())), channelDim, w.dataType());
+    }
+
+    /**
+     * Dequantize the array: values * scale, in the original datatype
+     */
+    public static INDArray dequantize(@NonNull QuantizedArray q) {
+        INDArray values = q.getValues().castTo(DataType.FLOAT);
+        INDArray out = Nd4j.createUninitialized(DataType.FLOAT, values.shape(), values.ordering());
+        Nd4j.exec(new BroadcastMulOp(values, q.getScales().reshape(q.getScales().length()), out, q.getChannelDim()));
+        return out.castTo(q.getDataType());
+    }
+
+    /**
+     * Quantize then dequantize the array - i.e., the values that the quantized array represents
+     */
+    public static INDArray quantizeDequantize(@NonNull INDArray w, int channelDim) {
+        return dequantize(quantizePerChannel(w, channelDim));
+    }
+
+    /**
+     * @return Shape [1, ..., n, ..., 1] of the specified rank, with n at the channel dimension
+     */
+    public static long[] broadcastShape(int rank, int channelDim, long n) {
+        long[] shape = new long[rank];
+        for (int i = 0; i < rank; i++) {
+            shape[i] = (i == channelDim ? n : 1);
+        }
+        return shape;
+    }
+
+    /**
+     * An INT8 array with per-channel FLOAT scales. Scales have shape [1, ..., nChannels, ..., 1], so they can be
+     * broadcast directly against the values
+     */
+    @Data
+    @AllArgsConstructor
+    public static class QuantizedArray {
+        private INDArray values;
+        private INDArray scales;
+        private int channelDim;
+        private DataType dataType;
+
+        /**
+         * @return Size of the values and scales, in bytes
+         */
+        public long sizeBytes() {
+            return values.length() * values.dataType().width() + scales.length() * scales.dataType().width();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.quantization;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.optimize.optimizations.OptimizationUtils;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.enums.WeightsFormat;
+import org.nd4j.evaluation.classification.Evaluation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.FakeQuantWithMinMaxVars;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+
+/**
+ * Calibration-driven, post-training INT8 quantization for SameDiff graphs.<br>
+ * The weights of matrix multiplication ({@link Mmul}, {@link XwPlusB} and subclasses) and {@link Conv2D} ops are
+ * quantized to INT8 with one FLOAT scale per output channel (see {@link Int8Quantization}), which reduces their size by
+ * approximately 4x. libnd4j does not (yet) provide INT8 GEMM or convolution kernels, so the quantized graph dequantizes
+ * the weights (cast + scale) before each quantized op, and the op itself executes in floating point.<br>
+ * Optionally, the activations input to the quantized ops can also be quantized (simulated, via fake_quant ops) using the
+ * ranges collected by {@link #calibrate(SameDiff, DataSetIterator)}, to measure the accuracy impact of INT8 activations.<br>
+ * <br>
+ * Typical usage:
+ * <pre>
+ * {@code
+ * PostTrainingQuantizer q = PostTrainingQuantizer.builder().build();
+ * Map<String,double[]> ranges = q.calibrate(sd, calibrationData);
+ * SameDiff quantized = q.quantize(sd, ranges);
+ * QuantizationReport r = q.evaluate(sd, quantized, testData, "softmax");
+ * }
+ * </pre>
+ * Calibration and evaluation use the SameDiff instance's {@link org.nd4j.autodiff.samediff.TrainingConfig} to map
+ * DataSet features and labels to placeholders.
+ */
+@Slf4j
+@Getter
+@Builder
+public class PostTrainingQuantizer {
+    public static final long DEFAULT_MIN_ELEMENTS = 1024;
+    public static final String INT8_SUFFIX = "_int8";
+    public static final String SCALE_SUFFIX = "_scale";
+    public static final String DEQUANTIZED_SUFFIX = "_dequantized";
+
+    /**
+     * Weights with fewer elements than this are not quantized
+     */
+    @Builder.Default
+    private long minElements = DEFAULT_MIN_ELEMENTS;
+    /**
+     * If true (and activation ranges are provided), simulate INT8 quantization of the activations that are input to
+     * the quantized ops
+     */
+    @Builder.Default
+    private boolean quantizeActivations = false;
+
+    /**
+     * Collect the ranges of the activations input to all quantizable ops, over all examples in the iterator
+     *
+     * @param sd       SameDiff instance to calibrate
+     * @param iterator Calibration data. Should be representative of the data the model will be used for
+     * @return Activation ranges as [min, max] keyed by variable name
+     */
+    public Map<String, double[]> calibrate(@NonNull SameDiff sd, @NonNull DataSetIterator iterator) {
+        Preconditions.checkState(sd.getTrainingConfig() != null, "SameDiff instance must have a TrainingConfig set " +
+                "(for the DataSet feature mapping) for calibration");
+        Set<String> opNames = new HashSet<>();
+        Set<String> outputs = new LinkedHashSet<>();
+        for (SameDiffOp op : sd.getOps().values()) {
+            if (weightChannelDim(sd, op) >= 0) {
+                opNames.add(op.getName());
+                outputs.addAll(op.getOutputsOfOp());
+            }
+        }
+        if (opNames.isEmpty())
+            return Collections.emptyMap();
+
+        CalibrationListener l = new CalibrationListener(opNames);
+        String[] outArr = outputs.toArray(new String[0]);
+        if (iterator.resetSupported())
+            iterator.reset();
+        while (iterator.hasNext()) {
+            DataSet ds = iterator.next();
+            sd.output().data(ds).output(outArr).listeners(l).exec();
+        }
+        return l.getRanges();
+    }
+
+    /**
+     * As per {@link #quantize(SameDiff, Map)} without activation ranges - i.e., weights only
+     */
+    public SameDiff quantize(@NonNull SameDiff sd) {
+        return quantize(sd, null);
+    }
+
+    /**
+     * Create a quantized copy of the specified SameDiff instance. The original instance is not modified.
+     *
+     * @param sd               SameDiff instance to quantize
+     * @param activationRanges Activation ranges, from {@link #calibrate(SameDiff, DataSetIterator)}. Only used if
+     *                         {@link #isQuantizeActivations()} is true. May be null
+     * @return Quantized SameDiff instance
+     */
+    public SameDiff quantize(@NonNull SameDiff sd, Map<String, double[]> activationRanges) {
+        SameDiff out = sd.dup();
+        if (out.getTrainingConfig() == null && sd.getTrainingConfig() != null)
+            out.setTrainingConfig(sd.getTrainingConfig());
+
+        Map<String, SDVariable> dequantized = new HashMap<>();
+        Map<String, SDVariable> fakeQuantized = new HashMap<>();
+        for (SameDiffOp op : new ArrayList<>(out.getOps().values())) {
+            int channelDim = weightChannelDim(out, op);
+            if (channelDim < 0)
+                continue;
+
+            String wName = op.getInputsToOp().get(1);
+            if (!dequantized.containsKey(wName)) {
+                INDArray w = out.getVariable(wName).getArr();
+                if (w.length() < minElements)
+                    continue;
+                dequantized.put(wName, replaceWeight(out, wName, w, channelDim));
+            }
+
+            String xName = op.getInputsToOp().get(0);
+            if (quantizeActivations && activationRanges != null && activationRanges.containsKey(xName) &&
+                    out.getVariable(xName).dataType() == DataType.FLOAT) {
+                SDVariable fq = fakeQuantized.get(xName);
+                if (fq == null) {
+                    double[] r = activationRanges.get(xName);
+                    SDVariable min = out.constant(uniqueName(out, xName + "_min"), Nd4j.createFromArray((float) Math.min(r[0], 0.0)));
+                    SDVariable max = out.constant(uniqueName(out, xName + "_max"), Nd4j.createFromArray((float) Math.max(r[1], 0.0)));
+                    fq = new FakeQuantWithMinMaxVars(out, out.getVariable(xName), min, max, false, 8).outputVariable();
+                    fakeQuantized.put(xName, fq);
+                }
+                op.getOp().replaceArg(0, fq);
+            }
+        }
+
+        log.info("Quantized {} weight arrays to INT8", dequantized.size());
+        return out;
+    }
+
+    /**
+     * Evaluate the FP32 and quantized models on the same data, using {@link Evaluation}
+     *
+     * @param fp32           Original model
+     * @param quantized      Quantized model, from {@link #quantize(SameDiff, Map)}
+     * @param iterator       Test data. Must support reset
+     * @param outputVariable Name of the output (predictions) variable
+     * @return Report comparing the two models
+     */
+    public QuantizationReport evaluate(@NonNull SameDiff fp32, @NonNull SameDiff quantized, @NonNull DataSetIterator iterator,
+                                       @NonNull String outputVariable) {
+        Preconditions.checkArgument(iterator.resetSupported(), "Iterator must support reset for evaluating both models");
+        iterator.reset();
+        Evaluation e1 = new Evaluation();
+        fp32.evaluate(iterator, outputVariable, e1);
+        iterator.reset();
+        Evaluation e2 = new Evaluation();
+        quantized.evaluate(iterator, outputVariable, e2);
+        return new QuantizationReport(e1, e2, arrayBytes(fp32), arrayBytes(quantized));
+    }
+
+    /**
+     * Get the channel dimension of the weights for the specified op, or -1 if the op can't be quantized: i.e., it's not
+     * a supported op type, or its weights are not a floating point variable or constant
+     */
+    public static int weightChannelDim(@NonNull SameDiff sd, @NonNull SameDiffOp op) {
+        DifferentialFunction df = op.getOp();
+        List<String> inputs = op.getInputsToOp();
+        if (inputs == null || inputs.size() < 2)
+            return -1;
+
+        SDVariable w = sd.getVariable(inputs.get(1));
+        if (w == null || (w.getVariableType() != VariableType.VARIABLE && w.getVariableType() != VariableType.CONSTANT))
+            return -1;
+        INDArray arr = w.getArr();
+        if (arr == null || !arr.dataType().isFPType())
+            return -1;
+
+        if (df instanceof Mmul) {
+            long[] iArgs = ((Mmul) df).iArgs();
+            boolean transposeW = iArgs.length > 1 && iArgs[1] != 0;
+            boolean transposeResult = iArgs.length > 2 && iArgs[2] != 0;
+            if (arr.rank() != 2 || transposeResult)
+                return -1;
+            return transposeW ? 0 : 1;
+        } else if (df instanceof XwPlusB) {
+            if (arr.rank() != 2 || ((XwPlusB) df).numIArguments() > 0)
+                return -1;
+            return 1;
+        } else if (df instanceof Conv2D) {
+            if (arr.rank() != 4)
+                return -1;
+            Conv2D c2d = (Conv2D) df;
+            WeightsFormat wf = null;
+            if (c2d.getConfig() != null) {
+                wf = c2d.getConfig().getWeightsFormat();
+            } else if (c2d.numIArguments() > 10) {
+                wf = WeightsFormat.values()[(int) c2d.iArgs()[10]];
+            }
+            return wf == null || wf == WeightsFormat.YXIO ? 3 : 0;
+        }
+        return -1;
+    }
+
+    protected static SDVariable replaceWeight(SameDiff sd, String wName, INDArray w, int channelDim) {
+        VariableType type = sd.getVariable(wName).getVariableType();
+        Int8Quantization.QuantizedArray q = Int8Quantization.quantizePerChannel(w, channelDim);
+
+        SDVariable values = sd.constant(uniqueName(sd, wName + INT8_SUFFIX), q.getValues());
+        SDVariable scales = sd.constant(uniqueName(sd, wName + SCALE_SUFFIX), q.getScales());
+        if (w.dataType() != DataType.FLOAT)
+            scales = scales.castTo(w.dataType());
+        SDVariable deq = values.castTo(w.dataType()).mul(uniqueName(sd, wName + DEQUANTIZED_SUFFIX), scales);
+
+        //Rewire all uses of the original weights to the dequantized weights, then remove the original
+        OptimizationUtils.replaceOpInputsWith(sd, wName, deq.name());
+        OptimizationUtils.removeVariable(sd, wName);
+        if (type == VariableType.VARIABLE) {
+            sd.getVariablesArrays().removeArray(wName);
+        } else {
+            sd.getConstantArrays().removeArray(wName);
+        }
+        return deq;
+    }
+
+    protected static String uniqueName(SameDiff sd, String base) {
+        String name = base;
+        int i = 1;
+        while (sd.hasVariable(name)) {
+            name = base + "_" + (i++);
+        }
+        return name;
+    }
+
+    /**
+     * @return Total size of all VARIABLE and CONSTANT arrays, in bytes
+     */
+    public static long arrayBytes(@NonNull SameDiff sd) {
+        long bytes = 0;
+        for (SDVariable v : sd.variables()) {
+            if (v.getVariableType() == VariableType.VARIABLE || v.getVariableType() == VariableType.CONSTANT) {
+                INDArray arr = v.getArr();
+                if (arr != null && !arr.isEmpty() && arr.dataType() != DataType.UTF8)
+                    bytes += arr.length() * arr.dataType().width();
+            }
+        }
+        return bytes;
+    }
+}
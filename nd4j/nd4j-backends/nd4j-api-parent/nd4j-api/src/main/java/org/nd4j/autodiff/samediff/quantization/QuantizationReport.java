@@ -0,0 +1,74 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.quantization;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.nd4j.evaluation.classification.Evaluation;
+
+/**
+ * Accuracy and memory comparison between an FP32 model and its quantized counterpart, as returned by
+ * {@link PostTrainingQuantizer#evaluate(org.nd4j.autodiff.samediff.SameDiff, org.nd4j.autodiff.samediff.SameDiff,
+ * org.nd4j.linalg.dataset.api.iterator.DataSetIterator, String)}
+ */
+@Data
+@AllArgsConstructor
+public class QuantizationReport {
+
+    private Evaluation fp32Evaluation;
+    private Evaluation quantizedEvaluation;
+    /**
+     * Total size of all parameter and constant arrays in the FP32 model, in bytes
+     */
+    private long fp32Bytes;
+    /**
+     * Total size of all parameter and constant arrays in the quantized model, in bytes
+     */
+    private long quantizedBytes;
+
+    /**
+     * @return Quantized accuracy minus FP32 accuracy
+     */
+    public double accuracyChange() {
+        return quantizedEvaluation.accuracy() - fp32Evaluation.accuracy();
+    }
+
+    /**
+     * @return FP32 size divided by quantized size
+     */
+    public double compressionRatio() {
+        return quantizedBytes == 0 ? 0.0 : fp32Bytes / (double) quantizedBytes;
+    }
+
+    public String stats() {
+        return String.format("Accuracy: %.4f (FP32) vs. %.4f (INT8), change %+.4f%n" +
+                        "F1:       %.4f (FP32) vs. %.4f (INT8)%n" +
+                        "Size:     %d bytes (FP32) vs. %d bytes (INT8), ratio %.2fx",
+                fp32Evaluation.accuracy(), quantizedEvaluation.accuracy(), accuracyChange(),
+                fp32Evaluation.f1(), quantizedEvaluation.f1(),
+                fp32Bytes, quantizedBytes, compressionRatio());
+    }
+
+    @Override
+    public String toString() {
+        return stats();
+    }
+}
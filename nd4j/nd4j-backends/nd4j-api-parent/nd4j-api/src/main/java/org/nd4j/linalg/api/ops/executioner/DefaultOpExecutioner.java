@@ -25,6 +25,7 @@ import lombok.val;
 import org.bytedeco.javacpp.Pointer;
 import org.nd4j.autodiff.functions.DifferentialFunction;
 import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.config.ND4JSystemProperties;
 import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.environment.Nd4jEnvironment;
@@ -64,6 +65,10 @@ public abstract class DefaultOpExecutioner implements OpExecutioner {
 
     protected AtomicBoolean verbose = new AtomicBoolean(false);
     protected AtomicBoolean debug = new AtomicBoolean(false);
+    protected AtomicBoolean smallArrayFastPath = new AtomicBoolean(Boolean.parseBoolean(
+            System.getProperty(ND4JSystemProperties.SMALL_ARRAY_FAST_PATH, "false")));
+    protected volatile long smallArrayThreshold = Long.parseLong(
+            System.getProperty(ND4JSystemProperties.SMALL_ARRAY_FAST_PATH_THRESHOLD, "8192"));
 
     public DefaultOpExecutioner() {}
 
@@ -835,6 +840,27 @@ public abstract class DefaultOpExecutioner implements OpExecutioner {
         // no-op
     }
 
+    @Override
+    public void enableSmallArrayFastPath(boolean reallyEnable) {
+        smallArrayFastPath.set(reallyEnable);
+    }
+
+    @Override
+    public boolean isSmallArrayFastPath() {
+        return smallArrayFastPath.get();
+    }
+
+    @Override
+    public void setSmallArrayThreshold(long maxLength) {
+        Preconditions.checkArgument(maxLength > 0, "Small array threshold must be positive, got %s", maxLength);
+        this.smallArrayThreshold = maxLength;
+    }
+
+    @Override
+    public long getSmallArrayThreshold() {
+        return smallArrayThreshold;
+    }
+
     @Override
     public boolean isVerbose() {
         return verbose.get();
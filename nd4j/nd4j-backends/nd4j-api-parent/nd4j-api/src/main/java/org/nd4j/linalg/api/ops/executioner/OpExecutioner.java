@@ -409,6 +409,35 @@ public interface OpExecutioner {
      */
     void setTadThreshold(int threshold);
 
+    /**
+     * This method enables or disables the low overhead execution path for custom ops on small arrays.
+     * When enabled, ops where every input and output has at most {@link #getSmallArrayThreshold()} elements
+     * reuse a per-thread op context and skip work that only matters for large arrays.
+     * Only {@link #exec(CustomOp)} uses this path: legacy ops (transform, scalar, reduce, etc.) executed via
+     * {@link #exec(Op)} are not affected by this setting.
+     * Backends without such a path ignore this setting.
+     *
+     * Default value: false, unless set via the {@code org.nd4j.executioner.smallarrayfastpath} system property
+     * @param reallyEnable
+     */
+    void enableSmallArrayFastPath(boolean reallyEnable);
+
+    /**
+     * @return True if the small array fast path is enabled
+     */
+    boolean isSmallArrayFastPath();
+
+    /**
+     * This method sets the maximum number of elements an input or output array may have
+     * for an op to be executed via the small array fast path.
+     *
+     * Default value: 8192
+     * @param maxLength
+     */
+    void setSmallArrayThreshold(long maxLength);
+
+    long getSmallArrayThreshold();
+
     /**
      * This method extracts String from Utf8Buffer
      * @param buffer
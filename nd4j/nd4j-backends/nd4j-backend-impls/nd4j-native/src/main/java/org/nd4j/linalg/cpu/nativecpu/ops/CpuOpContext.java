@@ -44,6 +44,12 @@ public class CpuOpContext extends BaseOpContext implements OpContext, Deallocata
     private OpaqueContext context = nativeOps.createGraphContext(1);
     private final transient long id = Nd4j.getDeallocatorService().nextValue();
 
+    // argument pointers are kept between calls: the native context copies the values, so these can be reused
+    private LongPointer iArgsPointer;
+    private DoublePointer tArgsPointer;
+    private BooleanPointer bArgsPointer;
+    private IntPointer dArgsPointer;
+
     public CpuOpContext() {
         Nd4j.getDeallocatorService().pickObject(this);
     }
@@ -55,38 +61,57 @@ public class CpuOpContext extends BaseOpContext implements OpContext, Deallocata
 
     @Override
     public void setIArguments(long... arguments) {
-        if (arguments.length > 0) {
+        // arguments left over from a previous op need to be cleared if this context is reused
+        if (arguments.length > 0 || numIArguments() > 0) {
             super.setIArguments(arguments);
-            nativeOps.setGraphContextIArguments(context, new LongPointer(arguments), arguments.length);
+            if (arguments.length > 0) {
+                if (iArgsPointer == null || iArgsPointer.capacity() < arguments.length)
+                    iArgsPointer = new LongPointer(arguments.length);
+                iArgsPointer.put(arguments);
+            }
+            nativeOps.setGraphContextIArguments(context, iArgsPointer, arguments.length);
         }
     }
 
     @Override
     public void setBArguments(boolean... arguments) {
-        if (arguments.length > 0) {
+        if (arguments.length > 0 || numBArguments() > 0) {
             super.setBArguments(arguments);
-            nativeOps.setGraphContextBArguments(context, new BooleanPointer(arguments), arguments.length);
+            if (arguments.length > 0) {
+                if (bArgsPointer == null || bArgsPointer.capacity() < arguments.length)
+                    bArgsPointer = new BooleanPointer(arguments.length);
+                for (int e = 0; e < arguments.length; e++)
+                    bArgsPointer.put(e, arguments[e]);
+            }
+            nativeOps.setGraphContextBArguments(context, bArgsPointer, arguments.length);
         }
     }
 
     @Override
     public void setTArguments(double... arguments) {
-        if (arguments.length > 0) {
+        if (arguments.length > 0 || numTArguments() > 0) {
             super.setTArguments(arguments);
-            nativeOps.setGraphContextTArguments(context, new DoublePointer(arguments), arguments.length);
-        };
+            if (arguments.length > 0) {
+                if (tArgsPointer == null || tArgsPointer.capacity() < arguments.length)
+                    tArgsPointer = new DoublePointer(arguments.length);
+                tArgsPointer.put(arguments);
+            }
+            nativeOps.setGraphContextTArguments(context, tArgsPointer, arguments.length);
+        }
     }
 
     @Override
     public void setDArguments(DataType... arguments) {
-        if (arguments.length > 0) {
+        if (arguments.length > 0 || numDArguments() > 0) {
             super.setDArguments(arguments);
-            val args = new int[arguments.length];
-            for (int e = 0; e < arguments.length; e++)
-                args[e] = arguments[e].toInt();
-
-            nativeOps.setGraphContextDArguments(context, new IntPointer(args), arguments.length);
-        };
+            if (arguments.length > 0) {
+                if (dArgsPointer == null || dArgsPointer.capacity() < arguments.length)
+                    dArgsPointer = new IntPointer(arguments.length);
+                for (int e = 0; e < arguments.length; e++)
+                    dArgsPointer.put(e, arguments[e].toInt());
+            }
+            nativeOps.setGraphContextDArguments(context, dArgsPointer, arguments.length);
+        }
     }
 
     @Override
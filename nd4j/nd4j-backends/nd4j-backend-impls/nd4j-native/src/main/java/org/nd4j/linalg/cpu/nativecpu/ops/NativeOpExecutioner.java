@@ -91,6 +91,10 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
     private ThreadLocal<Map<Integer,DoublePointer>> tArgsPointer = new ThreadLocal<>();
     private ThreadLocal<Map<Integer,BooleanPointer>> bArgsPointer = new ThreadLocal<>();
     private ThreadLocal<Map<Integer,ShortPointer>> halfArgsPointer = new ThreadLocal<>();
+    private ThreadLocal<Map<Integer,IntPointer>> dArgsPointer = new ThreadLocal<>();
+
+    //op context reused by exec(CustomOp) for small arrays, see execSmall(CustomOp, boolean)
+    private ThreadLocal<CpuOpContext> smallOpContext = new ThreadLocal<>();
 
     protected Map<String, CustomOpDescriptor> customOps = null;
 
@@ -1466,6 +1470,23 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
     }
 
 
+    private IntPointer getIntPointerFrom(ThreadLocal<Map<Integer,IntPointer>> map,int numArguments) {
+        if(map.get() == null) {
+            Map<Integer,IntPointer> store = new HashMap<>();
+            store.put(numArguments,new IntPointer((long) numArguments));
+            map.set(store);
+            return map.get().get(numArguments);
+        }
+        else if (map.get().get(numArguments) == null) {
+            val pointerPointer = new IntPointer((long) numArguments);
+            map.get().put(numArguments,pointerPointer);
+            return pointerPointer;
+        }
+
+        return map.get().get(numArguments);
+    }
+
+
     private PointerPointer getInputShapes(int numArguments) {
         return getPointerPointerFrom(inputShapes,numArguments);
     }
@@ -1514,6 +1535,9 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
             }
         }
 
+        if (smallArrayFastPath.get() && isSmallOp(op))
+            return execSmall(op, shapeOverride);
+
         val name = op.opName();
         try (val context = buildContext()) {
 
@@ -1561,6 +1585,84 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
         }
     }
 
+    /**
+     * Returns true if no input or output of the op has more than {@link #getSmallArrayThreshold()} elements
+     */
+    protected boolean isSmallOp(CustomOp op) {
+        val threshold = smallArrayThreshold;
+        for (val in:op.inputArguments()) {
+            if (in.length() > threshold)
+                return false;
+        }
+
+        for (val out:op.outputArguments()) {
+            if (out.length() > threshold)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Low overhead version of {@link #exec(CustomOp)}, used for ops on small arrays where the setup cost
+     * dominates the cost of the op itself. Instead of a new native context per call, a per-thread context is
+     * reused, and input buffers are only re-synchronized after execution for in-place calls, as inputs of other ops
+     * are never written by the op.
+     */
+    protected INDArray[] execSmall(CustomOp op, boolean shapeOverride) {
+        CpuOpContext context = smallOpContext.get();
+        if (context == null)
+            context = new CpuOpContext();
+
+        // ops executed while this one is running (i.e. by profiling hooks) will get their own context
+        smallOpContext.set(null);
+
+        val name = op.opName();
+        try {
+            context.purge();
+            context.shapeFunctionOverride(shapeOverride);
+            context.markInplace(op.isInplaceCall());
+            context.setRngStates(Nd4j.getRandom().rootState(), Nd4j.getRandom().nodeState());
+
+            context.setInputArrays(op.inputArguments());
+            context.setOutputArrays(op.outputArguments());
+
+            // args are always set, so that ones left over from the previous op are cleared
+            context.setBArguments(op.bArgs());
+            context.setIArguments(op.iArgs());
+            context.setTArguments(op.tArgs());
+            context.setDArguments(op.dArgs());
+
+            val result = exec(op, context);
+            val states = context.getRngStates();
+
+            // in-place calls write into inputs, which may not be listed as outputs
+            if (op.isInplaceCall()) {
+                for (val in:op.inputArguments()) {
+                    if (!in.isEmpty())
+                        ((BaseCpuDataBuffer) in.data()).actualizePointerAndIndexer();
+                }
+            }
+
+            for (val out:op.outputArguments()) {
+                if (!out.isEmpty())
+                    ((BaseCpuDataBuffer) out.data()).actualizePointerAndIndexer();
+            }
+
+            Nd4j.getRandom().setStates(states.getFirst(), states.getSecond());
+
+            return result;
+        } catch (ND4JOpProfilerException e){
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Op [" + name + "] execution failed", e);
+        } finally {
+            // don't keep the arrays of this op reachable from the thread local
+            context.purge();
+            smallOpContext.set(context);
+        }
+    }
+
     protected LongShapeDescriptor getShapeFromPointer(LongPointer ptr) {
         val rank = (int) ptr.get(0);
 
@@ -1596,21 +1698,20 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
             return Collections.emptyList();
         }
 
-        val inputBuffers = new PointerPointer<>(nIn);
-        val inputShapes = new PointerPointer<>(nIn);
+        // pointers are reused between calls on the same thread: they are only read during calculateOutputShapes2
+        val inputBuffers = getInputBuffers(nIn);
+        val inputShapes = getInputShapes(nIn);
         val inputArgs = opContext != null && opContext.getInputArrays() != null && !opContext.getInputArrays().isEmpty()
                 ? opContext.getInputArrays() : op.inputArguments();
         int cnt= 0;
         for (val in: inputArgs) {
-            if (!in.isEmpty())
-                inputBuffers.put(cnt, in.data().addressPointer());
-
+            inputBuffers.put(cnt, in.isEmpty() ? null : in.data().addressPointer());
             inputShapes.put(cnt++, in.shapeInfoDataBuffer().addressPointer());
         }
 
 
         int nIArgs = opContext != null ? opContext.numIArguments() : op.numIArguments();
-        val iArgs = nIArgs > 0 ? new LongPointer(nIArgs) : null;
+        val iArgs = nIArgs > 0 ? getLongPointerFrom(iArgsPointer, nIArgs) : null;
         cnt = 0;
         if(opContext != null){
             for (val i: opContext.getIArguments())
@@ -1622,13 +1723,13 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
 
 
         int nTArgs = opContext != null ? opContext.numTArguments() : op.numTArguments();
-        val tArgs = nTArgs > 0 ? new DoublePointer(nTArgs) : null;
+        val tArgs = nTArgs > 0 ? getDoublePointerFrom(tArgsPointer, nTArgs) : null;
 
         int nBArgs = opContext != null ? opContext.numBArguments() : op.numBArguments();
-        val bArgs = nBArgs > 0 ? new BooleanPointer(nBArgs) : null;
+        val bArgs = nBArgs > 0 ? getBooleanPointerFrom(bArgsPointer, nBArgs) : null;
 
         int nDArgs = opContext != null ? opContext.numDArguments() : op.numDArguments();
-        val dArgs = nDArgs > 0 ? new IntPointer(nDArgs) : null;
+        val dArgs = nDArgs > 0 ? getIntPointerFrom(dArgsPointer, nDArgs) : null;
 
         cnt = 0;
         if(opContext != null) {
@@ -1886,7 +1987,7 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
         long st = profilingConfigurableHookIn(op, context);
         boolean mklOverride = false;
         try {
-            if (Nd4jCpu.Environment.getInstance().isUseONEDNN()) {
+            if (!mklOverrides.isEmpty() && Nd4jCpu.Environment.getInstance().isUseONEDNN()) {
                 val opName = op.opName();
                 val state = mklOverrides.get(op);
                 if (state != null && state == true) {
@@ -131,6 +131,42 @@ public class TestSessions extends BaseNd4jTestWithBackends {
         assertEquals(dExp, outMap.get("d"));
     }
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testInferenceSessionParallel(Nd4jBackend backend) {
+        //Wide graph: 4 independent branches, which should be executed concurrently
+        SameDiff sd = SameDiff.create();
+        SDVariable x = sd.placeHolder("x", DataType.FLOAT, 3,3);
+        SDVariable y = sd.placeHolder("y", DataType.FLOAT, 3,3);
+
+        SDVariable a = sd.math().tanh("a", x.add(y));
+        SDVariable b = sd.nn().sigmoid("b", x.mmul(y));
+        SDVariable c = x.sub("c", y).mul(2.0);
+        SDVariable d = sd.nn().relu("d", x.mul(y), 0.0);
+        SDVariable out = a.add(b).add(c).add("out", d);
+
+        INDArray xArr = Nd4j.linspace(1, 9, 9).castTo(DataType.FLOAT).reshape(3,3);
+        INDArray yArr = Nd4j.linspace(0.0, 0.9, 9, DataType.DOUBLE).castTo(DataType.FLOAT).reshape(3,3);
+        Map<String,INDArray> m = new HashMap<>();
+        m.put("x", xArr);
+        m.put("y", yArr);
+
+        InferenceSession seq = new InferenceSession(sd);
+        Map<String,INDArray> expected = seq.output(Arrays.asList("out", "a", "b"), m, null,
+                Collections.emptyList(), null, At.defaultAt(Operation.INFERENCE));
+
+        InferenceSession par = new InferenceSession(sd);
+        par.setParallelism(4);
+        for( int i = 0; i < 3; i++ ) {
+            Map<String,INDArray> outMap = par.output(Arrays.asList("out", "a", "b"), m, null,
+                    Collections.emptyList(), null, At.defaultAt(Operation.INFERENCE));
+            assertEquals(expected, outMap);
+        }
+
+        sd.setInferenceParallelism(4);
+        assertEquals(expected.get("out"), sd.outputSingle(m, "out"));
+    }
+
     @ParameterizedTest
     @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
     public void testMergeSimple(Nd4jBackend backend) {
@@ -27,17 +27,28 @@ import org.nd4j.autodiff.optimization.util.OptimizationTestUtil;
 import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
 import org.nd4j.autodiff.samediff.optimize.GraphOptimizer;
+import org.nd4j.autodiff.samediff.optimize.OptimizerSet;
 import org.nd4j.autodiff.samediff.optimize.optimizations.ConstantFunctionOptimizations;
+import org.nd4j.autodiff.samediff.optimize.optimizations.FusionFunctionOptimizations;
 import org.nd4j.autodiff.samediff.optimize.optimizations.IdentityFunctionOptimizations;
 import org.nd4j.linalg.BaseNd4jTestWithBackends;
 import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMultiplication;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Swish;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -157,4 +168,53 @@ public class TestOptimization extends BaseNd4jTestWithBackends {
         assertFalse(optimized.hasVariable(i3.name()));
         assertTrue(optimized.hasVariable("out"));
     }
-}
\ No newline at end of file
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testElementwiseFusion(Nd4jBackend nd4jBackend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 3));
+        SDVariable mmul = in.mmul(w);
+        SDVariable xwPlusB = mmul.add(b);
+        SDVariable h = sd.nn().relu(xwPlusB, 0);
+        SDVariable scaled = h.mul(2.0).mul(4.0);
+        SDVariable out = scaled.mul("out", sd.nn().sigmoid(scaled));
+        assertEquals(7, sd.getOps().size());
+
+        Map<String, INDArray> ph = Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 5, 4));
+        INDArray exp = sd.outputSingle(ph, "out");
+
+        SameDiff optimized = GraphOptimizer.optimize(sd, Collections.singletonList("out"),
+                Collections.<OptimizerSet>singletonList(new FusionFunctionOptimizations()));
+
+        //mmul + add + relu -> relu_layer; mul + mul -> mul; sigmoid + mul -> swish
+        assertEquals(3, optimized.getOps().size());
+        Set<Class<?>> opClasses = new HashSet<>();
+        for (SameDiffOp op : optimized.getOps().values()) {
+            opClasses.add(op.getOp().getClass());
+        }
+        assertEquals(new HashSet<>(Arrays.<Class<?>>asList(ReluLayer.class, ScalarMultiplication.class, Swish.class)), opClasses);
+        assertTrue(optimized.hasVariable("out"));
+        //Intermediate outputs are removed; the fused op takes over the output of the last op in the chain
+        assertFalse(optimized.hasVariable(mmul.name()));
+        assertFalse(optimized.hasVariable(xwPlusB.name()));
+        assertTrue(optimized.hasVariable(h.name()));
+        String hOp = optimized.getVariables().get(h.name()).getOutputOfOp();
+        assertEquals(ReluLayer.class, optimized.getOps().get(hOp).getOp().getClass());
+
+        INDArray act = optimized.outputSingle(ph, "out");
+        assertTrue(exp.equalsWithEps(act, 1e-5));
+
+        //Original graph should be unmodified
+        assertEquals(7, sd.getOps().size());
+        assertEquals(exp, sd.outputSingle(ph, "out"));
+
+        //Fused graph can be saved and loaded
+        File f = new File(tempDir.toFile(), "fused.sd");
+        optimized.save(f, true);
+        SameDiff loaded = SameDiff.load(f, true);
+        assertEquals(act, loaded.outputSingle(ph, "out"));
+    }
+}
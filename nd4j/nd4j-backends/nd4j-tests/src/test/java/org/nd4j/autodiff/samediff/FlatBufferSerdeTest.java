@@ -30,6 +30,8 @@ import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.array.LazyArrayHolder;
+import org.nd4j.autodiff.samediff.array.SingleThreadArrayHolder;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.graph.FlatConfiguration;
@@ -360,6 +362,74 @@ public class FlatBufferSerdeTest extends BaseNd4jTestWithBackends {
     }
 
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testLazyLoad(Nd4jBackend backend) throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w1 = sd.var("w1", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable b1 = sd.constant("b1", Nd4j.rand(DataType.FLOAT, 3));
+        SDVariable w2 = sd.constant("w2", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable out1 = sd.nn().tanh("out1", in.mmul(w1).add(b1));
+        SDVariable out2 = sd.nn().sigmoid("out2", in.mmul(w2));
+
+        File f = new File(testDir.toFile(), "lazy.fb");
+        sd.save(f, false);
+
+        INDArray input = Nd4j.rand(DataType.FLOAT, 2, 4);
+        Map<String, INDArray> exp = sd.output(Collections.singletonMap("in", input), "out1", "out2");
+
+        SameDiff restored = SameDiff.load(f, false, true);
+        assertEquals(sd.variableMap().keySet(), restored.variableMap().keySet());
+
+        //Only arrays for the subgraph are needed here
+        INDArray o1 = restored.outputSingle(Collections.singletonMap("in", input), "out1");
+        assertEquals(exp.get("out1"), o1);
+        assertTrue(restored.isArrayLoaded("w1"));
+        assertTrue(restored.isArrayLoaded("b1"));
+        assertFalse(restored.isArrayLoaded("w2"));
+
+        Map<String, INDArray> out = restored.output(Collections.singletonMap("in", input), "out1", "out2");
+        assertEquals(exp, out);
+        assertEquals(sd.getVariable("w2").getArr(), restored.getVariable("w2").getArr());
+
+        //Saving a lazily loaded instance should load everything
+        File f2 = new File(testDir.toFile(), "lazy2.fb");
+        restored.save(f2, false);
+        SameDiff restored2 = SameDiff.load(f2, false);
+        assertEquals(exp, restored2.output(Collections.singletonMap("in", input), "out1", "out2"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testLazyArrayHolder(Nd4jBackend backend) {
+        LazyArrayHolder h = new LazyArrayHolder(new SingleThreadArrayHolder());
+        final int[] count = new int[1];
+        h.setLoader("a", () -> {
+            count[0]++;
+            return Nd4j.scalar(1.0f);
+        });
+        h.setArray("b", Nd4j.scalar(2.0f));
+
+        assertEquals(2, h.size());
+        assertTrue(h.hasArray("a"));
+        assertFalse(h.isLoaded("a"));
+        assertTrue(h.isLoaded("b"));
+        assertEquals(1, h.numNotLoaded());
+        assertEquals(0, count[0]);
+
+        assertEquals(Nd4j.scalar(1.0f), h.getArray("a"));
+        assertEquals(Nd4j.scalar(1.0f), h.getArray("a"));
+        assertEquals(1, count[0]);
+        assertTrue(h.isLoaded("a"));
+        assertEquals(0, h.numNotLoaded());
+
+        h.setLoader("c", () -> Nd4j.scalar(3.0f));
+        h.rename("c", "d");
+        assertFalse(h.hasArray("c"));
+        assertEquals(Nd4j.scalar(3.0f), h.getArray("d"));
+    }
+
     @ParameterizedTest
     @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
     public void pooling3DSerialization(Nd4jBackend backend) {
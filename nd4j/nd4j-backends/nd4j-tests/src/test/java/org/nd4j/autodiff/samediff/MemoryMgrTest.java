@@ -24,15 +24,23 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.nd4j.autodiff.samediff.internal.memory.ArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.SizeClassArrayPool;
+import org.nd4j.autodiff.samediff.internal.memory.SizeClassMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.StaticPlanMemoryMgr;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -142,4 +150,314 @@ public class MemoryMgrTest extends BaseNd4jTestWithBackends {
         assertEquals(2000, mmgr.getLruCacheValues().size());
     }
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testArrayCacheMetrics(Nd4jBackend backend) {
+        ArrayCacheMemoryMgr mmgr = new ArrayCacheMemoryMgr();
+        INDArray a = mmgr.allocate(false, DataType.FLOAT, 10);
+        assertEquals(0, mmgr.getCacheHits());
+        assertEquals(1, mmgr.getCacheMisses());
+
+        mmgr.release(a);
+        mmgr.allocate(false, DataType.FLOAT, 10);
+        assertEquals(1, mmgr.getCacheHits());
+        assertEquals(1, mmgr.getCacheMisses());
+        assertEquals(0.5, mmgr.getHitRate(), 1e-6);
+
+        mmgr.resetMetrics();
+        assertEquals(0, mmgr.getCacheHits());
+        assertEquals(0, mmgr.getCacheMisses());
+        assertEquals(0, mmgr.getEvictions());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClasses(Nd4jBackend backend) {
+        assertEquals(16, SizeClassArrayPool.sizeClassCeil(1));
+        assertEquals(16, SizeClassArrayPool.sizeClassCeil(16));
+        assertEquals(20, SizeClassArrayPool.sizeClassCeil(17));
+        assertEquals(32, SizeClassArrayPool.sizeClassCeil(32));
+        assertEquals(40, SizeClassArrayPool.sizeClassCeil(33));
+        assertEquals(112, SizeClassArrayPool.sizeClassCeil(100));
+        assertEquals(1024, SizeClassArrayPool.sizeClassCeil(1024));
+        assertEquals(1280, SizeClassArrayPool.sizeClassCeil(1025));
+
+        assertEquals(0, SizeClassArrayPool.sizeClassFloor(15));
+        assertEquals(16, SizeClassArrayPool.sizeClassFloor(19));
+        assertEquals(20, SizeClassArrayPool.sizeClassFloor(20));
+        assertEquals(96, SizeClassArrayPool.sizeClassFloor(100));
+        assertEquals(1024, SizeClassArrayPool.sizeClassFloor(1279));
+
+        //Ceil and floor agree for class lengths
+        for (long l = 16; l < 100000; l = SizeClassArrayPool.sizeClassCeil(l + 1)) {
+            assertEquals(l, SizeClassArrayPool.sizeClassFloor(l));
+            assertTrue(SizeClassArrayPool.sizeClassCeil(l + 1) <= 1.25 * (l + 1));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassPool(Nd4jBackend backend) {
+        SizeClassArrayPool pool = new SizeClassArrayPool(1000, 1);
+
+        INDArray[] arrays = new INDArray[11];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = Nd4j.create(DataType.FLOAT, 25);        //100 bytes each, size class 24
+            pool.offer(arrays[i].data(), SizeClassArrayPool.sizeClassFloor(25));
+        }
+
+        //Oldest should have been evicted to make space for the last
+        assertEquals(1000, pool.getCurrentBytes());
+        assertEquals(1, pool.getEvictions());
+        assertTrue(arrays[0].data().wasClosed());
+        assertFalse(arrays[1].data().wasClosed());
+
+        //Most recently returned first
+        assertSame(arrays[10].data(), pool.take(DataType.FLOAT, 24));
+        assertNull(pool.take(DataType.FLOAT, 32));
+        assertNull(pool.take(DataType.DOUBLE, 24));
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        assertEquals(900, pool.getCurrentBytes());
+
+        //Too large to ever pool
+        INDArray large = Nd4j.create(DataType.FLOAT, 1000);
+        pool.offer(large.data(), 1000);
+        assertEquals(1, pool.getRejections());
+        assertTrue(large.data().wasClosed());
+
+        pool.clear();
+        assertEquals(0, pool.getCurrentBytes());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassMemoryMgr(Nd4jBackend backend) {
+        SizeClassArrayPool pool = new SizeClassArrayPool(1_000_000, 4);
+
+        //No local cache: everything goes via the shared pool
+        SizeClassMemoryMgr m1 = new SizeClassMemoryMgr(pool, 0, 0);
+        SizeClassMemoryMgr m2 = new SizeClassMemoryMgr(pool, 0, 0);
+
+        INDArray a = m1.allocate(false, DataType.FLOAT, 3, 5);
+        assertArrayEquals(new long[]{3, 5}, a.shape());
+        assertEquals(16, a.data().length());
+        assertEquals(1, m1.getMisses());
+        m1.release(a);
+
+        //Different session, same size class
+        INDArray b = m2.allocate(false, DataType.FLOAT, 4, 4);
+        assertSame(a.data(), b.data());
+        assertNotSame(a, b);
+        assertEquals(1, m2.getPoolHits());
+        assertEquals(1, pool.getHits());
+        m2.release(b);
+
+        //Local cache: served without the pool
+        SizeClassMemoryMgr m3 = new SizeClassMemoryMgr(pool);
+        INDArray c = m3.allocate(false, DataType.DOUBLE, 100);
+        m3.release(c);
+        INDArray d = m3.allocate(false, LongShapeDescriptor.fromShape(new long[]{10, 11}, new long[]{1, 10}, 1, 'f', DataType.DOUBLE, false));
+        assertSame(c.data(), d.data());
+        assertEquals('f', d.ordering());
+        assertEquals(1, m3.getLocalHits());
+        m3.release(d);
+
+        //Closing returns locally cached buffers to the pool
+        long before = pool.getCurrentBytes();
+        m3.close();
+        assertEquals(before + 112 * 8, pool.getCurrentBytes());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassMemoryMgrExactOutputs(Nd4jBackend backend) {
+        SizeClassArrayPool pool = new SizeClassArrayPool(1_000_000, 4);
+        SizeClassMemoryMgr mmgr = new SizeClassMemoryMgr(pool);
+
+        //Detached (output) arrays are never backed by a larger size-class buffer
+        INDArray a = mmgr.allocate(true, DataType.FLOAT, 3, 7);
+        assertEquals(21, a.data().length());
+        assertFalse(a.isView());
+        INDArray b = mmgr.allocate(true, LongShapeDescriptor.fromShape(new long[]{17}, DataType.DOUBLE));
+        assertEquals(17, b.data().length());
+        assertFalse(b.isView());
+
+        //Requested SameDiff outputs have exactly the output length, even when intermediates come from the pool
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 7);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 7, 7));
+        SDVariable out = sd.nn().tanh("out", in.mmul(w).add(1.0));
+        sd.setSessionArrayPool(pool);
+
+        INDArray input = Nd4j.rand(DataType.FLOAT, 3, 7);
+        for (int i = 0; i < 3; i++) {
+            INDArray o = sd.outputSingle(Collections.singletonMap("in", input), "out");
+            assertArrayEquals(new long[]{3, 7}, o.shape());
+            assertEquals(21, o.data().length());
+            assertFalse(o.isView());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassMemoryMgrDoubleRelease(Nd4jBackend backend) {
+        SizeClassArrayPool pool = new SizeClassArrayPool(1_000_000, 4);
+
+        //Released to the local cache
+        SizeClassMemoryMgr local = new SizeClassMemoryMgr(pool);
+        INDArray a = local.allocate(false, DataType.FLOAT, 3, 5);
+        local.release(a);
+        assertThrows(IllegalStateException.class, () -> local.release(a));
+
+        //Released to the shared pool
+        SizeClassMemoryMgr shared = new SizeClassMemoryMgr(pool, 0, 0);
+        INDArray b = shared.allocate(false, DataType.FLOAT, 100);
+        shared.release(b);
+        assertThrows(IllegalStateException.class, () -> shared.release(b));
+
+        //Two later allocations must not share a buffer
+        INDArray c = shared.allocate(false, DataType.FLOAT, 100);
+        INDArray d = shared.allocate(false, DataType.FLOAT, 100);
+        assertNotSame(c.data(), d.data());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassSessionClosedWhenDiscarded(Nd4jBackend backend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 10);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 10, 10));
+        SDVariable out = sd.nn().tanh("out", in.mmul(w).mmul(w).add(1.0));
+
+        SizeClassArrayPool pool = new SizeClassArrayPool(1_000_000, 4);
+        sd.setSessionArrayPool(pool);
+
+        INDArray input = Nd4j.rand(DataType.FLOAT, 8, 10);
+        INDArray exp = sd.outputSingle(Collections.singletonMap("in", input), "out");
+
+        //Intermediates are held in the session's local cache until the session is dropped
+        long before = pool.getCurrentBytes();
+        sd.convertToConstants(Collections.singletonList(w));
+        assertTrue(pool.getCurrentBytes() > before);
+
+        //A new session is created and reuses the pooled buffers
+        long hits = pool.getHits();
+        assertEquals(exp, sd.outputSingle(Collections.singletonMap("in", input), "out"));
+        assertTrue(pool.getHits() > hits);
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSharedPoolConcurrentInference(Nd4jBackend backend) throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 10);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 10, 10));
+        SDVariable out = sd.nn().tanh("out", in.mmul(w).mmul(w).add(1.0));
+
+        final INDArray input = Nd4j.rand(DataType.FLOAT, 8, 10);
+        final INDArray exp = sd.outputSingle(Collections.singletonMap("in", input), "out");
+
+        SizeClassArrayPool pool = new SizeClassArrayPool(1_000_000, 4);
+        sd.setSessionArrayPool(pool);
+
+        final SameDiff fsd = sd;
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20; i++) {
+                    INDArray o = fsd.outputSingle(Collections.singletonMap("in", input), "out");
+                    if (!exp.equals(o))
+                        failures.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads)
+            t.join();
+
+        assertEquals(0, failures.get());
+        assertTrue(pool.getHits() + pool.getMisses() > 0);
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testStaticPlanMemoryMgr(Nd4jBackend backend) {
+        StaticPlanMemoryMgr mmgr = new StaticPlanMemoryMgr(new ArrayCacheMemoryMgr());
+        Map<String, INDArray> ph = Collections.singletonMap("in", Nd4j.create(DataType.FLOAT, 2, 3));
+
+        for (int i = 0; i < 3; i++) {
+            mmgr.beginExecution(ph);
+            INDArray a = mmgr.allocate(false, DataType.FLOAT, 100);
+            INDArray b = mmgr.allocate(false, DataType.FLOAT, 50);
+            mmgr.release(a);
+            INDArray c = mmgr.allocate(false, DataType.FLOAT, 100);     //Can reuse a's memory
+            INDArray out = mmgr.allocate(true, DataType.FLOAT, 10);     //Detached: never planned
+            INDArray kept = mmgr.allocate(false, DataType.FLOAT, 10);   //Never released: never planned
+            mmgr.release(b);
+            mmgr.release(c);
+            mmgr.endExecution();
+
+            if (i > 0) {
+                //Planned: a and c share the same arena memory, b doesn't overlap either
+                DataBuffer arena = arena(a);
+                assertSame(arena, arena(b));
+                assertSame(arena, arena(c));
+                assertEquals(a.data().offset(), c.data().offset());
+                assertTrue(b.data().offset() >= a.data().offset() + 100 || b.data().offset() + 50 <= a.data().offset());
+                assertNotSame(arena, arena(out));
+                assertNotSame(arena, arena(kept));
+            }
+        }
+
+        assertEquals(1, mmgr.numPlans());
+        assertEquals(6, mmgr.getPlannedAllocations());
+        assertEquals(0, mmgr.getPlanMismatches());
+        StaticPlanMemoryMgr.Plan p = mmgr.getLastPlan();
+        assertEquals(3, p.getNumPlanned());
+        assertEquals(250 * 4, p.getUnpackedBytes());
+        assertTrue(p.getArenaBytes() < p.getUnpackedBytes());
+
+        //Different sequence for the same signature: falls back to dynamic allocation, then replans
+        mmgr.beginExecution(ph);
+        INDArray d = mmgr.allocate(false, DataType.FLOAT, 100);
+        INDArray e = mmgr.allocate(false, DataType.DOUBLE, 50);
+        assertEquals(DataType.DOUBLE, e.dataType());
+        mmgr.release(d);
+        mmgr.release(e);
+        mmgr.endExecution();
+        assertEquals(1, mmgr.getPlanMismatches());
+        assertEquals(2, mmgr.getLastPlan().getNumPlanned());
+        mmgr.close();
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testStaticMemoryPlanningInference(Nd4jBackend backend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 10);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 10, 10));
+        SDVariable h1 = sd.nn().tanh(in.mmul(w).add(1.0));
+        SDVariable h2 = sd.nn().sigmoid(h1.mmul(w).sub(0.5));
+        SDVariable out = sd.math().square(h2.add(h1)).sum("out", 1);
+
+        INDArray in1 = Nd4j.rand(DataType.FLOAT, 8, 10);
+        INDArray in2 = Nd4j.rand(DataType.FLOAT, 3, 10);
+        INDArray exp1 = sd.outputSingle(Collections.singletonMap("in", in1), "out");
+        INDArray exp2 = sd.outputSingle(Collections.singletonMap("in", in2), "out");
+
+        SameDiff sd2 = sd.dup();
+        sd2.setStaticMemoryPlanning(true);
+        for (int i = 0; i < 4; i++) {
+            //Alternate between input shapes, so both plans are used
+            assertEquals(exp1, sd2.outputSingle(Collections.singletonMap("in", in1), "out"));
+            assertEquals(exp2, sd2.outputSingle(Collections.singletonMap("in", in2), "out"));
+        }
+    }
+
+    private static DataBuffer arena(INDArray arr) {
+        DataBuffer b = arr.data();
+        return b.originalDataBuffer() == null ? b : b.originalDataBuffer();
+    }
 }
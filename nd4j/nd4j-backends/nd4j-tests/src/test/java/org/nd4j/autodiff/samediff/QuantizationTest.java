@@ -0,0 +1,127 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.autodiff.samediff.quantization.Int8Quantization;
+import org.nd4j.autodiff.samediff.quantization.PostTrainingQuantizer;
+import org.nd4j.autodiff.samediff.quantization.QuantizationReport;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.IrisDataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.SAMEDIFF)
+public class QuantizationTest extends BaseNd4jTestWithBackends {
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testPerChannelQuantization(Nd4jBackend backend) {
+        INDArray w = Nd4j.rand(DataType.FLOAT, 10, 5).subi(0.5);
+        w.getColumn(2).muli(100);       //Very different scale for one channel
+        w.getColumn(4).assign(0);       //All zero channel
+
+        Int8Quantization.QuantizedArray q = Int8Quantization.quantizePerChannel(w, 1);
+        assertEquals(DataType.INT8, q.getValues().dataType());
+        assertArrayEquals(new long[]{10, 5}, q.getValues().shape());
+        assertArrayEquals(new long[]{1, 5}, q.getScales().shape());
+        assertEquals(10 * 5 + 5 * 4, q.sizeBytes());
+
+        INDArray deq = Int8Quantization.dequantize(q);
+        assertEquals(DataType.FLOAT, deq.dataType());
+        for (int c = 0; c < 5; c++) {
+            //Max error is half a quantization step per channel
+            double step = q.getScales().getDouble(0, c);
+            double maxErr = Transforms.abs(deq.getColumn(c).sub(w.getColumn(c))).maxNumber().doubleValue();
+            assertTrue(maxErr <= step / 2 + 1e-6, "Channel " + c + ": error " + maxErr + ", step " + step);
+        }
+        assertEquals(0.0, deq.getColumn(4).sumNumber().doubleValue(), 0.0);
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testQuantizeSameDiff(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable label = sd.placeHolder("label", DataType.FLOAT, -1, 3);
+        SDVariable w1 = sd.var("w1", Nd4j.rand(DataType.FLOAT, 4, 128).subi(0.5));
+        SDVariable b1 = sd.var("b1", Nd4j.rand(DataType.FLOAT, 128));
+        SDVariable w2 = sd.var("w2", Nd4j.rand(DataType.FLOAT, 128, 3).subi(0.5));
+        SDVariable h = sd.nn().tanh(in.mmul(w1).add(b1));
+        SDVariable out = sd.nn().softmax("out", h.mmul(w2));
+        sd.loss().logLoss("loss", label, out);
+        sd.setTrainingConfig(TrainingConfig.builder()
+                .updater(new Adam(1e-3))
+                .dataSetFeatureMapping("in")
+                .dataSetLabelMapping("label")
+                .build());
+
+        DataSetIterator iter = new IrisDataSetIterator(50, 150);
+        PostTrainingQuantizer q = PostTrainingQuantizer.builder()
+                .minElements(100)
+                .quantizeActivations(true)
+                .build();
+
+        Map<String, double[]> ranges = q.calibrate(sd, iter);
+        assertEquals(2, ranges.size());
+        assertTrue(ranges.containsKey("in"));
+        double[] hRange = ranges.get(h.name());
+        assertTrue(hRange[0] >= -1.0 && hRange[1] <= 1.0 && hRange[0] < hRange[1]);
+
+        SameDiff quantized = q.quantize(sd, ranges);
+        assertFalse(quantized.hasVariable("w1"));
+        assertFalse(quantized.hasVariable("w2"));
+        assertEquals(DataType.INT8, quantized.getVariable("w1" + PostTrainingQuantizer.INT8_SUFFIX).dataType());
+        assertTrue(sd.hasVariable("w1"));       //Original not modified
+
+        INDArray input = Nd4j.rand(DataType.FLOAT, 10, 4).muli(5);
+        INDArray exp = sd.outputSingle(Collections.singletonMap("in", input), "out");
+        INDArray act = quantized.outputSingle(Collections.singletonMap("in", input), "out");
+        assertArrayEquals(exp.shape(), act.shape());
+        assertTrue(exp.equalsWithEps(act, 0.05));
+
+        QuantizationReport r = q.evaluate(sd, quantized, iter, "out");
+        assertEquals(150, r.getFp32Evaluation().getNumRowCounter(), 0.0);
+        assertEquals(150, r.getQuantizedEvaluation().getNumRowCounter(), 0.0);
+        assertTrue(r.compressionRatio() > 2.0, r.stats());
+    }
+}
@@ -28,6 +28,7 @@ import org.junit.jupiter.api.parallel.Execution;
 import org.junit.jupiter.api.parallel.ExecutionMode;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.autodiff.listeners.checkpoint.Checkpoint;
 import org.nd4j.autodiff.listeners.checkpoint.CheckpointListener;
 import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
@@ -262,4 +263,50 @@ public class CheckpointListenerTest extends BaseNd4jTestWithBackends {
 
         assertEquals(5, l.availableCheckpoints().size());
     }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testCheckpointAsync(Nd4jBackend backend) throws Exception {
+        File dirSync = testDir.resolve("sync").toFile();
+        File dirAsync = testDir.resolve("async").toFile();
+
+        SameDiff sdSync = getModel();
+        SameDiff sdAsync = getModel();
+        CheckpointListener lSync = CheckpointListener.builder(dirSync)
+                .keepLast(2)
+                .saveEveryNIterations(5)
+                .build();
+        CheckpointListener lAsync = CheckpointListener.builder(dirAsync)
+                .keepLast(2)
+                .saveEveryNIterations(5)
+                .asyncSaving(true)
+                .build();
+        sdSync.setListeners(lSync);
+        sdAsync.setListeners(lAsync);
+
+        sdSync.fit(getIter(), 2);                        //2 epochs = 20 iter
+        sdAsync.fit(getIter(), 2);
+        lAsync.waitForPendingSave();
+
+        List<Checkpoint> cpSync = lSync.availableCheckpoints();
+        List<Checkpoint> cpAsync = lAsync.availableCheckpoints();
+        assertEquals(2, cpAsync.size());
+        assertEquals(cpSync.size(), cpAsync.size());
+        //Checkpoints are written to a temporary file and renamed once complete
+        assertEquals(0, dirAsync.listFiles((dir, name) -> name.endsWith(".tmp")).length);
+        for( int i=0; i<cpSync.size(); i++ ){
+            assertEquals(cpSync.get(i).getIteration(), cpAsync.get(i).getIteration());
+
+            SameDiff s1 = lSync.loadCheckpoint(cpSync.get(i).getCheckpointNum(), true);
+            SameDiff s2 = lAsync.loadCheckpoint(cpAsync.get(i).getCheckpointNum(), true);
+            assertEquals(s1.getTrainingConfig().getIterationCount(), s2.getTrainingConfig().getIterationCount());
+            assertEquals(s1.getArrForVarName("W"), s2.getArrForVarName("W"));
+            assertEquals(s1.getArrForVarName("b"), s2.getArrForVarName("b"));
+            //Updater state is only present after loading if it was restored for both
+            assertEquals(s1.getUpdaterMap() == null, s2.getUpdaterMap() == null);
+            if(s1.getUpdaterMap() != null) {
+                assertEquals(s1.getUpdaterMap().get("W").getState(), s2.getUpdaterMap().get("W").getState());
+            }
+        }
+    }
 }
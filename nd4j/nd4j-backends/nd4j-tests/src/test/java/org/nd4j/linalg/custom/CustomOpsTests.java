@@ -2112,4 +2112,105 @@ public class CustomOpsTests extends BaseNd4jTestWithBackends {
 
         assertEquals(out, out2);
     }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSmallArrayFastPath(Nd4jBackend backend) {
+        INDArray x = Nd4j.rand(DataType.FLOAT, 3, 4);
+        INDArray y = Nd4j.rand(DataType.FLOAT, 3, 4);
+
+        INDArray expAdd = x.add(y);
+        INDArray expSumDim = x.sum(0);
+        INDArray expSumAll = x.sum();
+
+        OpExecutioner exec = Nd4j.getExecutioner();
+        boolean wasEnabled = exec.isSmallArrayFastPath();
+        long threshold = exec.getSmallArrayThreshold();
+        exec.enableSmallArrayFastPath(true);
+        try {
+            for (int i = 0; i < 3; i++) {
+                INDArray add = Nd4j.exec(new AddOp(x, y))[0];
+                assertEquals(expAdd, add);
+
+                INDArray sumDim = Nd4j.create(DataType.FLOAT, 4);
+                Nd4j.exec(DynamicCustomOp.builder("reduce_sum")
+                        .addInputs(x)
+                        .addIntegerArguments(0)
+                        .addOutputs(sumDim)
+                        .build());
+                assertEquals(expSumDim, sumDim);
+
+                //No integer args: must not reuse the dimension from the previous op
+                INDArray sumAll = Nd4j.scalar(DataType.FLOAT, 0.0f);
+                Nd4j.exec(DynamicCustomOp.builder("reduce_sum")
+                        .addInputs(x)
+                        .addOutputs(sumAll)
+                        .build());
+                assertEquals(expSumAll, sumAll);
+            }
+
+            //Above the threshold, the regular path is used
+            exec.setSmallArrayThreshold(4);
+            INDArray add = Nd4j.exec(new AddOp(x, y))[0];
+            assertEquals(expAdd, add);
+        } finally {
+            exec.enableSmallArrayFastPath(wasEnabled);
+            exec.setSmallArrayThreshold(threshold);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSmallArrayFastPathMatchesRegularPath(Nd4jBackend backend) {
+        INDArray x = Nd4j.rand(DataType.FLOAT, 3, 4);
+        INDArray y = Nd4j.rand(DataType.FLOAT, 3, 4);
+
+        OpExecutioner exec = Nd4j.getExecutioner();
+        boolean wasEnabled = exec.isSmallArrayFastPath();
+        try {
+            exec.enableSmallArrayFastPath(false);
+            List<INDArray> exp = execSmallArrayOps(x, y);
+
+            exec.enableSmallArrayFastPath(true);
+            for (int i = 0; i < 3; i++) {
+                List<INDArray> out = execSmallArrayOps(x, y);
+                assertEquals(exp, out);
+            }
+        } finally {
+            exec.enableSmallArrayFastPath(wasEnabled);
+        }
+    }
+
+    private static List<INDArray> execSmallArrayOps(INDArray x, INDArray y) {
+        List<INDArray> out = new ArrayList<>();
+        out.add(Nd4j.exec(new AddOp(x, y))[0]);
+
+        INDArray sum = Nd4j.create(DataType.FLOAT, 3);
+        Nd4j.exec(DynamicCustomOp.builder("reduce_sum")
+                .addInputs(x)
+                .addIntegerArguments(1)
+                .addOutputs(sum)
+                .build());
+        out.add(sum);
+
+        //In place: result is written to the input array
+        INDArray inPlace = x.dup();
+        Nd4j.exec(DynamicCustomOp.builder("multiply")
+                .addInputs(inPlace, y)
+                .callInplace(true)
+                .build());
+        out.add(inPlace);
+
+        //Random op: rng state is transferred to and from the op context
+        Nd4j.getRandom().setSeed(12345);
+        INDArray rand = Nd4j.create(DataType.FLOAT, 3, 4);
+        Nd4j.exec(DynamicCustomOp.builder("randomuniform")
+                .addInputs(Nd4j.createFromArray(3L, 4L))
+                .addFloatingPointArguments(0.0, 1.0)
+                .addOutputs(rand)
+                .build());
+        out.add(rand);
+        out.add(Nd4j.rand(DataType.FLOAT, 2));
+        return out;
+    }
 }
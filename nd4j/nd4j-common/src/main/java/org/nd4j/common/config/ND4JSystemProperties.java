@@ -115,6 +115,20 @@ public class ND4JSystemProperties {
      * Similar to {@link #ND4J_CPU_LOAD_OPENBLAS} but when this is set, LAPACK will not be loaded
      */
     public static final String ND4J_CPU_LOAD_OPENBLAS_NOLAPACK = "org.bytedeco.openblas_nolapack.load";
+    /**
+     * Applicability: nd4j-native backend<br>
+     * Description: If set to true, custom ops where every input and output array is small are executed via a low
+     * overhead path that reuses the per-thread op context instead of creating a new one for each call.
+     * See {@code OpExecutioner#enableSmallArrayFastPath(boolean)}<br>
+     * Default: false
+     */
+    public static final String SMALL_ARRAY_FAST_PATH = "org.nd4j.executioner.smallarrayfastpath";
+    /**
+     * Applicability: nd4j-native backend, when {@link #SMALL_ARRAY_FAST_PATH} is enabled<br>
+     * Description: The maximum number of elements in any input or output array for an op to be considered small<br>
+     * Default: 8192
+     */
+    public static final String SMALL_ARRAY_FAST_PATH_THRESHOLD = "org.nd4j.executioner.smallarrayfastpath.threshold";
     /**
      * Applicability: nd4j-parameter-server, dl4j-spark (gradient sharing training master)<br>
      * Description: Aeros in a high-performance communication library used in distributed computing contexts in some